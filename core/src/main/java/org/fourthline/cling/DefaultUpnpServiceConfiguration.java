@@ -31,6 +31,8 @@ import org.fourthline.cling.transport.impl.DatagramProcessorImpl;
 import org.fourthline.cling.transport.impl.GENAEventProcessorImpl;
 import org.fourthline.cling.transport.impl.MulticastReceiverConfigurationImpl;
 import org.fourthline.cling.transport.impl.MulticastReceiverImpl;
+import org.fourthline.cling.transport.impl.NIODatagramIOImpl;
+import org.fourthline.cling.transport.impl.NIOMulticastReceiverImpl;
 import org.fourthline.cling.transport.impl.NetworkAddressFactoryImpl;
 import org.fourthline.cling.transport.impl.SOAPActionProcessorImpl;
 import org.fourthline.cling.transport.impl.StreamClientConfigurationImpl;
@@ -50,6 +52,9 @@ import org.seamless.util.Exceptions;
 import javax.enterprise.inject.Alternative;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
@@ -74,7 +79,9 @@ import java.util.logging.Logger;
  * </p>
  * <p>
  * Note that this pool is effectively unlimited, so the number of threads will
- * grow (and shrink) as needed - or restricted by your JVM.
+ * grow (and shrink) as needed - or restricted by your JVM. If {@link #isVirtualThreadExecution()}
+ * is enabled and the runtime supports virtual threads, each task runs on a new virtual thread instead,
+ * virtual threads are not pooled.
  * </p>
  * <p>
  * The default {@link org.fourthline.cling.model.Namespace} is configured without any
@@ -91,6 +98,7 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
     final private int streamListenPort;
 
     final private ExecutorService defaultExecutorService;
+    final private ScheduledExecutorService scheduledExecutorService;
 
     final private DatagramProcessor datagramProcessor;
     final private SOAPActionProcessor soapActionProcessor;
@@ -101,6 +109,8 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
 
     final private Namespace namespace;
 
+    private NIOMulticastReceiverImpl nioMulticastReceiver;
+
     /**
      * Defaults to port '0', ephemeral.
      */
@@ -124,6 +134,7 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
         this.streamListenPort = streamListenPort;
 
         defaultExecutorService = createDefaultExecutorService();
+        scheduledExecutorService = createScheduledExecutorService();
 
         datagramProcessor = createDatagramProcessor();
         soapActionProcessor = createSOAPActionProcessor();
@@ -156,15 +167,28 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
     }
 
     public MulticastReceiver createMulticastReceiver(NetworkAddressFactory networkAddressFactory) {
-        return new MulticastReceiverImpl(
+        MulticastReceiverConfigurationImpl configuration =
                 new MulticastReceiverConfigurationImpl(
                         networkAddressFactory.getMulticastGroup(),
                         networkAddressFactory.getMulticastPort()
-                )
-        );
+                );
+        if (isNIOMulticastReceiver())
+            return getNIOMulticastReceiver(configuration);
+        return new MulticastReceiverImpl(configuration);
+    }
+
+    /**
+     * @return The receiver for all network interfaces, the same instance has to be initialized on each.
+     */
+    synchronized protected NIOMulticastReceiverImpl getNIOMulticastReceiver(MulticastReceiverConfigurationImpl configuration) {
+        if (nioMulticastReceiver == null)
+            nioMulticastReceiver = new NIOMulticastReceiverImpl(configuration);
+        return nioMulticastReceiver;
     }
 
     public DatagramIO createDatagramIO(NetworkAddressFactory networkAddressFactory) {
+        if (isNIODatagramIO())
+            return new NIODatagramIOImpl(new DatagramIOConfigurationImpl());
         return new DatagramIOImpl(new DatagramIOConfigurationImpl());
     }
 
@@ -207,6 +231,29 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
 		return false;
 	}
 
+    /**
+     * @return Defaults to <code>false</code>.
+     */
+    public boolean isConcurrentRegistry() {
+        return false;
+    }
+
+    /**
+     * @return Defaults to <code>false</code>. If <code>true</code>, unicast datagrams are sent and
+     *         received with a {@link NIODatagramIOImpl}.
+     */
+    protected boolean isNIODatagramIO() {
+        return false;
+    }
+
+    /**
+     * @return Defaults to <code>false</code>. If <code>true</code>, one {@link NIOMulticastReceiverImpl}
+     *         thread receives multicast datagrams on all network interfaces.
+     */
+    protected boolean isNIOMulticastReceiver() {
+        return false;
+    }
+
     public UpnpHeaders getDescriptorRetrievalHeaders(RemoteDeviceIdentity identity) {
         return null;
     }
@@ -229,6 +276,34 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
     	return 0;
     }
 
+    /**
+     * @return Defaults to zero, notifications are not limited.
+     */
+    public int getMaxNotificationDatagramsPerSecond() {
+        return 0;
+    }
+
+    /**
+     * @return Defaults to zero, search responses are not limited.
+     */
+    public int getMaxSearchResponsesPerSecond() {
+        return 0;
+    }
+
+    /**
+     * @return Defaults to zero, received datagrams are not limited.
+     */
+    public int getMaxReceivedDatagramsPerSecond() {
+        return 0;
+    }
+
+    /**
+     * @return Defaults to zero, repeated notifications are not dropped.
+     */
+    public int getDuplicateNotificationWindowMillis() {
+        return 0;
+    }
+
     public Integer getRemoteDeviceMaxAgeSeconds() {
         return null;
     }
@@ -241,6 +316,10 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
         return getDefaultExecutorService();
     }
 
+    public ScheduledExecutorService getAsyncProtocolScheduledExecutorService() {
+        return getScheduledExecutorService();
+    }
+
     public Namespace getNamespace() {
         return namespace;
     }
@@ -260,6 +339,7 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
     public void shutdown() {
         log.fine("Shutting down default executor service");
         getDefaultExecutorService().shutdownNow();
+        getScheduledExecutorService().shutdownNow();
     }
 
     protected NetworkAddressFactory createNetworkAddressFactory(int streamListenPort) {
@@ -294,14 +374,88 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
         return defaultExecutorService;
     }
 
+    /**
+     * @return Defaults to <code>false</code>. Override and return <code>true</code> to run protocols,
+     *         stream server handlers, and stream client requests on virtual threads, if the runtime
+     *         supports them. The scheduled executor service is not affected.
+     */
+    protected boolean isVirtualThreadExecution() {
+        return false;
+    }
+
     protected ExecutorService createDefaultExecutorService() {
+        if (isVirtualThreadExecution()) {
+            ExecutorService executorService = createVirtualThreadExecutorService();
+            if (executorService != null) {
+                log.info("Using virtual threads for protocol and stream execution");
+                return executorService;
+            }
+            log.info("Virtual threads are not supported by this runtime, using platform threads");
+        }
         return new ClingExecutor();
     }
 
+    /**
+     * Obtains the factory through reflection, so this class still runs on older runtimes.
+     *
+     * @return A factory of virtual threads, or <code>null</code> if the runtime doesn't support them.
+     */
+    public static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "cling-virtual-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception ex) {
+            log.fine("Virtual threads not available: " + ex);
+            return null;
+        }
+    }
+
+    /**
+     * Obtains the executor through reflection, so this class still runs on older runtimes.
+     *
+     * @return An executor which starts a new virtual thread for each task, or <code>null</code> if the
+     *         runtime doesn't support virtual threads.
+     */
+    public static ExecutorService createVirtualThreadExecutorService() {
+        ThreadFactory threadFactory = createVirtualThreadFactory();
+        if (threadFactory == null)
+            return null;
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                .invoke(null, threadFactory);
+        } catch (Exception ex) {
+            log.fine("Virtual thread executor not available: " + ex);
+            return null;
+        }
+    }
+
+    protected ScheduledExecutorService getScheduledExecutorService() {
+        return scheduledExecutorService;
+    }
+
+    /**
+     * A single thread is enough, scheduled tasks are handed over to the default executor service. The
+     * thread ends when no task has been scheduled for a minute, it doesn't keep the JVM running.
+     */
+    protected ScheduledExecutorService createScheduledExecutorService() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ClingThreadFactory());
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setKeepAliveTime(60L, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     public static class ClingExecutor extends ThreadPoolExecutor {
 
         public ClingExecutor() {
-            this(new ClingThreadFactory(),
+            this(new ClingThreadFactory());
+        }
+
+        public ClingExecutor(ThreadFactory threadFactory) {
+            this(threadFactory,
                  new ThreadPoolExecutor.DiscardPolicy() {
                      // The pool is unbounded but rejections will happen during shutdown
                      @Override
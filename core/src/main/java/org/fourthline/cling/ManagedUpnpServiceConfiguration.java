@@ -30,6 +30,8 @@ import org.fourthline.cling.transport.impl.DatagramIOImpl;
 import org.fourthline.cling.transport.impl.GENAEventProcessorImpl;
 import org.fourthline.cling.transport.impl.MulticastReceiverConfigurationImpl;
 import org.fourthline.cling.transport.impl.MulticastReceiverImpl;
+import org.fourthline.cling.transport.impl.NIODatagramIOImpl;
+import org.fourthline.cling.transport.impl.NIOMulticastReceiverImpl;
 import org.fourthline.cling.transport.impl.NetworkAddressFactoryImpl;
 import org.fourthline.cling.transport.impl.SOAPActionProcessorImpl;
 import org.fourthline.cling.transport.impl.StreamClientConfigurationImpl;
@@ -50,6 +52,9 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -67,6 +72,7 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
     private int streamListenPort;
 
     private ExecutorService defaultExecutorService;
+    private ScheduledExecutorService scheduledExecutorService;
 
     @Inject
     protected DatagramProcessor datagramProcessor;
@@ -79,6 +85,8 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
 
     private Namespace namespace;
 
+    private NIOMulticastReceiverImpl nioMulticastReceiver;
+
     @PostConstruct
     public void init() {
 
@@ -89,6 +97,7 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
         this.streamListenPort = NetworkAddressFactoryImpl.DEFAULT_TCP_HTTP_LISTEN_PORT;
 
         defaultExecutorService = createDefaultExecutorService();
+        scheduledExecutorService = createScheduledExecutorService();
 
         soapActionProcessor = createSOAPActionProcessor();
         genaEventProcessor = createGENAEventProcessor();
@@ -120,15 +129,28 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
     }
 
     public MulticastReceiver createMulticastReceiver(NetworkAddressFactory networkAddressFactory) {
-        return new MulticastReceiverImpl(
+        MulticastReceiverConfigurationImpl configuration =
                 new MulticastReceiverConfigurationImpl(
                         networkAddressFactory.getMulticastGroup(),
                         networkAddressFactory.getMulticastPort()
-                )
-        );
+                );
+        if (isNIOMulticastReceiver())
+            return getNIOMulticastReceiver(configuration);
+        return new MulticastReceiverImpl(configuration);
+    }
+
+    /**
+     * @return The receiver for all network interfaces, the same instance has to be initialized on each.
+     */
+    synchronized protected NIOMulticastReceiverImpl getNIOMulticastReceiver(MulticastReceiverConfigurationImpl configuration) {
+        if (nioMulticastReceiver == null)
+            nioMulticastReceiver = new NIOMulticastReceiverImpl(configuration);
+        return nioMulticastReceiver;
     }
 
     public DatagramIO createDatagramIO(NetworkAddressFactory networkAddressFactory) {
+        if (isNIODatagramIO())
+            return new NIODatagramIOImpl(new DatagramIOConfigurationImpl());
         return new DatagramIOImpl(new DatagramIOConfigurationImpl());
     }
 
@@ -171,6 +193,29 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
 		return false;
 	}
 
+    /**
+     * @return Defaults to <code>false</code>.
+     */
+    public boolean isConcurrentRegistry() {
+        return false;
+    }
+
+    /**
+     * @return Defaults to <code>false</code>. If <code>true</code>, unicast datagrams are sent and
+     *         received with a {@link NIODatagramIOImpl}.
+     */
+    protected boolean isNIODatagramIO() {
+        return false;
+    }
+
+    /**
+     * @return Defaults to <code>false</code>. If <code>true</code>, one {@link NIOMulticastReceiverImpl}
+     *         thread receives multicast datagrams on all network interfaces.
+     */
+    protected boolean isNIOMulticastReceiver() {
+        return false;
+    }
+
     public UpnpHeaders getDescriptorRetrievalHeaders(RemoteDeviceIdentity identity) {
         return null;
     }
@@ -193,6 +238,34 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
     	return 0;
     }
 
+    /**
+     * @return Defaults to zero, notifications are not limited.
+     */
+    public int getMaxNotificationDatagramsPerSecond() {
+        return 0;
+    }
+
+    /**
+     * @return Defaults to zero, search responses are not limited.
+     */
+    public int getMaxSearchResponsesPerSecond() {
+        return 0;
+    }
+
+    /**
+     * @return Defaults to zero, received datagrams are not limited.
+     */
+    public int getMaxReceivedDatagramsPerSecond() {
+        return 0;
+    }
+
+    /**
+     * @return Defaults to zero, repeated notifications are not dropped.
+     */
+    public int getDuplicateNotificationWindowMillis() {
+        return 0;
+    }
+
     public Integer getRemoteDeviceMaxAgeSeconds() {
         return null;
     }
@@ -205,6 +278,10 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
         return getDefaultExecutorService();
     }
 
+    public ScheduledExecutorService getAsyncProtocolScheduledExecutorService() {
+        return getScheduledExecutorService();
+    }
+
     public Namespace getNamespace() {
         return namespace;
     }
@@ -224,6 +301,7 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
     public void shutdown() {
         log.fine("Shutting down default executor service");
         getDefaultExecutorService().shutdownNow();
+        getScheduledExecutorService().shutdownNow();
     }
 
     protected NetworkAddressFactory createNetworkAddressFactory(int streamListenPort) {
@@ -257,4 +335,20 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
     protected ExecutorService createDefaultExecutorService() {
         return new DefaultUpnpServiceConfiguration.ClingExecutor();
     }
+
+    protected ScheduledExecutorService getScheduledExecutorService() {
+        return scheduledExecutorService;
+    }
+
+    /**
+     * A single thread is enough, scheduled tasks are handed over to the default executor service. The
+     * thread ends when no task has been scheduled for a minute, it doesn't keep the JVM running.
+     */
+    protected ScheduledExecutorService createScheduledExecutorService() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new DefaultUpnpServiceConfiguration.ClingThreadFactory());
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setKeepAliveTime(60L, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 }
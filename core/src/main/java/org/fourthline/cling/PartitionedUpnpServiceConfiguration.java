@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling;
+
+import org.fourthline.cling.protocol.RetrieveRemoteDescriptors;
+import org.fourthline.cling.protocol.SendingSync;
+import org.fourthline.cling.protocol.async.NotificationScheduler;
+import org.fourthline.cling.protocol.async.ReceivingNotification;
+import org.fourthline.cling.protocol.async.ReceivingSearch;
+import org.fourthline.cling.protocol.async.ReceivingSearchResponse;
+import org.fourthline.cling.protocol.async.SearchResponsePacer;
+import org.fourthline.cling.protocol.sync.SendingEvent;
+import org.fourthline.cling.transport.impl.NetworkAddressFactoryImpl;
+import org.fourthline.cling.transport.spi.UpnpStream;
+import org.seamless.util.Exceptions;
+
+import javax.enterprise.inject.Alternative;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Configuration with a separate bounded thread pool and queue for each {@link ExecutionClass}.
+ * <p>
+ * The default executor service is a {@link PartitionedExecutor}, it assigns the protocols to their
+ * execution class by type, see {@link PartitionedExecutor#classify(Runnable)}. This includes the delayed
+ * search responses and their pacing, and the rounds of outgoing notifications. All other tasks, such as
+ * the transport receiving loops, registry maintenance, and stream client requests, run on an unbounded
+ * {@link DefaultUpnpServiceConfiguration.ClingExecutor} as before. Registry listeners are notified with
+ * the executor of the {@link ExecutionClass#LISTENER} class.
+ * </p>
+ * <p>
+ * When the queue of an execution class is full, its {@link RejectionPolicy} applies. When the total
+ * number of queued tasks reaches {@link #getMaxQueuedTasks()}, a new task first sheds the oldest queued
+ * task of the lowest-priority class that has queued work. Tasks of classes with the
+ * {@link RejectionPolicy#CALLER_RUNS} policy are never shed.
+ * </p>
+ * <p>
+ * The limits are obtained while the configuration is constructed, override the <code>get...</code>
+ * methods of this class to change them.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+@Alternative
+public class PartitionedUpnpServiceConfiguration extends DefaultUpnpServiceConfiguration {
+
+    private static Logger log = Logger.getLogger(PartitionedUpnpServiceConfiguration.class.getName());
+
+    /**
+     * In order of priority, the work of the last class is shed first.
+     */
+    public enum ExecutionClass {
+
+        // Incoming HTTP requests, such as SOAP control and GENA subscriptions
+        CONTROL(16, 256, RejectionPolicy.CALLER_RUNS),
+        LISTENER(4, 1024, RejectionPolicy.CALLER_RUNS),
+        EVENT_OUT(8, 256, RejectionPolicy.CALLER_RUNS),
+        NOTIFICATION(4, 256, RejectionPolicy.DISCARD_OLDEST),
+        DESCRIPTOR_RETRIEVAL(8, 128, RejectionPolicy.DISCARD),
+        SEARCH_RESPONSE(4, 128, RejectionPolicy.DISCARD);
+
+        final private int maxThreads;
+        final private int queueCapacity;
+        final private RejectionPolicy rejectionPolicy;
+
+        ExecutionClass(int maxThreads, int queueCapacity, RejectionPolicy rejectionPolicy) {
+            this.maxThreads = maxThreads;
+            this.queueCapacity = queueCapacity;
+            this.rejectionPolicy = rejectionPolicy;
+        }
+
+        public int getMaxThreads() {
+            return maxThreads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public RejectionPolicy getRejectionPolicy() {
+            return rejectionPolicy;
+        }
+    }
+
+    public enum RejectionPolicy {
+
+        // The rejected task is dropped
+        DISCARD,
+
+        // The oldest queued task is dropped, then the rejected task is queued
+        DISCARD_OLDEST,
+
+        // The rejected task runs on the calling thread, it is never dropped
+        CALLER_RUNS
+    }
+
+    final private Executor registryListenerExecutor;
+
+    /**
+     * Defaults to port '0', ephemeral.
+     */
+    public PartitionedUpnpServiceConfiguration() {
+        this(NetworkAddressFactoryImpl.DEFAULT_TCP_HTTP_LISTEN_PORT);
+    }
+
+    public PartitionedUpnpServiceConfiguration(int streamListenPort) {
+        super(streamListenPort);
+        registryListenerExecutor = getPartitionedExecutor().getExecutor(ExecutionClass.LISTENER);
+    }
+
+    @Override
+    public Executor getRegistryListenerExecutor() {
+        return registryListenerExecutor;
+    }
+
+    public PartitionedExecutor getPartitionedExecutor() {
+        return (PartitionedExecutor) getDefaultExecutorService();
+    }
+
+    /**
+     * @return Defaults to the value of the given execution class.
+     */
+    protected int getMaxThreads(ExecutionClass executionClass) {
+        return executionClass.getMaxThreads();
+    }
+
+    /**
+     * @return Defaults to the value of the given execution class.
+     */
+    protected int getQueueCapacity(ExecutionClass executionClass) {
+        return executionClass.getQueueCapacity();
+    }
+
+    /**
+     * @return Defaults to the value of the given execution class.
+     */
+    protected RejectionPolicy getRejectionPolicy(ExecutionClass executionClass) {
+        return executionClass.getRejectionPolicy();
+    }
+
+    /**
+     * @return Defaults to 1024, the number of queued tasks of all execution classes before
+     *         lower-priority work is shed. Zero disables shedding across classes.
+     */
+    protected int getMaxQueuedTasks() {
+        return 1024;
+    }
+
+    @Override
+    protected ExecutorService createDefaultExecutorService() {
+        Map<ExecutionClass, Partition> partitions = new EnumMap<>(ExecutionClass.class);
+        for (ExecutionClass executionClass : ExecutionClass.values()) {
+            partitions.put(executionClass, new Partition(
+                executionClass,
+                getMaxThreads(executionClass),
+                getQueueCapacity(executionClass),
+                getRejectionPolicy(executionClass)
+            ));
+        }
+        return new PartitionedExecutor(super.createDefaultExecutorService(), partitions, getMaxQueuedTasks());
+    }
+
+    /**
+     * Runs the tasks of each execution class on its {@link Partition}, all other tasks on the
+     * default executor service.
+     */
+    public static class PartitionedExecutor extends AbstractExecutorService {
+
+        final protected ExecutorService defaultExecutorService;
+        final protected Map<ExecutionClass, Partition> partitions;
+        final protected int maxQueuedTasks;
+
+        public PartitionedExecutor(ExecutorService defaultExecutorService,
+                                   Map<ExecutionClass, Partition> partitions,
+                                   int maxQueuedTasks) {
+            this.defaultExecutorService = defaultExecutorService;
+            this.partitions = partitions;
+            this.maxQueuedTasks = maxQueuedTasks;
+        }
+
+        public Partition getPartition(ExecutionClass executionClass) {
+            return partitions.get(executionClass);
+        }
+
+        /**
+         * @return An executor of the given class, for tasks which can't be classified by type.
+         */
+        public Executor getExecutor(final ExecutionClass executionClass) {
+            return new Executor() {
+                public void execute(Runnable runnable) {
+                    PartitionedExecutor.this.execute(executionClass, runnable);
+                }
+            };
+        }
+
+        /**
+         * @return The number of queued tasks of all execution classes.
+         */
+        public int getQueueDepth() {
+            int depth = 0;
+            for (Partition partition : partitions.values()) {
+                depth += partition.getQueueDepth();
+            }
+            return depth;
+        }
+
+        public void execute(Runnable runnable) {
+            ExecutionClass executionClass = classify(runnable);
+            if (executionClass == null) {
+                defaultExecutorService.execute(runnable);
+            } else {
+                execute(executionClass, runnable);
+            }
+        }
+
+        public void execute(ExecutionClass executionClass, Runnable runnable) {
+            if (maxQueuedTasks > 0 && getQueueDepth() >= maxQueuedTasks)
+                shedLowerPriority(executionClass);
+            partitions.get(executionClass).execute(runnable);
+        }
+
+        /**
+         * @return The execution class of the task, or <code>null</code> if it runs on the default executor service.
+         */
+        protected ExecutionClass classify(Runnable runnable) {
+            if (runnable instanceof UpnpStream)
+                return ExecutionClass.CONTROL;
+            if (runnable instanceof SendingEvent
+                || (runnable instanceof SendingSync.AsyncExecution
+                    && ((SendingSync.AsyncExecution) runnable).getProtocol() instanceof SendingEvent))
+                return ExecutionClass.EVENT_OUT;
+            if (runnable instanceof ReceivingNotification || runnable instanceof ReceivingSearchResponse
+                || runnable instanceof NotificationScheduler.Round)
+                return ExecutionClass.NOTIFICATION;
+            if (runnable instanceof RetrieveRemoteDescriptors)
+                return ExecutionClass.DESCRIPTOR_RETRIEVAL;
+            if (runnable instanceof ReceivingSearch || runnable instanceof ReceivingSearch.DelayedExecution
+                || runnable instanceof SearchResponsePacer.Drain)
+                return ExecutionClass.SEARCH_RESPONSE;
+            return null;
+        }
+
+        protected void shedLowerPriority(ExecutionClass executionClass) {
+            ExecutionClass[] executionClasses = ExecutionClass.values();
+            for (int i = executionClasses.length - 1; i > executionClass.ordinal(); i--) {
+                Partition partition = partitions.get(executionClasses[i]);
+                if (partition.getRejectionPolicy() != RejectionPolicy.CALLER_RUNS && partition.shedOldest())
+                    return;
+            }
+        }
+
+        public void shutdown() {
+            for (Partition partition : partitions.values()) {
+                partition.shutdown();
+            }
+            defaultExecutorService.shutdown();
+        }
+
+        public List<Runnable> shutdownNow() {
+            List<Runnable> pending = new ArrayList<>();
+            for (Partition partition : partitions.values()) {
+                pending.addAll(partition.shutdownNow());
+            }
+            pending.addAll(defaultExecutorService.shutdownNow());
+            return pending;
+        }
+
+        public boolean isShutdown() {
+            return defaultExecutorService.isShutdown();
+        }
+
+        public boolean isTerminated() {
+            for (Partition partition : partitions.values()) {
+                if (!partition.isTerminated())
+                    return false;
+            }
+            return defaultExecutorService.isTerminated();
+        }
+
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (Partition partition : partitions.values()) {
+                if (!partition.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+                    return false;
+            }
+            return defaultExecutorService.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * The bounded thread pool and queue of an execution class, idle threads are terminated.
+     */
+    public static class Partition extends ThreadPoolExecutor {
+
+        final protected ExecutionClass executionClass;
+        final protected RejectionPolicy rejectionPolicy;
+        final protected AtomicLong shedCount = new AtomicLong();
+
+        public Partition(ExecutionClass executionClass, int maxThreads, int queueCapacity, RejectionPolicy rejectionPolicy) {
+            super(maxThreads,
+                  maxThreads,
+                  60L,
+                  TimeUnit.SECONDS,
+                  new ArrayBlockingQueue<Runnable>(queueCapacity),
+                  new ClingThreadFactory()
+            );
+            this.executionClass = executionClass;
+            this.rejectionPolicy = rejectionPolicy;
+            allowCoreThreadTimeOut(true);
+            setRejectedExecutionHandler(new RejectedExecutionHandler() {
+                public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                    rejected(runnable);
+                }
+            });
+        }
+
+        public ExecutionClass getExecutionClass() {
+            return executionClass;
+        }
+
+        public RejectionPolicy getRejectionPolicy() {
+            return rejectionPolicy;
+        }
+
+        public int getQueueDepth() {
+            return getQueue().size();
+        }
+
+        /**
+         * @return The number of tasks dropped by the rejection policy or shed for higher-priority work.
+         */
+        public long getShedCount() {
+            return shedCount.get();
+        }
+
+        /**
+         * @return <code>true</code> if a queued task has been dropped.
+         */
+        protected boolean shedOldest() {
+            Runnable runnable = getQueue().poll();
+            if (runnable == null)
+                return false;
+            shedCount.incrementAndGet();
+            log.fine("Shed queued task of execution class " + executionClass + ": " + runnable.getClass());
+            return true;
+        }
+
+        protected void rejected(Runnable runnable) {
+            if (isShutdown()) {
+                // Rejections will happen during shutdown
+                log.info("Thread pool rejected execution of " + runnable.getClass());
+                return;
+            }
+            switch (rejectionPolicy) {
+                case CALLER_RUNS:
+                    runnable.run();
+                    return;
+                case DISCARD_OLDEST:
+                    if (shedOldest() && getQueue().offer(runnable))
+                        return;
+                    break;
+                default:
+                    break;
+            }
+            shedCount.incrementAndGet();
+            log.fine("Queue of execution class " + executionClass + " is full, dropped: " + runnable.getClass());
+        }
+
+        @Override
+        protected void afterExecute(Runnable runnable, Throwable throwable) {
+            super.afterExecute(runnable, throwable);
+            if (throwable != null) {
+                Throwable cause = Exceptions.unwrap(throwable);
+                if (cause instanceof InterruptedException) {
+                    // Might happen when we shutdownNow() the executor
+                    return;
+                }
+                log.warning("Thread terminated " + runnable + " abruptly with exception: " + throwable);
+                log.warning("Root cause: " + cause);
+            }
+        }
+    }
+
+}
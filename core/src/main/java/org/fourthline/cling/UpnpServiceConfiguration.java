@@ -33,6 +33,7 @@ import org.fourthline.cling.transport.spi.StreamServer;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Shared configuration data of the UPnP stack.
@@ -143,6 +144,19 @@ public interface UpnpServiceConfiguration {
      * @return The time in milliseconds to wait between each registry maintenance operation.
      */
     public int getRegistryMaintenanceIntervalMillis();
+
+    /**
+     * Use a registry which doesn't block queries while the registry is modified or maintained.
+     * <p>
+     * Enable this if many threads query the registry concurrently, for example a control point
+     * with many remote devices or a media server with many HTTP clients. Each modification of
+     * the registry will be more expensive, as a read-only copy of the registry is created.
+     * </p>
+     *
+     * @return <code>true</code> if {@link org.fourthline.cling.registry.ConcurrentRegistryImpl}
+     *         should be used instead of {@link org.fourthline.cling.registry.RegistryImpl}.
+     */
+    public boolean isConcurrentRegistry();
     
     /**
      * Optional setting for flooding alive NOTIFY messages for local devices.
@@ -161,6 +175,56 @@ public interface UpnpServiceConfiguration {
      */
     public int getAliveIntervalMillis();
 
+    /**
+     * Limits the rate of NOTIFY datagrams sent for local devices.
+     * <p>
+     * The ALIVE and BYEBYE messages of many local devices are otherwise sent in bursts, which
+     * might overflow the receive buffers of other UPnP stacks on the network. Notifications over
+     * the limit are delayed, the messages of a device are never split.
+     * </p>
+     *
+     * @return The maximum number of NOTIFY datagrams per second for each local stream server address,
+     *         set to <code>0</code> to disable
+     */
+    public int getMaxNotificationDatagramsPerSecond();
+
+    /**
+     * Limits the rate of search responses sent to each requester.
+     * <p>
+     * An <code>ssdp:all</code> search otherwise produces all responses for all local devices in a
+     * tight loop, and the requester might drop most of them. The responses are spread over the
+     * <em>MX</em> time of the search, responses which can't be sent within that time are dropped.
+     * </p>
+     *
+     * @return The maximum number of search responses per second to each requester,
+     *         set to <code>0</code> to disable
+     */
+    public int getMaxSearchResponsesPerSecond();
+
+    /**
+     * Limits the rate of datagrams handled for each remote host.
+     * <p>
+     * A protocol is executed for every received datagram, a misbehaving device on the network could
+     * otherwise occupy the {@link #getAsyncProtocolExecutor()}. Datagrams over the limit are dropped.
+     * </p>
+     *
+     * @return The maximum number of received datagrams per second from each source address,
+     *         set to <code>0</code> to disable
+     */
+    public int getMaxReceivedDatagramsPerSecond();
+
+    /**
+     * Drops repeated NOTIFY datagrams.
+     * <p>
+     * Devices often send the same notification several times in a row, only the first NOTIFY with the
+     * same USN, LOCATION, and NTS headers within this time is handled.
+     * </p>
+     *
+     * @return The time in milliseconds a notification is considered a duplicate of a previously received
+     *         one, set to <code>0</code> to disable
+     */
+    public int getDuplicateNotificationWindowMillis();
+
     /**
      * Ignore the received event subscription timeout from remote control points.
      * <p>
@@ -233,6 +297,13 @@ public interface UpnpServiceConfiguration {
      */
     public ExecutorService getSyncProtocolExecutorService();
 
+    /**
+     * @return The executor service which runs delayed tasks of the asynchronous protocols, such as
+     *         the randomized delay of search responses. Its threads should only hand the tasks over
+     *         to the {@link #getAsyncProtocolExecutor()}.
+     */
+    public ScheduledExecutorService getAsyncProtocolScheduledExecutorService();
+
     /**
      * @return An instance of {@link org.fourthline.cling.model.Namespace} for this UPnP stack.
      */
@@ -19,6 +19,7 @@ import org.fourthline.cling.controlpoint.ControlPoint;
 import org.fourthline.cling.controlpoint.ControlPointImpl;
 import org.fourthline.cling.protocol.ProtocolFactory;
 import org.fourthline.cling.protocol.ProtocolFactoryImpl;
+import org.fourthline.cling.registry.ConcurrentRegistryImpl;
 import org.fourthline.cling.registry.Registry;
 import org.fourthline.cling.registry.RegistryImpl;
 import org.fourthline.cling.registry.RegistryListener;
@@ -99,7 +100,7 @@ public class UpnpServiceImpl implements UpnpService {
     }
 
     protected Registry createRegistry(ProtocolFactory protocolFactory) {
-        return new RegistryImpl(this);
+        return getConfiguration().isConcurrentRegistry() ? new ConcurrentRegistryImpl(this) : new RegistryImpl(this);
     }
 
     protected Router createRouter(ProtocolFactory protocolFactory, Registry registry) {
@@ -26,14 +26,19 @@ import org.fourthline.cling.transport.RouterException;
 import org.fourthline.cling.transport.impl.NetworkAddressFactoryImpl;
 import org.fourthline.cling.transport.spi.InitializationException;
 import org.fourthline.cling.transport.spi.NetworkAddressFactory;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
+import org.fourthline.cling.transport.spi.StreamResponseFuture;
 import org.fourthline.cling.transport.spi.UpnpStream;
 
 import javax.enterprise.inject.Alternative;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 
 /**
  * <p>
@@ -51,7 +56,8 @@ public class MockRouter implements Router {
 
     public int counter = -1;
     public List<IncomingDatagramMessage> incomingDatagramMessages = new ArrayList<>();
-    public List<OutgoingDatagramMessage> outgoingDatagramMessages = new ArrayList<>();
+    // Notifications are sent by the registry maintenance and scheduler threads
+    public List<OutgoingDatagramMessage> outgoingDatagramMessages = new CopyOnWriteArrayList<>();
     public List<UpnpStream> receivedUpnpStreams = new ArrayList<>();
     public List<StreamRequestMessage> sentStreamRequestMessages = new ArrayList<>();
     public List<byte[]> broadcastedBytes = new ArrayList<>();
@@ -126,6 +132,12 @@ public class MockRouter implements Router {
         outgoingDatagramMessages.add(msg);
     }
 
+    public void send(Collection<? extends OutgoingDatagramMessage> msgs) throws RouterException {
+        for (OutgoingDatagramMessage msg : msgs) {
+            send(msg);
+        }
+    }
+
     public StreamResponseMessage send(StreamRequestMessage msg) throws RouterException {
         sentStreamRequestMessages.add(msg);
         counter++;
@@ -134,6 +146,15 @@ public class MockRouter implements Router {
             : getStreamResponseMessage(msg);
     }
 
+    /**
+     * Completes the response on the calling thread.
+     */
+    public Future<StreamResponseMessage> sendAsync(StreamRequestMessage msg, StreamResponseCallback callback) throws RouterException {
+        StreamResponseFuture responseFuture = new StreamResponseFuture(callback);
+        responseFuture.complete(send(msg));
+        return responseFuture;
+    }
+
     public void broadcast(byte[] bytes) {
         broadcastedBytes.add(bytes);
     }
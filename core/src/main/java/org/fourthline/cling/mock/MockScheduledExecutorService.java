@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.mock;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes scheduled tasks immediately on the calling thread, ignoring their delay.
+ * <p>
+ * The returned futures are already completed, exceptions are thrown to the caller.
+ * </p>
+ * <p>
+ * Periodic tasks are not supported, they would never return.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class MockScheduledExecutorService extends AbstractExecutorService implements ScheduledExecutorService {
+
+    protected boolean terminated;
+
+    public void shutdown() {
+        terminated = true;
+    }
+
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        return null;
+    }
+
+    public boolean isShutdown() {
+        return terminated;
+    }
+
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    public boolean awaitTermination(long l, TimeUnit timeUnit) throws InterruptedException {
+        shutdown();
+        return terminated;
+    }
+
+    public void execute(Runnable runnable) {
+        runnable.run();
+    }
+
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        // Exceptions are thrown to the caller, as with the single-threaded mock executor
+        command.run();
+        return new ImmediateFuture<>(null);
+    }
+
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        try {
+            return new ImmediateFuture<>(callable.call());
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        throw new UnsupportedOperationException("Periodic tasks are not supported");
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException("Periodic tasks are not supported");
+    }
+
+    protected static class ImmediateFuture<V> extends FutureTask<V> implements ScheduledFuture<V> {
+
+        public ImmediateFuture(V result) {
+            super(new Callable<V>() {
+                public V call() throws Exception {
+                    throw new IllegalStateException("Already completed");
+                }
+            });
+            set(result);
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return 0;
+        }
+
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+
+}
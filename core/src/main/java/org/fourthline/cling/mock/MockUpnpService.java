@@ -25,6 +25,7 @@ import org.fourthline.cling.protocol.ProtocolFactory;
 import org.fourthline.cling.protocol.ProtocolFactoryImpl;
 import org.fourthline.cling.protocol.async.SendingNotificationAlive;
 import org.fourthline.cling.protocol.async.SendingSearch;
+import org.fourthline.cling.registry.ConcurrentRegistryImpl;
 import org.fourthline.cling.registry.Registry;
 import org.fourthline.cling.registry.RegistryImpl;
 import org.fourthline.cling.registry.RegistryMaintainer;
@@ -83,12 +84,19 @@ public class MockUpnpService implements UpnpService {
 
         this.protocolFactory = createProtocolFactory(this, sendsAlive);
 
-        this.registry = new RegistryImpl(this) {
-            @Override
-            protected RegistryMaintainer createRegistryMaintainer() {
-                return configuration.isMaintainsRegistry() ? super.createRegistryMaintainer() : null;
+        this.registry = configuration.isConcurrentRegistry()
+            ? new ConcurrentRegistryImpl(this) {
+                @Override
+                protected RegistryMaintainer createRegistryMaintainer() {
+                    return configuration.isMaintainsRegistry() ? super.createRegistryMaintainer() : null;
+                }
             }
-        };
+            : new RegistryImpl(this) {
+                @Override
+                protected RegistryMaintainer createRegistryMaintainer() {
+                    return configuration.isMaintainsRegistry() ? super.createRegistryMaintainer() : null;
+                }
+            };
 
         this.networkAddressFactory = this.configuration.createNetworkAddressFactory();
 
@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -95,6 +96,14 @@ public class MockUpnpServiceConfiguration extends DefaultUpnpServiceConfiguratio
         return getDefaultExecutorService();
     }
 
+    @Override
+    protected ScheduledExecutorService getScheduledExecutorService() {
+        if (isMultiThreaded()) {
+            return super.getScheduledExecutorService();
+        }
+        return new MockScheduledExecutorService();
+    }
+
     @Override
     protected ExecutorService getDefaultExecutorService() {
         if (isMultiThreaded()) {
@@ -16,8 +16,12 @@
 package org.fourthline.cling.model;
 
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * The last refresh timestamp is wall-clock time in seconds since the epoch. Expiration is determined
+ * with the same instant on a monotonic clock, so changing the system clock doesn't expire anything.
+ *
  * @author Christian Bauer
  */
 public class ExpirationDetails {
@@ -25,7 +29,9 @@ public class ExpirationDetails {
     public static final int UNLIMITED_AGE = 0;
 
     private int maxAgeSeconds = UNLIMITED_AGE;
-    private long lastRefreshTimestampSeconds = getCurrentTimestampSeconds();
+    // Refreshed without holding the registry monitor, see Registry#refresh()
+    private volatile long lastRefreshTimestampSeconds = getCurrentTimestampSeconds();
+    private volatile long lastRefreshMonotonicSeconds = getMonotonicTimestampSeconds();
 
     public ExpirationDetails() {
     }
@@ -43,11 +49,14 @@ public class ExpirationDetails {
     }
 
     public void setLastRefreshTimestampSeconds(long lastRefreshTimestampSeconds) {
+        this.lastRefreshMonotonicSeconds =
+                getMonotonicTimestampSeconds() - (getCurrentTimestampSeconds() - lastRefreshTimestampSeconds);
         this.lastRefreshTimestampSeconds = lastRefreshTimestampSeconds;
     }
 
     public void stampLastRefresh() {
-        setLastRefreshTimestampSeconds(getCurrentTimestampSeconds());
+        this.lastRefreshMonotonicSeconds = getMonotonicTimestampSeconds();
+        this.lastRefreshTimestampSeconds = getCurrentTimestampSeconds();
     }
 
     public boolean hasExpired() {
@@ -61,20 +70,40 @@ public class ExpirationDetails {
     public boolean hasExpired(boolean halfTime) {
         // Note: Uses direct field access for performance reasons on Android
         return maxAgeSeconds != UNLIMITED_AGE &&
-                (lastRefreshTimestampSeconds + (maxAgeSeconds/(halfTime ? 2 : 1))) < getCurrentTimestampSeconds();
+                (lastRefreshMonotonicSeconds + (maxAgeSeconds/(halfTime ? 2 : 1))) < getMonotonicTimestampSeconds();
+    }
+
+    /**
+     * @param halfTime If <code>true</code> then half maximum age is used to determine expiration.
+     * @return The monotonic timestamp in seconds after which {@link #hasExpired(boolean)} is <code>true</code>,
+     *         see {@link #getMonotonicTimestampSeconds()}, <code>Long.MAX_VALUE</code> if the maximum age
+     *         is unlimited.
+     */
+    public long getExpirationTimestampSeconds(boolean halfTime) {
+        // Note: Uses direct field access for performance reasons on Android
+        return maxAgeSeconds == UNLIMITED_AGE
+                ? Long.MAX_VALUE
+                : lastRefreshMonotonicSeconds + (maxAgeSeconds/(halfTime ? 2 : 1));
     }
 
     public long getSecondsUntilExpiration() {
         // Note: Uses direct field access for performance reasons on Android
         return maxAgeSeconds == UNLIMITED_AGE
                 ? Integer.MAX_VALUE
-                : (lastRefreshTimestampSeconds + maxAgeSeconds) - getCurrentTimestampSeconds();
+                : (lastRefreshMonotonicSeconds + maxAgeSeconds) - getMonotonicTimestampSeconds();
     }
 
     protected long getCurrentTimestampSeconds() {
         return new Date().getTime()/1000;
     }
 
+    /**
+     * @return The seconds elapsed since an arbitrary, fixed point in time.
+     */
+    public static long getMonotonicTimestampSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+
     // Performance optimization on Android
     private static  String simpleName = ExpirationDetails.class.getSimpleName();
 	@Override
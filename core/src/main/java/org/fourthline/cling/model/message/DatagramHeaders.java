@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.model.message;
+
+import org.fourthline.cling.model.message.header.UpnpHeader;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The header block of a received datagram, with the values of the well-known SSDP headers
+ * located in a single pass over the bytes.
+ * <p>
+ * Only the NT, NTS, USN, ST, LOCATION, CACHE-CONTROL, MX, and MAN headers are recognized, their
+ * raw value is available with {@link #getValue(UpnpHeader.Type)}. All other headers are ignored
+ * until {@link #toUpnpHeaders()} parses the whole header block.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class DatagramHeaders {
+
+    public static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    protected static final UpnpHeader.Type[] WELL_KNOWN_TYPES = {
+        UpnpHeader.Type.NT,
+        UpnpHeader.Type.NTS,
+        UpnpHeader.Type.USN,
+        UpnpHeader.Type.ST,
+        UpnpHeader.Type.LOCATION,
+        UpnpHeader.Type.MAX_AGE,
+        UpnpHeader.Type.MX,
+        UpnpHeader.Type.MAN
+    };
+
+    protected static final byte[][] WELL_KNOWN_NAMES = new byte[WELL_KNOWN_TYPES.length][];
+
+    static {
+        for (int i = 0; i < WELL_KNOWN_TYPES.length; i++) {
+            WELL_KNOWN_NAMES[i] = WELL_KNOWN_TYPES[i].getHttpName().getBytes(CHARSET);
+        }
+    }
+
+    final protected byte[] data;
+
+    // Position of the first value of each well-known header, start -1 if the header is missing or empty
+    final protected int[] valueStart = new int[WELL_KNOWN_TYPES.length];
+    final protected int[] valueEnd = new int[WELL_KNOWN_TYPES.length];
+    final protected boolean[] present = new boolean[WELL_KNOWN_TYPES.length];
+    final protected String[] values = new String[WELL_KNOWN_TYPES.length];
+
+    protected boolean folded;
+
+    /**
+     * Copies the header block, the given array can be reused after this constructor returns.
+     *
+     * @param data   The datagram bytes.
+     * @param offset The start of the header lines, after the start line.
+     * @param length The number of bytes until the end of the datagram.
+     */
+    public DatagramHeaders(byte[] data, int offset, int length) {
+        this.data = Arrays.copyOfRange(data, offset, offset + length);
+        Arrays.fill(valueStart, -1);
+        scan();
+    }
+
+    public static boolean isWellKnown(UpnpHeader.Type type) {
+        return indexOf(type) != -1;
+    }
+
+    /**
+     * @return <code>false</code> if the header is not one of the well-known SSDP headers, or if its value
+     *         is folded over several lines, then only {@link #toUpnpHeaders()} provides the value.
+     */
+    public boolean isAvailable(UpnpHeader.Type type) {
+        return !folded && isWellKnown(type);
+    }
+
+    /**
+     * @return The trimmed value of the first header of the given type, or <code>null</code> if the datagram
+     *         has no such header or its value is empty.
+     * @throws IllegalArgumentException If the header is not available.
+     */
+    public String getValue(UpnpHeader.Type type) {
+        if (!isAvailable(type))
+            throw new IllegalArgumentException("Header value not available without parsing all headers: " + type);
+        int i = indexOf(type);
+        if (values[i] == null && valueStart[i] != -1)
+            values[i] = new String(data, valueStart[i], valueEnd[i] - valueStart[i], CHARSET);
+        return values[i];
+    }
+
+    /**
+     * @return All headers of the datagram, parsed into a new instance on every call.
+     */
+    public UpnpHeaders toUpnpHeaders() {
+        return new UpnpHeaders(new ByteArrayInputStream(data));
+    }
+
+    protected void scan() {
+        int pos = 0;
+        while (pos < data.length) {
+            int lineEnd = pos;
+            while (lineEnd < data.length && data[lineEnd] != '\r' && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == pos)
+                return; // Blank line, end of headers
+
+            if (data[pos] == ' ' || data[pos] == '\t') {
+                folded = true;
+            } else {
+                scanLine(pos, lineEnd);
+            }
+
+            pos = lineEnd;
+            if (pos < data.length && data[pos] == '\r')
+                pos++;
+            if (pos < data.length && data[pos] == '\n')
+                pos++;
+        }
+    }
+
+    protected void scanLine(int lineStart, int lineEnd) {
+        int nameEnd = lineStart;
+        while (nameEnd < lineEnd && data[nameEnd] != ':' && !isWhitespace(data[nameEnd])) {
+            nameEnd++;
+        }
+        int i = indexOf(lineStart, nameEnd);
+        if (i == -1 || present[i])
+            return;
+        present[i] = true;
+
+        int start = nameEnd;
+        while (start < lineEnd && data[start] != ':') {
+            start++;
+        }
+        start++;
+        while (start < lineEnd && isWhitespace(data[start])) {
+            start++;
+        }
+        int end = lineEnd;
+        while (end > start && isWhitespace(data[end - 1])) {
+            end--;
+        }
+        if (start < end) {
+            valueStart[i] = start;
+            valueEnd[i] = end;
+        }
+    }
+
+    protected int indexOf(int nameStart, int nameEnd) {
+        for (int i = 0; i < WELL_KNOWN_NAMES.length; i++) {
+            byte[] name = WELL_KNOWN_NAMES[i];
+            if (name.length != nameEnd - nameStart)
+                continue;
+            int j = 0;
+            while (j < name.length && toUpperCase(data[nameStart + j]) == name[j]) {
+                j++;
+            }
+            if (j == name.length)
+                return i;
+        }
+        return -1;
+    }
+
+    protected static int indexOf(UpnpHeader.Type type) {
+        for (int i = 0; i < WELL_KNOWN_TYPES.length; i++) {
+            if (WELL_KNOWN_TYPES[i] == type)
+                return i;
+        }
+        return -1;
+    }
+
+    protected static byte toUpperCase(byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - ('a' - 'A')) : b;
+    }
+
+    protected static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+}
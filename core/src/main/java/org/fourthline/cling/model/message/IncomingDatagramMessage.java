@@ -15,6 +15,8 @@
 
 package org.fourthline.cling.model.message;
 
+import org.fourthline.cling.model.message.header.UpnpHeader;
+
 import java.net.InetAddress;
 
 /**
@@ -31,6 +33,10 @@ import java.net.InetAddress;
        later give the remote device a reachable (from its point of view) local
        GENA callback address.</li>
  * </ul>
+ * <p>
+ * A message read from a datagram only holds the {@link DatagramHeaders}, the full
+ * {@link UpnpHeaders} are parsed when they are first accessed.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -39,6 +45,7 @@ public class IncomingDatagramMessage<O extends UpnpOperation> extends UpnpMessag
     private InetAddress sourceAddress;
     private int sourcePort;
     private InetAddress localAddress;
+    private DatagramHeaders datagramHeaders;
 
     public IncomingDatagramMessage(O operation, InetAddress sourceAddress, int sourcePort, InetAddress localAddress) {
         super(operation);
@@ -47,11 +54,18 @@ public class IncomingDatagramMessage<O extends UpnpOperation> extends UpnpMessag
         this.localAddress = localAddress;
     }
 
+    public IncomingDatagramMessage(O operation, InetAddress sourceAddress, int sourcePort, InetAddress localAddress,
+                                   DatagramHeaders datagramHeaders) {
+        this(operation, sourceAddress, sourcePort, localAddress);
+        this.datagramHeaders = datagramHeaders;
+    }
+
     protected IncomingDatagramMessage(IncomingDatagramMessage<O> source) {
         super(source);
         this.sourceAddress = source.getSourceAddress();
         this.sourcePort = source.getSourcePort();
         this.localAddress = source.getLocalAddress();
+        this.datagramHeaders = source.datagramHeaders;
     }
 
     public InetAddress getSourceAddress() {
@@ -66,4 +80,30 @@ public class IncomingDatagramMessage<O extends UpnpOperation> extends UpnpMessag
         return localAddress;
     }
 
+    @Override
+    public UpnpHeaders getHeaders() {
+        if (datagramHeaders != null) {
+            super.setHeaders(datagramHeaders.toUpnpHeaders());
+            datagramHeaders = null;
+        }
+        return super.getHeaders();
+    }
+
+    @Override
+    public void setHeaders(UpnpHeaders headers) {
+        datagramHeaders = null;
+        super.setHeaders(headers);
+    }
+
+    /**
+     * Doesn't parse all headers if the given header is one of the well-known SSDP headers.
+     *
+     * @return The trimmed value of the first header of the given type, or <code>null</code>.
+     */
+    public String getHeaderValue(UpnpHeader.Type type) {
+        if (datagramHeaders != null && datagramHeaders.isAvailable(type))
+            return datagramHeaders.getValue(type);
+        return getHeaders().getFirstHeader(type.getHttpName());
+    }
+
 }
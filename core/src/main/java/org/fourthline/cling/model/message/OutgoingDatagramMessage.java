@@ -19,6 +19,10 @@ import java.net.InetAddress;
 
 /**
  * A UDP datagram request or response message for sending, with destination address and port.
+ * <p>
+ * A message can be a template which is sent several times, possibly to different destinations,
+ * see {@link #setTemplate(boolean)}. A template must not be modified after it has been sent.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -29,6 +33,10 @@ public abstract class OutgoingDatagramMessage<O extends UpnpOperation> extends U
     // For performance reasons, headers of this message are not normalized
     private UpnpHeaders headers = new UpnpHeaders(false);
 
+    private OutgoingDatagramMessage<O> template;
+    private boolean isTemplate;
+    private volatile byte[] encodedData;
+
     protected OutgoingDatagramMessage(O operation, InetAddress destinationAddress, int destinationPort) {
         super(operation);
         this.destinationAddress = destinationAddress;
@@ -41,6 +49,18 @@ public abstract class OutgoingDatagramMessage<O extends UpnpOperation> extends U
         this.destinationPort = destinationPort;
     }
 
+    /**
+     * Shares the operation, headers, and the encoded data of the template.
+     */
+    protected OutgoingDatagramMessage(OutgoingDatagramMessage<O> template, InetAddress destinationAddress, int destinationPort) {
+        super(template);
+        this.headers = template.getHeaders();
+        this.template = template;
+        this.isTemplate = true;
+        this.destinationAddress = destinationAddress;
+        this.destinationPort = destinationPort;
+    }
+
     public InetAddress getDestinationAddress() {
         return destinationAddress;
     }
@@ -53,4 +73,29 @@ public abstract class OutgoingDatagramMessage<O extends UpnpOperation> extends U
     public UpnpHeaders getHeaders() {
         return this.headers;
     }
+
+    public boolean isTemplate() {
+        return isTemplate;
+    }
+
+    /**
+     * @param template If <code>true</code>, the datagram processor can keep the encoded data of this message.
+     */
+    public void setTemplate(boolean template) {
+        isTemplate = template;
+    }
+
+    /**
+     * @return The encoded status line and headers of a template, or <code>null</code> if it hasn't been encoded.
+     */
+    public byte[] getEncodedData() {
+        return template != null ? template.getEncodedData() : encodedData;
+    }
+
+    public void setEncodedData(byte[] encodedData) {
+        if (template != null)
+            template.setEncodedData(encodedData);
+        else
+            this.encodedData = encodedData;
+    }
 }
\ No newline at end of file
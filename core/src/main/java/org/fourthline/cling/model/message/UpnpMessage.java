@@ -52,7 +52,7 @@ public abstract class UpnpMessage<O extends UpnpOperation> {
 
     protected UpnpMessage(UpnpMessage<O> source) {
         this.operation = source.getOperation();
-        this.headers = source.getHeaders();
+        this.headers = source.headers;
         this.body = source.getBody();
         this.bodyType = source.getBodyType();
         this.udaMajorVersion = source.getUdaMajorVersion();
@@ -53,4 +53,11 @@ public class OutgoingSearchResponse extends OutgoingDatagramMessage<UpnpResponse
         }
     }
 
+    /**
+     * Sends the headers and encoded data of a template to the source of the search request.
+     */
+    public OutgoingSearchResponse(OutgoingSearchResponse template, IncomingDatagramMessage request) {
+        super(template, request.getSourceAddress(), request.getSourcePort());
+    }
+
 }
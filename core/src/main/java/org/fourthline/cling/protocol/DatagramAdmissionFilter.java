@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.protocol;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.UpnpServiceConfiguration;
+import org.fourthline.cling.model.message.IncomingDatagramMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.header.UpnpHeader;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decides if a received datagram is handled at all, before a protocol is created for it.
+ * <p>
+ * A NOTIFY with the same USN, LOCATION, and NTS header values as the last NOTIFY with this USN
+ * and LOCATION, received less than {@link UpnpServiceConfiguration#getDuplicateNotificationWindowMillis()}
+ * ago, is dropped; a device announcing itself repeatedly doesn't change anything. A device which
+ * sends an ALIVE again after a BYEBYE is not dropped, the BYEBYE replaced the recorded ALIVE.
+ * Each source address then has a
+ * token bucket, refilled at {@link UpnpServiceConfiguration#getMaxReceivedDatagramsPerSecond()};
+ * datagrams over this rate are dropped, so a single misbehaving device can't occupy the
+ * {@link UpnpServiceConfiguration#getAsyncProtocolExecutor()}.
+ * </p>
+ * <p>
+ * Only the raw header values are compared, the headers of a datagram are not parsed.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class DatagramAdmissionFilter {
+
+    final private static Logger log = Logger.getLogger(DatagramAdmissionFilter.class.getName());
+
+    final protected Map<Object, RecentNotification> recentNotifications = new HashMap<>();
+    final protected Map<InetAddress, SourceBudget> budgets = new HashMap<>();
+    protected long lastPurgeMillis;
+
+    final protected AtomicLong duplicateCount = new AtomicLong();
+    final protected AtomicLong rateLimitedCount = new AtomicLong();
+
+    /**
+     * @return The number of NOTIFY datagrams dropped because an identical one was received recently.
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * @return The number of datagrams dropped because their source exceeded the rate limit.
+     */
+    public long getRateLimitedCount() {
+        return rateLimitedCount.get();
+    }
+
+    /**
+     * @return The number of all dropped datagrams.
+     */
+    public long getDroppedCount() {
+        return getDuplicateCount() + getRateLimitedCount();
+    }
+
+    /**
+     * @return <code>false</code> if the datagram should be dropped.
+     */
+    public boolean isAdmitted(UpnpService upnpService, IncomingDatagramMessage message) {
+        UpnpServiceConfiguration configuration = upnpService.getConfiguration();
+        int windowMillis = configuration.getDuplicateNotificationWindowMillis();
+        int datagramsPerSecond = configuration.getMaxReceivedDatagramsPerSecond();
+        if (windowMillis <= 0 && datagramsPerSecond <= 0)
+            return true;
+
+        Object notificationKey = windowMillis > 0 ? getNotificationKey(message) : null;
+        String nts = notificationKey != null ? message.getHeaderValue(UpnpHeader.Type.NTS) : null;
+
+        synchronized (this) {
+            long now = getCurrentTimeMillis();
+            purge(now, windowMillis);
+
+            if (notificationKey != null) {
+                RecentNotification recent = recentNotifications.get(notificationKey);
+                if (recent != null && now - recent.receivedMillis < windowMillis
+                    && (recent.nts == null ? nts == null : recent.nts.equals(nts))) {
+                    duplicateCount.incrementAndGet();
+                    if (log.isLoggable(Level.FINEST))
+                        log.finest("Dropping duplicate notification: " + message);
+                    return false;
+                }
+            }
+
+            if (datagramsPerSecond > 0) {
+                InetAddress source = message.getSourceAddress();
+                SourceBudget budget = budgets.get(source);
+                if (budget == null) {
+                    budget = new SourceBudget(datagramsPerSecond, now);
+                    budgets.put(source, budget);
+                }
+                if (!budget.acquire(datagramsPerSecond, now)) {
+                    if (rateLimitedCount.incrementAndGet() % 100 == 1)
+                        log.fine("Source exceeds datagram rate limit, dropping datagrams from: " + source);
+                    return false;
+                }
+            }
+
+            if (notificationKey != null)
+                recentNotifications.put(notificationKey, new RecentNotification(nts, now));
+        }
+        return true;
+    }
+
+    /**
+     * @return The raw USN and LOCATION header values of a NOTIFY, <code>null</code> for other datagrams.
+     */
+    protected Object getNotificationKey(IncomingDatagramMessage message) {
+        if (!(message.getOperation() instanceof UpnpRequest)
+            || ((UpnpRequest) message.getOperation()).getMethod() != UpnpRequest.Method.NOTIFY)
+            return null;
+        return Arrays.asList(
+            message.getHeaderValue(UpnpHeader.Type.USN),
+            message.getHeaderValue(UpnpHeader.Type.LOCATION)
+        );
+    }
+
+    /**
+     * Removes expired notifications and the budgets of quiet sources, at most once per second.
+     */
+    protected void purge(long now, int windowMillis) {
+        if (now - lastPurgeMillis < 1000)
+            return;
+        lastPurgeMillis = now;
+
+        Iterator<RecentNotification> notifications = recentNotifications.values().iterator();
+        while (notifications.hasNext()) {
+            if (now - notifications.next().receivedMillis >= windowMillis)
+                notifications.remove();
+        }
+        Iterator<SourceBudget> sources = budgets.values().iterator();
+        while (sources.hasNext()) {
+            if (now - sources.next().lastRefillMillis >= 1000)
+                sources.remove();
+        }
+    }
+
+    protected long getCurrentTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * The raw NTS header value of the last admitted NOTIFY of a USN and LOCATION.
+     */
+    protected static class RecentNotification {
+
+        final protected String nts;
+        final protected long receivedMillis;
+
+        public RecentNotification(String nts, long receivedMillis) {
+            this.nts = nts;
+            this.receivedMillis = receivedMillis;
+        }
+    }
+
+    /**
+     * Holds at most one second of datagrams, a source which has been quiet for that long starts full.
+     */
+    protected static class SourceBudget {
+
+        protected double tokens;
+        protected long lastRefillMillis;
+
+        public SourceBudget(int datagramsPerSecond, long now) {
+            this.tokens = datagramsPerSecond;
+            this.lastRefillMillis = now;
+        }
+
+        public boolean acquire(int datagramsPerSecond, long now) {
+            tokens = Math.min(datagramsPerSecond, tokens + (now - lastRefillMillis) * datagramsPerSecond / 1000d);
+            lastRefillMillis = now;
+            if (tokens < 1)
+                return false;
+            tokens--;
+            return true;
+        }
+    }
+
+}
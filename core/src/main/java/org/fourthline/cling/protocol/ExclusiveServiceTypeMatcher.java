@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.protocol;
+
+import org.fourthline.cling.model.types.InvalidValueException;
+import org.fourthline.cling.model.types.NamedServiceType;
+import org.fourthline.cling.model.types.ServiceType;
+
+import java.util.logging.Logger;
+
+/**
+ * Decides if the raw USN header value of an advertisement names one of the exclusive service types.
+ * <p>
+ * The service types are compiled into <code>urn:namespace:service:type:</code> prefixes once. A
+ * well-formed USN which starts with one of the prefixes after its UDN, followed by a supported
+ * version, matches without any further parsing. A USN which doesn't contain the namespace and all
+ * parts of the type token of any exclusive service type can't match, it is rejected by a few substring
+ * searches. Only the remaining values, such as service types of broken devices which are repaired by
+ * {@link ServiceType#valueOf(String)}, are parsed with {@link NamedServiceType#valueOf(String)}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class ExclusiveServiceTypeMatcher {
+
+    final private static Logger log = Logger.getLogger(ExclusiveServiceTypeMatcher.class.getName());
+
+    final protected ServiceType[] exclusiveServiceTypes;
+    final protected String[] prefixes;
+    final protected String[][] tokens;
+
+    public ExclusiveServiceTypeMatcher(ServiceType[] exclusiveServiceTypes) {
+        this.exclusiveServiceTypes = exclusiveServiceTypes;
+        this.prefixes = new String[exclusiveServiceTypes.length];
+        this.tokens = new String[exclusiveServiceTypes.length][];
+        for (int i = 0; i < exclusiveServiceTypes.length; i++) {
+            ServiceType serviceType = exclusiveServiceTypes[i];
+            prefixes[i] = "urn:" + serviceType.getNamespace() + ":service:" + serviceType.getType() + ":";
+            // A repaired type token only differs from the original in its '-' characters
+            tokens[i] = (serviceType.getNamespace() + "-" + serviceType.getType()).split("-+");
+        }
+    }
+
+    public ServiceType[] getExclusiveServiceTypes() {
+        return exclusiveServiceTypes;
+    }
+
+    public boolean matches(String usn) {
+        if (usn == null)
+            return false;
+
+        int separator = usn.indexOf("::");
+        if (separator != -1 && usn.indexOf("::", separator + 2) == -1) {
+            int start = separator + 2;
+            for (int i = 0; i < prefixes.length; i++) {
+                if (usn.startsWith(prefixes[i], start)
+                    && isSupportedVersion(usn, start + prefixes[i].length(), exclusiveServiceTypes[i].getVersion()))
+                    return true;
+            }
+        }
+
+        if (!isWhitespacePresent(usn) && !isTokensPresent(usn))
+            return false;
+
+        try {
+            ServiceType serviceType = NamedServiceType.valueOf(usn).getServiceType();
+            for (ServiceType exclusiveServiceType : exclusiveServiceTypes) {
+                if (serviceType.implementsVersion(exclusiveServiceType))
+                    return true;
+            }
+        } catch (InvalidValueException ex) {
+            log.finest("Not a named service type header value: " + usn);
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the decimal digits at the given position are a version
+     *         greater than or equal to the minimum version.
+     */
+    protected boolean isSupportedVersion(String s, int start, int minVersion) {
+        long version = 0;
+        int end = start;
+        while (end < s.length() && s.charAt(end) >= '0' && s.charAt(end) <= '9') {
+            version = version * 10 + (s.charAt(end) - '0');
+            if (++end - start > 9)
+                return false; // Let the parser decide
+        }
+        return end > start && version >= minVersion;
+    }
+
+    protected boolean isTokensPresent(String usn) {
+        for (String[] serviceTypeTokens : tokens) {
+            boolean present = true;
+            for (String token : serviceTypeTokens) {
+                if (token.length() > 0 && !usn.contains(token)) {
+                    present = false;
+                    break;
+                }
+            }
+            if (present)
+                return true;
+        }
+        return false;
+    }
+
+    protected boolean isWhitespacePresent(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isWhitespace(s.charAt(i)))
+                return true;
+        }
+        return false;
+    }
+
+}
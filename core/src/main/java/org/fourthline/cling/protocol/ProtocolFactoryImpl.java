@@ -27,13 +27,13 @@ import org.fourthline.cling.model.message.UpnpRequest;
 import org.fourthline.cling.model.message.UpnpResponse;
 import org.fourthline.cling.model.message.header.UpnpHeader;
 import org.fourthline.cling.model.meta.LocalDevice;
-import org.fourthline.cling.model.types.InvalidValueException;
-import org.fourthline.cling.model.types.NamedServiceType;
 import org.fourthline.cling.model.types.NotificationSubtype;
 import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.model.types.UDN;
 import org.fourthline.cling.protocol.async.ReceivingNotification;
 import org.fourthline.cling.protocol.async.ReceivingSearch;
 import org.fourthline.cling.protocol.async.ReceivingSearchResponse;
+import org.fourthline.cling.protocol.async.SearchResponsePacer;
 import org.fourthline.cling.protocol.async.SendingNotificationAlive;
 import org.fourthline.cling.protocol.async.SendingNotificationByebye;
 import org.fourthline.cling.protocol.async.SendingSearch;
@@ -53,7 +53,11 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.net.URI;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -69,6 +73,19 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
 
     protected final UpnpService upnpService;
 
+    // Identical searches waiting for their deferred response, see ReceivingSearch
+    protected final Set<Object> pendingSearches =
+        Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+
+    // Drops repeated and excessive datagrams before any protocol is created
+    protected final DatagramAdmissionFilter datagramAdmissionFilter = new DatagramAdmissionFilter();
+
+    // Compiled from the last seen configured exclusive service types
+    protected volatile ExclusiveServiceTypeMatcher exclusiveServiceTypeMatcher;
+
+    // Sends the search responses of all ReceivingSearch protocols, at a limited rate
+    protected final SearchResponsePacer searchResponsePacer = new SearchResponsePacer();
+
     protected ProtocolFactoryImpl() {
         upnpService = null;
     }
@@ -83,17 +100,30 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
         return upnpService;
     }
 
+    public DatagramAdmissionFilter getDatagramAdmissionFilter() {
+        return datagramAdmissionFilter;
+    }
+
+    public SearchResponsePacer getSearchResponsePacer() {
+        return searchResponsePacer;
+    }
+
     public ReceivingAsync createReceivingAsync(IncomingDatagramMessage message) throws ProtocolCreationException {
         if (log.isLoggable(Level.FINE)) {
             log.fine("Creating protocol for incoming asynchronous: " + message);
         }
 
+        if (!getDatagramAdmissionFilter().isAdmitted(getUpnpService(), message))
+            return null;
+
         if (message.getOperation() instanceof UpnpRequest) {
             IncomingDatagramMessage<UpnpRequest> incomingRequest = message;
 
             switch (incomingRequest.getOperation().getMethod()) {
                 case NOTIFY:
-                    return isByeBye(incomingRequest) || isSupportedServiceAdvertisement(incomingRequest)
+                    if (isByeBye(incomingRequest))
+                        return createReceivingNotification(incomingRequest);
+                    return isSupportedServiceAdvertisement(incomingRequest) && !isAliveRefresh(incomingRequest)
                         ? createReceivingNotification(incomingRequest) : null;
                 case MSEARCH:
                     return createReceivingSearch(incomingRequest);
@@ -114,7 +144,7 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
     }
 
     protected ReceivingAsync createReceivingSearch(IncomingDatagramMessage<UpnpRequest> incomingRequest) {
-        return new ReceivingSearch(getUpnpService(), incomingRequest);
+        return new ReceivingSearch(getUpnpService(), incomingRequest, pendingSearches, getSearchResponsePacer());
     }
 
     protected ReceivingAsync createReceivingSearchResponse(IncomingDatagramMessage<UpnpResponse> incomingResponse) {
@@ -124,31 +154,62 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
     // DO NOT USE THE PARSED/TYPED MSG HEADERS! THIS WOULD DEFEAT THE PURPOSE OF THIS OPTIMIZATION!
 
     protected boolean isByeBye(IncomingDatagramMessage message) {
-        String ntsHeader = message.getHeaders().getFirstHeader(UpnpHeader.Type.NTS.getHttpName());
+        String ntsHeader = message.getHeaderValue(UpnpHeader.Type.NTS);
         return ntsHeader != null && ntsHeader.equals(NotificationSubtype.BYEBYE.getHeaderString());
     }
 
+    /**
+     * Refreshes a known device on the receiving thread, see {@link org.fourthline.cling.registry.Registry#refresh(UDN, String, String)}.
+     *
+     * @return <code>true</code> if the ALIVE notification only refreshed the expiration of a known device,
+     *         and no protocol has to be executed.
+     */
+    protected boolean isAliveRefresh(IncomingDatagramMessage message) {
+        String ntsHeader = message.getHeaderValue(UpnpHeader.Type.NTS);
+        if (ntsHeader == null || !ntsHeader.equals(NotificationSubtype.ALIVE.getHeaderString()))
+            return false;
+
+        String usnHeader = message.getHeaderValue(UpnpHeader.Type.USN);
+        if (usnHeader == null || !usnHeader.startsWith(UDN.PREFIX))
+            return false;
+        int separator = usnHeader.indexOf("::");
+        UDN udn = UDN.valueOf(separator == -1 ? usnHeader : usnHeader.substring(0, separator));
+
+        return getUpnpService().getRegistry().refresh(
+            udn,
+            message.getHeaderValue(UpnpHeader.Type.LOCATION),
+            message.getHeaderValue(UpnpHeader.Type.MAX_AGE)
+        );
+    }
+
     protected boolean isSupportedServiceAdvertisement(IncomingDatagramMessage message) {
         ServiceType[] exclusiveServiceTypes = getUpnpService().getConfiguration().getExclusiveServiceTypes();
         if (exclusiveServiceTypes == null) return false; // Discovery is disabled
         if (exclusiveServiceTypes.length == 0) return true; // Any advertisement is fine
 
-        String usnHeader = message.getHeaders().getFirstHeader(UpnpHeader.Type.USN.getHttpName());
+        String usnHeader = message.getHeaderValue(UpnpHeader.Type.USN);
         if (usnHeader == null) return false; // Not a service advertisement, drop it
 
-        try {
-            NamedServiceType nst = NamedServiceType.valueOf(usnHeader);
-            for (ServiceType exclusiveServiceType : exclusiveServiceTypes) {
-                if (nst.getServiceType().implementsVersion(exclusiveServiceType))
-                    return true;
-            }
-        } catch (InvalidValueException ex) {
-            log.finest("Not a named service type header value: " + usnHeader);
-        }
-        log.fine("Service advertisement not supported, dropping it: " + usnHeader);
+        if (getExclusiveServiceTypeMatcher(exclusiveServiceTypes).matches(usnHeader))
+            return true;
+        if (log.isLoggable(Level.FINE))
+            log.fine("Service advertisement not supported, dropping it: " + usnHeader);
         return false;
     }
 
+    /**
+     * @return The matcher compiled from the given service types, it's only compiled again
+     *         if the configured service types change.
+     */
+    protected ExclusiveServiceTypeMatcher getExclusiveServiceTypeMatcher(ServiceType[] exclusiveServiceTypes) {
+        ExclusiveServiceTypeMatcher matcher = exclusiveServiceTypeMatcher;
+        if (matcher == null || !Arrays.equals(matcher.getExclusiveServiceTypes(), exclusiveServiceTypes)) {
+            matcher = new ExclusiveServiceTypeMatcher(exclusiveServiceTypes.clone());
+            exclusiveServiceTypeMatcher = matcher;
+        }
+        return matcher;
+    }
+
     public ReceivingSync createReceivingSync(StreamRequestMessage message) throws ProtocolCreationException {
         log.fine("Creating protocol for incoming synchronous: " + message);
 
@@ -67,17 +67,24 @@ public abstract class ReceivingAsync<M extends UpnpMessage> implements Runnable
         }
 
         if (proceed) {
-            try {
-                execute();
-            } catch (Exception ex) {
-                Throwable cause = Exceptions.unwrap(ex);
-                if (cause instanceof InterruptedException) {
-                    log.log(Level.INFO, "Interrupted protocol '" + getClass().getSimpleName() + "': " + ex, cause);
-                } else {
-                    throw new RuntimeException(
-                        "Fatal error while executing protocol '" + getClass().getSimpleName() + "': " + ex, ex
-                    );
-                }
+            executeProtocol();
+        }
+    }
+
+    /**
+     * Calls {@link #execute()}, an interruption ends the protocol, any other exception is fatal.
+     */
+    protected void executeProtocol() {
+        try {
+            execute();
+        } catch (Exception ex) {
+            Throwable cause = Exceptions.unwrap(ex);
+            if (cause instanceof InterruptedException) {
+                log.log(Level.INFO, "Interrupted protocol '" + getClass().getSimpleName() + "': " + ex, cause);
+            } else {
+                throw new RuntimeException(
+                    "Fatal error while executing protocol '" + getClass().getSimpleName() + "': " + ex, ex
+                );
             }
         }
     }
@@ -53,14 +53,21 @@ public abstract class SendingAsync implements Runnable {
         try {
             execute();
         } catch (Exception ex) {
-            Throwable cause = Exceptions.unwrap(ex);
-            if (cause instanceof InterruptedException) {
-                log.log(Level.INFO, "Interrupted protocol '" + getClass().getSimpleName() + "': " + ex, cause);
-            } else {
-                throw new RuntimeException(
-                    "Fatal error while executing protocol '" + getClass().getSimpleName() + "': " + ex, ex
-                );
-            }
+            handleException(ex);
+        }
+    }
+
+    /**
+     * An interruption ends the protocol, any other exception is fatal.
+     */
+    protected void handleException(Exception ex) {
+        Throwable cause = Exceptions.unwrap(ex);
+        if (cause instanceof InterruptedException) {
+            log.log(Level.INFO, "Interrupted protocol '" + getClass().getSimpleName() + "': " + ex, cause);
+        } else {
+            throw new RuntimeException(
+                "Fatal error while executing protocol '" + getClass().getSimpleName() + "': " + ex, ex
+            );
         }
     }
 
@@ -26,6 +26,10 @@ import org.fourthline.cling.transport.RouterException;
  * After instantiation by the {@link ProtocolFactory}, this protocol <code>run()</code>s and
  * calls its {@link #executeSync()} method.
  * </p>
+ * <p>
+ * Alternatively, {@link #executeAsync(Completion)} doesn't block the calling thread while waiting
+ * for the response, if the protocol supports it.
+ * </p>
  *
  * @param <IN> The type of request UPnP message send by this protocol.
  * @param <OUT> The type of response UPnP message expected by this protocol.
@@ -35,7 +39,7 @@ import org.fourthline.cling.transport.RouterException;
 public abstract class SendingSync<IN extends StreamRequestMessage, OUT extends StreamResponseMessage> extends SendingAsync {
 
     final private IN inputMessage;
-    protected OUT outputMessage;
+    protected volatile OUT outputMessage;
 
     protected SendingSync(UpnpService upnpService, IN inputMessage) {
         super(upnpService);
@@ -56,6 +60,66 @@ public abstract class SendingSync<IN extends StreamRequestMessage, OUT extends S
 
     protected abstract OUT executeSync() throws RouterException;
 
+    /**
+     * Executes this protocol without blocking the calling thread while waiting for a response.
+     * <p>
+     * The completion receives the output message, it is then also available with {@link #getOutputMessage()}.
+     * This implementation calls {@link #executeSync()} on the calling thread, protocols override it to send
+     * their request with {@link org.fourthline.cling.transport.Router#sendAsync(StreamRequestMessage,
+     * org.fourthline.cling.transport.spi.StreamResponseCallback)}.
+     * </p>
+     *
+     * @param completion The completion to notify, or <code>null</code>.
+     */
+    public void executeAsync(Completion<OUT> completion) throws RouterException {
+        complete(executeSync(), completion);
+    }
+
+    protected void complete(OUT outputMessage, Completion<OUT> completion) {
+        this.outputMessage = outputMessage;
+        if (completion != null)
+            completion.completed(outputMessage);
+    }
+
+    /**
+     * Executes the protocol with {@link #executeAsync(Completion)}, the executing thread doesn't
+     * wait for the response.
+     */
+    public class AsyncExecution implements Runnable {
+
+        final protected Completion<OUT> completion;
+
+        /**
+         * @param completion The completion to notify, or <code>null</code>.
+         */
+        public AsyncExecution(Completion<OUT> completion) {
+            this.completion = completion;
+        }
+
+        public SendingSync<IN, OUT> getProtocol() {
+            return SendingSync.this;
+        }
+
+        public void run() {
+            try {
+                executeAsync(completion);
+            } catch (Exception ex) {
+                handleException(ex);
+            }
+        }
+    }
+
+    /**
+     * Receives the output message of an asynchronously executed protocol.
+     */
+    public interface Completion<OUT> {
+
+        /**
+         * @param outputMessage The output message, or <code>null</code> if no response has been received.
+         */
+        public void completed(OUT outputMessage);
+    }
+
     @Override
     public String toString() {
         return "(" + getClass().getSimpleName() + ")";
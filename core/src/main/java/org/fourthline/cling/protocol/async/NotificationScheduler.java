@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.protocol.async;
+
+import org.fourthline.cling.UpnpServiceConfiguration;
+import org.fourthline.cling.model.Location;
+import org.fourthline.cling.transport.RouterException;
+import org.seamless.util.Exceptions;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the repeated notification messages of many local devices, without waiting on a thread.
+ * <p>
+ * Each round sends one repetition of the messages of all queued notifications which are due in
+ * a single burst, then schedules the next round on the
+ * {@link UpnpServiceConfiguration#getAsyncProtocolScheduledExecutorService()}. A notification is
+ * due again after its bulk interval, a notification added while rounds are scheduled joins the
+ * next round. The first round is delayed between 0 and 100 milliseconds.
+ * </p>
+ * <p>
+ * A round is executed as a {@link Round} task, so a bounded executor can classify it. If a round
+ * hasn't started {@link #LOST_ROUND_MILLIS} after it was due, for example because the executor shed
+ * it, the next added notification schedules a new round. A lost round which starts later is ignored.
+ * </p>
+ * <p>
+ * If {@link UpnpServiceConfiguration#getMaxNotificationDatagramsPerSecond()} is set, each local
+ * stream server address has a budget of datagrams, refilled continuously up to the number of
+ * datagrams per second. A notification is delayed until the budget of all its addresses covers
+ * all of its messages.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class NotificationScheduler {
+
+    final private static Logger log = Logger.getLogger(NotificationScheduler.class.getName());
+
+    /**
+     * A scheduled round which hasn't started this long after it was due is replaced.
+     */
+    public static final long LOST_ROUND_MILLIS = 10000;
+
+    final protected Random randomGenerator = new Random();
+
+    final protected List<PendingNotification> pendingNotifications = new ArrayList<>();
+    final protected Map<InetAddress, DatagramBudget> budgets = new HashMap<>();
+    protected Round scheduledRound;
+
+    public void add(SendingNotification notification) {
+        synchronized (this) {
+            long now = getCurrentTimeMillis();
+            pendingNotifications.add(new PendingNotification(notification, now));
+            if (scheduledRound != null) {
+                if (!scheduledRound.isLost(now))
+                    return;
+                log.warning("Notification round didn't start in time, scheduling a new round");
+            }
+        }
+        scheduleRound(notification.getUpnpService().getConfiguration(), randomGenerator.nextInt(100));
+    }
+
+    synchronized public int getPendingCount() {
+        return pendingNotifications.size();
+    }
+
+    protected void scheduleRound(final UpnpServiceConfiguration configuration, long delayMillis) {
+        log.finer("Scheduling next notification round in milliseconds: " + delayMillis);
+        final Round round = new Round(configuration, getCurrentTimeMillis() + delayMillis);
+        synchronized (this) {
+            scheduledRound = round;
+        }
+        try {
+            configuration.getAsyncProtocolScheduledExecutorService().schedule(
+                new Runnable() {
+                    public void run() {
+                        configuration.getAsyncProtocolExecutor().execute(round);
+                    }
+                },
+                delayMillis,
+                TimeUnit.MILLISECONDS
+            );
+        } catch (RejectedExecutionException ex) {
+            log.fine("Notification round not scheduled (on shutdown?): " + ex);
+            synchronized (this) {
+                pendingNotifications.clear();
+                scheduledRound = null;
+            }
+        }
+    }
+
+    /**
+     * A notification which fails is aborted, the other notifications of the round are still sent.
+     * If the round itself fails, no further round is scheduled until a notification is added.
+     *
+     * @param roundMillis The time the round has been scheduled for, the executor might not wait.
+     */
+    protected void sendRound(UpnpServiceConfiguration configuration, long roundMillis) {
+        boolean completed = false;
+        try {
+            long now = Math.max(getCurrentTimeMillis(), roundMillis);
+            List<PendingNotification> round = new ArrayList<>();
+            synchronized (this) {
+                for (PendingNotification pending : pendingNotifications) {
+                    if (pending.dueMillis <= now)
+                        round.add(pending);
+                }
+            }
+
+            if (log.isLoggable(Level.FINE))
+                log.fine("Sending notification round for devices: " + round.size());
+            int maxDatagramsPerSecond = configuration.getMaxNotificationDatagramsPerSecond();
+            for (PendingNotification pending : round) {
+                try {
+                    sendPending(pending, maxDatagramsPerSecond, now);
+                } catch (RuntimeException ex) {
+                    pending.abort(ex);
+                }
+            }
+
+            long nextDueMillis = Long.MAX_VALUE;
+            synchronized (this) {
+                for (Iterator<PendingNotification> it = pendingNotifications.iterator(); it.hasNext(); ) {
+                    PendingNotification pending = it.next();
+                    if (pending.isComplete()) {
+                        it.remove();
+                    } else {
+                        nextDueMillis = Math.min(nextDueMillis, pending.dueMillis);
+                    }
+                }
+                if (nextDueMillis == Long.MAX_VALUE) {
+                    scheduledRound = null;
+                    completed = true;
+                    return;
+                }
+            }
+            scheduleRound(configuration, Math.max(0, nextDueMillis - getCurrentTimeMillis()));
+            completed = true;
+        } finally {
+            if (!completed) {
+                log.warning("Notification round failed, waiting for the next notification");
+                synchronized (this) {
+                    scheduledRound = null;
+                }
+            }
+        }
+    }
+
+    protected void sendPending(PendingNotification pending, int maxDatagramsPerSecond, long now) {
+        if (!pending.prepare())
+            return;
+        if (maxDatagramsPerSecond > 0) {
+            long waitMillis = acquire(pending, maxDatagramsPerSecond, now);
+            if (waitMillis > 0) {
+                pending.dueMillis = now + waitMillis;
+                return;
+            }
+        }
+        pending.send();
+        // UDA 1.0 is silent about this but UDA 1.1 recomments "a few hundred milliseconds"
+        pending.dueMillis = now + pending.notification.getBulkIntervalMilliseconds();
+    }
+
+    /**
+     * Takes the datagrams of the notification's next round from the budget of each of its
+     * addresses, if all of them cover it.
+     *
+     * @return <code>0</code> if the datagrams can be sent, or the milliseconds until the
+     *         budgets might cover them.
+     */
+    protected long acquire(PendingNotification pending, int maxDatagramsPerSecond, long now) {
+        long waitMillis = 0;
+        for (Location location : pending.descriptorLocations) {
+            DatagramBudget budget = budgets.get(location.getNetworkAddress().getAddress());
+            if (budget == null) {
+                budget = new DatagramBudget(maxDatagramsPerSecond, now);
+                budgets.put(location.getNetworkAddress().getAddress(), budget);
+            }
+            waitMillis = Math.max(
+                waitMillis,
+                budget.getWaitMillis(pending.getDatagramCount(location), maxDatagramsPerSecond, now)
+            );
+        }
+        if (waitMillis > 0)
+            return waitMillis;
+        for (Location location : pending.descriptorLocations) {
+            budgets.get(location.getNetworkAddress().getAddress()).take(pending.getDatagramCount(location));
+        }
+        return 0;
+    }
+
+    protected long getCurrentTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Sends a round, unless another round has been scheduled in the meantime.
+     */
+    public class Round implements Runnable {
+
+        final protected UpnpServiceConfiguration configuration;
+        final protected long roundMillis;
+        protected boolean started;
+
+        public Round(UpnpServiceConfiguration configuration, long roundMillis) {
+            this.configuration = configuration;
+            this.roundMillis = roundMillis;
+        }
+
+        /**
+         * Called with the lock of the scheduler.
+         */
+        protected boolean isLost(long now) {
+            return !started && now - roundMillis >= LOST_ROUND_MILLIS;
+        }
+
+        public void run() {
+            synchronized (NotificationScheduler.this) {
+                if (scheduledRound != this) {
+                    log.fine("Ignoring lost notification round, another round has been scheduled");
+                    return;
+                }
+                started = true;
+            }
+            sendRound(configuration, roundMillis);
+        }
+    }
+
+    protected static class DatagramBudget {
+
+        protected double available;
+        protected long lastRefillMillis;
+
+        public DatagramBudget(int maxDatagramsPerSecond, long now) {
+            this.available = maxDatagramsPerSecond;
+            this.lastRefillMillis = now;
+        }
+
+        /**
+         * A notification with more messages than the datagrams per second can be sent when the
+         * budget is full, the budget is then overdrawn.
+         */
+        public long getWaitMillis(int datagrams, int maxDatagramsPerSecond, long now) {
+            available = Math.min(
+                maxDatagramsPerSecond,
+                available + (now - lastRefillMillis) * maxDatagramsPerSecond / 1000d
+            );
+            lastRefillMillis = now;
+            double required = Math.min(datagrams, maxDatagramsPerSecond);
+            if (available >= required)
+                return 0;
+            return Math.max(1, (long) Math.ceil((required - available) * 1000 / maxDatagramsPerSecond));
+        }
+
+        public void take(int datagrams) {
+            available -= datagrams;
+        }
+    }
+
+    protected static class PendingNotification {
+
+        final protected SendingNotification notification;
+        protected List<Location> descriptorLocations;
+        protected int sentRounds;
+        protected long dueMillis;
+
+        public PendingNotification(SendingNotification notification, long dueMillis) {
+            this.notification = notification;
+            this.dueMillis = dueMillis;
+        }
+
+        public boolean isComplete() {
+            return sentRounds >= notification.getBulkRepeat();
+        }
+
+        /**
+         * @return <code>false</code> if the notification is complete.
+         */
+        public boolean prepare() {
+            if (isComplete())
+                return false;
+            if (descriptorLocations == null) {
+                try {
+                    // Prepare it once, it's the same for each round
+                    descriptorLocations = notification.getDescriptorLocations();
+                } catch (RouterException ex) {
+                    abort(ex);
+                    return false;
+                }
+                if (descriptorLocations.size() == 0) {
+                    log.fine("Aborting notifications, no active stream servers found (network disabled?)");
+                    sentRounds = notification.getBulkRepeat();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int getDatagramCount(Location descriptorLocation) {
+            return notification.getMessages(descriptorLocation).size();
+        }
+
+        public void send() {
+            try {
+                for (Location descriptorLocation : descriptorLocations) {
+                    notification.sendMessages(descriptorLocation);
+                }
+                sentRounds++;
+            } catch (RouterException ex) {
+                abort(ex);
+            }
+        }
+
+        protected void abort(Exception ex) {
+            Throwable cause = Exceptions.unwrap(ex);
+            if (cause instanceof InterruptedException) {
+                log.log(Level.INFO, "Interrupted notification of '" + notification.getDevice() + "': " + ex, cause);
+            } else {
+                log.log(Level.WARNING, "Aborting notification of '" + notification.getDevice() + "': " + ex, cause);
+            }
+            sentRounds = notification.getBulkRepeat();
+        }
+    }
+
+}
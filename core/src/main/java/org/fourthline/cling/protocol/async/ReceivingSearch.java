@@ -16,13 +16,18 @@
 package org.fourthline.cling.protocol.async;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.UpnpServiceConfiguration;
 import org.fourthline.cling.model.DiscoveryOptions;
 import org.fourthline.cling.model.Location;
 import org.fourthline.cling.model.NetworkAddress;
@@ -52,8 +57,17 @@ import org.fourthline.cling.transport.RouterException;
 /**
  * Handles reception of search requests, responds for local registered devices.
  * <p>
- * Waits a random time between 0 and the requested <em>MX</em> (maximum 120 seconds)
- * before executing. Only waits if there are actually any registered local devices.
+ * Executes after a random delay between 0 and the requested <em>MX</em> (maximum 120 seconds),
+ * scheduled on the {@link UpnpServiceConfiguration#getAsyncProtocolScheduledExecutorService()}, no
+ * thread waits. Only delays if there are actually any registered local devices. Identical searches
+ * from the same requester, received while a response is still pending, are ignored.
+ * </p>
+ * <p>
+ * All responses are built first, then sent together. If a {@link SearchResponsePacer} is available
+ * and {@link UpnpServiceConfiguration#getMaxSearchResponsesPerSecond()} is set, the responses are
+ * built without delay and handed over to the pacer, which spreads them over the whole <em>MX</em>
+ * time at a limited rate. The search is then still considered pending until its <em>MX</em> time
+ * has passed.
  * </p>
  * <p>
  * Extracts the <em>search target</em>, builds and sends the dozens of messages
@@ -71,8 +85,38 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
 
     final protected Random randomGenerator = new Random();
 
+    final protected Set<Object> pendingSearches;
+    final protected SearchResponsePacer searchResponsePacer;
+
+    protected List<OutgoingSearchResponse> pendingResponses;
+    protected long responseDeadlineMillis = Long.MAX_VALUE;
+
     public ReceivingSearch(UpnpService upnpService, IncomingDatagramMessage<UpnpRequest> inputMessage) {
+        this(upnpService, inputMessage, null);
+    }
+
+    /**
+     * @param pendingSearches The keys of all searches waiting for their delayed response, shared by
+     *                        all instances of a UPnP stack. Can be <code>null</code>, then identical
+     *                        searches are not detected.
+     */
+    public ReceivingSearch(UpnpService upnpService,
+                           IncomingDatagramMessage<UpnpRequest> inputMessage,
+                           Set<Object> pendingSearches) {
+        this(upnpService, inputMessage, pendingSearches, null);
+    }
+
+    /**
+     * @param searchResponsePacer Sends the responses of all instances of a UPnP stack. Can be
+     *                            <code>null</code>, then responses are sent immediately.
+     */
+    public ReceivingSearch(UpnpService upnpService,
+                           IncomingDatagramMessage<UpnpRequest> inputMessage,
+                           Set<Object> pendingSearches,
+                           SearchResponsePacer searchResponsePacer) {
         super(upnpService, new IncomingSearchRequest(inputMessage));
+        this.pendingSearches = pendingSearches;
+        this.searchResponsePacer = searchResponsePacer;
     }
 
     protected void execute() throws RouterException {
@@ -101,8 +145,18 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
             return;
         }
 
-        for (NetworkAddress activeStreamServer : activeStreamServers) {
-            sendResponses(searchTarget, activeStreamServer);
+        List<OutgoingSearchResponse> responses = pendingResponses = new ArrayList<>();
+        try {
+            for (NetworkAddress activeStreamServer : activeStreamServers) {
+                sendResponses(searchTarget, activeStreamServer);
+            }
+        } finally {
+            pendingResponses = null;
+        }
+        if (searchResponsePacer != null) {
+            searchResponsePacer.send(getUpnpService(), responses, responseDeadlineMillis);
+        } else {
+            getUpnpService().getRouter().send(responses);
         }
     }
 
@@ -123,13 +177,89 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
 
         // Only wait if there is something to wait for
         if (getUpnpService().getRegistry().getLocalDevices().size() > 0) {
-            int sleepTime = randomGenerator.nextInt(mx * 1000);
-            log.fine("Sleeping " + sleepTime + " milliseconds to avoid flooding with search responses");
-            Thread.sleep(sleepTime);
+            Object key = getPendingSearchKey();
+            if (pendingSearches != null && !pendingSearches.add(key)) {
+                log.fine("Identical search is already waiting for its response, ignoring: " + getInputMessage());
+                return false;
+            }
+            if (isPaced()) {
+                log.fine("Responding immediately, the pacer spreads the responses over the MX time");
+                responseDeadlineMillis = searchResponsePacer.getCurrentTimeMillis() + mx * 1000;
+                if (pendingSearches != null)
+                    schedulePendingSearchRemoval(mx * 1000, key);
+                return true;
+            }
+            int delay = randomGenerator.nextInt(mx * 1000);
+            log.fine("Delaying execution " + delay + " milliseconds to avoid flooding with search responses");
+            scheduleExecution(delay, key);
+            return false;
         }
 
         return true;
     }
+
+    /**
+     * @return <code>true</code> if the responses are handed over to a pacer with a limited rate.
+     */
+    protected boolean isPaced() {
+        return searchResponsePacer != null
+            && getUpnpService().getConfiguration().getMaxSearchResponsesPerSecond() > 0;
+    }
+
+    /**
+     * @return The requester's address and port, and the search target; searches with the same key
+     *         get the same responses.
+     */
+    protected Object getPendingSearchKey() {
+        return Arrays.asList(
+            getInputMessage().getSourceAddress(),
+            getInputMessage().getSourcePort(),
+            getInputMessage().getHeaderValue(UpnpHeader.Type.ST)
+        );
+    }
+
+    /**
+     * The scheduler thread only hands the execution over to the
+     * {@link UpnpServiceConfiguration#getAsyncProtocolExecutor()}, as a {@link DelayedExecution}
+     * task which a bounded executor can classify.
+     */
+    protected void scheduleExecution(int delayMillis, final Object pendingSearchKey) {
+        final UpnpServiceConfiguration configuration = getUpnpService().getConfiguration();
+        try {
+            configuration.getAsyncProtocolScheduledExecutorService().schedule(
+                new Runnable() {
+                    public void run() {
+                        if (pendingSearches != null)
+                            pendingSearches.remove(pendingSearchKey);
+                        configuration.getAsyncProtocolExecutor().execute(new DelayedExecution());
+                    }
+                },
+                delayMillis,
+                TimeUnit.MILLISECONDS
+            );
+        } catch (RejectedExecutionException ex) {
+            log.fine("Search response not scheduled (on shutdown?): " + ex);
+            if (pendingSearches != null)
+                pendingSearches.remove(pendingSearchKey);
+        }
+    }
+
+    protected void schedulePendingSearchRemoval(int delayMillis, final Object pendingSearchKey) {
+        try {
+            getUpnpService().getConfiguration().getAsyncProtocolScheduledExecutorService().schedule(
+                new Runnable() {
+                    public void run() {
+                        pendingSearches.remove(pendingSearchKey);
+                    }
+                },
+                delayMillis,
+                TimeUnit.MILLISECONDS
+            );
+        } catch (RejectedExecutionException ex) {
+            log.fine("Search removal not scheduled (on shutdown?): " + ex);
+            pendingSearches.remove(pendingSearchKey);
+        }
+    }
     
     protected void sendResponses(UpnpHeader searchTarget, NetworkAddress activeStreamServer) throws RouterException {
         if (searchTarget instanceof STAllHeader) {
@@ -166,41 +296,67 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
             if (isAdvertisementDisabled(localDevice))
                 continue;
 
-            // We are re-using the regular notification messages here but override the NT with the ST header
-            if (LOG_ENABLED) {
-                log.finer("Sending root device messages: " + localDevice);
-            }
-            List<OutgoingSearchResponse> rootDeviceMsgs =
-                    createDeviceMessages(localDevice, activeStreamServer);
-            for (OutgoingSearchResponse upnpMessage : rootDeviceMsgs) {
-                getUpnpService().getRouter().send(upnpMessage);
+            for (OutgoingSearchResponse upnpMessage : getSearchResponseAllMessages(localDevice, activeStreamServer)) {
+                sendSearchResponse(upnpMessage);
             }
+        }
+    }
 
-            if (localDevice.hasEmbeddedDevices()) {
-                for (LocalDevice embeddedDevice : localDevice.findEmbeddedDevices()) {
-                    if (LOG_ENABLED) {
-                        log.finer("Sending embedded device messages: " + embeddedDevice);
-                    }
-                    List<OutgoingSearchResponse> embeddedDeviceMsgs =
-                            createDeviceMessages(embeddedDevice, activeStreamServer);
-                    for (OutgoingSearchResponse upnpMessage : embeddedDeviceMsgs) {
-                        getUpnpService().getRouter().send(upnpMessage);
-                    }
-                }
+    /**
+     * The messages are created once for each location and cached as templates in the registry, until
+     * the device is removed or its {@link DiscoveryOptions} change. Then only the destination differs
+     * for each search. Templates are not used if a subclass overrides
+     * {@link #prepareOutgoingSearchResponse(OutgoingSearchResponse)}.
+     */
+    protected List<OutgoingSearchResponse> getSearchResponseAllMessages(LocalDevice localDevice,
+                                                                        NetworkAddress activeStreamServer) {
+        if (isPreparingSearchResponses())
+            return createSearchResponseAllMessages(localDevice, activeStreamServer);
+
+        Object key = Arrays.asList(getClass(), activeStreamServer);
+        List<OutgoingSearchResponse> templates =
+            getUpnpService().getRegistry().getDiscoveryTemplates(localDevice, key);
+        if (templates == null) {
+            templates = createSearchResponseAllMessages(localDevice, activeStreamServer);
+            for (OutgoingSearchResponse template : templates) {
+                template.setTemplate(true);
             }
+            getUpnpService().getRegistry().setDiscoveryTemplates(localDevice, key, templates);
+        }
 
-            List<OutgoingSearchResponse> serviceTypeMsgs =
-                    createServiceTypeMessages(localDevice, activeStreamServer);
-            if (serviceTypeMsgs.size() > 0) {
+        List<OutgoingSearchResponse> msgs = new ArrayList<>(templates.size());
+        for (OutgoingSearchResponse template : templates) {
+            msgs.add(new OutgoingSearchResponse(template, getInputMessage()));
+        }
+        return msgs;
+    }
+
+    protected List<OutgoingSearchResponse> createSearchResponseAllMessages(LocalDevice localDevice,
+                                                                           NetworkAddress activeStreamServer) {
+        // We are re-using the regular notification messages here but override the NT with the ST header
+        if (LOG_ENABLED) {
+            log.finer("Creating root device messages: " + localDevice);
+        }
+        List<OutgoingSearchResponse> msgs = new ArrayList<>(createDeviceMessages(localDevice, activeStreamServer));
+
+        if (localDevice.hasEmbeddedDevices()) {
+            for (LocalDevice embeddedDevice : localDevice.findEmbeddedDevices()) {
                 if (LOG_ENABLED) {
-                    log.finer("Sending service type messages");
-                }
-                for (OutgoingSearchResponse upnpMessage : serviceTypeMsgs) {
-                    getUpnpService().getRouter().send(upnpMessage);
+                    log.finer("Creating embedded device messages: " + embeddedDevice);
                 }
+                msgs.addAll(createDeviceMessages(embeddedDevice, activeStreamServer));
             }
+        }
 
+        List<OutgoingSearchResponse> serviceTypeMsgs =
+                createServiceTypeMessages(localDevice, activeStreamServer);
+        if (serviceTypeMsgs.size() > 0) {
+            if (LOG_ENABLED) {
+                log.finer("Creating service type messages");
+            }
+            msgs.addAll(serviceTypeMsgs);
         }
+        return msgs;
     }
 
     protected List<OutgoingSearchResponse> createDeviceMessages(LocalDevice device,
@@ -273,7 +429,7 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
                         device
                 );
             prepareOutgoingSearchResponse(message);
-            getUpnpService().getRouter().send(message);
+            sendSearchResponse(message);
         }
     }
 
@@ -292,7 +448,7 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
                         (LocalDevice) device
                 );
             prepareOutgoingSearchResponse(message);
-            getUpnpService().getRouter().send(message);
+            sendSearchResponse(message);
         }
     }
 
@@ -313,7 +469,7 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
                             (LocalDevice) device
                     );
                 prepareOutgoingSearchResponse(message);
-                getUpnpService().getRouter().send(message);
+                sendSearchResponse(message);
             }
         }
     }
@@ -336,11 +492,22 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
                             serviceType
                     );
                 prepareOutgoingSearchResponse(message);
-                getUpnpService().getRouter().send(message);
+                sendSearchResponse(message);
             }
         }
     }
 
+    /**
+     * Collects the response while the responses of a search are built, otherwise sends it immediately.
+     */
+    protected void sendSearchResponse(OutgoingSearchResponse message) throws RouterException {
+        if (pendingResponses != null) {
+            pendingResponses.add(message);
+        } else {
+            getUpnpService().getRouter().send(message);
+        }
+    }
+
     protected Location getDescriptorLocation(NetworkAddress activeStreamServer, LocalDevice device) {
         return new Location(
                 activeStreamServer,
@@ -360,4 +527,30 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
     protected void prepareOutgoingSearchResponse(OutgoingSearchResponse message) {
     }
 
+    /**
+     * @return <code>true</code> if a subclass overrides {@link #prepareOutgoingSearchResponse(OutgoingSearchResponse)},
+     *         the messages of each search are then created again.
+     */
+    protected boolean isPreparingSearchResponses() {
+        for (Class<?> c = getClass(); !c.equals(ReceivingSearch.class); c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("prepareOutgoingSearchResponse", OutgoingSearchResponse.class);
+                return true;
+            } catch (NoSuchMethodException ex) {
+                // Continue with the superclass
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executes the protocol after its delay, without waiting again.
+     */
+    public class DelayedExecution implements Runnable {
+
+        public void run() {
+            executeProtocol();
+        }
+    }
+
 }
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.protocol.async;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.UpnpServiceConfiguration;
+import org.fourthline.cling.model.message.discovery.OutgoingSearchResponse;
+import org.fourthline.cling.transport.RouterException;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends search responses at a limited rate to each requester, without waiting on a thread.
+ * <p>
+ * Each destination has a token bucket, refilled at
+ * {@link UpnpServiceConfiguration#getMaxSearchResponsesPerSecond()} and holding at most a tenth
+ * of that, so only short bursts are sent. The queued responses of a destination are drained by
+ * tasks on the {@link UpnpServiceConfiguration#getAsyncProtocolScheduledExecutorService()}. The
+ * first drain of a destination starts at a random time within the <em>MX</em> time of the search,
+ * so many requesters don't get their responses in the same burst, but early enough that all
+ * responses can be sent at the limited rate before the <em>MX</em> time passes. Responses which
+ * are still queued when the <em>MX</em> time of their search has passed are dropped, the
+ * requester no longer expects them.
+ * </p>
+ * <p>
+ * A drain is executed as a {@link Drain} task, so a bounded executor can classify it. If a drain
+ * hasn't started {@link #LOST_DRAIN_MILLIS} after it was due, for example because the executor shed
+ * it, the next response for its destination schedules a new drain. A lost drain which starts later
+ * is ignored.
+ * </p>
+ * <p>
+ * If the rate is not limited, responses are sent immediately on the calling thread.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class SearchResponsePacer {
+
+    final private static Logger log = Logger.getLogger(SearchResponsePacer.class.getName());
+
+    /**
+     * A scheduled drain which hasn't started this long after it was due is replaced.
+     */
+    public static final long LOST_DRAIN_MILLIS = 10000;
+
+    final protected Random randomGenerator = new Random();
+
+    final protected Map<InetSocketAddress, Destination> destinations = new HashMap<>();
+
+    final protected AtomicLong sentCount = new AtomicLong();
+    final protected AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * @return The number of responses which have been sent.
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return The number of responses which have been dropped, because they couldn't be sent
+     *         within the <em>MX</em> time of their search or sending failed.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @param deadlineMillis The end of the <em>MX</em> time of the search, see {@link #getCurrentTimeMillis()}.
+     */
+    public void send(UpnpService upnpService,
+                     List<OutgoingSearchResponse> responses,
+                     long deadlineMillis) throws RouterException {
+        int responsesPerSecond = upnpService.getConfiguration().getMaxSearchResponsesPerSecond();
+        if (responsesPerSecond <= 0) {
+            upnpService.getRouter().send(responses);
+            sentCount.addAndGet(responses.size());
+            return;
+        }
+
+        // The number of responses queued for each destination which isn't drained yet
+        Map<InetSocketAddress, Integer> counts = new LinkedHashMap<>();
+        List<Drain> drains = new ArrayList<>();
+        long now = getCurrentTimeMillis();
+        synchronized (this) {
+            for (OutgoingSearchResponse response : responses) {
+                InetSocketAddress address =
+                    new InetSocketAddress(response.getDestinationAddress(), response.getDestinationPort());
+                Destination destination = destinations.get(address);
+                if (destination == null) {
+                    destination = new Destination(responsesPerSecond, now);
+                    destinations.put(address, destination);
+                }
+                destination.queue.add(new PendingResponse(response, deadlineMillis));
+                if (!counts.containsKey(address)
+                    && (destination.drain == null || destination.drain.isLost(now))) {
+                    if (destination.drain != null)
+                        log.warning("Search response drain didn't start in time, scheduling a new drain: " + address);
+                    destination.drain = null;
+                    counts.put(address, 0);
+                }
+                if (counts.containsKey(address))
+                    counts.put(address, counts.get(address) + 1);
+            }
+            for (Map.Entry<InetSocketAddress, Integer> entry : counts.entrySet()) {
+                long delayMillis = getStartDelayMillis(entry.getValue(), responsesPerSecond, deadlineMillis - now);
+                Drain drain = new Drain(upnpService, entry.getKey(), now + delayMillis);
+                destinations.get(entry.getKey()).drain = drain;
+                drains.add(drain);
+            }
+        }
+        for (Drain drain : drains) {
+            scheduleDrain(drain, drain.drainMillis - now);
+        }
+    }
+
+    /**
+     * @return A random delay, after which the responses can still be sent within the remaining time.
+     */
+    protected long getStartDelayMillis(int responseCount, int responsesPerSecond, long remainingMillis) {
+        // The first responses are sent in a burst
+        double burst = Destination.getCapacity(responsesPerSecond);
+        long sendMillis = (long) Math.ceil(Math.max(0, responseCount - burst) * 1000 / responsesPerSecond);
+        long latestStartMillis = Math.min(remainingMillis - sendMillis, Integer.MAX_VALUE);
+        return latestStartMillis > 0 ? randomGenerator.nextInt((int) latestStartMillis) : 0;
+    }
+
+    synchronized public int getQueuedCount() {
+        int count = 0;
+        for (Destination destination : destinations.values()) {
+            count += destination.queue.size();
+        }
+        return count;
+    }
+
+    protected void scheduleDrain(final Drain drain, long delayMillis) {
+        final UpnpServiceConfiguration configuration = drain.upnpService.getConfiguration();
+        try {
+            configuration.getAsyncProtocolScheduledExecutorService().schedule(
+                new Runnable() {
+                    public void run() {
+                        configuration.getAsyncProtocolExecutor().execute(drain);
+                    }
+                },
+                delayMillis,
+                TimeUnit.MILLISECONDS
+            );
+        } catch (RejectedExecutionException ex) {
+            log.fine("Search responses not scheduled (on shutdown?): " + ex);
+            synchronized (this) {
+                Destination destination = destinations.get(drain.address);
+                if (destination != null && destination.drain == drain) {
+                    destinations.remove(drain.address);
+                    droppedCount.addAndGet(destination.queue.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the responses to the destination of the drain which are covered by its budget, then
+     * schedules the next drain if responses remain queued.
+     */
+    protected void drain(Drain drain) {
+        UpnpService upnpService = drain.upnpService;
+        InetSocketAddress address = drain.address;
+        List<OutgoingSearchResponse> responses = new ArrayList<>();
+        Drain next = null;
+        synchronized (this) {
+            Destination destination = destinations.get(address);
+            if (destination == null || destination.drain != drain) {
+                log.fine("Ignoring lost search response drain, another drain has been scheduled: " + address);
+                return;
+            }
+            // The executor might not wait
+            long now = Math.max(getCurrentTimeMillis(), drain.drainMillis);
+            int responsesPerSecond = Math.max(1, upnpService.getConfiguration().getMaxSearchResponsesPerSecond());
+            destination.refill(responsesPerSecond, now);
+
+            PendingResponse pending;
+            while ((pending = destination.queue.peek()) != null) {
+                if (pending.deadlineMillis < now) {
+                    destination.queue.poll();
+                    droppedCount.incrementAndGet();
+                } else if (destination.tokens >= 1) {
+                    destination.queue.poll();
+                    destination.tokens--;
+                    responses.add(pending.response);
+                } else {
+                    break;
+                }
+            }
+
+            if (destination.queue.isEmpty()) {
+                destinations.remove(address);
+            } else {
+                long waitMillis = Math.max(1, (long) Math.ceil((1 - destination.tokens) * 1000 / responsesPerSecond));
+                next = new Drain(upnpService, address, now + waitMillis);
+                destination.drain = next;
+            }
+        }
+
+        try {
+            upnpService.getRouter().send(responses);
+            sentCount.addAndGet(responses.size());
+        } catch (RouterException ex) {
+            log.log(Level.WARNING, "Dropping search responses to '" + address + "': " + ex, ex);
+            droppedCount.addAndGet(responses.size());
+        }
+
+        if (next != null)
+            scheduleDrain(next, Math.max(0, next.drainMillis - getCurrentTimeMillis()));
+        else if (log.isLoggable(Level.FINE))
+            log.fine("Search responses sent: " + getSentCount() + ", dropped: " + getDroppedCount());
+    }
+
+    protected long getCurrentTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    protected static class Destination {
+
+        final protected Deque<PendingResponse> queue = new ArrayDeque<>();
+        protected double tokens;
+        protected long lastRefillMillis;
+        // The scheduled drain, only this drain sends the queued responses
+        protected Drain drain;
+
+        public Destination(int responsesPerSecond, long now) {
+            this.tokens = getCapacity(responsesPerSecond);
+            this.lastRefillMillis = now;
+        }
+
+        public void refill(int responsesPerSecond, long now) {
+            tokens = Math.min(
+                getCapacity(responsesPerSecond),
+                tokens + (now - lastRefillMillis) * responsesPerSecond / 1000d
+            );
+            lastRefillMillis = now;
+        }
+
+        protected static double getCapacity(int responsesPerSecond) {
+            return Math.max(1, responsesPerSecond / 10);
+        }
+    }
+
+    /**
+     * Drains the queue of a destination, a separate type so a bounded executor can classify it.
+     */
+    public class Drain implements Runnable {
+
+        final protected UpnpService upnpService;
+        final protected InetSocketAddress address;
+        final protected long drainMillis;
+
+        public Drain(UpnpService upnpService, InetSocketAddress address, long drainMillis) {
+            this.upnpService = upnpService;
+            this.address = address;
+            this.drainMillis = drainMillis;
+        }
+
+        /**
+         * @return <code>true</code> if the drain didn't start in time, for example because the executor shed it.
+         */
+        protected boolean isLost(long now) {
+            return now - drainMillis >= LOST_DRAIN_MILLIS;
+        }
+
+        public void run() {
+            drain(this);
+        }
+    }
+
+    protected static class PendingResponse {
+
+        final protected OutgoingSearchResponse response;
+        final protected long deadlineMillis;
+
+        public PendingResponse(OutgoingSearchResponse response, long deadlineMillis) {
+            this.response = response;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+
+}
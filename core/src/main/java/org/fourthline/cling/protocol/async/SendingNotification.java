@@ -30,6 +30,7 @@ import org.fourthline.cling.protocol.SendingAsync;
 import org.fourthline.cling.transport.RouterException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -39,6 +40,10 @@ import java.util.logging.Logger;
  * Sends all required (dozens) of messages three times, waits between 0 and 150
  * milliseconds between each bulk sending procedure.
  * </p>
+ * <p>
+ * Executing this protocol blocks the calling thread while it waits, the
+ * {@link NotificationScheduler} sends the repetitions of many devices without waiting.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -59,24 +64,13 @@ public abstract class SendingNotification extends SendingAsync {
 
     protected void execute() throws RouterException {
 
-        List<NetworkAddress> activeStreamServers =
-            getUpnpService().getRouter().getActiveStreamServers(null);
-        if (activeStreamServers.size() == 0) {
+        // Prepare it once, it's the same for each repetition
+        List<Location> descriptorLocations = getDescriptorLocations();
+        if (descriptorLocations.size() == 0) {
             log.fine("Aborting notifications, no active stream servers found (network disabled?)");
             return;
         }
 
-        // Prepare it once, it's the same for each repetition
-        List<Location> descriptorLocations = new ArrayList<>();
-        for (NetworkAddress activeStreamServer : activeStreamServers) {
-            descriptorLocations.add(
-                    new Location(
-                            activeStreamServer,
-                            getUpnpService().getConfiguration().getNamespace().getDescriptorPathString(getDevice())
-                    )
-            );
-        }
-
         for (int i = 0; i < getBulkRepeat(); i++) {
             try {
 
@@ -94,6 +88,25 @@ public abstract class SendingNotification extends SendingAsync {
         }
     }
 
+    /**
+     * @return The descriptor location on each active stream server, empty if there is none.
+     */
+    protected List<Location> getDescriptorLocations() throws RouterException {
+        List<NetworkAddress> activeStreamServers =
+            getUpnpService().getRouter().getActiveStreamServers(null);
+
+        List<Location> descriptorLocations = new ArrayList<>();
+        for (NetworkAddress activeStreamServer : activeStreamServers) {
+            descriptorLocations.add(
+                    new Location(
+                            activeStreamServer,
+                            getUpnpService().getConfiguration().getNamespace().getDescriptorPathString(getDevice())
+                    )
+            );
+        }
+        return descriptorLocations;
+    }
+
     protected int getBulkRepeat() {
         return 3; // UDA 1.0 says maximum 3 times for alive messages, let's just do it for all
     }
@@ -103,32 +116,42 @@ public abstract class SendingNotification extends SendingAsync {
     }
 
     public void sendMessages(Location descriptorLocation) throws RouterException {
-        log.finer("Sending root device messages: " + getDevice());
-        List<OutgoingNotificationRequest> rootDeviceMsgs =
-                createDeviceMessages(getDevice(), descriptorLocation);
-        for (OutgoingNotificationRequest upnpMessage : rootDeviceMsgs) {
-            getUpnpService().getRouter().send(upnpMessage);
-        }
+        getUpnpService().getRouter().send(getMessages(descriptorLocation));
+    }
+
+    /**
+     * The messages are created once for each location and cached as templates in the registry,
+     * until the device is removed or its {@link org.fourthline.cling.model.DiscoveryOptions} change.
+     */
+    protected List<OutgoingNotificationRequest> getMessages(Location descriptorLocation) {
+        Object key = Arrays.asList(getClass(), descriptorLocation, getNotificationSubtype());
+        List<OutgoingNotificationRequest> msgs =
+            getUpnpService().getRegistry().getDiscoveryTemplates(getDevice(), key);
+        if (msgs != null)
+            return msgs;
+
+        log.finer("Creating root device messages: " + getDevice());
+        msgs = new ArrayList<>(createDeviceMessages(getDevice(), descriptorLocation));
 
         if (getDevice().hasEmbeddedDevices()) {
             for (LocalDevice embeddedDevice : getDevice().findEmbeddedDevices()) {
-                log.finer("Sending embedded device messages: " + embeddedDevice);
-                List<OutgoingNotificationRequest> embeddedDeviceMsgs =
-                        createDeviceMessages(embeddedDevice, descriptorLocation);
-                for (OutgoingNotificationRequest upnpMessage : embeddedDeviceMsgs) {
-                    getUpnpService().getRouter().send(upnpMessage);
-                }
+                log.finer("Creating embedded device messages: " + embeddedDevice);
+                msgs.addAll(createDeviceMessages(embeddedDevice, descriptorLocation));
             }
         }
 
         List<OutgoingNotificationRequest> serviceTypeMsgs =
                 createServiceTypeMessages(getDevice(), descriptorLocation);
         if (serviceTypeMsgs.size() > 0) {
-            log.finer("Sending service type messages");
-            for (OutgoingNotificationRequest upnpMessage : serviceTypeMsgs) {
-                getUpnpService().getRouter().send(upnpMessage);
-            }
+            log.finer("Creating service type messages");
+            msgs.addAll(serviceTypeMsgs);
+        }
+
+        for (OutgoingNotificationRequest msg : msgs) {
+            msg.setTemplate(true);
         }
+        getUpnpService().getRegistry().setDiscoveryTemplates(getDevice(), key, msgs);
+        return msgs;
     }
 
     protected List<OutgoingNotificationRequest> createDeviceMessages(LocalDevice device,
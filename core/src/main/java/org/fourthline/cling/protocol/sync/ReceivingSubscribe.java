@@ -151,9 +151,10 @@ public class ReceivingSubscribe extends ReceivingSync<StreamRequestMessage, Outg
                 }
 
                 public void eventReceived() {
-                    // The only thing we are interested in, sending an event when the state changes
+                    // The only thing we are interested in, sending an event when the state changes, no
+                    // thread waits for the response of the subscriber
                     getUpnpService().getConfiguration().getSyncProtocolExecutorService().execute(
-                            getUpnpService().getProtocolFactory().createSendingEvent(this)
+                            getUpnpService().getProtocolFactory().createSendingEvent(this).new AsyncExecution(null)
                     );
                 }
             };
@@ -187,7 +188,7 @@ public class ReceivingSubscribe extends ReceivingSync<StreamRequestMessage, Outg
 
             log.fine("Response to subscription sent successfully, now sending initial event asynchronously");
             getUpnpService().getConfiguration().getAsyncProtocolExecutor().execute(
-                    getUpnpService().getProtocolFactory().createSendingEvent(subscription)
+                    getUpnpService().getProtocolFactory().createSendingEvent(subscription).new AsyncExecution(null)
             );
 
         } else if (subscription.getCurrentSequence().getValue() == 0) {
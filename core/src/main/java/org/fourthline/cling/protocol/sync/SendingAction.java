@@ -19,6 +19,7 @@ import org.fourthline.cling.UpnpService;
 import org.fourthline.cling.model.action.ActionCancelledException;
 import org.fourthline.cling.model.action.ActionException;
 import org.fourthline.cling.model.action.ActionInvocation;
+import org.fourthline.cling.model.message.StreamRequestMessage;
 import org.fourthline.cling.model.message.StreamResponseMessage;
 import org.fourthline.cling.model.message.UpnpResponse;
 import org.fourthline.cling.model.message.control.IncomingActionResponseMessage;
@@ -28,6 +29,7 @@ import org.fourthline.cling.model.types.ErrorCode;
 import org.fourthline.cling.protocol.SendingSync;
 import org.fourthline.cling.model.UnsupportedDataException;
 import org.fourthline.cling.transport.RouterException;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
 import org.seamless.util.Exceptions;
 
 import java.net.URL;
@@ -63,23 +65,53 @@ public class SendingAction extends SendingSync<OutgoingActionRequestMessage, Inc
         return invokeRemote(getInputMessage());
     }
 
-    protected IncomingActionResponseMessage invokeRemote(OutgoingActionRequestMessage requestMessage) throws RouterException {
-        Device device = actionInvocation.getAction().getService().getDevice();
-
-        log.fine("Sending outgoing action call '" + actionInvocation.getAction().getName() + "' to remote service of: " + device);
-        IncomingActionResponseMessage responseMessage = null;
+    /**
+     * Writes the SOAP request body and sends the request with
+     * {@link org.fourthline.cling.transport.Router#sendAsync(StreamRequestMessage, StreamResponseCallback)}.
+     */
+    @Override
+    public void executeAsync(final Completion<IncomingActionResponseMessage> completion) throws RouterException {
+        final OutgoingActionRequestMessage requestMessage = getInputMessage();
+        logInvocation();
         try {
+            writeRequestBody(requestMessage);
+        } catch (ActionException ex) {
+            complete(handleFailure(ex, null), completion);
+            return;
+        }
+        log.fine("Sending SOAP body of message as stream to remote device, asynchronously");
+        getUpnpService().getRouter().sendAsync(requestMessage, new StreamResponseCallback() {
+            public void responseReceived(StreamResponseMessage response) {
+                complete(handleStreamResponse(response), completion);
+            }
+        });
+    }
 
-            StreamResponseMessage streamResponse = sendRemoteRequest(requestMessage);
+    protected IncomingActionResponseMessage invokeRemote(OutgoingActionRequestMessage requestMessage) throws RouterException {
+        logInvocation();
+        StreamResponseMessage streamResponse;
+        try {
+            streamResponse = sendRemoteRequest(requestMessage);
+        } catch (ActionException ex) {
+            return handleFailure(ex, null);
+        }
+        return handleStreamResponse(streamResponse);
+    }
 
-            if (streamResponse == null) {
-                log.fine("No connection or no no response received, returning null");
-                actionInvocation.setFailure(new ActionException(ErrorCode.ACTION_FAILED, "Connection error or no response received"));
-                return null;
-            }
+    protected void logInvocation() {
+        Device device = actionInvocation.getAction().getService().getDevice();
+        log.fine("Sending outgoing action call '" + actionInvocation.getAction().getName() + "' to remote service of: " + device);
+    }
 
-            responseMessage = new IncomingActionResponseMessage(streamResponse);
+    protected IncomingActionResponseMessage handleStreamResponse(StreamResponseMessage streamResponse) {
+        if (streamResponse == null) {
+            log.fine("No connection or no no response received, returning null");
+            actionInvocation.setFailure(new ActionException(ErrorCode.ACTION_FAILED, "Connection error or no response received"));
+            return null;
+        }
 
+        IncomingActionResponseMessage responseMessage = new IncomingActionResponseMessage(streamResponse);
+        try {
             if (responseMessage.isFailedNonRecoverable()) {
                 log.fine("Response was a non-recoverable failure: " + responseMessage);
                 throw new ActionException(
@@ -90,18 +122,19 @@ public class SendingAction extends SendingSync<OutgoingActionRequestMessage, Inc
             } else {
                 handleResponse(responseMessage);
             }
-
             return responseMessage;
-
-
         } catch (ActionException ex) {
-            log.fine("Remote action invocation failed, returning Internal Server Error message: " + ex.getMessage());
-            actionInvocation.setFailure(ex);
-            if (responseMessage == null || !responseMessage.getOperation().isFailed()) {
-                return new IncomingActionResponseMessage(new UpnpResponse(UpnpResponse.Status.INTERNAL_SERVER_ERROR));
-            } else {
-                return responseMessage;
-            }
+            return handleFailure(ex, responseMessage);
+        }
+    }
+
+    protected IncomingActionResponseMessage handleFailure(ActionException ex, IncomingActionResponseMessage responseMessage) {
+        log.fine("Remote action invocation failed, returning Internal Server Error message: " + ex.getMessage());
+        actionInvocation.setFailure(ex);
+        if (responseMessage == null || !responseMessage.getOperation().isFailed()) {
+            return new IncomingActionResponseMessage(new UpnpResponse(UpnpResponse.Status.INTERNAL_SERVER_ERROR));
+        } else {
+            return responseMessage;
         }
     }
 
@@ -109,8 +142,7 @@ public class SendingAction extends SendingSync<OutgoingActionRequestMessage, Inc
         throws ActionException, RouterException {
 
         try {
-            log.fine("Writing SOAP request body of: " + requestMessage);
-            getUpnpService().getConfiguration().getSoapActionProcessor().writeBody(requestMessage, actionInvocation);
+            writeRequestBody(requestMessage);
 
             log.fine("Sending SOAP body of message as stream to remote device");
             return getUpnpService().getRouter().send(requestMessage);
@@ -123,6 +155,13 @@ public class SendingAction extends SendingSync<OutgoingActionRequestMessage, Inc
                 throw new ActionCancelledException((InterruptedException)cause);
             }
             throw ex;
+        }
+    }
+
+    protected void writeRequestBody(OutgoingActionRequestMessage requestMessage) throws ActionException {
+        try {
+            log.fine("Writing SOAP request body of: " + requestMessage);
+            getUpnpService().getConfiguration().getSoapActionProcessor().writeBody(requestMessage, actionInvocation);
         } catch (UnsupportedDataException ex) {
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Error writing SOAP body: " + ex);
@@ -23,6 +23,7 @@ import org.fourthline.cling.model.message.gena.OutgoingEventRequestMessage;
 import org.fourthline.cling.model.types.UnsignedIntegerFourBytes;
 import org.fourthline.cling.protocol.SendingSync;
 import org.fourthline.cling.transport.RouterException;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
 
 import java.net.URL;
 
@@ -76,12 +77,7 @@ public class SendingEvent extends SendingSync<OutgoingEventRequestMessage, Strea
 
         for (OutgoingEventRequestMessage requestMessage : requestMessages) {
 
-            if (currentSequence.getValue() == 0) {
-                log.fine("Sending initial event message to callback URL: " + requestMessage.getUri());
-            } else {
-                log.fine("Sending event message '"+currentSequence+"' to callback URL: " + requestMessage.getUri());
-            }
-
+            logSending(requestMessage);
 
             // Send request
             lastResponse = getUpnpService().getRouter().send(requestMessage);
@@ -94,4 +90,43 @@ public class SendingEvent extends SendingSync<OutgoingEventRequestMessage, Strea
         return lastResponse;
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Sends the event message to each callback URL in order, the next message is sent when the
+     * response of the previous has been received.
+     */
+    @Override
+    public void executeAsync(Completion<StreamResponseMessage> completion) throws RouterException {
+        log.fine("Sending event asynchronously for subscription: " + subscriptionId);
+        sendAsync(0, null, completion);
+    }
+
+    protected void sendAsync(final int index,
+                             StreamResponseMessage lastResponse,
+                             final Completion<StreamResponseMessage> completion) throws RouterException {
+        if (index == requestMessages.length) {
+            complete(lastResponse, completion);
+            return;
+        }
+        logSending(requestMessages[index]);
+        getUpnpService().getRouter().sendAsync(requestMessages[index], new StreamResponseCallback() {
+            public void responseReceived(StreamResponseMessage response) {
+                log.fine("Received event callback response: " + response);
+                try {
+                    sendAsync(index + 1, response, completion);
+                } catch (RouterException ex) {
+                    log.warning("Sending event message failed: " + ex);
+                    complete(response, completion);
+                }
+            }
+        });
+    }
+
+    protected void logSending(OutgoingEventRequestMessage requestMessage) {
+        if (currentSequence.getValue() == 0) {
+            log.fine("Sending initial event message to callback URL: " + requestMessage.getUri());
+        } else {
+            log.fine("Sending event message '"+currentSequence+"' to callback URL: " + requestMessage.getUri());
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.fourthline.cling.model.message.gena.OutgoingSubscribeRequestMessage;
 import org.fourthline.cling.UpnpService;
 import org.fourthline.cling.protocol.SendingSync;
 import org.fourthline.cling.transport.RouterException;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
 
 import java.util.List;
 import java.util.logging.Logger;
@@ -70,17 +71,8 @@ public class SendingSubscribe extends SendingSync<OutgoingSubscribeRequestMessag
 
     protected IncomingSubscribeResponseMessage executeSync() throws RouterException {
 
-        if (!getInputMessage().hasCallbackURLs()) {
-            log.fine("Subscription failed, no active local callback URLs available (network disabled?)");
-            getUpnpService().getConfiguration().getRegistryListenerExecutor().execute(
-                new Runnable() {
-                    public void run() {
-                        subscription.fail(null);
-                    }
-                }
-            );
+        if (!hasCallbackURLs())
             return null;
-        }
 
         log.fine("Sending subscription request: " + getInputMessage());
 
@@ -97,52 +89,105 @@ public class SendingSubscribe extends SendingSync<OutgoingSubscribeRequestMessag
                 return null;
             }
 
-            if (response == null) {
-                onSubscriptionFailure();
-                return null;
-            }
+            return handleResponse(response);
+        } finally {
+            getUpnpService().getRegistry().unregisterPendingRemoteSubscription(subscription);
+        }
+    }
+
+    /**
+     * Sends the subscription request with
+     * {@link org.fourthline.cling.transport.Router#sendAsync(org.fourthline.cling.model.message.StreamRequestMessage, StreamResponseCallback)},
+     * the subscription is pending in the registry until the response has been handled.
+     */
+    @Override
+    public void executeAsync(final Completion<IncomingSubscribeResponseMessage> completion) throws RouterException {
+
+        if (!hasCallbackURLs()) {
+            complete(null, completion);
+            return;
+        }
 
-            final IncomingSubscribeResponseMessage responseMessage = new IncomingSubscribeResponseMessage(response);
+        log.fine("Sending subscription request asynchronously: " + getInputMessage());
 
-            if (response.getOperation().isFailed()) {
-                log.fine("Subscription failed, response was: " + responseMessage);
-                getUpnpService().getConfiguration().getRegistryListenerExecutor().execute(
-                    new Runnable() {
-                        public void run() {
-                            subscription.fail(responseMessage.getOperation());
-                        }
+        getUpnpService().getRegistry().registerPendingRemoteSubscription(subscription);
+        try {
+            getUpnpService().getRouter().sendAsync(getInputMessage(), new StreamResponseCallback() {
+                public void responseReceived(StreamResponseMessage response) {
+                    try {
+                        complete(handleResponse(response), completion);
+                    } finally {
+                        getUpnpService().getRegistry().unregisterPendingRemoteSubscription(subscription);
                     }
-                );
-            } else if (!responseMessage.isValidHeaders()) {
-                log.severe("Subscription failed, invalid or missing (SID, Timeout) response headers");
-                getUpnpService().getConfiguration().getRegistryListenerExecutor().execute(
-                    new Runnable() {
-                        public void run() {
-                            subscription.fail(responseMessage.getOperation());
-                        }
+                }
+            });
+        } catch (RouterException ex) {
+            getUpnpService().getRegistry().unregisterPendingRemoteSubscription(subscription);
+            onSubscriptionFailure();
+            complete(null, completion);
+        }
+    }
+
+    protected boolean hasCallbackURLs() {
+        if (!getInputMessage().hasCallbackURLs()) {
+            log.fine("Subscription failed, no active local callback URLs available (network disabled?)");
+            getUpnpService().getConfiguration().getRegistryListenerExecutor().execute(
+                new Runnable() {
+                    public void run() {
+                        subscription.fail(null);
                     }
-                );
-            } else {
+                }
+            );
+            return false;
+        }
+        return true;
+    }
+
+    protected IncomingSubscribeResponseMessage handleResponse(StreamResponseMessage response) {
+
+        if (response == null) {
+            onSubscriptionFailure();
+            return null;
+        }
+
+        final IncomingSubscribeResponseMessage responseMessage = new IncomingSubscribeResponseMessage(response);
+
+        if (response.getOperation().isFailed()) {
+            log.fine("Subscription failed, response was: " + responseMessage);
+            getUpnpService().getConfiguration().getRegistryListenerExecutor().execute(
+                new Runnable() {
+                    public void run() {
+                        subscription.fail(responseMessage.getOperation());
+                    }
+                }
+            );
+        } else if (!responseMessage.isValidHeaders()) {
+            log.severe("Subscription failed, invalid or missing (SID, Timeout) response headers");
+            getUpnpService().getConfiguration().getRegistryListenerExecutor().execute(
+                new Runnable() {
+                    public void run() {
+                        subscription.fail(responseMessage.getOperation());
+                    }
+                }
+            );
+        } else {
 
-                log.fine("Subscription established, adding to registry, response was: " + response);
-                subscription.setSubscriptionId(responseMessage.getSubscriptionId());
-                subscription.setActualSubscriptionDurationSeconds(responseMessage.getSubscriptionDurationSeconds());
+            log.fine("Subscription established, adding to registry, response was: " + response);
+            subscription.setSubscriptionId(responseMessage.getSubscriptionId());
+            subscription.setActualSubscriptionDurationSeconds(responseMessage.getSubscriptionDurationSeconds());
 
-                getUpnpService().getRegistry().addRemoteSubscription(subscription);
+            getUpnpService().getRegistry().addRemoteSubscription(subscription);
 
-                getUpnpService().getConfiguration().getRegistryListenerExecutor().execute(
-                    new Runnable() {
-                        public void run() {
-                            subscription.establish();
-                        }
+            getUpnpService().getConfiguration().getRegistryListenerExecutor().execute(
+                new Runnable() {
+                    public void run() {
+                        subscription.establish();
                     }
-                );
+                }
+            );
 
-            }
-            return responseMessage;
-        } finally {
-            getUpnpService().getRegistry().unregisterPendingRemoteSubscription(subscription);
         }
+        return responseMessage;
     }
 
     protected void onSubscriptionFailure() {
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.registry;
+
+import org.fourthline.cling.model.meta.RemoteDevice;
+
+import java.util.Collection;
+
+/**
+ * Receives expiration timestamp updates of several remote devices with a single call.
+ * <p>
+ * Each registry listener is notified in order, by one thread at a time. Pending updates
+ * of a device are merged while the listener is still busy with earlier notifications.
+ * Implement this interface instead of {@link RegistryListener} if you want to process all
+ * consecutive pending updates at once, the
+ * {@link #remoteDeviceUpdated(Registry, org.fourthline.cling.model.meta.RemoteDevice)} method
+ * will then not be called.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public interface BatchRegistryListener extends RegistryListener {
+
+    /**
+     * Called when the expiration timestamps of discovered devices have been updated.
+     *
+     * @param registry The Cling registry of all devices and services know to the local UPnP stack.
+     * @param devices  The updated devices, in the order of their updates, each device only once.
+     */
+    public void remoteDevicesUpdated(Registry registry, Collection<RemoteDevice> devices);
+
+}
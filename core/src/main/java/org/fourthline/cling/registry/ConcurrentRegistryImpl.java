@@ -0,0 +1,501 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.registry;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.model.DiscoveryOptions;
+import org.fourthline.cling.model.ServiceReference;
+import org.fourthline.cling.model.gena.GENASubscription;
+import org.fourthline.cling.model.gena.LocalGENASubscription;
+import org.fourthline.cling.model.gena.RemoteGENASubscription;
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.LocalDevice;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.Service;
+import org.fourthline.cling.model.resource.Resource;
+import org.fourthline.cling.model.types.DeviceType;
+import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.model.types.UDN;
+
+import javax.enterprise.inject.Alternative;
+import javax.inject.Inject;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry for read-mostly workloads, queries don't wait for the registry monitor.
+ * <p>
+ * All modifications of the registry are serialized on the registry monitor, as in
+ * {@link RegistryImpl}. After each modification an immutable snapshot of devices,
+ * resources, and subscriptions is published. Queries of other threads
+ * read the last published snapshot without locking, so a long maintenance run or a
+ * large registration doesn't block SSDP, HTTP, or registry listener threads.
+ * </p>
+ * <p>
+ * A query called while the current thread holds the registry monitor, for example
+ * from a synchronously executed registry listener, reads the live registry state.
+ * </p>
+ * <p>
+ * Enable this implementation with
+ * {@link org.fourthline.cling.UpnpServiceConfiguration#isConcurrentRegistry()}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+@Alternative
+public class ConcurrentRegistryImpl extends RegistryImpl {
+
+    private static Logger log = Logger.getLogger(Registry.class.getName());
+
+    // Not initialized in field declarations, the maintainer thread might already run in the super constructor
+    protected volatile Snapshot snapshot;
+    protected int writeDepth;
+    protected boolean modified;
+
+    public ConcurrentRegistryImpl() {
+    }
+
+    @Inject
+    public ConcurrentRegistryImpl(UpnpService upnpService) {
+        super(upnpService);
+    }
+
+    // #################################################################################################
+
+    @Override
+    synchronized public void addDevice(LocalDevice localDevice) {
+        beginWrite();
+        try {
+            super.addDevice(localDevice);
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    synchronized public void addDevice(LocalDevice localDevice, DiscoveryOptions options) {
+        beginWrite();
+        try {
+            super.addDevice(localDevice, options);
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    synchronized public void addDevice(RemoteDevice remoteDevice) {
+        beginWrite();
+        try {
+            super.addDevice(remoteDevice);
+        } finally {
+            endWrite();
+        }
+    }
+
+    // Note: update(RemoteDeviceIdentity) only refreshes the expiration of a registered device, no new snapshot
+
+    @Override
+    synchronized public boolean removeDevice(LocalDevice localDevice) {
+        beginWrite();
+        try {
+            return super.removeDevice(localDevice);
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    synchronized public boolean removeDevice(RemoteDevice remoteDevice) {
+        beginWrite();
+        try {
+            return super.removeDevice(remoteDevice);
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    synchronized public boolean removeDevice(UDN udn) {
+        beginWrite();
+        try {
+            return super.removeDevice(udn);
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    synchronized public void removeAllLocalDevices() {
+        beginWrite();
+        try {
+            super.removeAllLocalDevices();
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    synchronized public void removeAllRemoteDevices() {
+        beginWrite();
+        try {
+            super.removeAllRemoteDevices();
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    public Device getDevice(UDN udn, boolean rootOnly) {
+        if (Thread.holdsLock(this))
+            return super.getDevice(udn, rootOnly);
+        Snapshot s = getSnapshot();
+        Device device;
+        if ((device = s.localItems.get(udn, rootOnly)) != null) return device;
+        if ((device = s.remoteItems.get(udn, rootOnly)) != null) return device;
+        return null;
+    }
+
+    @Override
+    public LocalDevice getLocalDevice(UDN udn, boolean rootOnly) {
+        if (Thread.holdsLock(this))
+            return super.getLocalDevice(udn, rootOnly);
+        return getSnapshot().localItems.get(udn, rootOnly);
+    }
+
+    @Override
+    public RemoteDevice getRemoteDevice(UDN udn, boolean rootOnly) {
+        if (Thread.holdsLock(this))
+            return super.getRemoteDevice(udn, rootOnly);
+        return getSnapshot().remoteItems.get(udn, rootOnly);
+    }
+
+    @Override
+    public Collection<LocalDevice> getLocalDevices() {
+        if (Thread.holdsLock(this))
+            return super.getLocalDevices();
+        return getSnapshot().localItems.rootDevices;
+    }
+
+    @Override
+    public Collection<RemoteDevice> getRemoteDevices() {
+        if (Thread.holdsLock(this))
+            return super.getRemoteDevices();
+        return getSnapshot().remoteItems.rootDevices;
+    }
+
+    @Override
+    public Collection<Device> getDevices() {
+        if (Thread.holdsLock(this))
+            return super.getDevices();
+        return getSnapshot().rootDevices;
+    }
+
+    @Override
+    public Collection<Device> getDevices(DeviceType deviceType) {
+        if (Thread.holdsLock(this))
+            return super.getDevices(deviceType);
+        Snapshot s = getSnapshot();
+        Collection<Device> devices = new HashSet<>();
+
+        devices.addAll(RegistryItems.get(s.localItems.devicesByType, deviceType));
+        devices.addAll(RegistryItems.get(s.remoteItems.devicesByType, deviceType));
+
+        return Collections.unmodifiableCollection(devices);
+    }
+
+    @Override
+    public Collection<Device> getDevices(ServiceType serviceType) {
+        if (Thread.holdsLock(this))
+            return super.getDevices(serviceType);
+        Snapshot s = getSnapshot();
+        Collection<Device> devices = new HashSet<>();
+
+        devices.addAll(RegistryItems.get(s.localItems.devicesByServiceType, serviceType));
+        devices.addAll(RegistryItems.get(s.remoteItems.devicesByServiceType, serviceType));
+
+        return Collections.unmodifiableCollection(devices);
+    }
+
+    @Override
+    public Service getService(ServiceReference serviceReference) {
+        Device device;
+        if ((device = getDevice(serviceReference.getUdn(), false)) != null) {
+            return device.findService(serviceReference.getServiceId());
+        }
+        return null;
+    }
+
+    // #################################################################################################
+
+    @Override
+    public Resource getResource(URI pathQuery) throws IllegalArgumentException {
+        if (Thread.holdsLock(this))
+            return super.getResource(pathQuery);
+        Snapshot s = getSnapshot();
+        return getResource(s.resourceIndex, s.unindexedResources, pathQuery);
+    }
+
+    @Override
+    public <T extends Resource> T getResource(Class<T> resourceType, URI pathQuery) throws IllegalArgumentException {
+        Resource resource = getResource(pathQuery);
+        if (resource != null && resourceType.isInstance(resource)) {
+            return (T) resource;
+        }
+        return null;
+    }
+
+    @Override
+    public Collection<Resource> getResources() {
+        if (Thread.holdsLock(this))
+            return super.getResources();
+        return new HashSet<>(getSnapshot().resources);
+    }
+
+    @Override
+    public <T extends Resource> Collection<T> getResources(Class<T> resourceType) {
+        if (Thread.holdsLock(this))
+            return super.getResources(resourceType);
+        Collection<T> s = new HashSet<>();
+        for (Resource resource : getSnapshot().resources) {
+            if (resourceType.isAssignableFrom(resource.getClass()))
+                s.add((T) resource);
+        }
+        return s;
+    }
+
+    @Override
+    synchronized public void addResource(Resource resource, int maxAgeSeconds) {
+        beginWrite();
+        try {
+            super.addResource(resource, maxAgeSeconds);
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    synchronized public boolean removeResource(Resource resource) {
+        beginWrite();
+        try {
+            return super.removeResource(resource);
+        } finally {
+            endWrite();
+        }
+    }
+
+    // #################################################################################################
+
+    // Note: Updating a subscription only refreshes its expiration, no new snapshot
+
+    @Override
+    synchronized public void addLocalSubscription(LocalGENASubscription subscription) {
+        beginWrite();
+        try {
+            super.addLocalSubscription(subscription);
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    public LocalGENASubscription getLocalSubscription(String subscriptionId) {
+        if (Thread.holdsLock(this))
+            return super.getLocalSubscription(subscriptionId);
+        return getSnapshot().localItems.subscriptions.get(subscriptionId);
+    }
+
+    @Override
+    synchronized public boolean removeLocalSubscription(LocalGENASubscription subscription) {
+        beginWrite();
+        try {
+            return super.removeLocalSubscription(subscription);
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    synchronized public void addRemoteSubscription(RemoteGENASubscription subscription) {
+        beginWrite();
+        try {
+            super.addRemoteSubscription(subscription);
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    public RemoteGENASubscription getRemoteSubscription(String subscriptionId) {
+        if (Thread.holdsLock(this))
+            return super.getRemoteSubscription(subscriptionId);
+        return getSnapshot().remoteItems.subscriptions.get(subscriptionId);
+    }
+
+    @Override
+    synchronized public void removeRemoteSubscription(RemoteGENASubscription subscription) {
+        beginWrite();
+        try {
+            super.removeRemoteSubscription(subscription);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /* ############################################################################################################ */
+
+    @Override
+    synchronized public void shutdown() {
+        beginWrite();
+        try {
+            super.shutdown();
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    synchronized void maintain() {
+        // Maintenance only removes expired items, we don't need a new snapshot if nothing was removed
+        int itemCount = getItemCount();
+        writeDepth++;
+        try {
+            super.maintain();
+        } finally {
+            if (getItemCount() != itemCount)
+                modified = true;
+            endWrite();
+        }
+    }
+
+    /* ############################################################################################################ */
+
+    /**
+     * Must be called while holding the registry monitor, before the registry is modified.
+     */
+    protected void beginWrite() {
+        writeDepth++;
+        modified = true;
+    }
+
+    /**
+     * Must be called while holding the registry monitor, publishes a new snapshot after
+     * the outermost modification completed.
+     */
+    protected void endWrite() {
+        if (--writeDepth == 0 && modified) {
+            modified = false;
+            publishSnapshot();
+        }
+    }
+
+    protected Snapshot getSnapshot() {
+        Snapshot s = snapshot;
+        if (s == null) {
+            synchronized (this) {
+                if (snapshot == null)
+                    publishSnapshot();
+                s = snapshot;
+            }
+        }
+        return s;
+    }
+
+    protected void publishSnapshot() {
+        if (log.isLoggable(Level.FINEST))
+            log.finest("Publishing registry snapshot");
+        snapshot = new Snapshot(this);
+    }
+
+    protected int getItemCount() {
+        return resourceItems.size()
+            + localItems.deviceItems.size() + localItems.subscriptionItems.size()
+            + remoteItems.deviceItems.size() + remoteItems.subscriptionItems.size();
+    }
+
+    /**
+     * An immutable copy of the registry state, created while holding the registry monitor.
+     */
+    protected static class Snapshot {
+
+        final ItemsSnapshot<LocalDevice, LocalGENASubscription> localItems;
+        final ItemsSnapshot<RemoteDevice, RemoteGENASubscription> remoteItems;
+        final Collection<Device> rootDevices;
+        final Map<URI, Resource> resourceIndex;
+        final Collection<Resource> unindexedResources;
+        final Collection<Resource> resources;
+
+        Snapshot(RegistryImpl registry) {
+            this.localItems = new ItemsSnapshot<>(registry.localItems);
+            this.remoteItems = new ItemsSnapshot<>(registry.remoteItems);
+
+            Set<Device> devices = new HashSet<>();
+            devices.addAll(localItems.rootDevices);
+            devices.addAll(remoteItems.rootDevices);
+            this.rootDevices = Collections.unmodifiableCollection(devices);
+
+            this.resourceIndex = new HashMap<>(registry.resourceIndex);
+            this.unindexedResources = new ArrayList<>(registry.unindexedResources);
+            this.resources = new ArrayList<>(registry.resourceItems.size());
+            for (RegistryItem<URI, Resource> resourceItem : registry.resourceItems) {
+                resources.add(resourceItem.getItem());
+            }
+        }
+    }
+
+    protected static class ItemsSnapshot<D extends Device, S extends GENASubscription> {
+
+        final Map<UDN, D> devicesByUDN;
+        final Map<String, Set<D>> devicesByType;
+        final Map<String, Set<D>> devicesByServiceType;
+        final Collection<D> rootDevices;
+        final Map<String, S> subscriptions;
+
+        ItemsSnapshot(RegistryItems<D, S> items) {
+            this.devicesByUDN = new HashMap<>(items.devicesByUDN);
+            this.devicesByType = copy(items.devicesByType);
+            this.devicesByServiceType = copy(items.devicesByServiceType);
+            this.rootDevices = Collections.unmodifiableCollection(items.get());
+            this.subscriptions = new HashMap<>(items.subscriptionItems.size());
+            for (RegistryItem<String, S> subscriptionItem : items.subscriptionItems.values()) {
+                subscriptions.put(subscriptionItem.getKey(), subscriptionItem.getItem());
+            }
+        }
+
+        D get(UDN udn, boolean rootOnly) {
+            D device = devicesByUDN.get(udn);
+            if (device == null || (rootOnly && !device.isRoot()))
+                return null;
+            return device;
+        }
+
+        static <D extends Device> Map<String, Set<D>> copy(Map<String, Set<D>> index) {
+            Map<String, Set<D>> copy = new HashMap<>(index.size());
+            for (Map.Entry<String, Set<D>> entry : index.entrySet()) {
+                copy.put(entry.getKey(), new HashSet<>(entry.getValue()));
+            }
+            return copy;
+        }
+    }
+
+}
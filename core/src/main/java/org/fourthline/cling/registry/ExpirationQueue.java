@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.registry;
+
+import org.fourthline.cling.model.ExpirationDetails;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Internal class, required by {@link RegistryImpl}.
+ * <p>
+ * Orders items by their expiration timestamp, so registry maintenance only has to look
+ * at the items which are due. The timestamp is recorded when an item is scheduled; when
+ * the expiration details of an item change, it has to be scheduled again.
+ * </p>
+ * <p>
+ * An item can also be scheduled explicitly at a timestamp which isn't derived from its
+ * expiration details, this deadline then stands until the item is scheduled again.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+class ExpirationQueue<T> {
+
+    final protected SortedSet<Deadline<T>> deadlines = new TreeSet<>();
+    final protected Map<T, Deadline<T>> scheduled = new HashMap<>();
+    protected long sequence = 0;
+
+    /**
+     * Schedules the item, or reschedules it if it has been scheduled before.
+     *
+     * @param item The item, replaces an equal item which was scheduled before.
+     * @param expirationTimestampSeconds See {@link ExpirationDetails#getExpirationTimestampSeconds(boolean)},
+     *                                   <code>Long.MAX_VALUE</code> if the item never expires.
+     */
+    void schedule(T item, long expirationTimestampSeconds) {
+        schedule(item, expirationTimestampSeconds, false);
+    }
+
+    /**
+     * Schedules the item at a deadline which isn't derived from its expiration details.
+     *
+     * @see #isExplicit(Object)
+     */
+    void scheduleExplicit(T item, long timestampSeconds) {
+        schedule(item, timestampSeconds, true);
+    }
+
+    protected void schedule(T item, long expirationTimestampSeconds, boolean explicit) {
+        cancel(item);
+        if (expirationTimestampSeconds == Long.MAX_VALUE)
+            return;
+        Deadline<T> deadline = new Deadline<>(item, expirationTimestampSeconds, sequence++, explicit);
+        deadlines.add(deadline);
+        scheduled.put(item, deadline);
+    }
+
+    /**
+     * @return <code>true</code> if the item is due at its explicitly scheduled deadline, whatever
+     *         its expiration details say.
+     */
+    boolean isExplicit(T item) {
+        Deadline<T> deadline = scheduled.get(item);
+        return deadline != null && deadline.explicit;
+    }
+
+    boolean cancel(T item) {
+        Deadline<T> deadline = scheduled.remove(item);
+        if (deadline == null)
+            return false;
+        deadlines.remove(deadline);
+        return true;
+    }
+
+    void clear() {
+        deadlines.clear();
+        scheduled.clear();
+    }
+
+    int size() {
+        return scheduled.size();
+    }
+
+    /**
+     * Items stay scheduled until they are cancelled or rescheduled.
+     *
+     * @return The items which expired before the current time of {@link ExpirationDetails}, in the
+     *         order of their expiration.
+     */
+    List<T> getDue() {
+        return getDue(ExpirationDetails.getMonotonicTimestampSeconds());
+    }
+
+    List<T> getDue(long currentTimestampSeconds) {
+        List<T> items = new ArrayList<>();
+        for (Deadline<T> deadline : deadlines) {
+            // Same condition as ExpirationDetails#hasExpired()
+            if (deadline.expirationTimestampSeconds >= currentTimestampSeconds)
+                break;
+            items.add(deadline.item);
+        }
+        return items;
+    }
+
+    static class Deadline<T> implements Comparable<Deadline<T>> {
+
+        final T item;
+        final long expirationTimestampSeconds;
+        final long sequence;
+        final boolean explicit;
+
+        Deadline(T item, long expirationTimestampSeconds, long sequence, boolean explicit) {
+            this.item = item;
+            this.expirationTimestampSeconds = expirationTimestampSeconds;
+            this.sequence = sequence;
+            this.explicit = explicit;
+        }
+
+        public int compareTo(Deadline<T> that) {
+            if (expirationTimestampSeconds != that.expirationTimestampSeconds)
+                return expirationTimestampSeconds < that.expirationTimestampSeconds ? -1 : 1;
+            if (sequence != that.sequence)
+                return sequence < that.sequence ? -1 : 1;
+            return 0;
+        }
+    }
+}
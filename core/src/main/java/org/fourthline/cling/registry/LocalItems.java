@@ -16,21 +16,25 @@
 package org.fourthline.cling.registry;
 
 import org.fourthline.cling.model.DiscoveryOptions;
+import org.fourthline.cling.model.ExpirationDetails;
+import org.fourthline.cling.model.message.OutgoingDatagramMessage;
 import org.fourthline.cling.model.resource.Resource;
 import org.fourthline.cling.model.gena.CancelReason;
 import org.fourthline.cling.model.gena.LocalGENASubscription;
 import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.types.UDN;
-import org.fourthline.cling.protocol.SendingAsync;
+import org.fourthline.cling.protocol.async.NotificationScheduler;
+import org.fourthline.cling.protocol.async.SendingNotification;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -43,23 +47,63 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
     private static Logger log = Logger.getLogger(Registry.class.getName());
     
     protected Map<UDN, DiscoveryOptions> discoveryOptions = new HashMap<>();
-    protected long lastAliveIntervalTimestamp = 0;
+    protected Map<UDN, Map<Object, List<? extends OutgoingDatagramMessage>>> discoveryTemplates = new HashMap<>();
+    // The next ALIVE flood of each advertised device, when the alive interval is enabled
+    protected Map<UDN, Long> aliveFloodTimestamps = new HashMap<>();
+    protected Random randomGenerator = new Random();
 
     LocalItems(RegistryImpl registry) {
         super(registry);
     }
 
+    boolean isDeviceHalfTimeExpiration() {
+        // Local devices are advertised again when half of their maximum age passed
+        return true;
+    }
+
+    boolean isSubscriptionHalfTimeExpiration() {
+        // Incoming subscriptions are removed when their duration passed
+        return false;
+    }
+
     protected void setDiscoveryOptions(UDN udn, DiscoveryOptions options) {
         if (options != null)
             this.discoveryOptions.put(udn, options);
         else
             this.discoveryOptions.remove(udn);
+        // Called whenever the device is added or removed
+        this.discoveryTemplates.remove(udn);
     }
 
     protected DiscoveryOptions getDiscoveryOptions(UDN udn) {
         return this.discoveryOptions.get(udn);
     }
 
+    protected <M extends OutgoingDatagramMessage> List<M> getDiscoveryTemplates(LocalDevice localDevice, Object key) {
+        if (!isRegistered(localDevice))
+            return null;
+        Map<Object, List<? extends OutgoingDatagramMessage>> templates =
+            discoveryTemplates.get(localDevice.getIdentity().getUdn());
+        return templates != null ? (List<M>) templates.get(key) : null;
+    }
+
+    protected void setDiscoveryTemplates(LocalDevice localDevice, Object key, List<? extends OutgoingDatagramMessage> templates) {
+        // Don't keep the messages of a device which has been removed or replaced in the meantime
+        if (!isRegistered(localDevice))
+            return;
+        UDN udn = localDevice.getIdentity().getUdn();
+        Map<Object, List<? extends OutgoingDatagramMessage>> deviceTemplates = discoveryTemplates.get(udn);
+        if (deviceTemplates == null) {
+            deviceTemplates = new HashMap<>();
+            discoveryTemplates.put(udn, deviceTemplates);
+        }
+        deviceTemplates.put(key, templates);
+    }
+
+    protected boolean isRegistered(LocalDevice localDevice) {
+        return localDevice.isRoot() && devicesByUDN.get(localDevice.getIdentity().getUdn()) == localDevice;
+    }
+
     protected boolean isAdvertised(UDN udn) {
         // Defaults to true
         return getDiscoveryOptions(udn) == null || getDiscoveryOptions(udn).isAdvertised();
@@ -105,7 +149,8 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
                 localDevice.getIdentity().getMaxAgeSeconds()
         );
 
-        getDeviceItems().add(localItem);
+        addDeviceItem(localItem);
+        scheduleFirstRefresh(localItem);
         log.fine("Registered local device: " + localItem);
 
         if (isByeByeBeforeFirstAlive(localItem.getKey()))
@@ -114,15 +159,7 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
         if (isAdvertised(localItem.getKey()))
              advertiseAlive(localDevice);
 
-        for (final RegistryListener listener : registry.getListeners()) {
-            registry.getConfiguration().getRegistryListenerExecutor().execute(
-                new Runnable() {
-                    public void run() {
-                        listener.localDeviceAdded(registry, localDevice);
-                    }
-                }
-            );
-        }
+        registry.listenerDispatcher.localDeviceAdded(localDevice);
 
     }
 
@@ -146,7 +183,8 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
             log.fine("Removing local device from registry: " + localDevice);
 
             setDiscoveryOptions(localDevice.getIdentity().getUdn(), null);
-            getDeviceItems().remove(new RegistryItem(localDevice.getIdentity().getUdn()));
+            removeDeviceItem(localDevice.getIdentity().getUdn());
+            aliveFloodTimestamps.remove(localDevice.getIdentity().getUdn());
 
             for (Resource deviceResource : getResources(localDevice)) {
                 if (registry.removeResource(deviceResource)) {
@@ -155,25 +193,18 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
             }
 
             // Active subscriptions
-            Iterator<RegistryItem<String, LocalGENASubscription>> it = getSubscriptionItems().iterator();
-            while (it.hasNext()) {
-                final RegistryItem<String, LocalGENASubscription> incomingSubscription = it.next();
-
-                UDN subscriptionForUDN =
-                        incomingSubscription.getItem().getService().getDevice().getIdentity().getUdn();
-
-                if (subscriptionForUDN.equals(registeredDevice.getIdentity().getUdn())) {
-                    log.fine("Removing incoming subscription: " + incomingSubscription.getKey());
-                    it.remove();
-                    if (!shuttingDown) {
-                        registry.getConfiguration().getRegistryListenerExecutor().execute(
-                                new Runnable() {
-                                    public void run() {
-                                        incomingSubscription.getItem().end(CancelReason.DEVICE_WAS_REMOVED);
-                                    }
+            for (final RegistryItem<String, LocalGENASubscription> incomingSubscription
+                    : getSubscriptionItems(registeredDevice.getIdentity().getUdn())) {
+                log.fine("Removing incoming subscription: " + incomingSubscription.getKey());
+                removeSubscription(incomingSubscription.getItem());
+                if (!shuttingDown) {
+                    registry.getConfiguration().getRegistryListenerExecutor().execute(
+                            new Runnable() {
+                                public void run() {
+                                    incomingSubscription.getItem().end(CancelReason.DEVICE_WAS_REMOVED);
                                 }
-                        );
-                    }
+                            }
+                    );
                 }
             }
 
@@ -181,15 +212,7 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
          		advertiseByebye(localDevice, !shuttingDown);
 
             if (!shuttingDown) {
-                for (final RegistryListener listener : registry.getListeners()) {
-                    registry.getConfiguration().getRegistryListenerExecutor().execute(
-                            new Runnable() {
-                                public void run() {
-                                    listener.localDeviceRemoved(registry, localDevice);
-                                }
-                            }
-                    );
-                }
+                registry.listenerDispatcher.localDeviceRemoved(localDevice);
             }
 
             return true;
@@ -226,28 +249,39 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
 
         Set<RegistryItem<UDN, LocalDevice>> expiredLocalItems = new HashSet<>();
 
-        // "Flooding" is enabled, check if we need to send advertisements for all devices
+        // "Flooding" is enabled, check if we need to send advertisements for devices
         int aliveIntervalMillis = registry.getConfiguration().getAliveIntervalMillis();
         if(aliveIntervalMillis > 0) {
-        	long now = System.currentTimeMillis();
-        	if(now - lastAliveIntervalTimestamp > aliveIntervalMillis) {
-        		lastAliveIntervalTimestamp = now;
-                for (RegistryItem<UDN, LocalDevice> localItem : getDeviceItems()) {
-                    if (isAdvertised(localItem.getKey())) {
-                        log.finer("Flooding advertisement of local item: " + localItem);
-                        expiredLocalItems.add(localItem);
-                    }
+            long now = getCurrentTimestampMillis();
+            for (RegistryItem<UDN, LocalDevice> localItem : getDeviceItems()) {
+                if (!isAdvertised(localItem.getKey()))
+                    continue;
+                Long floodTimestamp = aliveFloodTimestamps.get(localItem.getKey());
+                if (floodTimestamp == null) {
+                    // The interval has been enabled after registration, spread the floods of all devices
+                    aliveFloodTimestamps.put(localItem.getKey(), now + randomGenerator.nextInt(aliveIntervalMillis));
+                } else if (floodTimestamp <= now) {
+                    log.finer("Flooding advertisement of local item: " + localItem);
+                    expiredLocalItems.add(localItem);
+                    // Keep the offset of the device, unless maintenance fell behind
+                    aliveFloodTimestamps.put(
+                        localItem.getKey(),
+                        Math.max(floodTimestamp + aliveIntervalMillis, now + aliveIntervalMillis / 2)
+                    );
                 }
-        	}
+            }
         } else {
             // Reset, the configuration might dynamically switch the alive interval
-            lastAliveIntervalTimestamp = 0;
+            aliveFloodTimestamps.clear();
 
-            // Alive interval is not enabled, regular expiration check of all devices
-            for (RegistryItem<UDN, LocalDevice> localItem : getDeviceItems()) {
-                if (isAdvertised(localItem.getKey()) && localItem.getExpirationDetails().hasExpired(true)) {
+            // Alive interval is not enabled, regular expiration check of devices which are due
+            for (RegistryItem<UDN, LocalDevice> localItem : getExpiredDeviceItems()) {
+                if (isAdvertised(localItem.getKey())) {
                     log.finer("Local item has expired: " + localItem);
                     expiredLocalItems.add(localItem);
+                } else {
+                    // Not advertised, check again when it is due next time
+                    refreshDeviceItem(localItem);
                 }
             }
         }
@@ -256,17 +290,11 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
         for (RegistryItem<UDN, LocalDevice> expiredLocalItem : expiredLocalItems) {
             log.fine("Refreshing local device advertisement: " + expiredLocalItem.getItem());
             advertiseAlive(expiredLocalItem.getItem());
-            expiredLocalItem.getExpirationDetails().stampLastRefresh();
+            refreshDeviceItem(expiredLocalItem);
         }
 
         // Expire incoming subscriptions
-        Set<RegistryItem<String, LocalGENASubscription>> expiredIncomingSubscriptions = new HashSet<>();
-        for (RegistryItem<String, LocalGENASubscription> item : getSubscriptionItems()) {
-            if (item.getExpirationDetails().hasExpired(false)) {
-                expiredIncomingSubscriptions.add(item);
-            }
-        }
-        for (RegistryItem<String, LocalGENASubscription> subscription : expiredIncomingSubscriptions) {
+        for (RegistryItem<String, LocalGENASubscription> subscription : getExpiredSubscriptionItems()) {
             log.fine("Removing expired: " + subscription);
             removeSubscription(subscription.getItem());
             subscription.getItem().end(CancelReason.EXPIRED);
@@ -276,7 +304,7 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
 
     void shutdown() {
         log.fine("Clearing all registered subscriptions to local devices during shutdown");
-        getSubscriptionItems().clear();
+        removeAllSubscriptions();
 
         log.fine("Removing all local devices from registry during shutdown");
         removeAll(true);
@@ -284,27 +312,62 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
 
     /* ############################################################################################################ */
 
-    protected Random randomGenerator = new Random();
+    /**
+     * Devices registered together would otherwise expire together, and their advertisements would be
+     * refreshed in the same burst. The first refresh is at a random time between a quarter and half
+     * of the maximum age, later refreshes at half the maximum age keep this offset. The same applies
+     * to the first ALIVE flood, if the alive interval is enabled.
+     * <p>
+     * The first refresh is scheduled explicitly, the last refresh timestamp of the item is not changed.
+     * </p>
+     */
+    protected void scheduleFirstRefresh(RegistryItem<UDN, LocalDevice> localItem) {
+        int aliveIntervalMillis = registry.getConfiguration().getAliveIntervalMillis();
+        if (aliveIntervalMillis > 0) {
+            aliveFloodTimestamps.put(
+                localItem.getKey(),
+                getCurrentTimestampMillis() + randomGenerator.nextInt(aliveIntervalMillis)
+            );
+        }
+
+        ExpirationDetails expirationDetails = localItem.getExpirationDetails();
+        if (expirationDetails.getMaxAgeSeconds() == ExpirationDetails.UNLIMITED_AGE)
+            return;
+        int quarterMaxAge = expirationDetails.getMaxAgeSeconds() / 4;
+        int firstRefreshSeconds = quarterMaxAge + randomGenerator.nextInt(quarterMaxAge + 1);
+        scheduleDeviceItem(localItem, ExpirationDetails.getMonotonicTimestampSeconds() + firstRefreshSeconds);
+    }
+
+    protected long getCurrentTimestampMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
 
+    /**
+     * The repetitions are sent by the {@link NotificationScheduler} of the registry, together
+     * with the notifications of all other devices.
+     */
     protected void advertiseAlive(final LocalDevice localDevice) {
         registry.executeAsyncProtocol(new Runnable() {
             public void run() {
-                try {
-                    log.finer("Sleeping some milliseconds to avoid flooding the network with ALIVE msgs");
-                    Thread.sleep(randomGenerator.nextInt(100));
-                } catch (InterruptedException ex) {
-                    log.severe("Background execution interrupted: " + ex.getMessage());
-                }
-                registry.getProtocolFactory().createSendingNotificationAlive(localDevice).run();
+                SendingNotification prot = registry.getProtocolFactory().createSendingNotificationAlive(localDevice);
+                if (prot != null)
+                    registry.notificationScheduler.add(prot);
             }
         });
     }
 
     protected void advertiseByebye(final LocalDevice localDevice, boolean asynchronous) {
-        final SendingAsync prot = registry.getProtocolFactory().createSendingNotificationByebye(localDevice);
+        final SendingNotification prot = registry.getProtocolFactory().createSendingNotificationByebye(localDevice);
+        if (prot == null)
+            return;
         if (asynchronous) {
-            registry.executeAsyncProtocol(prot);
+            registry.executeAsyncProtocol(new Runnable() {
+                public void run() {
+                    registry.notificationScheduler.add(prot);
+                }
+            });
         } else {
+            // Shutting down, the scheduler would stop before all repetitions have been sent
             prot.run();
         }
     }
@@ -18,6 +18,7 @@ package org.fourthline.cling.registry;
 import org.fourthline.cling.UpnpService;
 import org.fourthline.cling.UpnpServiceConfiguration;
 import org.fourthline.cling.model.DiscoveryOptions;
+import org.fourthline.cling.model.message.OutgoingDatagramMessage;
 import org.fourthline.cling.model.resource.Resource;
 import org.fourthline.cling.model.ServiceReference;
 import org.fourthline.cling.model.meta.Device;
@@ -34,6 +35,7 @@ import org.fourthline.cling.protocol.ProtocolFactory;
 
 import java.net.URI;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * The core of the UPnP stack, keeping track of known devices and resources.
@@ -213,6 +215,26 @@ public interface Registry {
      */
     public DiscoveryOptions getDiscoveryOptions(UDN udn);
 
+    /**
+     * Get the cached discovery messages of a registered local device, which can be sent again.
+     * <p>
+     * The messages of a device are discarded when the device is removed or its
+     * {@link DiscoveryOptions} are set.
+     * </p>
+     *
+     * @param localDevice A registered local root device.
+     * @param key Identifies the messages, for example, by their location and notification subtype.
+     * @return <code>null</code> if no messages have been cached for the given key.
+     */
+    public <M extends OutgoingDatagramMessage> List<M> getDiscoveryTemplates(LocalDevice localDevice, Object key);
+
+    /**
+     * Caches discovery messages of a registered local device, ignored if the device is not registered.
+     *
+     * @param templates Messages which will not be modified anymore, see {@link OutgoingDatagramMessage#setTemplate(boolean)}.
+     */
+    public void setDiscoveryTemplates(LocalDevice localDevice, Object key, List<? extends OutgoingDatagramMessage> templates);
+
     /**
      * Called internally by the UPnP discovery protocol.
      *
@@ -225,6 +247,21 @@ public interface Registry {
      */
     public boolean update(RemoteDeviceIdentity rdIdentity);
 
+    /**
+     * Called internally by the UPnP discovery protocol, on the thread which received an ALIVE notification.
+     * <p>
+     * Only refreshes the expiration of a registered remote device, if the notification announces the
+     * same descriptor location and maximum age. Doesn't wait for other registry operations.
+     * </p>
+     *
+     * @param udn The UDN of a registered root or embedded device.
+     * @param descriptorLocation The raw value of the received LOCATION header.
+     * @param cacheControl The raw value of the received CACHE-CONTROL header.
+     * @return <code>false</code> if nothing was refreshed, the notification has to be handled with
+     *         {@link #update(RemoteDeviceIdentity)} or by retrieving the device descriptors.
+     */
+    public boolean refresh(UDN udn, String descriptorLocation, String cacheControl);
+
     /**
      * Call this to remove your local device metadata.
      *
@@ -22,6 +22,7 @@ import org.fourthline.cling.model.ExpirationDetails;
 import org.fourthline.cling.model.ServiceReference;
 import org.fourthline.cling.model.gena.LocalGENASubscription;
 import org.fourthline.cling.model.gena.RemoteGENASubscription;
+import org.fourthline.cling.model.message.OutgoingDatagramMessage;
 import org.fourthline.cling.model.meta.Device;
 import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.meta.RemoteDevice;
@@ -32,6 +33,7 @@ import org.fourthline.cling.model.types.DeviceType;
 import org.fourthline.cling.model.types.ServiceType;
 import org.fourthline.cling.model.types.UDN;
 import org.fourthline.cling.protocol.ProtocolFactory;
+import org.fourthline.cling.protocol.async.NotificationScheduler;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
@@ -39,10 +41,13 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -100,13 +105,22 @@ public class RegistryImpl implements Registry {
 
     // #################################################################################################
 
-    protected final Set<RegistryListener> registryListeners = new HashSet<>();
+    // Read without the registry monitor by the listener dispatcher
+    protected final Set<RegistryListener> registryListeners = new CopyOnWriteArraySet<>();
     protected final Set<RegistryItem<URI, Resource>> resourceItems = new HashSet<>();
+    protected final Map<URI, Resource> resourceIndex = new HashMap<>();
+    protected final Set<Resource> unindexedResources = new HashSet<>();
+    protected final ExpirationQueue<RegistryItem<URI, Resource>> resourceExpirations = new ExpirationQueue<>();
+    protected final Set<RegistryItem<URI, Resource>> maintainedResourceItems = new HashSet<>();
     protected final List<Runnable> pendingExecutions = new ArrayList<>();
 
     protected final RemoteItems remoteItems = new RemoteItems(this);
     protected final LocalItems localItems = new LocalItems(this);
 
+    protected final RegistryListenerDispatcher listenerDispatcher = new RegistryListenerDispatcher(this);
+
+    protected final NotificationScheduler notificationScheduler = new NotificationScheduler();
+
     // #################################################################################################
 
     synchronized public void addListener(RegistryListener listener) {
@@ -115,9 +129,10 @@ public class RegistryImpl implements Registry {
 
     synchronized public void removeListener(RegistryListener listener) {
         registryListeners.remove(listener);
+        listenerDispatcher.removeListener(listener);
     }
 
-    synchronized public Collection<RegistryListener> getListeners() {
+    public Collection<RegistryListener> getListeners() {
         return Collections.unmodifiableCollection(registryListeners);
     }
 
@@ -127,28 +142,12 @@ public class RegistryImpl implements Registry {
             log.finer("Not notifying listeners, already registered: " + device);
             return false;
         }
-        for (final RegistryListener listener : getListeners()) {
-            getConfiguration().getRegistryListenerExecutor().execute(
-                    new Runnable() {
-                        public void run() {
-                            listener.remoteDeviceDiscoveryStarted(RegistryImpl.this, device);
-                        }
-                    }
-            );
-        }
+        listenerDispatcher.remoteDeviceDiscoveryStarted(device);
         return true;
     }
 
     synchronized public void notifyDiscoveryFailure(final RemoteDevice device, final Exception ex) {
-        for (final RegistryListener listener : getListeners()) {
-            getConfiguration().getRegistryListenerExecutor().execute(
-                    new Runnable() {
-                        public void run() {
-                            listener.remoteDeviceDiscoveryFailed(RegistryImpl.this, device, ex);
-                        }
-                    }
-            );
-        }
+        listenerDispatcher.remoteDeviceDiscoveryFailed(device, ex);
     }
 
     // #################################################################################################
@@ -169,6 +168,14 @@ public class RegistryImpl implements Registry {
         return localItems.getDiscoveryOptions(udn);
     }
 
+    synchronized public <M extends OutgoingDatagramMessage> List<M> getDiscoveryTemplates(LocalDevice localDevice, Object key) {
+        return localItems.getDiscoveryTemplates(localDevice, key);
+    }
+
+    synchronized public void setDiscoveryTemplates(LocalDevice localDevice, Object key, List<? extends OutgoingDatagramMessage> templates) {
+        localItems.setDiscoveryTemplates(localDevice, key, templates);
+    }
+
     synchronized public void addDevice(RemoteDevice remoteDevice) {
         remoteItems.add(remoteDevice);
     }
@@ -177,6 +184,10 @@ public class RegistryImpl implements Registry {
         return remoteItems.update(rdIdentity);
     }
 
+    public boolean refresh(UDN udn, String descriptorLocation, String cacheControl) {
+        return remoteItems.refresh(udn, descriptorLocation, cacheControl);
+    }
+
     synchronized public boolean removeDevice(LocalDevice localDevice) {
         return localItems.remove(localDevice);
     }
@@ -261,38 +272,12 @@ public class RegistryImpl implements Registry {
     // #################################################################################################
 
     synchronized public Resource getResource(URI pathQuery) throws IllegalArgumentException {
-        if (pathQuery.isAbsolute()) {
-            throw new IllegalArgumentException("Resource URI can not be absolute, only path and query:" + pathQuery);
-        }
-
-        // Note: Uses field access on resourceItems for performance reasons
-
-		for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
-        	Resource resource = resourceItem.getItem();
-        	if (resource.matches(pathQuery)) {
-                return resource;
-            }
-        }
-
-        // TODO: UPNP VIOLATION: Fuppes on my ReadyNAS thinks it's a cool idea to add a slash at the end of the callback URI...
-        // It also cuts off any query parameters in the callback URL - nice!
-        if (pathQuery.getPath().endsWith("/")) {
-            URI pathQueryWithoutSlash = URI.create(pathQuery.toString().substring(0, pathQuery.toString().length() - 1));
-
- 			for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
-            	Resource resource = resourceItem.getItem();
-            	if (resource.matches(pathQueryWithoutSlash)) {
-                    return resource;
-                }
-            }
-        }
-
-        return null;
+        return getResource(resourceIndex, unindexedResources, pathQuery);
     }
 
     synchronized public <T extends Resource> T getResource(Class<T> resourceType, URI pathQuery) throws IllegalArgumentException {
         Resource resource = getResource(pathQuery);
-        if (resource != null && resourceType.isAssignableFrom(resource.getClass())) {
+        if (resource != null && resourceType.isInstance(resource)) {
             return (T) resource;
         }
         return null;
@@ -320,13 +305,115 @@ public class RegistryImpl implements Registry {
     }
 
     synchronized public void addResource(Resource resource, int maxAgeSeconds) {
-        RegistryItem resourceItem = new RegistryItem(resource.getPathQuery(), resource, maxAgeSeconds);
-        resourceItems.remove(resourceItem);
+        RegistryItem<URI, Resource> resourceItem = new RegistryItem<>(resource.getPathQuery(), resource, maxAgeSeconds);
+        removeResourceItem(resourceItem.getKey());
         resourceItems.add(resourceItem);
+        if (isIndexable(resource)) {
+            resourceIndex.put(resourceItem.getKey(), resource);
+        } else {
+            unindexedResources.add(resource);
+        }
+        resourceExpirations.schedule(
+            resourceItem,
+            resourceItem.getExpirationDetails().getExpirationTimestampSeconds(false)
+        );
+        if (isMaintained(resource)) {
+            maintainedResourceItems.add(resourceItem);
+        }
     }
 
     synchronized public boolean removeResource(Resource resource) {
-        return resourceItems.remove(new RegistryItem(resource.getPathQuery()));
+        return removeResourceItem(resource.getPathQuery());
+    }
+
+    protected Resource getResource(Map<URI, Resource> resourceIndex,
+                                   Collection<Resource> unindexedResources,
+                                   URI pathQuery) throws IllegalArgumentException {
+        if (pathQuery.isAbsolute()) {
+            throw new IllegalArgumentException("Resource URI can not be absolute, only path and query:" + pathQuery);
+        }
+
+        Resource resource;
+        if ((resource = findResource(resourceIndex, unindexedResources, pathQuery)) != null) {
+            return resource;
+        }
+
+        // TODO: UPNP VIOLATION: Fuppes on my ReadyNAS thinks it's a cool idea to add a slash at the end of the callback URI...
+        // It also cuts off any query parameters in the callback URL - nice!
+        if (pathQuery.getPath().endsWith("/")) {
+            URI pathQueryWithoutSlash = URI.create(pathQuery.toString().substring(0, pathQuery.toString().length() - 1));
+            if ((resource = findResource(resourceIndex, unindexedResources, pathQueryWithoutSlash)) != null) {
+                return resource;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Looks up the resource in the index of registered path and query URIs.
+     * <p>
+     * The index is only consulted for resources which use the default equality matching of
+     * {@link org.fourthline.cling.model.resource.Resource#matches(java.net.URI)}, all other resources
+     * have to be asked one by one.
+     * </p>
+     */
+    protected Resource findResource(Map<URI, Resource> resourceIndex,
+                                    Collection<Resource> unindexedResources,
+                                    URI pathQuery) {
+        Resource resource = resourceIndex.get(pathQuery);
+        if (resource != null && resource.matches(pathQuery)) {
+            return resource;
+        }
+        for (Resource unindexedResource : unindexedResources) {
+            if (unindexedResource.matches(pathQuery)) {
+                return unindexedResource;
+            }
+        }
+        return null;
+    }
+
+    protected boolean removeResourceItem(URI pathQuery) {
+        Resource resource = resourceIndex.remove(pathQuery);
+        if (resource == null) {
+            Iterator<Resource> it = unindexedResources.iterator();
+            while (it.hasNext()) {
+                if (it.next().getPathQuery().equals(pathQuery)) {
+                    it.remove();
+                    break;
+                }
+            }
+        }
+        RegistryItem<URI, Resource> resourceItem = new RegistryItem<>(pathQuery);
+        resourceExpirations.cancel(resourceItem);
+        maintainedResourceItems.remove(resourceItem);
+        return resourceItems.remove(resourceItem);
+    }
+
+    /**
+     * @return <code>true</code> if the resource doesn't override {@link Resource#matches(java.net.URI)}, and
+     *         can therefore be found with a lookup of its path and query.
+     */
+    protected boolean isIndexable(Resource resource) {
+        try {
+            return resource.getClass().getMethod("matches", URI.class).getDeclaringClass().equals(Resource.class);
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the resource overrides
+     *         {@link Resource#maintain(java.util.List, org.fourthline.cling.model.ExpirationDetails)}, and
+     *         therefore has to be called by every registry maintenance run.
+     */
+    protected boolean isMaintained(Resource resource) {
+        try {
+            return !resource.getClass().getMethod("maintain", List.class, ExpirationDetails.class)
+                .getDeclaringClass().equals(Resource.class);
+        } catch (NoSuchMethodException ex) {
+            return true;
+        }
     }
 
     // #################################################################################################
@@ -431,19 +518,15 @@ public class RegistryImpl implements Registry {
         if (log.isLoggable(Level.FINEST))
             log.finest("Maintaining registry...");
 
-        // Remove expired resources
-        Iterator<RegistryItem<URI, Resource>> it = resourceItems.iterator();
-        while (it.hasNext()) {
-            RegistryItem<URI, Resource> item = it.next();
-            if (item.getExpirationDetails().hasExpired()) {
-                if (log.isLoggable(Level.FINER))
-                    log.finer("Removing expired resource: " + item);
-                it.remove();
-            }
+        // Remove expired resources, only the resources which are due are checked
+        for (RegistryItem<URI, Resource> item : resourceExpirations.getDue()) {
+            if (log.isLoggable(Level.FINER))
+                log.finer("Removing expired resource: " + item);
+            removeResourceItem(item.getKey());
         }
 
-        // Let each resource do its own maintenance
-        for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
+        // Let each resource which implements its own maintenance do it
+        for (RegistryItem<URI, Resource> resourceItem : maintainedResourceItems) {
             resourceItem.getItem().maintain(
                     pendingExecutions,
                     resourceItem.getExpirationDetails()
@@ -15,17 +15,24 @@
 
 package org.fourthline.cling.registry;
 
+import org.fourthline.cling.model.ExpirationDetails;
 import org.fourthline.cling.model.resource.Resource;
 import org.fourthline.cling.model.ValidationException;
 import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.Service;
 import org.fourthline.cling.model.gena.GENASubscription;
 import org.fourthline.cling.model.types.DeviceType;
 import org.fourthline.cling.model.types.ServiceType;
 import org.fourthline.cling.model.types.UDN;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -38,20 +45,49 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
     protected final RegistryImpl registry;
 
     protected final Set<RegistryItem<UDN, D>> deviceItems = new HashSet<>();
-    protected final Set<RegistryItem<String, S>> subscriptionItems = new HashSet<>();
+    protected final Map<String, RegistryItem<String, S>> subscriptionItems = new HashMap<>();
+
+    // Only modified in addDeviceItem(), refreshDeviceItem(), and removeDeviceItem()
+    protected final ExpirationQueue<RegistryItem<UDN, D>> deviceExpirations = new ExpirationQueue<>();
+
+    // Only modified in addSubscription() and removeSubscription()
+    protected final ExpirationQueue<RegistryItem<String, S>> subscriptionExpirations = new ExpirationQueue<>();
+
+    // Lookup indexes over the device graphs in deviceItems, only modified in addDeviceItem() and removeDeviceItem()
+    protected final Map<UDN, D> devicesByUDN = new HashMap<>();
+    protected final Map<String, Set<D>> devicesByType = new HashMap<>();
+    protected final Map<String, Set<D>> devicesByServiceType = new HashMap<>();
 
     RegistryItems(RegistryImpl registry) {
         this.registry = registry;
     }
 
+    /**
+     * @return A read-only view, call {@link #addDeviceItem(RegistryItem)} and
+     *         {@link #removeDeviceItem(UDN)} to modify the device items.
+     */
     Set<RegistryItem<UDN, D>> getDeviceItems() {
-        return deviceItems;
+        return Collections.unmodifiableSet(deviceItems);
     }
 
-    Set<RegistryItem<String, S>> getSubscriptionItems() {
-        return subscriptionItems;
+    /**
+     * @return A read-only view, call {@link #addSubscription(GENASubscription)} and
+     *         {@link #removeSubscription(GENASubscription)} to modify the subscription items.
+     */
+    Collection<RegistryItem<String, S>> getSubscriptionItems() {
+        return Collections.unmodifiableCollection(subscriptionItems.values());
     }
 
+    /**
+     * @return <code>true</code> if devices are due at half their maximum age, for advertisement.
+     */
+    abstract boolean isDeviceHalfTimeExpiration();
+
+    /**
+     * @return <code>true</code> if subscriptions are due at half their duration, for renewal.
+     */
+    abstract boolean isSubscriptionHalfTimeExpiration();
+
     abstract void add(D device);
     abstract boolean remove(final D device);
     abstract void removeAll();
@@ -59,6 +95,87 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
     abstract void maintain();
     abstract void shutdown();
 
+    /**
+     * Adds the item of a root device, or replaces the item with the same key.
+     * <p>
+     * The root device and all its embedded devices are added to the lookup indexes. If the replaced
+     * item holds the same device graph instance, for example when only the expiration details are
+     * updated, the indexes are not touched.
+     * </p>
+     *
+     * @param item The registry item of a root device.
+     */
+    void addDeviceItem(RegistryItem<UDN, D> item) {
+        D registeredDevice = devicesByUDN.get(item.getKey());
+        deviceItems.remove(item);
+        deviceItems.add(item);
+        scheduleDeviceItem(item);
+        if (registeredDevice != item.getItem()) {
+            if (registeredDevice != null && registeredDevice.isRoot())
+                removeFromIndex(registeredDevice);
+            addToIndex(item.getItem());
+        }
+    }
+
+    /**
+     * Removes the item of a root device and its device graph from the lookup indexes.
+     *
+     * @param udn The unique device name of a root device.
+     * @return <tt>true</tt> if an item was registered under the given UDN.
+     */
+    boolean removeDeviceItem(UDN udn) {
+        D registeredDevice = devicesByUDN.get(udn);
+        if (registeredDevice != null && registeredDevice.isRoot())
+            removeFromIndex(registeredDevice);
+        deviceExpirations.cancel(new RegistryItem<UDN, D>(udn));
+        return deviceItems.remove(new RegistryItem<UDN, D>(udn));
+    }
+
+    /**
+     * Stamps the last refresh of the registered item and schedules its next expiration.
+     */
+    void refreshDeviceItem(RegistryItem<UDN, D> item) {
+        item.getExpirationDetails().stampLastRefresh();
+        scheduleDeviceItem(item);
+    }
+
+    /**
+     * Only the device items which are due are checked, see {@link ExpirationQueue}. An item which
+     * has been refreshed without scheduling it again is only scheduled now, unless it has been
+     * scheduled explicitly with {@link #scheduleDeviceItem(RegistryItem, long)}.
+     *
+     * @return The device items which have expired, see {@link #isDeviceHalfTimeExpiration()}.
+     */
+    Collection<RegistryItem<UDN, D>> getExpiredDeviceItems() {
+        long currentTimestampSeconds = ExpirationDetails.getMonotonicTimestampSeconds();
+        List<RegistryItem<UDN, D>> expired = new ArrayList<>();
+        for (RegistryItem<UDN, D> item : deviceExpirations.getDue(currentTimestampSeconds)) {
+            long expirationTimestampSeconds =
+                item.getExpirationDetails().getExpirationTimestampSeconds(isDeviceHalfTimeExpiration());
+            if (!deviceExpirations.isExplicit(item) && expirationTimestampSeconds >= currentTimestampSeconds) {
+                scheduleDeviceItem(item);
+            } else {
+                expired.add(item);
+            }
+        }
+        return expired;
+    }
+
+    protected void scheduleDeviceItem(RegistryItem<UDN, D> item) {
+        deviceExpirations.schedule(
+            item,
+            item.getExpirationDetails().getExpirationTimestampSeconds(isDeviceHalfTimeExpiration())
+        );
+    }
+
+    /**
+     * @param timestampSeconds The monotonic timestamp at which the item is due, regardless of its
+     *                         expiration details, see {@link ExpirationDetails#getMonotonicTimestampSeconds()}.
+     */
+    protected void scheduleDeviceItem(RegistryItem<UDN, D> item, long timestampSeconds) {
+        deviceExpirations.scheduleExplicit(item, timestampSeconds);
+    }
+
     /**
      * Returns root and embedded devices registered under the given UDN.
      *
@@ -68,17 +185,10 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
      *         no device with the given UDN has been registered.
      */
     D get(UDN udn, boolean rootOnly) {
-        for (RegistryItem<UDN, D> item : deviceItems) {
-            D device = item.getItem();
-            if (device.getIdentity().getUdn().equals(udn)) {
-                return device;
-            }
-            if (!rootOnly) {
-                D foundDevice = (D)item.getItem().findDevice(udn);
-                if (foundDevice != null) return foundDevice;
-            }
-        }
-        return null;
+        D device = devicesByUDN.get(udn);
+        if (device == null || (rootOnly && !device.isRoot()))
+            return null;
+        return device;
     }
 
     /**
@@ -91,14 +201,7 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
      * @return Any registered root or embedded device with a compatible type.
      */
     Collection<D> get(DeviceType deviceType) {
-        Collection<D> devices = new HashSet<>();
-        for (RegistryItem<UDN, D> item : deviceItems) {
-            D[] d = (D[])item.getItem().findDevices(deviceType);
-            if (d != null) {
-                devices.addAll(Arrays.asList(d));
-            }
-        }
-        return devices;
+        return get(devicesByType, deviceType);
     }
 
     /**
@@ -108,15 +211,7 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
      * @return Any registered root or embedded device with at least one matching service.
      */
     Collection<D> get(ServiceType serviceType) {
-        Collection<D> devices = new HashSet<>();
-        for (RegistryItem<UDN, D> item : deviceItems) {
-
-            D[] d = (D[])item.getItem().findDevices(serviceType);
-            if (d != null) {
-                devices.addAll(Arrays.asList(d));
-            }
-        }
-        return devices;
+        return get(devicesByServiceType, serviceType);
     }
 
     Collection<D> get() {
@@ -144,7 +239,12 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
                         subscription.getActualDurationSeconds()
                 );
 
-        subscriptionItems.add(subscriptionItem);
+        removeSubscription(subscription);
+        subscriptionItems.put(subscriptionItem.getKey(), subscriptionItem);
+        subscriptionExpirations.schedule(
+            subscriptionItem,
+            subscriptionItem.getExpirationDetails().getExpirationTimestampSeconds(isSubscriptionHalfTimeExpiration())
+        );
     }
 
     boolean updateSubscription(S subscription) {
@@ -156,16 +256,140 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
     }
 
     boolean removeSubscription(S subscription) {
-        return subscriptionItems.remove(new RegistryItem<String, S>(subscription.getSubscriptionId()));
+        RegistryItem<String, S> subscriptionItem = subscriptionItems.remove(subscription.getSubscriptionId());
+        if (subscriptionItem == null)
+            return false;
+        subscriptionExpirations.cancel(subscriptionItem);
+        return true;
+    }
+
+    void removeAllSubscriptions() {
+        subscriptionItems.clear();
+        subscriptionExpirations.clear();
     }
 
     S getSubscription(String subscriptionId) {
-        for (RegistryItem<String, S> registryItem : subscriptionItems) {
-            if (registryItem.getKey().equals(subscriptionId)) {
-                return registryItem.getItem();
+        RegistryItem<String, S> subscriptionItem = subscriptionItems.get(subscriptionId);
+        return subscriptionItem != null ? subscriptionItem.getItem() : null;
+    }
+
+    /**
+     * Only the subscription items which are due are checked, see {@link ExpirationQueue}.
+     *
+     * @return The subscription items which have expired, see {@link #isSubscriptionHalfTimeExpiration()}.
+     */
+    Collection<RegistryItem<String, S>> getExpiredSubscriptionItems() {
+        return subscriptionExpirations.getDue();
+    }
+
+    /**
+     * @return The subscription items of services of the given root or embedded device.
+     */
+    Collection<RegistryItem<String, S>> getSubscriptionItems(UDN udn) {
+        Collection<RegistryItem<String, S>> deviceSubscriptionItems = new ArrayList<>();
+        for (RegistryItem<String, S> item : subscriptionItems.values()) {
+            if (item.getItem().getService().getDevice().getIdentity().getUdn().equals(udn))
+                deviceSubscriptionItems.add(item);
+        }
+        return deviceSubscriptionItems;
+    }
+
+    protected void addToIndex(D rootDevice) {
+        for (D device : getDeviceGraph(rootDevice)) {
+            devicesByUDN.put(device.getIdentity().getUdn(), device);
+            if (device.getType() != null)
+                addToIndex(devicesByType, getIndexKey(device.getType()), device);
+            if (device.hasServices()) {
+                for (Service service : device.getServices()) {
+                    addToIndex(devicesByServiceType, getIndexKey(service.getServiceType()), device);
+                }
+            }
+        }
+    }
+
+    protected void removeFromIndex(D rootDevice) {
+        for (D device : getDeviceGraph(rootDevice)) {
+            // Don't remove the entry of another graph which (illegally) has a device with the same UDN
+            if (devicesByUDN.get(device.getIdentity().getUdn()) == device)
+                devicesByUDN.remove(device.getIdentity().getUdn());
+            if (device.getType() != null)
+                removeFromIndex(devicesByType, getIndexKey(device.getType()), device);
+            if (device.hasServices()) {
+                for (Service service : device.getServices()) {
+                    removeFromIndex(devicesByServiceType, getIndexKey(service.getServiceType()), device);
+                }
+            }
+        }
+    }
+
+    protected Collection<D> getDeviceGraph(D rootDevice) {
+        Collection<D> devices = new HashSet<>();
+        devices.add(rootDevice);
+        devices.addAll(Arrays.asList((D[]) rootDevice.findEmbeddedDevices()));
+        return devices;
+    }
+
+    protected void addToIndex(Map<String, Set<D>> index, String key, D device) {
+        Set<D> devices = index.get(key);
+        if (devices == null) {
+            devices = new HashSet<>();
+            index.put(key, devices);
+        }
+        devices.add(device);
+    }
+
+    protected void removeFromIndex(Map<String, Set<D>> index, String key, D device) {
+        Set<D> devices = index.get(key);
+        if (devices != null && devices.remove(device) && devices.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Devices are indexed without type version, lookups then check the version compatibility.
+     */
+    static String getIndexKey(DeviceType deviceType) {
+        return deviceType.getNamespace() + ":" + deviceType.getType();
+    }
+
+    static String getIndexKey(ServiceType serviceType) {
+        return serviceType.getNamespace() + ":" + serviceType.getType();
+    }
+
+    /**
+     * @param devicesByType An index of devices by type, see {@link #getIndexKey(DeviceType)}.
+     * @return The indexed devices with a compatible type.
+     */
+    static <D extends Device> Collection<D> get(Map<String, Set<D>> devicesByType, DeviceType deviceType) {
+        Collection<D> devices = new HashSet<>();
+        Set<D> candidates = devicesByType.get(getIndexKey(deviceType));
+        if (candidates != null) {
+            for (D candidate : candidates) {
+                if (candidate.getType().implementsVersion(deviceType))
+                    devices.add(candidate);
             }
         }
-        return null;
+        return devices;
+    }
+
+    /**
+     * @param devicesByServiceType An index of devices by service type, see {@link #getIndexKey(ServiceType)}.
+     * @return The indexed devices with at least one matching service.
+     */
+    static <D extends Device> Collection<D> get(Map<String, Set<D>> devicesByServiceType, ServiceType serviceType) {
+        Collection<D> devices = new HashSet<>();
+        Set<D> candidates = devicesByServiceType.get(getIndexKey(serviceType));
+        if (candidates != null) {
+            for (D candidate : candidates) {
+                for (Service service : candidate.getServices()) {
+                    if (service.getServiceType().implementsVersion(serviceType)) {
+                        devices.add(candidate);
+                        break;
+                    }
+                }
+            }
+        }
+        return devices;
     }
 
     Resource[] getResources(Device device) throws RegistrationException {
@@ -25,7 +25,9 @@ import org.fourthline.cling.model.meta.RemoteDevice;
  * discovered on your UPnP network, or when it is updated, or when it disappears.
  * </p>
  * <p>
- * Implementations will be called concurrently by several threads, they should be thread-safe.
+ * Implementations will be called by several threads, they should be thread-safe. Notifications
+ * are delivered in order though, a listener is not called concurrently by the registry. Pending
+ * updates of the same device are merged, see {@link BatchRegistryListener}.
  * </p>
  * <p>
  * Listener methods are called in a separate thread, so you can execute
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.registry;
+
+import org.fourthline.cling.model.meta.LocalDevice;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.types.UDN;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Internal class, required by {@link RegistryImpl}.
+ * <p>
+ * Each registry listener has its own queue of notifications, executed in order by at most one
+ * task of the {@link org.fourthline.cling.UpnpServiceConfiguration#getRegistryListenerExecutor()}
+ * at a time. A device update is merged with a pending update of the same device, unless another
+ * notification about that device is queued after it. Consecutive pending updates are delivered
+ * with a single call to a {@link BatchRegistryListener}.
+ * </p>
+ * <p>
+ * Updates are only merged while they are pending, that is while the listener is still busy with
+ * earlier notifications. There is no delay to collect more updates, a listener which keeps up
+ * receives every update as soon as possible.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+class RegistryListenerDispatcher {
+
+    private static Logger log = Logger.getLogger(Registry.class.getName());
+
+    protected final RegistryImpl registry;
+    protected final Map<RegistryListener, ListenerQueue> queues = new HashMap<>();
+
+    RegistryListenerDispatcher(RegistryImpl registry) {
+        this.registry = registry;
+    }
+
+    void remoteDeviceDiscoveryStarted(final RemoteDevice device) {
+        dispatch(new Notification(device.getIdentity().getUdn()) {
+            void deliver(RegistryListener listener) {
+                listener.remoteDeviceDiscoveryStarted(registry, device);
+            }
+        });
+    }
+
+    void remoteDeviceDiscoveryFailed(final RemoteDevice device, final Exception ex) {
+        dispatch(new Notification(device.getIdentity().getUdn()) {
+            void deliver(RegistryListener listener) {
+                listener.remoteDeviceDiscoveryFailed(registry, device, ex);
+            }
+        });
+    }
+
+    void remoteDeviceAdded(final RemoteDevice device) {
+        dispatch(new Notification(device.getIdentity().getUdn()) {
+            void deliver(RegistryListener listener) {
+                listener.remoteDeviceAdded(registry, device);
+            }
+        });
+    }
+
+    void remoteDeviceUpdated(RemoteDevice device) {
+        dispatch(new UpdateNotification(device));
+    }
+
+    void remoteDeviceRemoved(final RemoteDevice device) {
+        dispatch(new Notification(device.getIdentity().getUdn()) {
+            void deliver(RegistryListener listener) {
+                listener.remoteDeviceRemoved(registry, device);
+            }
+        });
+    }
+
+    void localDeviceAdded(final LocalDevice device) {
+        dispatch(new Notification(device.getIdentity().getUdn()) {
+            void deliver(RegistryListener listener) {
+                listener.localDeviceAdded(registry, device);
+            }
+        });
+    }
+
+    void localDeviceRemoved(final LocalDevice device) {
+        dispatch(new Notification(device.getIdentity().getUdn()) {
+            void deliver(RegistryListener listener) {
+                listener.localDeviceRemoved(registry, device);
+            }
+        });
+    }
+
+    /**
+     * Notifications which are already queued will still be delivered to the listener.
+     */
+    synchronized void removeListener(RegistryListener listener) {
+        queues.remove(listener);
+    }
+
+    protected void dispatch(Notification notification) {
+        for (RegistryListener listener : registry.getListeners()) {
+            getQueue(listener).add(notification);
+        }
+    }
+
+    synchronized protected ListenerQueue getQueue(RegistryListener listener) {
+        ListenerQueue queue = queues.get(listener);
+        if (queue == null) {
+            queue = new ListenerQueue(listener);
+            queues.put(listener, queue);
+        }
+        return queue;
+    }
+
+    /* ############################################################################################################ */
+
+    protected abstract static class Notification {
+
+        final UDN udn;
+
+        Notification(UDN udn) {
+            this.udn = udn;
+        }
+
+        abstract void deliver(RegistryListener listener);
+    }
+
+    protected class UpdateNotification extends Notification {
+
+        // Replaced when a later update is merged
+        RemoteDevice device;
+
+        UpdateNotification(RemoteDevice device) {
+            super(device.getIdentity().getUdn());
+            this.device = device;
+        }
+
+        void deliver(RegistryListener listener) {
+            listener.remoteDeviceUpdated(registry, device);
+        }
+    }
+
+    protected class ListenerQueue implements Runnable {
+
+        final RegistryListener listener;
+        final Deque<Notification> pending = new ArrayDeque<>();
+        // The last pending notification about each device
+        final Map<UDN, Notification> lastPending = new HashMap<>();
+        boolean running;
+
+        ListenerQueue(RegistryListener listener) {
+            this.listener = listener;
+        }
+
+        void add(Notification notification) {
+            synchronized (this) {
+                if (!merge(notification)) {
+                    pending.addLast(notification);
+                    lastPending.put(notification.udn, notification);
+                }
+                if (running)
+                    return;
+                running = true;
+            }
+            execute();
+        }
+
+        /**
+         * Replaces a pending update of the same device, if it is the last pending notification about that device.
+         */
+        protected boolean merge(Notification notification) {
+            if (!(notification instanceof UpdateNotification))
+                return false;
+            Notification queued = lastPending.get(notification.udn);
+            if (!(queued instanceof UpdateNotification))
+                return false;
+            if (log.isLoggable(Level.FINEST))
+                log.finest("Merging pending update notification of: " + notification.udn);
+            ((UpdateNotification) queued).device = ((UpdateNotification) notification).device;
+            return true;
+        }
+
+        protected void execute() {
+            try {
+                registry.getConfiguration().getRegistryListenerExecutor().execute(this);
+            } catch (RuntimeException ex) {
+                synchronized (this) {
+                    running = false;
+                }
+                throw ex;
+            }
+        }
+
+        public void run() {
+            boolean completed = false;
+            try {
+                List<Notification> notifications;
+                while ((notifications = poll()) != null) {
+                    deliver(notifications);
+                }
+                completed = true;
+            } finally {
+                if (!completed) {
+                    // The listener failed, continue with the remaining notifications in a new task
+                    boolean remaining;
+                    synchronized (this) {
+                        remaining = !pending.isEmpty();
+                        running = remaining;
+                    }
+                    if (remaining)
+                        execute();
+                }
+            }
+        }
+
+        synchronized protected List<Notification> poll() {
+            if (pending.isEmpty()) {
+                running = false;
+                return null;
+            }
+            List<Notification> notifications = new ArrayList<>();
+            notifications.add(removeFirst());
+            if (listener instanceof BatchRegistryListener && notifications.get(0) instanceof UpdateNotification) {
+                while (!pending.isEmpty() && pending.peekFirst() instanceof UpdateNotification) {
+                    notifications.add(removeFirst());
+                }
+            }
+            return notifications;
+        }
+
+        protected Notification removeFirst() {
+            Notification notification = pending.removeFirst();
+            // Delivered notifications can't be merged anymore
+            if (lastPending.get(notification.udn) == notification)
+                lastPending.remove(notification.udn);
+            return notification;
+        }
+
+        protected void deliver(List<Notification> notifications) {
+            if (listener instanceof BatchRegistryListener && notifications.get(0) instanceof UpdateNotification) {
+                List<RemoteDevice> devices = new ArrayList<>(notifications.size());
+                for (Notification notification : notifications) {
+                    devices.add(((UpdateNotification) notification).device);
+                }
+                ((BatchRegistryListener) listener).remoteDevicesUpdated(registry, devices);
+            } else {
+                notifications.get(0).deliver(listener);
+            }
+        }
+    }
+
+}
@@ -18,18 +18,15 @@ package org.fourthline.cling.registry;
 import org.fourthline.cling.model.resource.Resource;
 import org.fourthline.cling.model.gena.CancelReason;
 import org.fourthline.cling.model.gena.RemoteGENASubscription;
-import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.meta.RemoteDevice;
 import org.fourthline.cling.model.meta.RemoteDeviceIdentity;
 import org.fourthline.cling.model.types.UDN;
 
+import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,10 +39,23 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
 
     private static Logger log = Logger.getLogger(Registry.class.getName());
 
+    // The current item of the root device, for every UDN of a registered device graph; read without the registry monitor
+    protected final Map<UDN, RefreshableItem> refreshableItems = new ConcurrentHashMap<>();
+
     RemoteItems(RegistryImpl registry) {
         super(registry);
     }
 
+    boolean isDeviceHalfTimeExpiration() {
+        // Remote devices are removed when their maximum age passed
+        return false;
+    }
+
+    boolean isSubscriptionHalfTimeExpiration() {
+        // Outgoing subscriptions are renewed when half of their duration passed
+        return true;
+    }
+
     /**
      * Adds the given remote device to the registry, or udpates its expiration timestamp.
      * <p>
@@ -89,7 +99,7 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
         );
         log.fine("Adding hydrated remote device to registry with "
                          + item.getExpirationDetails().getMaxAgeSeconds() + " seconds expiration: " + device);
-        getDeviceItems().add(item);
+        addDeviceItem(item);
 
         if (log.isLoggable(Level.FINEST)) {
             StringBuilder sb = new StringBuilder();
@@ -104,25 +114,15 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
 
         // Only notify the listeners when the device is fully usable
         log.fine("Completely hydrated remote device graph available, calling listeners: " + device);
-        for (final RegistryListener listener : registry.getListeners()) {
-            registry.getConfiguration().getRegistryListenerExecutor().execute(
-                    new Runnable() {
-                        public void run() {
-                            listener.remoteDeviceAdded(registry, device);
-                        }
-                    }
-            );
-        }
+        registry.listenerDispatcher.remoteDeviceAdded(device);
 
     }
 
     boolean update(RemoteDeviceIdentity rdIdentity) {
 
-        for (LocalDevice localDevice : registry.getLocalDevices()) {
-            if (localDevice.findDevice(rdIdentity.getUdn()) != null) {
-                log.fine("Ignoring update, a local device graph contains UDN");
-                return true;
-            }
+        if (registry.getLocalDevice(rdIdentity.getUdn(), false) != null) {
+            log.fine("Ignoring update, a local device graph contains UDN");
+            return true;
         }
 
         RemoteDevice registeredRemoteDevice = get(rdIdentity.getUdn(), false);
@@ -143,19 +143,10 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
             );
 
             log.fine("Updating expiration of: " + registeredRemoteDevice);
-            getDeviceItems().remove(item);
-            getDeviceItems().add(item);
+            addDeviceItem(item);
 
             log.fine("Remote device updated, calling listeners: " + registeredRemoteDevice);
-            for (final RegistryListener listener : registry.getListeners()) {
-                registry.getConfiguration().getRegistryListenerExecutor().execute(
-                        new Runnable() {
-                            public void run() {
-                                listener.remoteDeviceUpdated(registry, item.getItem());
-                            }
-                        }
-                );
-            }
+            registry.listenerDispatcher.remoteDeviceUpdated(item.getItem());
 
             return true;
 
@@ -163,6 +154,76 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
         return false;
     }
 
+    /**
+     * Refreshes the expiration of a registered device graph, without holding the registry monitor.
+     * <p>
+     * The registered item is only stamped, {@link #getExpiredDeviceItems()} schedules its
+     * expiration again when the previous timestamp is due. A refresh and the removal of the same
+     * device are serialized on its {@link RefreshableItem}, so listeners are never notified of an
+     * update after the removal.
+     * </p>
+     *
+     * @param udn The UDN of the root or an embedded device.
+     * @param descriptorLocation The raw value of the received LOCATION header.
+     * @param cacheControl The raw value of the received CACHE-CONTROL header.
+     * @return <code>false</code> if the device isn't registered, or its descriptor location or maximum age changed.
+     */
+    boolean refresh(UDN udn, String descriptorLocation, String cacheControl) {
+        if (registry.getConfiguration().getRemoteDeviceMaxAgeSeconds() != null)
+            return false;
+
+        RefreshableItem refreshableItem = refreshableItems.get(udn);
+        if (refreshableItem == null
+            || !refreshableItem.descriptorLocation.equals(descriptorLocation)
+            || !refreshableItem.cacheControl.equalsIgnoreCase(cacheControl))
+            return false;
+
+        RegistryItem<UDN, RemoteDevice> item = refreshableItem.item;
+        synchronized (refreshableItem) {
+            // The device might have been removed in the meantime
+            if (refreshableItem.removed)
+                return false;
+            item.getExpirationDetails().stampLastRefresh();
+            if (log.isLoggable(Level.FINEST))
+                log.finest("Refreshed expiration of: " + item.getItem());
+
+            registry.listenerDispatcher.remoteDeviceUpdated(item.getItem());
+        }
+        return true;
+    }
+
+    @Override
+    void addDeviceItem(RegistryItem<UDN, RemoteDevice> item) {
+        super.addDeviceItem(item);
+        URL descriptorURL = item.getItem().getIdentity().getDescriptorURL();
+        if (descriptorURL == null)
+            return;
+        RefreshableItem refreshableItem = new RefreshableItem(
+            item,
+            descriptorURL.toString(),
+            "max-age=" + item.getExpirationDetails().getMaxAgeSeconds()
+        );
+        for (RemoteDevice device : getDeviceGraph(item.getItem())) {
+            refreshableItems.put(device.getIdentity().getUdn(), refreshableItem);
+        }
+    }
+
+    /**
+     * Ends the refreshes of a registered device graph, waiting for a refresh in progress.
+     */
+    protected void removeRefreshableItems(RemoteDevice registeredDevice) {
+        UDN udn = registeredDevice.getIdentity().getUdn();
+        for (RemoteDevice device : getDeviceGraph(registeredDevice)) {
+            RefreshableItem refreshableItem = refreshableItems.get(device.getIdentity().getUdn());
+            if (refreshableItem != null && refreshableItem.item.getKey().equals(udn)) {
+                synchronized (refreshableItem) {
+                    refreshableItem.removed = true;
+                }
+                refreshableItems.remove(device.getIdentity().getUdn());
+            }
+        }
+    }
+
     /**
      * Removes the given device from the registry and notifies registry listeners.
      *
@@ -179,6 +240,9 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
 
             log.fine("Removing remote device from registry: " + remoteDevice);
 
+            // Before the listeners are notified, no refresh may notify them afterwards
+            removeRefreshableItems(registeredDevice);
+
             // Resources
             for (Resource deviceResource : getResources(registeredDevice)) {
                 if (registry.removeResource(deviceResource)) {
@@ -187,43 +251,28 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
             }
 
             // Active subscriptions
-            Iterator<RegistryItem<String, RemoteGENASubscription>> it = getSubscriptionItems().iterator();
-            while (it.hasNext()) {
-                final RegistryItem<String, RemoteGENASubscription> outgoingSubscription = it.next();
-
-                UDN subscriptionForUDN =
-                        outgoingSubscription.getItem().getService().getDevice().getIdentity().getUdn();
-
-                if (subscriptionForUDN.equals(registeredDevice.getIdentity().getUdn())) {
-                    log.fine("Removing outgoing subscription: " + outgoingSubscription.getKey());
-                    it.remove();
-                    if (!shuttingDown) {
-                        registry.getConfiguration().getRegistryListenerExecutor().execute(
-                                new Runnable() {
-                                    public void run() {
-                                        outgoingSubscription.getItem().end(CancelReason.DEVICE_WAS_REMOVED, null);
-                                    }
-                                }
-                        );
-                    }
-                }
-            }
-
-            // Only notify listeners if we are NOT in the process of shutting down the registry
-            if (!shuttingDown) {
-                for (final RegistryListener listener : registry.getListeners()) {
+            for (final RegistryItem<String, RemoteGENASubscription> outgoingSubscription
+                    : getSubscriptionItems(registeredDevice.getIdentity().getUdn())) {
+                log.fine("Removing outgoing subscription: " + outgoingSubscription.getKey());
+                removeSubscription(outgoingSubscription.getItem());
+                if (!shuttingDown) {
                     registry.getConfiguration().getRegistryListenerExecutor().execute(
                             new Runnable() {
                                 public void run() {
-                                    listener.remoteDeviceRemoved(registry, registeredDevice);
+                                    outgoingSubscription.getItem().end(CancelReason.DEVICE_WAS_REMOVED, null);
                                 }
                             }
                     );
                 }
             }
 
+            // Only notify listeners if we are NOT in the process of shutting down the registry
+            if (!shuttingDown) {
+                registry.listenerDispatcher.remoteDeviceRemoved(registeredDevice);
+            }
+
             // Finally, remove the device from the registry
-            getDeviceItems().remove(new RegistryItem(registeredDevice.getIdentity().getUdn()));
+            removeDeviceItem(registeredDevice.getIdentity().getUdn());
 
             return true;
         }
@@ -253,32 +302,17 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
         if (getDeviceItems().isEmpty()) return;
 
         // Remove expired remote devices
-        Map<UDN, RemoteDevice> expiredRemoteDevices = new HashMap<>();
-        for (RegistryItem<UDN, RemoteDevice> remoteItem : getDeviceItems()) {
-            if (log.isLoggable(Level.FINEST))
-                log.finest("Device '" + remoteItem.getItem() + "' expires in seconds: "
-                                   + remoteItem.getExpirationDetails().getSecondsUntilExpiration());
-            if (remoteItem.getExpirationDetails().hasExpired(false)) {
-                expiredRemoteDevices.put(remoteItem.getKey(), remoteItem.getItem());
-            }
-        }
-        for (RemoteDevice remoteDevice : expiredRemoteDevices.values()) {
+        for (RegistryItem<UDN, RemoteDevice> remoteItem : getExpiredDeviceItems()) {
             if (log.isLoggable(Level.FINE))
-                log.fine("Removing expired: " + remoteDevice);
-            remove(remoteDevice);
+                log.fine("Removing expired: " + remoteItem.getItem());
+            remove(remoteItem.getItem());
         }
 
         // Renew outgoing subscriptions
-        Set<RemoteGENASubscription> expiredOutgoingSubscriptions = new HashSet<>();
-        for (RegistryItem<String, RemoteGENASubscription> item : getSubscriptionItems()) {
-            if (item.getExpirationDetails().hasExpired(true)) {
-                expiredOutgoingSubscriptions.add(item.getItem());
-            }
-        }
-        for (RemoteGENASubscription subscription : expiredOutgoingSubscriptions) {
+        for (RegistryItem<String, RemoteGENASubscription> item : getExpiredSubscriptionItems()) {
             if (log.isLoggable(Level.FINEST))
-                log.fine("Renewing outgoing subscription: " + subscription);
-            renewOutgoingSubscription(subscription);
+                log.fine("Renewing outgoing subscription: " + item.getItem());
+            renewOutgoingSubscription(item.getItem());
         }
     }
 
@@ -317,4 +351,19 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
                 registry.getProtocolFactory().createSendingRenewal(subscription)
         );
     }
+
+    protected static class RefreshableItem {
+
+        final protected RegistryItem<UDN, RemoteDevice> item;
+        final protected String descriptorLocation;
+        final protected String cacheControl;
+        // Guarded by the monitor of this item
+        protected boolean removed;
+
+        RefreshableItem(RegistryItem<UDN, RemoteDevice> item, String descriptorLocation, String cacheControl) {
+            this.item = item;
+            this.descriptorLocation = descriptorLocation;
+            this.cacheControl = cacheControl;
+        }
+    }
 }
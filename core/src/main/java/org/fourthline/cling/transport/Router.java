@@ -23,10 +23,13 @@ import org.fourthline.cling.model.message.StreamRequestMessage;
 import org.fourthline.cling.model.message.StreamResponseMessage;
 import org.fourthline.cling.protocol.ProtocolFactory;
 import org.fourthline.cling.transport.spi.InitializationException;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
 import org.fourthline.cling.transport.spi.UpnpStream;
 
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * Interface of the network transport layer.
@@ -139,6 +142,16 @@ public interface Router {
      */
     public void send(OutgoingDatagramMessage msg) throws RouterException;
 
+    /**
+     * <p>
+     * Call this method to send several UDP datagram messages, in order. This is cheaper than
+     * sending each message on its own.
+     * </p>
+     * @param msgs The UDP datagram messages to send.
+     * @throws RouterException if a recoverable error, such as thread interruption, occurs.
+     */
+    public void send(Collection<? extends OutgoingDatagramMessage> msgs) throws RouterException;
+
     /**
      * <p>
      * Call this method to send a TCP (HTTP) stream message.
@@ -149,6 +162,18 @@ public interface Router {
      */
     public StreamResponseMessage send(StreamRequestMessage msg) throws RouterException;
 
+    /**
+     * <p>
+     * Call this method to send a TCP (HTTP) stream message without blocking the calling thread.
+     * </p>
+     * @param msg The TCP (HTTP) stream message to send.
+     * @param callback Receives the response, or <code>null</code> if no response has been received or
+     *                 the router is disabled.
+     * @return The pending response.
+     * @throws RouterException if a recoverable error, such as thread interruption, occurs.
+     */
+    public Future<StreamResponseMessage> sendAsync(StreamRequestMessage msg, StreamResponseCallback callback) throws RouterException;
+
     /**
      * <p>
      * Call this method to broadcast a UDP message to all hosts on the network.
@@ -30,6 +30,8 @@ import org.fourthline.cling.transport.spi.MulticastReceiver;
 import org.fourthline.cling.transport.spi.NetworkAddressFactory;
 import org.fourthline.cling.transport.spi.NoNetworkException;
 import org.fourthline.cling.transport.spi.StreamClient;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
+import org.fourthline.cling.transport.spi.StreamResponseFuture;
 import org.fourthline.cling.transport.spi.StreamServer;
 import org.fourthline.cling.transport.spi.UpnpStream;
 import org.seamless.util.Exceptions;
@@ -43,11 +45,13 @@ import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -82,6 +86,9 @@ public class RouterImpl implements Router {
     protected final Map<InetAddress, DatagramIO> datagramIOs = new HashMap<>();
     protected final Map<InetAddress, StreamServer> streamServers = new HashMap<>();
 
+    // Published when the router has been enabled, read without locking
+    protected volatile List<NetworkAddress> activeStreamServerAddresses = Collections.emptyList();
+
     protected RouterImpl() {
     }
 
@@ -141,6 +148,7 @@ public class RouterImpl implements Router {
                     // Start the HTTP client last, we don't even have to try if there is no network
                     streamClient = getConfiguration().createStreamClient();
 
+                    activeStreamServerAddresses = createActiveStreamServerAddresses();
                     enabled = true;
                     return true;
                 } catch (InitializationException ex) {
@@ -160,6 +168,8 @@ public class RouterImpl implements Router {
             if (enabled) {
                 log.fine("Disabling network services...");
 
+                activeStreamServerAddresses = Collections.emptyList();
+
                 if (streamClient != null) {
                     log.fine("Stopping stream client connection management/pool");
                     streamClient.stop();
@@ -214,39 +224,34 @@ public class RouterImpl implements Router {
         }
     }
 
+    /**
+     * Returns the addresses computed when the router was enabled, without acquiring the router lock.
+     */
     public List<NetworkAddress> getActiveStreamServers(InetAddress preferredAddress) throws RouterException {
-        lock(readLock);
-        try {
-            if (enabled && streamServers.size() > 0) {
-                List<NetworkAddress> streamServerAddresses = new ArrayList<>();
-
-                StreamServer preferredServer;
-                if (preferredAddress != null &&
-                    (preferredServer = streamServers.get(preferredAddress)) != null) {
-                    streamServerAddresses.add(
-                        new NetworkAddress(
-                            preferredAddress,
-                            preferredServer.getPort(),
-                            networkAddressFactory.getHardwareAddress(preferredAddress)
-
-                        )
-                    );
-                    return streamServerAddresses;
-                }
-
-                for (Map.Entry<InetAddress, StreamServer> entry : streamServers.entrySet()) {
-                    byte[] hardwareAddress = networkAddressFactory.getHardwareAddress(entry.getKey());
-                    streamServerAddresses.add(
-                        new NetworkAddress(entry.getKey(), entry.getValue().getPort(), hardwareAddress)
-                    );
-                }
-                return streamServerAddresses;
-            } else {
-                return Collections.EMPTY_LIST;
+        List<NetworkAddress> streamServerAddresses = activeStreamServerAddresses;
+        if (preferredAddress != null) {
+            for (NetworkAddress streamServerAddress : streamServerAddresses) {
+                if (streamServerAddress.getAddress().equals(preferredAddress))
+                    return Collections.singletonList(streamServerAddress);
             }
-        } finally {
-            unlock(readLock);
         }
+        return streamServerAddresses;
+    }
+
+    /**
+     * Called by {@link #enable()} after all transports have been started.
+     *
+     * @return An immutable list of the addresses of all stream servers.
+     */
+    protected List<NetworkAddress> createActiveStreamServerAddresses() {
+        List<NetworkAddress> streamServerAddresses = new ArrayList<>(streamServers.size());
+        for (Map.Entry<InetAddress, StreamServer> entry : streamServers.entrySet()) {
+            byte[] hardwareAddress = networkAddressFactory.getHardwareAddress(entry.getKey());
+            streamServerAddresses.add(
+                new NetworkAddress(entry.getKey(), entry.getValue().getPort(), hardwareAddress)
+            );
+        }
+        return Collections.unmodifiableList(streamServerAddresses);
     }
 
     /**
@@ -316,31 +321,93 @@ public class RouterImpl implements Router {
         }
     }
 
+    /**
+     * Sends the UDP datagrams on all bound {@link org.fourthline.cling.transport.spi.DatagramIO}s.
+     * <p>
+     * Each message is written into a datagram only once, then all datagrams are sent on each
+     * <code>DatagramIO</code> in a single pass.
+     * </p>
+     *
+     * @param msgs The UDP datagram messages to send.
+     */
+    public void send(Collection<? extends OutgoingDatagramMessage> msgs) throws RouterException {
+        if (msgs.isEmpty())
+            return;
+        lock(readLock);
+        try {
+            if (enabled) {
+                if (datagramIOs.isEmpty())
+                    return;
+                List<DatagramPacket> datagrams = new ArrayList<>(msgs.size());
+                for (OutgoingDatagramMessage msg : msgs) {
+                    datagrams.add(getConfiguration().getDatagramProcessor().write(msg));
+                }
+                for (DatagramIO datagramIO : datagramIOs.values()) {
+                    datagramIO.send(datagrams);
+                }
+            } else {
+                log.fine("Router disabled, not sending " + msgs.size() + " datagrams");
+            }
+        } finally {
+            unlock(readLock);
+        }
+    }
+
     /**
      * Sends the TCP stream request with the {@link org.fourthline.cling.transport.spi.StreamClient}.
+     * <p>
+     * The router lock is only held while the stream client is obtained, not while waiting for the response.
+     * </p>
      *
      * @param msg The TCP (HTTP) stream message to send.
      * @return The return value of the {@link org.fourthline.cling.transport.spi.StreamClient#sendRequest(StreamRequestMessage)}
      *         method or <code>null</code> if no <code>StreamClient</code> is available.
      */
     public StreamResponseMessage send(StreamRequestMessage msg) throws RouterException {
+        StreamClient client = getStreamClient(msg);
+        if (client == null)
+            return null;
+        log.fine("Sending via TCP unicast stream: " + msg);
+        try {
+            return client.sendRequest(msg);
+        } catch (InterruptedException ex) {
+            throw new RouterException("Sending stream request was interrupted", ex);
+        }
+    }
+
+    /**
+     * Sends the TCP stream request with the {@link org.fourthline.cling.transport.spi.StreamClient},
+     * without blocking the calling thread.
+     *
+     * @param msg The TCP (HTTP) stream message to send.
+     * @param callback Receives the response, or <code>null</code> if no <code>StreamClient</code> is available.
+     * @return The return value of the {@link org.fourthline.cling.transport.spi.StreamClient#sendRequestAsync(StreamRequestMessage, StreamResponseCallback)}
+     *         method or a completed future if no <code>StreamClient</code> is available.
+     */
+    public Future<StreamResponseMessage> sendAsync(StreamRequestMessage msg, StreamResponseCallback callback) throws RouterException {
+        StreamClient client = getStreamClient(msg);
+        if (client == null) {
+            StreamResponseFuture responseFuture = new StreamResponseFuture(callback);
+            responseFuture.complete(null);
+            return responseFuture;
+        }
+        log.fine("Sending asynchronously via TCP unicast stream: " + msg);
+        return client.sendRequestAsync(msg, callback);
+    }
+
+    /**
+     * @return The stream client, or <code>null</code> if the router is disabled or has no client.
+     */
+    protected StreamClient getStreamClient(StreamRequestMessage msg) throws RouterException {
         lock(readLock);
         try {
-            if (enabled) {
-                if (streamClient == null) {
-                    log.fine("No StreamClient available, not sending: " + msg);
-                    return null;
-                }
-                log.fine("Sending via TCP unicast stream: " + msg);
-                try {
-                    return streamClient.sendRequest(msg);
-                } catch (InterruptedException ex) {
-                    throw new RouterException("Sending stream request was interrupted", ex);
-                }
-            } else {
+            if (!enabled) {
                 log.fine("Router disabled, not sending stream request: " + msg);
                 return null;
             }
+            if (streamClient == null)
+                log.fine("No StreamClient available, not sending: " + msg);
+            return streamClient;
         } finally {
             unlock(readLock);
         }
@@ -27,6 +27,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
 import java.net.SocketException;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -165,4 +166,23 @@ public class DatagramIOImpl implements DatagramIO<DatagramIOConfigurationImpl> {
             log.log(Level.SEVERE, "Exception sending datagram to: " + datagram.getAddress() + ": " + ex, ex);
         }
     }
+
+    synchronized public void send(List<DatagramPacket> datagrams) {
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Sending " + datagrams.size() + " datagrams from address: " + localAddress);
+        }
+
+        for (DatagramPacket datagram : datagrams) {
+            try {
+                socket.send(datagram);
+            } catch (SocketException ex) {
+                log.fine("Socket closed, aborting datagram send to: " + datagram.getAddress());
+                return;
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                log.log(Level.SEVERE, "Exception sending datagram to: " + datagram.getAddress() + ": " + ex, ex);
+            }
+        }
+    }
 }
@@ -18,9 +18,9 @@ package org.fourthline.cling.transport.impl;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
+import org.fourthline.cling.model.message.DatagramHeaders;
 import org.fourthline.cling.model.message.IncomingDatagramMessage;
 import org.fourthline.cling.model.message.OutgoingDatagramMessage;
-import org.fourthline.cling.model.message.UpnpHeaders;
 import org.fourthline.cling.model.message.UpnpOperation;
 import org.fourthline.cling.model.message.UpnpRequest;
 import org.fourthline.cling.model.message.UpnpResponse;
@@ -28,7 +28,6 @@ import org.fourthline.cling.transport.spi.DatagramProcessor;
 import org.fourthline.cling.model.UnsupportedDataException;
 import org.seamless.http.Headers;
 
-import java.io.ByteArrayInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
@@ -45,30 +44,69 @@ public class DatagramProcessorImpl implements DatagramProcessor {
 
     public IncomingDatagramMessage read(InetAddress receivedOnAddress, DatagramPacket datagram) throws UnsupportedDataException {
 
+        byte[] data = datagram.getData();
+        int offset = datagram.getOffset();
+        int end = offset + datagram.getLength();
+
         try {
 
             if (log.isLoggable(Level.FINER)) {
                 log.finer("===================================== DATAGRAM BEGIN ============================================");
-                log.finer(new String(datagram.getData(), "UTF-8"));
+                log.finer(new String(data, offset, datagram.getLength(), "UTF-8"));
                 log.finer("-===================================== DATAGRAM END =============================================");
             }
 
-            ByteArrayInputStream is = new ByteArrayInputStream(datagram.getData());
-
-            String[] startLine = Headers.readLine(is).split(" ");
-            if (startLine[0].startsWith("HTTP/1.")) {
-                return readResponseMessage(receivedOnAddress, datagram, is, Integer.valueOf(startLine[1]), startLine[2], startLine[0]);
+            // The start line has three tokens, the last one extends to the end of the line
+            int lineEnd = offset;
+            while (lineEnd < end && data[lineEnd] != '\r' && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int firstSpace = indexOf(data, (byte) ' ', offset, lineEnd);
+            int secondSpace = indexOf(data, (byte) ' ', firstSpace + 1, lineEnd);
+            if (firstSpace == -1 || secondSpace == -1)
+                throw new UnsupportedDataException("Invalid start line: " + new String(data, offset, lineEnd - offset, DatagramHeaders.CHARSET));
+
+            String first = new String(data, offset, firstSpace - offset, DatagramHeaders.CHARSET);
+            String second = new String(data, firstSpace + 1, secondSpace - firstSpace - 1, DatagramHeaders.CHARSET);
+            String third = new String(data, secondSpace + 1, lineEnd - secondSpace - 1, DatagramHeaders.CHARSET);
+
+            int headersStart = lineEnd;
+            if (headersStart < end && data[headersStart] == '\r')
+                headersStart++;
+            if (headersStart < end && data[headersStart] == '\n')
+                headersStart++;
+            DatagramHeaders headers = new DatagramHeaders(data, headersStart, end - headersStart);
+
+            if (first.startsWith("HTTP/1.")) {
+                return readResponseMessage(receivedOnAddress, datagram, headers, Integer.valueOf(second), third, first);
             } else {
-                return readRequestMessage(receivedOnAddress, datagram, is, startLine[0], startLine[2]);
+                return readRequestMessage(receivedOnAddress, datagram, headers, first, third);
             }
 
+        } catch (UnsupportedDataException ex) {
+            throw ex;
         } catch (Exception ex) {
-            throw new UnsupportedDataException("Could not parse headers: " + ex, ex, datagram.getData());
+            throw new UnsupportedDataException("Could not parse headers: " + ex, ex, data);
         }
     }
 
     public DatagramPacket write(OutgoingDatagramMessage message) throws UnsupportedDataException {
 
+        byte[] data = message.getEncodedData();
+        if (data == null) {
+            data = encode(message);
+            if (message.isTemplate())
+                message.setEncodedData(data);
+        } else if (log.isLoggable(Level.FINER)) {
+            log.finer("Reusing encoded data of message template: " + message);
+        }
+
+        log.fine("Writing new datagram packet with " + data.length + " bytes for: " + message);
+        return new DatagramPacket(data, data.length, message.getDestinationAddress(), message.getDestinationPort());
+    }
+
+    protected byte[] encode(OutgoingDatagramMessage message) throws UnsupportedDataException {
+
         StringBuilder statusLine = new StringBuilder();
 
         UpnpOperation operation = message.getOperation();
@@ -106,10 +144,7 @@ public class DatagramProcessorImpl implements DatagramProcessor {
         try {
             // According to HTTP 1.0 RFC, headers and their values are US-ASCII
             // TODO: Probably should look into escaping rules, too
-            byte[] data = messageData.toString().getBytes("US-ASCII");
-
-            log.fine("Writing new datagram packet with " + data.length + " bytes for: " + message);
-            return new DatagramPacket(data, data.length, message.getDestinationAddress(), message.getDestinationPort());
+            return messageData.toString().getBytes("US-ASCII");
 
         } catch (UnsupportedEncodingException ex) {
             throw new UnsupportedDataException(
@@ -120,44 +155,41 @@ public class DatagramProcessorImpl implements DatagramProcessor {
 
     protected IncomingDatagramMessage readRequestMessage(InetAddress receivedOnAddress,
                                                          DatagramPacket datagram,
-                                                         ByteArrayInputStream is,
+                                                         DatagramHeaders headers,
                                                          String requestMethod,
                                                          String httpProtocol) throws Exception {
 
-        // Headers
-        UpnpHeaders headers = new UpnpHeaders(is);
-
         // Assemble message
         IncomingDatagramMessage requestMessage;
         UpnpRequest upnpRequest = new UpnpRequest(UpnpRequest.Method.getByHttpName(requestMethod));
         upnpRequest.setHttpMinorVersion(httpProtocol.toUpperCase(Locale.ROOT).equals("HTTP/1.1") ? 1 : 0);
-        requestMessage = new IncomingDatagramMessage(upnpRequest, datagram.getAddress(), datagram.getPort(), receivedOnAddress);
-
-        requestMessage.setHeaders(headers);
+        requestMessage = new IncomingDatagramMessage(upnpRequest, datagram.getAddress(), datagram.getPort(), receivedOnAddress, headers);
 
         return requestMessage;
     }
 
     protected IncomingDatagramMessage readResponseMessage(InetAddress receivedOnAddress,
                                                           DatagramPacket datagram,
-                                                          ByteArrayInputStream is,
+                                                          DatagramHeaders headers,
                                                           int statusCode,
                                                           String statusMessage,
                                                           String httpProtocol) throws Exception {
 
-        // Headers
-        UpnpHeaders headers = new UpnpHeaders(is);
-
         // Assemble the message
         IncomingDatagramMessage responseMessage;
         UpnpResponse upnpResponse = new UpnpResponse(statusCode, statusMessage);
         upnpResponse.setHttpMinorVersion(httpProtocol.toUpperCase(Locale.ROOT).equals("HTTP/1.1") ? 1 : 0);
-        responseMessage = new IncomingDatagramMessage(upnpResponse, datagram.getAddress(), datagram.getPort(), receivedOnAddress);
-
-        responseMessage.setHeaders(headers);
+        responseMessage = new IncomingDatagramMessage(upnpResponse, datagram.getAddress(), datagram.getPort(), receivedOnAddress, headers);
 
         return responseMessage;
     }
 
+    protected int indexOf(byte[] data, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == b)
+                return i;
+        }
+        return -1;
+    }
 
 }
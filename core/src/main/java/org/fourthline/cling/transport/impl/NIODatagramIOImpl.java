@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.transport.impl;
+
+import org.fourthline.cling.model.UnsupportedDataException;
+import org.fourthline.cling.model.message.OutgoingDatagramMessage;
+import org.fourthline.cling.transport.Router;
+import org.fourthline.cling.transport.spi.DatagramIO;
+import org.fourthline.cling.transport.spi.DatagramProcessor;
+import org.fourthline.cling.transport.spi.InitializationException;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation based on a <code>DatagramChannel</code>, with reusable direct buffers for sending.
+ * <p>
+ * Enable this implementation by returning it from
+ * {@link org.fourthline.cling.UpnpServiceConfiguration#createDatagramIO(org.fourthline.cling.transport.spi.NetworkAddressFactory)},
+ * the default configurations do if their <code>isNIODatagramIO()</code> returns <code>true</code>.
+ * </p>
+ * <p>
+ * The receiving thread reads every datagram into the array of the same <code>DatagramPacket</code>,
+ * and hands it to the {@link DatagramProcessor} without copying. Senders take a direct buffer from a
+ * small pool and return it after the datagram has been written, the channel can be used by several
+ * threads concurrently. The encoded data of message templates is sent without creating a
+ * <code>DatagramPacket</code>.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class NIODatagramIOImpl implements DatagramIO<DatagramIOConfigurationImpl> {
+
+    private static Logger log = Logger.getLogger(DatagramIO.class.getName());
+
+    public static final int MAX_POOLED_BUFFERS = 4;
+
+    final protected DatagramIOConfigurationImpl configuration;
+
+    protected Router router;
+    protected DatagramProcessor datagramProcessor;
+
+    protected InetSocketAddress localAddress;
+    protected DatagramChannel channel;
+
+    final protected Deque<ByteBuffer> bufferPool = new ArrayDeque<>();
+
+    public NIODatagramIOImpl(DatagramIOConfigurationImpl configuration) {
+        this.configuration = configuration;
+    }
+
+    public DatagramIOConfigurationImpl getConfiguration() {
+        return configuration;
+    }
+
+    synchronized public void init(InetAddress bindAddress, Router router, DatagramProcessor datagramProcessor) throws InitializationException {
+
+        this.router = router;
+        this.datagramProcessor = datagramProcessor;
+
+        DatagramChannel newChannel = null;
+        try {
+            // Bound to an ephemeral port, see DatagramIOImpl
+            log.info("Creating bound channel (for datagram input/output) on: " + bindAddress);
+            localAddress = new InetSocketAddress(bindAddress, 0);
+            newChannel = DatagramChannel.open(
+                bindAddress instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET
+            );
+            newChannel.setOption(StandardSocketOptions.SO_RCVBUF, 262144); // Keep a backlog of incoming datagrams if we are not fast enough
+            newChannel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, configuration.getTimeToLive());
+            NetworkInterface networkInterface = NetworkInterface.getByInetAddress(bindAddress);
+            if (networkInterface != null)
+                newChannel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+            newChannel.bind(localAddress);
+            localAddress = (InetSocketAddress) newChannel.getLocalAddress();
+            channel = newChannel;
+        } catch (Exception ex) {
+            if (newChannel != null) {
+                try {
+                    newChannel.close();
+                } catch (IOException closeEx) {
+                    log.fine("Could not close channel: " + closeEx);
+                }
+            }
+            throw new InitializationException("Could not initialize " + getClass().getSimpleName() + ": " + ex);
+        }
+    }
+
+    synchronized public void stop() {
+        if (channel != null && channel.isOpen()) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                log.fine("Could not close channel: " + ex);
+            }
+        }
+    }
+
+    public void run() {
+        DatagramChannel currentChannel;
+        synchronized (this) {
+            currentChannel = channel;
+        }
+        log.fine("Entering blocking receiving loop, listening for UDP datagrams on: " + localAddress);
+
+        // The processor reads the packet's array, a direct buffer would have to be copied
+        byte[] data = new byte[getConfiguration().getMaxDatagramBytes()];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        DatagramPacket datagram = new DatagramPacket(data, data.length);
+        while (true) {
+            try {
+                buffer.clear();
+                SocketAddress sender = currentChannel.receive(buffer);
+                datagram.setData(data, 0, buffer.position());
+                datagram.setSocketAddress(sender);
+
+                if (log.isLoggable(Level.FINE))
+                    log.fine("UDP datagram received from: " + sender + " on: " + localAddress);
+
+                router.received(datagramProcessor.read(localAddress.getAddress(), datagram));
+
+            } catch (ClosedChannelException ex) {
+                log.fine("Channel closed");
+                break;
+            } catch (UnsupportedDataException ex) {
+                log.info("Could not read datagram: " + ex.getMessage());
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    public void send(OutgoingDatagramMessage message) {
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Sending UDP datagram to: " + message.getDestinationAddress() + ":" + message.getDestinationPort());
+        }
+        byte[] data = message.getEncodedData();
+        if (data != null) {
+            ByteBuffer buffer = acquireBuffer();
+            try {
+                send(buffer, data, 0, data.length, new InetSocketAddress(message.getDestinationAddress(), message.getDestinationPort()));
+            } finally {
+                releaseBuffer(buffer);
+            }
+        } else {
+            send(datagramProcessor.write(message));
+        }
+    }
+
+    public void send(DatagramPacket datagram) {
+        send(Collections.singletonList(datagram));
+    }
+
+    public void send(List<DatagramPacket> datagrams) {
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Sending " + datagrams.size() + " datagrams from address: " + localAddress);
+        }
+        ByteBuffer buffer = acquireBuffer();
+        try {
+            for (DatagramPacket datagram : datagrams) {
+                if (!send(buffer, datagram.getData(), datagram.getOffset(), datagram.getLength(), datagram.getSocketAddress()))
+                    return;
+            }
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the channel has been closed.
+     */
+    protected boolean send(ByteBuffer buffer, byte[] data, int offset, int length, SocketAddress destination) {
+        try {
+            ByteBuffer source;
+            if (length <= buffer.capacity()) {
+                buffer.clear();
+                buffer.put(data, offset, length);
+                buffer.flip();
+                source = buffer;
+            } else {
+                source = ByteBuffer.wrap(data, offset, length);
+            }
+            channel.send(source, destination);
+            return true;
+        } catch (ClosedChannelException ex) {
+            log.fine("Channel closed, aborting datagram send to: " + destination);
+            return false;
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            log.log(Level.SEVERE, "Exception sending datagram to: " + destination + ": " + ex, ex);
+            return true;
+        }
+    }
+
+    protected ByteBuffer acquireBuffer() {
+        synchronized (bufferPool) {
+            ByteBuffer buffer = bufferPool.poll();
+            if (buffer != null)
+                return buffer;
+        }
+        return ByteBuffer.allocateDirect(getConfiguration().getMaxDatagramBytes());
+    }
+
+    protected void releaseBuffer(ByteBuffer buffer) {
+        synchronized (bufferPool) {
+            if (bufferPool.size() < MAX_POOLED_BUFFERS)
+                bufferPool.push(buffer);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.transport.impl;
+
+import org.fourthline.cling.model.UnsupportedDataException;
+import org.fourthline.cling.transport.Router;
+import org.fourthline.cling.transport.spi.DatagramProcessor;
+import org.fourthline.cling.transport.spi.InitializationException;
+import org.fourthline.cling.transport.spi.MulticastReceiver;
+import org.fourthline.cling.transport.spi.NetworkAddressFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation based on non-blocking <code>DatagramChannel</code>s, one thread serves all network interfaces.
+ * <p>
+ * The same instance has to be returned by
+ * {@link org.fourthline.cling.UpnpServiceConfiguration#createMulticastReceiver(NetworkAddressFactory)}
+ * for all network interfaces, as the default configurations do if their <code>isNIOMulticastReceiver()</code>
+ * returns <code>true</code>. Each call of {@link #init(NetworkInterface, Router, NetworkAddressFactory, DatagramProcessor)}
+ * joins the multicast group on another interface, with its own channel registered on a shared <code>Selector</code>.
+ * Only the first executed {@link #run()} enters the receiving loop, any other invocation returns immediately.
+ * A call of {@link #stop()} closes all channels, the receiver can then be initialized again.
+ * </p>
+ * <p>
+ * Datagrams are received into a single buffer, which is reused after the {@link DatagramProcessor}
+ * has read each datagram on the receiving thread.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class NIOMulticastReceiverImpl implements MulticastReceiver<MulticastReceiverConfigurationImpl> {
+
+    private static Logger log = Logger.getLogger(MulticastReceiver.class.getName());
+
+    final protected MulticastReceiverConfigurationImpl configuration;
+
+    protected Router router;
+    protected NetworkAddressFactory networkAddressFactory;
+    protected DatagramProcessor datagramProcessor;
+
+    protected InetSocketAddress multicastAddress;
+    protected Selector selector;
+    protected Selector receivingSelector;
+    final protected Map<NetworkInterface, MembershipKey> memberships = new HashMap<>();
+    final protected List<MembershipKey> pendingRegistrations = new ArrayList<>();
+
+    public NIOMulticastReceiverImpl(MulticastReceiverConfigurationImpl configuration) {
+        this.configuration = configuration;
+    }
+
+    public MulticastReceiverConfigurationImpl getConfiguration() {
+        return configuration;
+    }
+
+    synchronized public void init(NetworkInterface networkInterface,
+                                  Router router,
+                                  NetworkAddressFactory networkAddressFactory,
+                                  DatagramProcessor datagramProcessor) throws InitializationException {
+
+        this.router = router;
+        this.networkAddressFactory = networkAddressFactory;
+        this.datagramProcessor = datagramProcessor;
+
+        if (memberships.containsKey(networkInterface)) {
+            log.fine("Already joined multicast group on network interface: " + networkInterface.getDisplayName());
+            return;
+        }
+
+        DatagramChannel channel = null;
+        try {
+            if (selector == null)
+                selector = Selector.open();
+
+            log.info("Creating wildcard channel (for receiving multicast datagrams) on port: " + configuration.getPort());
+            multicastAddress = new InetSocketAddress(configuration.getGroup(), configuration.getPort());
+
+            channel = DatagramChannel.open(
+                configuration.getGroup() instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET
+            );
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, 32768); // Keep a backlog of incoming datagrams if we are not fast enough
+            channel.bind(new InetSocketAddress(configuration.getPort()));
+            channel.configureBlocking(false);
+
+            log.info("Joining multicast group: " + multicastAddress + " on network interface: " + networkInterface.getDisplayName());
+            MembershipKey membership = channel.join(configuration.getGroup(), networkInterface);
+            memberships.put(networkInterface, membership);
+
+            // Registration blocks while the receiving thread is selecting, so it's done on that thread
+            pendingRegistrations.add(membership);
+            selector.wakeup();
+
+        } catch (Exception ex) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException closeEx) {
+                    log.fine("Could not close channel: " + closeEx);
+                }
+            }
+            throw new InitializationException("Could not initialize " + getClass().getSimpleName() + ": " + ex);
+        }
+    }
+
+    synchronized public void stop() {
+        for (MembershipKey membership : memberships.values()) {
+            try {
+                log.fine("Leaving multicast group on network interface: " + membership.networkInterface().getDisplayName());
+                membership.drop();
+                membership.channel().close();
+            } catch (Exception ex) {
+                log.fine("Could not close multicast channel: " + ex);
+            }
+        }
+        memberships.clear();
+        pendingRegistrations.clear();
+        if (selector != null) {
+            try {
+                // Wakes up and ends the receiving loop
+                selector.close();
+            } catch (IOException ex) {
+                log.fine("Could not close selector: " + ex);
+            }
+            selector = null;
+        }
+    }
+
+    public void run() {
+        Selector currentSelector;
+        synchronized (this) {
+            if (selector == null || receivingSelector == selector) {
+                log.fine("Multicast channels are already served by another thread, or receiver has been stopped");
+                return;
+            }
+            currentSelector = receivingSelector = selector;
+        }
+
+        log.fine("Entering selecting loop, listening for UDP datagrams on port: " + getConfiguration().getPort());
+        ByteBuffer buffer = ByteBuffer.allocate(getConfiguration().getMaxDatagramBytes());
+        DatagramPacket datagram = new DatagramPacket(buffer.array(), buffer.capacity());
+        try {
+            while (currentSelector.isOpen()) {
+
+                registerPending(currentSelector);
+
+                currentSelector.select();
+
+                Iterator<SelectionKey> it = currentSelector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && key.isReadable())
+                        receive((DatagramChannel) key.channel(), (NetworkInterface) key.attachment(), buffer, datagram);
+                }
+            }
+        } catch (ClosedSelectorException ex) {
+            log.fine("Selector closed");
+        } catch (IOException ex) {
+            if (currentSelector.isOpen())
+                throw new RuntimeException(ex);
+            log.fine("Channel closed");
+        } finally {
+            synchronized (this) {
+                if (receivingSelector == currentSelector)
+                    receivingSelector = null;
+            }
+        }
+    }
+
+    synchronized protected void registerPending(Selector currentSelector) throws IOException {
+        if (currentSelector != selector)
+            return;
+        for (MembershipKey membership : pendingRegistrations) {
+            if (membership.channel().isOpen())
+                ((DatagramChannel) membership.channel()).register(currentSelector, SelectionKey.OP_READ, membership.networkInterface());
+        }
+        pendingRegistrations.clear();
+    }
+
+    /**
+     * Reads all datagrams queued on the channel, the buffer and datagram are reused for each.
+     */
+    protected void receive(DatagramChannel channel,
+                           NetworkInterface networkInterface,
+                           ByteBuffer buffer,
+                           DatagramPacket datagram) throws IOException {
+        while (true) {
+            buffer.clear();
+            InetSocketAddress sender = (InetSocketAddress) channel.receive(buffer);
+            if (sender == null)
+                return;
+
+            datagram.setData(buffer.array(), buffer.arrayOffset(), buffer.position());
+            datagram.setSocketAddress(sender);
+
+            InetAddress receivedOnLocalAddress =
+                    networkAddressFactory.getLocalAddress(
+                        networkInterface,
+                        multicastAddress.getAddress() instanceof Inet6Address,
+                        sender.getAddress()
+                    );
+
+            if (log.isLoggable(Level.FINE))
+                log.fine(
+                    "UDP datagram received from: " + sender.getAddress().getHostAddress()
+                        + ":" + sender.getPort()
+                        + " on local interface: " + networkInterface.getDisplayName()
+                        + " and address: " + receivedOnLocalAddress.getHostAddress()
+                );
+
+            try {
+                router.received(datagramProcessor.read(receivedOnLocalAddress, datagram));
+            } catch (UnsupportedDataException ex) {
+                log.info("Could not read datagram: " + ex.getMessage());
+            }
+        }
+    }
+
+}
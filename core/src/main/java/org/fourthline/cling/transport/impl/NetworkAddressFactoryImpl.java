@@ -34,7 +34,9 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Locale;
 import java.util.logging.Level;
@@ -54,6 +56,9 @@ public class NetworkAddressFactoryImpl implements NetworkAddressFactory {
     // Ephemeral port is the default
     public static final int DEFAULT_TCP_HTTP_LISTEN_PORT = 0;
 
+    // Remote addresses of the most recently received multicast datagrams
+    public static final int LOCAL_ADDRESS_CACHE_SIZE = 256;
+
     private static Logger log = Logger.getLogger(NetworkAddressFactoryImpl.class.getName());
 
     final protected Set<String> useInterfaces = new HashSet<>();
@@ -62,6 +67,14 @@ public class NetworkAddressFactoryImpl implements NetworkAddressFactory {
     final protected List<NetworkInterface> networkInterfaces = new ArrayList<>();
     final protected List<InetAddress> bindAddresses = new ArrayList<>();
 
+    final protected Map<LocalAddressKey, InetAddress> localAddressCache =
+        new LinkedHashMap<LocalAddressKey, InetAddress>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LocalAddressKey, InetAddress> eldest) {
+                return size() > LOCAL_ADDRESS_CACHE_SIZE;
+            }
+        };
+
     protected int streamListenPort;
 
     /**
@@ -148,6 +161,7 @@ public class NetworkAddressFactoryImpl implements NetworkAddressFactory {
                 synchronized (networkInterfaces) {
                     networkInterfaces.remove(index);
                 }
+                clearLocalAddressCache();
             }
         };
     }
@@ -159,6 +173,7 @@ public class NetworkAddressFactoryImpl implements NetworkAddressFactory {
                 synchronized (bindAddresses) {
                     bindAddresses.remove(index);
                 }
+                clearLocalAddressCache();
             }
         };
     }
@@ -211,7 +226,35 @@ public class NetworkAddressFactoryImpl implements NetworkAddressFactory {
         return null;
     }
 
+    /**
+     * Returns the cached local address if the same remote address has been resolved before on
+     * the given interface, see {@link #resolveLocalAddress(NetworkInterface, boolean, InetAddress)}.
+     */
     public InetAddress getLocalAddress(NetworkInterface networkInterface, boolean isIPv6, InetAddress remoteAddress) {
+        LocalAddressKey key = new LocalAddressKey(networkInterface.getName(), isIPv6, remoteAddress);
+        synchronized (localAddressCache) {
+            InetAddress localAddress = localAddressCache.get(key);
+            if (localAddress != null)
+                return localAddress;
+        }
+        InetAddress localAddress = resolveLocalAddress(networkInterface, isIPv6, remoteAddress);
+        synchronized (localAddressCache) {
+            localAddressCache.put(key, localAddress);
+        }
+        return localAddress;
+    }
+
+    /**
+     * Called when a network interface or bind address is no longer used, the local addresses
+     * are resolved again for all remote addresses.
+     */
+    protected void clearLocalAddressCache() {
+        synchronized (localAddressCache) {
+            localAddressCache.clear();
+        }
+    }
+
+    protected InetAddress resolveLocalAddress(NetworkInterface networkInterface, boolean isIPv6, InetAddress remoteAddress) {
 
         // First try to find a local IP that is in the same subnet as the remote IP
         InetAddress localIPInSubnet = getBindAddressInSubnetOf(remoteAddress);
@@ -510,4 +553,35 @@ public class NetworkAddressFactoryImpl implements NetworkAddressFactory {
         log.info(String.format("Hardware address: %s", Arrays.toString(networkInterface.getHardwareAddress())));
         log.info(String.format("MTU: %s", networkInterface.getMTU()));
     }
+
+    protected static class LocalAddressKey {
+
+        final protected String interfaceName;
+        final protected boolean isIPv6;
+        final protected InetAddress remoteAddress;
+
+        public LocalAddressKey(String interfaceName, boolean isIPv6, InetAddress remoteAddress) {
+            this.interfaceName = interfaceName;
+            this.isIPv6 = isIPv6;
+            this.remoteAddress = remoteAddress;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            LocalAddressKey that = (LocalAddressKey) o;
+            return isIPv6 == that.isIPv6
+                && interfaceName.equals(that.interfaceName)
+                && remoteAddress.equals(that.remoteAddress);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = interfaceName.hashCode();
+            result = 31 * result + (isIPv6 ? 1 : 0);
+            result = 31 * result + remoteAddress.hashCode();
+            return result;
+        }
+    }
 }
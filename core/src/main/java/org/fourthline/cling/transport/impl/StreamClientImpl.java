@@ -25,6 +25,8 @@ import org.fourthline.cling.model.message.UpnpResponse;
 import org.fourthline.cling.model.message.header.UpnpHeader;
 import org.fourthline.cling.transport.spi.InitializationException;
 import org.fourthline.cling.transport.spi.StreamClient;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
+import org.fourthline.cling.transport.spi.StreamResponseFuture;
 import org.seamless.http.Headers;
 import org.seamless.util.Exceptions;
 import org.seamless.util.URIUtil;
@@ -39,6 +41,7 @@ import java.net.URL;
 import java.net.URLStreamHandlerFactory;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -192,6 +195,22 @@ public class StreamClientImpl implements StreamClient {
         }
     }
 
+    /**
+     * The connection blocks a thread of the request executor service until the response has been read.
+     */
+    @Override
+    public Future<StreamResponseMessage> sendRequestAsync(final StreamRequestMessage requestMessage,
+                                                          StreamResponseCallback callback) {
+        final StreamResponseFuture responseFuture = new StreamResponseFuture(callback);
+        getConfiguration().getRequestExecutorService().execute(new Runnable() {
+            public void run() {
+                if (!responseFuture.isDone())
+                    responseFuture.complete(sendRequest(requestMessage));
+            }
+        });
+        return responseFuture;
+    }
+
     @Override
     public void stop() {
         // NOOP
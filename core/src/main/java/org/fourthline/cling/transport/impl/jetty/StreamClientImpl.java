@@ -33,13 +33,17 @@ import org.fourthline.cling.model.message.header.UpnpHeader;
 import org.fourthline.cling.transport.spi.AbstractStreamClient;
 import org.fourthline.cling.transport.spi.InitializationException;
 import org.fourthline.cling.transport.spi.StreamClient;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
+import org.fourthline.cling.transport.spi.StreamResponseFuture;
 import org.seamless.util.Exceptions;
 import org.seamless.util.MimeType;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -135,6 +139,34 @@ public class StreamClientImpl extends AbstractStreamClient<StreamClientConfigura
         };
     }
 
+    /**
+     * Sends the exchange without waiting, Jetty completes the response when the exchange is done
+     * or has expired.
+     */
+    @Override
+    public Future<StreamResponseMessage> sendRequestAsync(StreamRequestMessage requestMessage,
+                                                          StreamResponseCallback callback) {
+        if (log.isLoggable(Level.FINE))
+            log.fine("Sending asynchronous HTTP request: " + requestMessage);
+
+        AsyncHttpContentExchange exchange;
+        try {
+            exchange = new AsyncHttpContentExchange(getConfiguration(), client, requestMessage, callback);
+        } catch (RuntimeException ex) {
+            log.log(Level.WARNING, "HTTP request failed: " + requestMessage, Exceptions.unwrap(ex));
+            StreamResponseFuture failed = new StreamResponseFuture(callback);
+            failed.complete(null);
+            return failed;
+        }
+        try {
+            client.send(exchange);
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "HTTP request failed: " + requestMessage, Exceptions.unwrap(ex));
+            exchange.getResponseFuture().complete(null);
+        }
+        return exchange.getResponseFuture();
+    }
+
     @Override
     protected void abort(HttpContentExchange exchange) {
         exchange.cancel();
@@ -328,6 +360,66 @@ public class StreamClientImpl extends AbstractStreamClient<StreamClientConfigura
             return responseMessage;
         }
     }
-}
 
+    /**
+     * Completes its {@link StreamResponseFuture} when Jetty is done with the exchange, expiration is
+     * handled by Jetty with the configured timeout.
+     */
+    static public class AsyncHttpContentExchange extends HttpContentExchange {
 
+        final protected StreamResponseFuture responseFuture;
+
+        public AsyncHttpContentExchange(StreamClientConfigurationImpl configuration,
+                                        HttpClient client,
+                                        StreamRequestMessage requestMessage,
+                                        StreamResponseCallback callback) {
+            super(configuration, client, requestMessage);
+            this.responseFuture = new StreamResponseFuture(callback) {
+                @Override
+                protected void abort() {
+                    AsyncHttpContentExchange.this.cancel();
+                }
+            };
+            setTimeout(configuration.getTimeoutSeconds() * 1000L);
+        }
+
+        public StreamResponseFuture getResponseFuture() {
+            return responseFuture;
+        }
+
+        @Override
+        protected void onResponseComplete() throws IOException {
+            super.onResponseComplete();
+            StreamResponseMessage response;
+            try {
+                response = createResponse();
+            } catch (Throwable t) {
+                log.log(Level.WARNING, "Error reading response: " + requestMessage, Exceptions.unwrap(t));
+                response = null;
+            }
+            responseFuture.complete(response);
+        }
+
+        @Override
+        protected void onExpire() {
+            super.onExpire();
+            log.info(
+                "Timeout of " + getConfiguration().getTimeoutSeconds()
+                + " seconds while waiting for HTTP request to complete, aborting: " + requestMessage
+            );
+            responseFuture.complete(null);
+        }
+
+        @Override
+        protected void onConnectionFailed(Throwable t) {
+            super.onConnectionFailed(t);
+            responseFuture.complete(null);
+        }
+
+        @Override
+        protected void onException(Throwable t) {
+            super.onException(t);
+            responseFuture.complete(null);
+        }
+    }
+}
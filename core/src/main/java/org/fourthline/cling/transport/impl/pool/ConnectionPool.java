@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.transport.impl.pool;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps idle connections open for reuse, with a limit of open connections per remote host.
+ * <p>
+ * A lease returns the most recently used idle connection of the host, or opens a new connection
+ * if the limit has not been reached. Otherwise the caller waits until another thread releases a
+ * connection, or the timeout expires. Connections idle for longer than the idle timeout are
+ * closed when the pool is used again, there is no background thread.
+ * </p>
+ * <p>
+ * A lease of an idle connection counts as a hit, opening a new connection as a miss. Idle
+ * connections closed after the timeout, or because the remote host closed them, count as
+ * evictions.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class ConnectionPool {
+
+    private static Logger log = Logger.getLogger(ConnectionPool.class.getName());
+
+    /**
+     * Idle connections are checked with a blocking read before reuse after this time.
+     */
+    public static final long VALIDATE_AFTER_IDLE_MILLIS = 1000;
+
+    final protected int maxConnectionsPerHost;
+    final protected long idleTimeoutMillis;
+    final protected int timeoutMillis;
+
+    final protected Map<InetSocketAddress, Host> hosts = new HashMap<>();
+    protected boolean closed;
+    protected volatile long lastEviction = System.currentTimeMillis();
+
+    final protected AtomicLong hitCount = new AtomicLong();
+    final protected AtomicLong missCount = new AtomicLong();
+    final protected AtomicLong evictionCount = new AtomicLong();
+
+    public ConnectionPool(int maxConnectionsPerHost, int idleTimeoutSeconds, int timeoutSeconds) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeoutMillis = idleTimeoutSeconds * 1000L;
+        this.timeoutMillis = timeoutSeconds * 1000;
+    }
+
+    /**
+     * @param address The unresolved address of the remote host, the key of its connections.
+     * @return An open connection, {@link #release(PooledConnection, boolean)} must be called when done.
+     * @throws SocketTimeoutException If no connection was released before the timeout.
+     * @throws IOException If a new connection could not be established, or the pool has been closed.
+     */
+    public PooledConnection lease(InetSocketAddress address) throws IOException, InterruptedException {
+        if (System.currentTimeMillis() - lastEviction > idleTimeoutMillis / 2)
+            evictIdleConnections();
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            PooledConnection idle;
+            synchronized (this) {
+                while (true) {
+                    if (closed)
+                        throw new IOException("Connection pool has been closed");
+                    // The host might have been removed while we were waiting, so look it up again
+                    Host host = hosts.get(address);
+                    if (host == null) {
+                        host = new Host();
+                        hosts.put(address, host);
+                    }
+                    idle = host.idle.pollFirst();
+                    if (idle != null)
+                        break;
+                    if (host.open < maxConnectionsPerHost) {
+                        host.open++;
+                        break;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0)
+                        throw new SocketTimeoutException("Timeout waiting for a free connection to: " + address);
+                    wait(remaining);
+                }
+            }
+
+            if (idle == null) {
+                missCount.incrementAndGet();
+                return connect(address);
+            }
+
+            if (!idle.isStale(VALIDATE_AFTER_IDLE_MILLIS)) {
+                hitCount.incrementAndGet();
+                return idle;
+            }
+
+            if (log.isLoggable(Level.FINE))
+                log.fine("Closing stale connection: " + idle);
+            evictionCount.incrementAndGet();
+            release(idle, false);
+        }
+    }
+
+    /**
+     * Returns a leased connection to the pool, or closes it.
+     *
+     * @param reusable <code>false</code> if the connection can not be used for another request.
+     */
+    public void release(PooledConnection connection, boolean reusable) {
+        boolean close;
+        synchronized (this) {
+            close = closed || !reusable || connection.isClosed();
+            if (close) {
+                connectionClosed(connection.getAddress());
+            } else {
+                connection.setIdleSince(System.currentTimeMillis());
+                hosts.get(connection.getAddress()).idle.addFirst(connection);
+            }
+            notifyAll();
+        }
+        if (close)
+            connection.close();
+    }
+
+    /**
+     * Closes all connections which have been idle for longer than the idle timeout.
+     */
+    public void evictIdleConnections() {
+        List<PooledConnection> expired = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<InetSocketAddress, Host>> it = hosts.entrySet().iterator();
+            while (it.hasNext()) {
+                Host host = it.next().getValue();
+                // The least recently used connections are at the end
+                while (!host.idle.isEmpty() && now - host.idle.peekLast().getIdleSince() > idleTimeoutMillis) {
+                    expired.add(host.idle.pollLast());
+                    host.open--;
+                }
+                if (host.open == 0)
+                    it.remove();
+            }
+            lastEviction = now;
+        }
+        for (PooledConnection connection : expired) {
+            if (log.isLoggable(Level.FINE))
+                log.fine("Closing idle connection: " + connection);
+            connection.close();
+        }
+        evictionCount.addAndGet(expired.size());
+    }
+
+    /**
+     * Closes all idle connections, leased connections are closed when they are released.
+     */
+    public void close() {
+        List<PooledConnection> idle = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for (Host host : hosts.values()) {
+                idle.addAll(host.idle);
+                host.open -= host.idle.size();
+                host.idle.clear();
+            }
+            notifyAll();
+        }
+        for (PooledConnection connection : idle) {
+            connection.close();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return The number of leased and idle connections.
+     */
+    synchronized public int getOpenConnectionCount() {
+        int count = 0;
+        for (Host host : hosts.values()) {
+            count += host.open;
+        }
+        return count;
+    }
+
+    synchronized public int getIdleConnectionCount() {
+        int count = 0;
+        for (Host host : hosts.values()) {
+            count += host.idle.size();
+        }
+        return count;
+    }
+
+    protected PooledConnection connect(InetSocketAddress address) throws IOException {
+        try {
+            PooledConnection connection = new PooledConnection(address, timeoutMillis);
+            if (log.isLoggable(Level.FINE))
+                log.fine("Opened new connection: " + connection);
+            return connection;
+        } catch (IOException | RuntimeException ex) {
+            synchronized (this) {
+                connectionClosed(address);
+                notifyAll();
+            }
+            throw ex;
+        }
+    }
+
+    protected void connectionClosed(InetSocketAddress address) {
+        Host host = hosts.get(address);
+        if (host != null && --host.open == 0)
+            hosts.remove(address);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + getClass().getSimpleName() + ")"
+            + " Hits: " + getHitCount()
+            + " Misses: " + getMissCount()
+            + " Evictions: " + getEvictionCount();
+    }
+
+    protected static class Host {
+        int open;
+        final Deque<PooledConnection> idle = new ArrayDeque<>();
+    }
+
+}
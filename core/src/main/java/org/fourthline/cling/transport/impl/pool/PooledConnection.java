@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.transport.impl.pool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * An open TCP connection to a remote host, leased from and returned to a {@link ConnectionPool}.
+ *
+ * @author Christian Bauer
+ */
+public class PooledConnection {
+
+    final protected InetSocketAddress address;
+    final protected int timeoutMillis;
+    final protected Socket socket;
+    final protected InputStream inputStream;
+    final protected OutputStream outputStream;
+
+    protected int requestCount;
+    protected long idleSince;
+
+    /**
+     * Connects to the remote host, blocking until the connection has been established.
+     *
+     * @param address       The unresolved address of the remote host.
+     * @param timeoutMillis The connect and read timeout.
+     */
+    public PooledConnection(InetSocketAddress address, int timeoutMillis) throws IOException {
+        this.address = address;
+        this.timeoutMillis = timeoutMillis;
+        this.socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutMillis);
+            socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), timeoutMillis);
+            inputStream = new BufferedInputStream(socket.getInputStream());
+            outputStream = new BufferedOutputStream(socket.getOutputStream());
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * @return The number of requests sent on this connection, more than one if it has been reused.
+     */
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    public void incrementRequestCount() {
+        requestCount++;
+    }
+
+    public long getIdleSince() {
+        return idleSince;
+    }
+
+    public void setIdleSince(long idleSince) {
+        this.idleSince = idleSince;
+    }
+
+    /**
+     * Checks if the remote host closed the connection while it was idle.
+     * <p>
+     * A connection with unread data is always stale. Reading from the socket blocks for a
+     * millisecond, so this check is only done if the connection has been idle for longer than
+     * the given time, a recently used connection is assumed to be open.
+     * </p>
+     */
+    public boolean isStale(long validateAfterIdleMillis) {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown())
+            return true;
+        try {
+            if (inputStream.available() > 0)
+                return true;
+            if (System.currentTimeMillis() - idleSince < validateAfterIdleMillis)
+                return false;
+            socket.setSoTimeout(1);
+            try {
+                // End of stream or any unexpected data
+                inputStream.read();
+                return true;
+            } catch (SocketTimeoutException ex) {
+                return false;
+            } finally {
+                socket.setSoTimeout(timeoutMillis);
+            }
+        } catch (IOException ex) {
+            return true;
+        }
+    }
+
+    public boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // Ignore
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(" + getClass().getSimpleName() + ") " + socket.getLocalSocketAddress() + " -> " + address;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.transport.impl.pool;
+
+import org.fourthline.cling.transport.spi.AbstractStreamClientConfiguration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Settings for the pooled connection implementation.
+ * <p>
+ * The timeout of {@link #getTimeoutSeconds()} applies to connecting, to each read, and to
+ * waiting for a free connection when all connections to a host are in use.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class StreamClientConfigurationImpl extends AbstractStreamClientConfiguration {
+
+    private int maxConnectionsPerHost = 2;
+    private int idleTimeoutSeconds = 10;
+
+    public StreamClientConfigurationImpl(ExecutorService timeoutExecutorService) {
+        super(timeoutExecutorService);
+    }
+
+    public StreamClientConfigurationImpl(ExecutorService timeoutExecutorService, int timeoutSeconds) {
+        super(timeoutExecutorService, timeoutSeconds);
+    }
+
+    /**
+     * @return Configured value or default of 2 connections, as recommended for HTTP/1.1 clients.
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * @return Configured value or default of 10 seconds, idle connections are closed after this time.
+     */
+    public int getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds;
+    }
+
+    public void setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+    }
+
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.transport.impl.pool;
+
+import org.fourthline.cling.model.message.StreamRequestMessage;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.UpnpHeaders;
+import org.fourthline.cling.model.message.UpnpMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.model.message.header.ContentTypeHeader;
+import org.fourthline.cling.model.message.header.UpnpHeader;
+import org.fourthline.cling.transport.spi.AbstractStreamClient;
+import org.fourthline.cling.transport.spi.StreamClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation based on plain sockets, with persistent HTTP/1.1 connections kept in a {@link ConnectionPool}.
+ * <p>
+ * Unlike the JDK's <code>HttpURLConnection</code>, which shares a hidden connection cache controlled
+ * by the global <code>http.keepAlive</code> system property, this client keeps its own pool of
+ * connections per remote host. Consecutive control requests and event messages to the same host
+ * reuse an open connection instead of establishing a new TCP connection each time. The maximum
+ * number of connections per host and the idle timeout are set on the {@link StreamClientConfigurationImpl},
+ * connect and read timeouts are the configured {@link StreamClientConfigurationImpl#getTimeoutSeconds()}.
+ * </p>
+ * <p>
+ * If a reused connection fails before any response data has been received, the remote host most
+ * likely closed the idle connection, and the request is sent again on another connection. Only
+ * plain <code>http</code> URIs are supported.
+ * </p>
+ * <p>
+ * The heartbeat of Cling's server-side connection checking with
+ * {@link org.fourthline.cling.model.profile.RemoteClientInfo#isRequestCancelled()}
+ * is skipped when reading the response.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class StreamClientImpl extends AbstractStreamClient<StreamClientConfigurationImpl, StreamClientImpl.PooledExchange> {
+
+    final private static Logger log = Logger.getLogger(StreamClient.class.getName());
+
+    public static final Charset HEADER_CHARSET = Charset.forName("ISO-8859-1");
+    public static final int MAX_LINE_LENGTH = 8192;
+    public static final int MAX_HEADER_BYTES = 65536;
+
+    public static final String HEADER_HOST = "Host";
+    public static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    public static final String HEADER_CONNECTION = "Connection";
+    public static final String HEADER_TRANSFER_ENCODING = "Transfer-Encoding";
+
+    final protected StreamClientConfigurationImpl configuration;
+    final protected ConnectionPool connectionPool;
+
+    public StreamClientImpl(StreamClientConfigurationImpl configuration) {
+        this.configuration = configuration;
+        this.connectionPool = new ConnectionPool(
+            configuration.getMaxConnectionsPerHost(),
+            configuration.getIdleTimeoutSeconds(),
+            configuration.getTimeoutSeconds()
+        );
+    }
+
+    @Override
+    public StreamClientConfigurationImpl getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return The pool of connections, with its hit and miss statistics.
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    @Override
+    protected PooledExchange createRequest(StreamRequestMessage requestMessage) {
+        URI uri = requestMessage.getUri();
+        if (!"http".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+            log.warning("Unsupported URI, only plain HTTP requests are possible: " + uri);
+            return null;
+        }
+        return new PooledExchange(requestMessage);
+    }
+
+    @Override
+    protected Callable<StreamResponseMessage> createCallable(final StreamRequestMessage requestMessage,
+                                                             final PooledExchange exchange) {
+        return new Callable<StreamResponseMessage>() {
+            public StreamResponseMessage call() throws Exception {
+
+                if (log.isLoggable(Level.FINE))
+                    log.fine("Sending HTTP request: " + requestMessage);
+
+                return execute(exchange);
+            }
+        };
+    }
+
+    @Override
+    protected void abort(PooledExchange exchange) {
+        exchange.abort();
+    }
+
+    @Override
+    protected boolean logExecutionException(Throwable t) {
+        if (t instanceof SocketTimeoutException) {
+            log.info("Timeout while waiting for HTTP response: " + t.getMessage());
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        if (log.isLoggable(Level.FINE))
+            log.fine("Closing connections: " + connectionPool);
+        connectionPool.close();
+    }
+
+    protected StreamResponseMessage execute(PooledExchange exchange) throws IOException, InterruptedException {
+        URI uri = exchange.getRequestMessage().getUri();
+        InetSocketAddress address = InetSocketAddress.createUnresolved(
+            uri.getHost(), uri.getPort() != -1 ? uri.getPort() : 80
+        );
+        byte[] request = createRequestBytes(exchange.getRequestMessage());
+
+        int retries = 0;
+        while (true) {
+            PooledConnection connection = connectionPool.lease(address);
+            boolean reused = connection.getRequestCount() > 0;
+            boolean reusable = false;
+            try {
+                exchange.setConnection(connection);
+                connection.incrementRequestCount();
+                connection.getOutputStream().write(request);
+                connection.getOutputStream().flush();
+
+                StreamResponseMessage response = readResponse(exchange, connection.getInputStream());
+                reusable = exchange.isKeepAlive();
+                return response;
+
+            } catch (IOException ex) {
+                if (!reused || exchange.isAborted() || exchange.isResponseStarted()
+                    || retries++ >= getConfiguration().getMaxConnectionsPerHost())
+                    throw ex;
+                if (log.isLoggable(Level.FINE))
+                    log.fine("Reused connection has been closed by remote host, sending request again: " + ex);
+            } finally {
+                exchange.setConnection(null);
+                connectionPool.release(connection, reusable);
+            }
+        }
+    }
+
+    protected byte[] createRequestBytes(StreamRequestMessage requestMessage) throws IOException {
+        UpnpRequest requestOperation = requestMessage.getOperation();
+        URI uri = requestOperation.getURI();
+
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(requestOperation.getHttpMethodName()).append(" ");
+        sb.append(uri.getRawPath() != null && uri.getRawPath().length() > 0 ? uri.getRawPath() : "/");
+        if (uri.getRawQuery() != null)
+            sb.append("?").append(uri.getRawQuery());
+        sb.append(" HTTP/1.1\r\n");
+
+        appendHeader(sb, HEADER_HOST, uri.getHost() + (uri.getPort() != -1 ? ":" + uri.getPort() : ""));
+
+        UpnpHeaders headers = requestMessage.getHeaders();
+
+        // Add the default user agent if not already set on the message
+        if (!headers.containsKey(UpnpHeader.Type.USER_AGENT)) {
+            appendHeader(
+                sb,
+                UpnpHeader.Type.USER_AGENT.getHttpName(),
+                getConfiguration().getUserAgentValue(requestMessage.getUdaMajorVersion(), requestMessage.getUdaMinorVersion())
+            );
+        }
+
+        byte[] body = null;
+        if (requestMessage.hasBody()) {
+            if (requestMessage.getBodyType() == UpnpMessage.BodyType.STRING) {
+                if (requestMessage.getContentTypeHeader() == null)
+                    appendHeader(sb, UpnpHeader.Type.CONTENT_TYPE.getHttpName(), ContentTypeHeader.DEFAULT_CONTENT_TYPE_UTF8.toString());
+                String charset =
+                    requestMessage.getContentTypeCharset() != null
+                        ? requestMessage.getContentTypeCharset()
+                        : "UTF-8";
+                body = requestMessage.getBodyString().getBytes(charset);
+            } else {
+                body = requestMessage.getBodyBytes();
+            }
+            appendHeader(sb, HEADER_CONTENT_LENGTH, Integer.toString(body.length));
+        }
+
+        if (log.isLoggable(Level.FINE))
+            log.fine("Writing headers of HTTP request: " + headers.size());
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            String headerName = entry.getKey();
+            // The connection is managed here
+            if (headerName.equalsIgnoreCase(HEADER_HOST)
+                || headerName.equalsIgnoreCase(HEADER_CONTENT_LENGTH)
+                || headerName.equalsIgnoreCase(HEADER_CONNECTION)
+                || headerName.equalsIgnoreCase(HEADER_TRANSFER_ENCODING))
+                continue;
+            for (String v : entry.getValue()) {
+                appendHeader(sb, headerName, v);
+            }
+        }
+        sb.append("\r\n");
+
+        byte[] head = sb.toString().getBytes(HEADER_CHARSET);
+        if (body == null)
+            return head;
+        byte[] request = new byte[head.length + body.length];
+        System.arraycopy(head, 0, request, 0, head.length);
+        System.arraycopy(body, 0, request, head.length, body.length);
+        return request;
+    }
+
+    protected void appendHeader(StringBuilder sb, String name, String value) {
+        sb.append(name).append(": ").append(value).append("\r\n");
+    }
+
+    protected StreamResponseMessage readResponse(PooledExchange exchange, InputStream is) throws IOException {
+
+        // Skip the heartbeat of a server checking the connection
+        int b;
+        do {
+            b = is.read();
+        } while (b == ' ' || b == '\r' || b == '\n');
+        if (b == -1)
+            throw new EOFException("Connection closed by remote host before receiving a response");
+        exchange.setResponseStarted();
+
+        String statusLine = (char) b + readLine(is);
+        String[] status = statusLine.split(" ", 3);
+        if (status.length < 2 || !status[0].startsWith("HTTP/"))
+            throw new IOException("Invalid HTTP response status line: " + statusLine);
+        int statusCode;
+        try {
+            statusCode = Integer.parseInt(status[1]);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid HTTP response status code: " + statusLine);
+        }
+
+        // Status
+        UpnpResponse responseOperation = new UpnpResponse(statusCode, status.length > 2 ? status[2] : "");
+
+        if (log.isLoggable(Level.FINE))
+            log.fine("Received response: " + responseOperation);
+
+        // Message
+        StreamResponseMessage responseMessage = new StreamResponseMessage(responseOperation);
+
+        // Headers
+        UpnpHeaders headers = new UpnpHeaders(new ByteArrayInputStream(readHeaderBytes(is)));
+        responseMessage.setHeaders(headers);
+
+        // Body
+        boolean keepAlive = isKeepAlive(status[0], headers);
+        byte[] bodyBytes;
+        String transferEncoding = headers.getFirstHeader(HEADER_TRANSFER_ENCODING);
+        String contentLength = headers.getFirstHeader(HEADER_CONTENT_LENGTH);
+        if (statusCode / 100 == 1 || statusCode == 204 || statusCode == 304) {
+            bodyBytes = null;
+        } else if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked")) {
+            bodyBytes = readChunkedBody(is);
+        } else if (contentLength != null) {
+            try {
+                bodyBytes = readBytes(is, Integer.parseInt(contentLength.trim()));
+            } catch (NumberFormatException ex) {
+                throw new IOException("Invalid HTTP response content length: " + contentLength);
+            }
+        } else {
+            // The body ends when the remote host closes the connection
+            bodyBytes = readBody(is);
+            keepAlive = false;
+        }
+        exchange.setKeepAlive(keepAlive);
+
+        if (bodyBytes != null && bodyBytes.length > 0 && responseMessage.isContentTypeMissingOrText()) {
+
+            log.fine("Response contains textual entity body, converting then setting string on message");
+            responseMessage.setBodyCharacters(bodyBytes);
+
+        } else if (bodyBytes != null && bodyBytes.length > 0) {
+
+            log.fine("Response contains binary entity body, setting bytes on message");
+            responseMessage.setBody(UpnpMessage.BodyType.BYTES, bodyBytes);
+
+        } else {
+            log.fine("Response did not contain entity body");
+        }
+
+        log.fine("Response message complete: " + responseMessage);
+        return responseMessage;
+    }
+
+    protected boolean isKeepAlive(String httpVersion, UpnpHeaders headers) {
+        String connection = headers.getFirstHeader(HEADER_CONNECTION);
+        if (connection != null) {
+            connection = connection.toLowerCase(Locale.ROOT);
+            if (connection.contains("close"))
+                return false;
+            if (connection.contains("keep-alive"))
+                return true;
+        }
+        return "HTTP/1.1".equals(httpVersion);
+    }
+
+    /**
+     * @return The header lines, including the empty line at the end.
+     */
+    protected byte[] readHeaderBytes(InputStream is) throws IOException {
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(512);
+        String line;
+        do {
+            line = readLine(is);
+            headerBytes.write(line.getBytes(HEADER_CHARSET));
+            headerBytes.write('\r');
+            headerBytes.write('\n');
+            if (headerBytes.size() > MAX_HEADER_BYTES)
+                throw new IOException("HTTP response headers exceed maximum length: " + MAX_HEADER_BYTES);
+        } while (line.length() > 0);
+        return headerBytes.toByteArray();
+    }
+
+    protected byte[] readChunkedBody(InputStream is) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            String chunkHeader = readLine(is);
+            int extension = chunkHeader.indexOf(';');
+            int chunkSize;
+            try {
+                chunkSize = Integer.parseInt(
+                    (extension != -1 ? chunkHeader.substring(0, extension) : chunkHeader).trim(), 16
+                );
+            } catch (NumberFormatException ex) {
+                throw new IOException("Invalid HTTP response chunk size: " + chunkHeader);
+            }
+            if (chunkSize == 0)
+                break;
+            body.write(readBytes(is, chunkSize));
+            readLine(is);
+        }
+        // Trailer headers are ignored
+        readHeaderBytes(is);
+        return body.toByteArray();
+    }
+
+    protected byte[] readBytes(InputStream is, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = is.read(bytes, offset, length - offset);
+            if (read == -1)
+                throw new EOFException("Connection closed by remote host after " + offset + " of " + length + " bytes");
+            offset += read;
+        }
+        return bytes;
+    }
+
+    protected byte[] readBody(InputStream is) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * @return The line without the line terminator.
+     */
+    protected String readLine(InputStream is) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = is.read()) != '\n') {
+            if (b == -1)
+                throw new EOFException("Connection closed by remote host while reading response line");
+            if (line.length() >= MAX_LINE_LENGTH)
+                throw new IOException("HTTP response line exceeds maximum length: " + MAX_LINE_LENGTH);
+            line.append((char) b);
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r')
+            line.setLength(length - 1);
+        return line.toString();
+    }
+
+    /**
+     * The state of a single request, the connection is closed when the request is aborted.
+     */
+    static public class PooledExchange {
+
+        final protected StreamRequestMessage requestMessage;
+
+        protected volatile PooledConnection connection;
+        protected volatile boolean aborted;
+        protected volatile boolean responseStarted;
+        protected volatile boolean keepAlive;
+
+        public PooledExchange(StreamRequestMessage requestMessage) {
+            this.requestMessage = requestMessage;
+        }
+
+        public StreamRequestMessage getRequestMessage() {
+            return requestMessage;
+        }
+
+        public void setConnection(PooledConnection connection) {
+            this.connection = connection;
+            if (connection != null && aborted)
+                connection.close();
+        }
+
+        public boolean isAborted() {
+            return aborted;
+        }
+
+        public void abort() {
+            aborted = true;
+            PooledConnection current = connection;
+            if (current != null)
+                current.close();
+        }
+
+        public boolean isResponseStarted() {
+            return responseStarted;
+        }
+
+        public void setResponseStarted() {
+            responseStarted = true;
+        }
+
+        public boolean isKeepAlive() {
+            return keepAlive;
+        }
+
+        public void setKeepAlive(boolean keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+    }
+
+}
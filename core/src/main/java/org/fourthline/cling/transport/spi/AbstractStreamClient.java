@@ -23,6 +23,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -102,6 +103,87 @@ public abstract class AbstractStreamClient<C extends StreamClientConfiguration,
         }
     }
 
+    /**
+     * Executes the request on a thread of the request executor service, override this method
+     * if the HTTP client can notify the callback when the response has been received.
+     * <p>
+     * The callable of the request is called directly on that thread, so the request only expires
+     * if the HTTP client enforces the configured timeout itself, as the built-in clients do with
+     * their connect and read timeouts.
+     * </p>
+     */
+    @Override
+    public Future<StreamResponseMessage> sendRequestAsync(final StreamRequestMessage requestMessage,
+                                                          StreamResponseCallback callback) {
+        if (log.isLoggable(Level.FINE))
+            log.fine("Preparing asynchronous HTTP request: " + requestMessage);
+
+        final REQUEST request = createRequest(requestMessage);
+        final AtomicReference<Future<?>> executing = new AtomicReference<>();
+        final StreamResponseFuture responseFuture = new StreamResponseFuture(callback) {
+            @Override
+            protected void abort() {
+                AbstractStreamClient.this.abort(request);
+                Future<?> executingFuture = executing.get();
+                if (executingFuture != null)
+                    executingFuture.cancel(true);
+            }
+        };
+        if (request == null) {
+            responseFuture.complete(null);
+            return responseFuture;
+        }
+
+        final Callable<StreamResponseMessage> callable = createCallable(requestMessage, request);
+        executing.set(getConfiguration().getRequestExecutorService().submit(new Runnable() {
+            public void run() {
+                if (responseFuture.isDone())
+                    return;
+                responseFuture.complete(call(requestMessage, request, callable));
+            }
+        }));
+        return responseFuture;
+    }
+
+    /**
+     * Calls the callable of the request on the current thread.
+     *
+     * @return The response or <code>null</code> if the request failed or has been interrupted.
+     */
+    protected StreamResponseMessage call(StreamRequestMessage requestMessage,
+                                         REQUEST request,
+                                         Callable<StreamResponseMessage> callable) {
+        long start = System.currentTimeMillis();
+        try {
+            StreamResponseMessage response = callable.call();
+
+            long elapsed = System.currentTimeMillis() - start;
+            if (log.isLoggable(Level.FINEST))
+                log.finest("Got HTTP response in " + elapsed + "ms: " + requestMessage);
+            if (getConfiguration().getLogWarningSeconds() > 0
+                && elapsed > getConfiguration().getLogWarningSeconds()*1000) {
+                log.warning("HTTP request took a long time (" + elapsed + "ms): " + requestMessage);
+            }
+
+            return response;
+
+        } catch (InterruptedException ex) {
+
+            if (log.isLoggable(Level.FINE))
+                log.fine("Interruption, aborting request: " + requestMessage);
+            abort(request);
+            return null;
+
+        } catch (Exception ex) {
+            if (!logExecutionException(ex)) {
+                log.log(Level.WARNING, "HTTP request failed: " + requestMessage, Exceptions.unwrap(ex));
+            }
+            return null;
+        } finally {
+            onFinally(request);
+        }
+    }
+
     /**
      * Create a proprietary representation of this request, log warnings and
      * return <code>null</code> if creation fails.
@@ -20,6 +20,7 @@ import org.fourthline.cling.model.message.OutgoingDatagramMessage;
 
 import java.net.InetAddress;
 import java.net.DatagramPacket;
+import java.util.List;
 
 /**
  * Service for receiving (unicast only) and sending UDP datagrams, one per bound IP address.
@@ -87,4 +88,15 @@ public interface DatagramIO<C extends DatagramIOConfiguration> extends Runnable
      * @param datagram The UDP datagram to send.
      */
     public void send(DatagramPacket datagram);
+
+    /**
+     * Sends several UDP datagrams in one pass, see {@link #send(java.net.DatagramPacket)}.
+     * <p>
+     * The same datagram instances are sent by all services of a router, an implementation must not
+     * modify them.
+     * </p>
+     *
+     * @param datagrams The UDP datagrams to send, in order.
+     */
+    public void send(List<DatagramPacket> datagrams);
 }
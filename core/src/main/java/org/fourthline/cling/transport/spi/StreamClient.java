@@ -18,6 +18,8 @@ package org.fourthline.cling.transport.spi;
 import org.fourthline.cling.model.message.StreamRequestMessage;
 import org.fourthline.cling.model.message.StreamResponseMessage;
 
+import java.util.concurrent.Future;
+
 /**
  * Service for sending TCP (HTTP) stream request messages.
  * 
@@ -69,6 +71,20 @@ public interface StreamClient<C extends StreamClientConfiguration> {
      */
     public StreamResponseMessage sendRequest(StreamRequestMessage message) throws InterruptedException;
 
+    /**
+     * Sends the given request via TCP (HTTP) without blocking the calling thread.
+     * <p>
+     * The same rules for expiration, logging, and headers as for {@link #sendRequest(StreamRequestMessage)}
+     * apply. The callback receives a <code>null</code> response if the request expired or an error
+     * occurred.
+     * </p>
+     *
+     * @param message  The message to send.
+     * @param callback The callback receiving the response, or <code>null</code>.
+     * @return The pending response, cancelling it aborts the request.
+     */
+    public Future<StreamResponseMessage> sendRequestAsync(StreamRequestMessage message, StreamResponseCallback callback);
+
     /**
      * Stops the service, closes any connection pools etc.
      */
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.transport.spi;
+
+import org.fourthline.cling.model.message.StreamResponseMessage;
+
+/**
+ * Receives the response of a stream request sent with
+ * {@link StreamClient#sendRequestAsync(org.fourthline.cling.model.message.StreamRequestMessage, StreamResponseCallback)}.
+ * <p>
+ * The callback is called exactly once, unless the request has been cancelled. It might be called on a
+ * thread of the HTTP client, so it should not block.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public interface StreamResponseCallback {
+
+    /**
+     * @param response The response or <code>null</code> if no response has been received or an error occurred.
+     */
+    public void responseReceived(StreamResponseMessage response);
+
+}
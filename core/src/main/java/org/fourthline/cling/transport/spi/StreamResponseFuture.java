@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.transport.spi;
+
+import org.fourthline.cling.model.message.StreamResponseMessage;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The pending response of an asynchronous stream request, completed by the stream client.
+ * <p>
+ * The first call of {@link #complete(StreamResponseMessage)} sets the response and notifies the
+ * {@link StreamResponseCallback}, any further calls are ignored. Cancellation completes the future
+ * without notifying the callback, and calls {@link #abort()}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class StreamResponseFuture implements Future<StreamResponseMessage> {
+
+    final private static Logger log = Logger.getLogger(StreamClient.class.getName());
+
+    final protected StreamResponseCallback callback;
+    final protected AtomicBoolean done = new AtomicBoolean();
+    final protected CountDownLatch latch = new CountDownLatch(1);
+
+    protected volatile StreamResponseMessage response;
+    protected volatile boolean cancelled;
+
+    /**
+     * @param callback The callback to notify, or <code>null</code>.
+     */
+    public StreamResponseFuture(StreamResponseCallback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * @return <code>false</code> if this future was already completed or cancelled.
+     */
+    public boolean complete(StreamResponseMessage response) {
+        if (!done.compareAndSet(false, true))
+            return false;
+        this.response = response;
+        latch.countDown();
+        if (callback != null) {
+            try {
+                callback.responseReceived(response);
+            } catch (Exception ex) {
+                log.log(Level.WARNING, "Stream response callback failed: " + ex, ex);
+            }
+        }
+        return true;
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!done.compareAndSet(false, true))
+            return false;
+        cancelled = true;
+        latch.countDown();
+        abort();
+        return true;
+    }
+
+    /**
+     * Called when this future has been cancelled, stops the request if possible.
+     */
+    protected void abort() {
+        // Do nothing
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return done.get();
+    }
+
+    public StreamResponseMessage get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return getResponse();
+    }
+
+    public StreamResponseMessage get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit))
+            throw new TimeoutException("No response after waiting " + timeout + " " + unit);
+        return getResponse();
+    }
+
+    protected StreamResponseMessage getResponse() {
+        if (cancelled)
+            throw new CancellationException("Stream request has been cancelled");
+        return response;
+    }
+
+}
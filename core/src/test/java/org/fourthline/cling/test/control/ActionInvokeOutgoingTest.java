@@ -23,6 +23,7 @@ import org.fourthline.cling.model.message.StreamRequestMessage;
 import org.fourthline.cling.model.message.StreamResponseMessage;
 import org.fourthline.cling.model.message.UpnpHeaders;
 import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.model.message.control.IncomingActionResponseMessage;
 import org.fourthline.cling.model.message.header.ContentTypeHeader;
 import org.fourthline.cling.model.message.header.SoapActionHeader;
 import org.fourthline.cling.model.message.header.UpnpHeader;
@@ -44,13 +45,16 @@ import org.fourthline.cling.model.types.UDADeviceType;
 import org.fourthline.cling.model.types.UDAServiceId;
 import org.fourthline.cling.model.types.UDAServiceType;
 import org.fourthline.cling.model.types.UnsignedIntegerFourBytes;
+import org.fourthline.cling.protocol.SendingSync;
 import org.fourthline.cling.test.data.SampleData;
 import org.fourthline.cling.test.data.SampleServiceOne;
 import org.fourthline.cling.transport.RouterException;
 import org.testng.annotations.Test;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.testng.Assert.assertEquals;
 
@@ -144,6 +148,47 @@ public class ActionInvokeOutgoingTest {
 
     }
 
+    @Test
+    public void callRemoteGetAsync() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService() {
+            @Override
+            protected MockRouter createRouter() {
+                return new MockRouter(getConfiguration(), getProtocolFactory()) {
+                    @Override
+                    public StreamResponseMessage[] getStreamResponseMessages() {
+                        return new StreamResponseMessage[]{
+                            new StreamResponseMessage(RESPONSE_SUCCESSFUL)
+                        };
+                    }
+                };
+            }
+        };
+
+        RemoteDevice device = SampleData.createRemoteDevice();
+        RemoteService service = SampleData.getFirstService(device);
+        upnpService.getRegistry().addDevice(device);
+
+        ActionInvocation actionInvocation = new ActionInvocation(service.getAction("GetTarget"));
+
+        final List<IncomingActionResponseMessage> completed = new ArrayList<>();
+        upnpService.getProtocolFactory().createSendingAction(
+            actionInvocation,
+            device.normalizeURI(service.getControlURI())
+        ).executeAsync(new SendingSync.Completion<IncomingActionResponseMessage>() {
+            public void completed(IncomingActionResponseMessage outputMessage) {
+                completed.add(outputMessage);
+            }
+        });
+
+        assertEquals(completed.size(), 1);
+        assertEquals(completed.get(0).getOperation().getStatusCode(), UpnpResponse.Status.OK.getStatusCode());
+        assert actionInvocation.getFailure() == null;
+        assertEquals(upnpService.getRouter().getSentStreamRequestMessages().size(), 1);
+        assertEquals(actionInvocation.getOutput().length, 1);
+        assertEquals(actionInvocation.getOutput()[0].toString(), "0");
+    }
+
 
     @Test
     public void callLocalWrongAction() throws Exception {
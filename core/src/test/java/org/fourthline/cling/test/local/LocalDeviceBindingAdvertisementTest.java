@@ -26,23 +26,33 @@ import org.fourthline.cling.binding.annotations.UpnpServiceType;
 import org.fourthline.cling.binding.annotations.UpnpStateVariable;
 import org.fourthline.cling.binding.xml.DeviceDescriptorBinder;
 import org.fourthline.cling.binding.xml.ServiceDescriptorBinder;
+import org.fourthline.cling.mock.MockRouter;
 import org.fourthline.cling.mock.MockUpnpService;
 import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
 import org.fourthline.cling.model.DiscoveryOptions;
 import org.fourthline.cling.model.Namespace;
 import org.fourthline.cling.model.ServerClientTokens;
+import org.fourthline.cling.model.message.OutgoingDatagramMessage;
 import org.fourthline.cling.model.message.UpnpMessage;
 import org.fourthline.cling.model.message.header.UpnpHeader;
 import org.fourthline.cling.model.meta.DeviceDetails;
+import org.fourthline.cling.model.meta.DeviceIdentity;
 import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.meta.RemoteDevice;
 import org.fourthline.cling.model.profile.RemoteClientInfo;
 import org.fourthline.cling.model.types.NotificationSubtype;
 import org.fourthline.cling.model.types.UDADeviceType;
+import org.fourthline.cling.model.types.UDN;
 import org.fourthline.cling.test.data.SampleData;
+import org.fourthline.cling.transport.RouterException;
 import org.seamless.util.URIUtil;
 import org.testng.annotations.Test;
 
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
@@ -204,6 +214,94 @@ public class LocalDeviceBindingAdvertisementTest {
         upnpService.shutdown();
     }
 
+    @Test
+    public void spreadFirstRefresh() throws Exception {
+        Map<String, Long> sendTimes = new ConcurrentHashMap<>();
+        MockUpnpService upnpService = createSendTimeUpnpService(new MockUpnpServiceConfiguration(true), sendTimes);
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < 10; i++) {
+            upnpService.getRegistry().addDevice(
+                DemoBinaryLight.createTestDevice(new DeviceIdentity(new UDN("jitter-" + i), 16))
+            );
+        }
+
+        Thread.sleep(2000);
+        sendTimes.clear(); // Initial advertisement
+
+        // The first refresh is between a quarter and half of the maximum age
+        Thread.sleep(7500);
+
+        assertEquals(sendTimes.size(), 10);
+        Set<Long> ticks = new HashSet<>();
+        for (Long sendTime : sendTimes.values()) {
+            long tick = (sendTime - start) / 1000;
+            assertTrue(tick >= 3 && tick <= 9, "Refresh in tick: " + tick);
+            ticks.add(tick);
+        }
+        assertTrue(ticks.size() >= 3, "Refreshes in ticks: " + ticks);
+
+        upnpService.shutdown();
+    }
+
+    @Test
+    public void spreadFirstAliveFlood() throws Exception {
+        Map<String, Long> sendTimes = new ConcurrentHashMap<>();
+        MockUpnpService upnpService = createSendTimeUpnpService(
+            new MockUpnpServiceConfiguration(true) {
+                @Override
+                public int getAliveIntervalMillis() {
+                    return 8000;
+                }
+            },
+            sendTimes
+        );
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < 10; i++) {
+            upnpService.getRegistry().addDevice(
+                DemoBinaryLight.createTestDevice(new DeviceIdentity(new UDN("flood-" + i), 1800))
+            );
+        }
+
+        Thread.sleep(1000);
+        sendTimes.clear(); // Initial advertisement
+
+        // The first flood is within one alive interval
+        Thread.sleep(8500);
+
+        assertEquals(sendTimes.size(), 10);
+        Set<Long> ticks = new HashSet<>();
+        for (Long sendTime : sendTimes.values()) {
+            ticks.add((sendTime - start) / 1000);
+        }
+        assertTrue(ticks.size() >= 3, "Floods in ticks: " + ticks);
+
+        upnpService.shutdown();
+    }
+
+    /**
+     * Records the time of the first message sent for each device UDN.
+     */
+    protected MockUpnpService createSendTimeUpnpService(MockUpnpServiceConfiguration configuration,
+                                                       final Map<String, Long> sendTimes) {
+        return new MockUpnpService(true, configuration) {
+            @Override
+            protected MockRouter createRouter() {
+                return new MockRouter(getConfiguration(), getProtocolFactory()) {
+                    @Override
+                    public void send(OutgoingDatagramMessage msg) throws RouterException {
+                        super.send(msg);
+                        String usn = msg.getHeaders().getFirstHeader(UpnpHeader.Type.USN).getString();
+                        String udn = usn.contains("::") ? usn.substring(0, usn.indexOf("::")) : usn;
+                        if (!sendTimes.containsKey(udn))
+                            sendTimes.put(udn, System.currentTimeMillis());
+                    }
+                };
+            }
+        };
+    }
+
     protected void assertAliveMsgBasics(Namespace namespace, UpnpMessage msg, LocalDevice device, Integer maxAge) {
         assertEquals(msg.getHeaders().getFirstHeader(UpnpHeader.Type.NTS).getValue(), NotificationSubtype.ALIVE);
         assertEquals(
@@ -231,9 +329,13 @@ public class LocalDeviceBindingAdvertisementTest {
     public static class DemoBinaryLight {
 
         private static LocalDevice createTestDevice() throws Exception {
+            return createTestDevice(SampleData.createLocalDeviceIdentity());
+        }
+
+        private static LocalDevice createTestDevice(DeviceIdentity identity) throws Exception {
             LocalServiceBinder binder = new AnnotationLocalServiceBinder();
             return new LocalDevice(
-                SampleData.createLocalDeviceIdentity(),
+                identity,
                 new UDADeviceType("BinaryLight", 1),
                 new DeviceDetails("Example Binary Light"),
                 binder.read(DemoBinaryLight.class)
@@ -26,8 +26,11 @@ import org.fourthline.cling.model.message.header.UpnpHeader;
 import org.fourthline.cling.model.message.header.ServerHeader;
 import org.fourthline.cling.model.message.header.EXTHeader;
 import org.fourthline.cling.model.message.header.InterfaceMacHeader;
+import org.fourthline.cling.model.UnsupportedDataException;
+import org.fourthline.cling.model.message.IncomingDatagramMessage;
 import org.fourthline.cling.model.message.UpnpMessage;
 import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.UpnpResponse;
 import org.fourthline.cling.model.message.OutgoingDatagramMessage;
 import org.fourthline.cling.model.message.discovery.OutgoingNotificationRequestRootDevice;
 import org.fourthline.cling.test.data.SampleData;
@@ -42,6 +45,7 @@ import org.testng.annotations.Test;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 
 import static org.testng.Assert.*;
 
@@ -92,6 +96,72 @@ public class DatagramParsingTest {
 
     }
 
+    @Test
+    public void readWellKnownHeaders() throws Exception {
+
+        String source = "HTTP/1.1 200 OK\r\n" +
+                        "cache-control:max-age=1800 \r\n" +
+                        "Location:  http://localhost:0/desc.xml\r\n" +
+                        "ST: upnp:rootdevice\r\n" +
+                        "st: urn:schemas-upnp-org:device:MediaRenderer:1\r\n" +
+                        "EXT:\r\n" +
+                        "USN: " + SampleDeviceRoot.getRootUDN().toString()+"::upnp:rootdevice\r\n\r\n";
+
+        // The datagram is only part of a larger, reused buffer
+        byte[] bytes = source.getBytes("US-ASCII");
+        byte[] buffer = new byte[bytes.length + 20];
+        Arrays.fill(buffer, (byte) 'X');
+        System.arraycopy(bytes, 0, buffer, 10, bytes.length);
+        DatagramPacket packet = new DatagramPacket(buffer, 10, bytes.length, new InetSocketAddress("123.123.123.123", 1234));
+
+        DatagramProcessor processor = new DefaultUpnpServiceConfiguration().getDatagramProcessor();
+        IncomingDatagramMessage<UpnpResponse> msg = processor.read(InetAddress.getByName("127.0.0.1"), packet);
+        Arrays.fill(buffer, (byte) 'X');
+
+        assertEquals(msg.getOperation().getStatusCode(), 200);
+        assertEquals(msg.getOperation().getStatusMessage(), "OK");
+        assertEquals(msg.getHeaderValue(UpnpHeader.Type.MAX_AGE), "max-age=1800");
+        assertEquals(msg.getHeaderValue(UpnpHeader.Type.LOCATION), "http://localhost:0/desc.xml");
+        assertEquals(msg.getHeaderValue(UpnpHeader.Type.ST), "upnp:rootdevice");
+        assertEquals(msg.getHeaderValue(UpnpHeader.Type.USN), SampleDeviceRoot.getRootUDN().toString()+"::upnp:rootdevice");
+        assertNull(msg.getHeaderValue(UpnpHeader.Type.NTS));
+        assertNull(msg.getHeaderValue(UpnpHeader.Type.EXT));
+
+        // All headers are parsed when accessed
+        assertEquals(msg.getHeaders().getFirstHeader(UpnpHeader.Type.MAX_AGE, MaxAgeHeader.class).getValue().toString(), "1800");
+        assertEquals(msg.getHeaders().get(UpnpHeader.Type.ST.getHttpName()).size(), 2);
+        assertNotNull(msg.getHeaders().getFirstHeader(UpnpHeader.Type.EXT));
+        assertEquals(msg.getHeaderValue(UpnpHeader.Type.ST), "upnp:rootdevice");
+    }
+
+    @Test
+    public void readFoldedWellKnownHeader() throws Exception {
+
+        String source = "M-SEARCH * HTTP/1.1\r\n" +
+                        "HOST: 239.255.255.250:1900\r\n" +
+                        "MAN: \"ssdp:discover\"\r\n" +
+                        "MX: 3\r\n" +
+                        "ST: urn:schemas-upnp-org:device:\r\n" +
+                        " MediaRenderer:1\r\n\r\n";
+
+        DatagramPacket packet = new DatagramPacket(source.getBytes(), source.getBytes().length, new InetSocketAddress("123.123.123.123", 1234));
+
+        DatagramProcessor processor = new DefaultUpnpServiceConfiguration().getDatagramProcessor();
+        IncomingDatagramMessage<UpnpRequest> msg = processor.read(InetAddress.getByName("127.0.0.1"), packet);
+
+        assertEquals(msg.getOperation().getMethod(), UpnpRequest.Method.MSEARCH);
+        assertEquals(msg.getOperation().getHttpMinorVersion(), 1);
+        assertEquals(msg.getHeaderValue(UpnpHeader.Type.MX), "3");
+        assertEquals(msg.getHeaderValue(UpnpHeader.Type.ST), "urn:schemas-upnp-org:device:MediaRenderer:1");
+    }
+
+    @Test(expectedExceptions = UnsupportedDataException.class)
+    public void readInvalidStartLine() throws Exception {
+        String source = "NOTIFY\r\nNTS: ssdp:alive\r\n\r\n";
+        DatagramPacket packet = new DatagramPacket(source.getBytes(), source.getBytes().length, new InetSocketAddress("123.123.123.123", 1234));
+        new DefaultUpnpServiceConfiguration().getDatagramProcessor().read(InetAddress.getByName("127.0.0.1"), packet);
+    }
+
     @Test
     public void parseRoundtrip() throws Exception {
         Location location = new Location(
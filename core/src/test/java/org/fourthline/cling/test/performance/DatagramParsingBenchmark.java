@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.performance;
+
+import org.fourthline.cling.model.message.IncomingDatagramMessage;
+import org.fourthline.cling.model.message.UpnpHeaders;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.header.UpnpHeader;
+import org.fourthline.cling.transport.impl.DatagramProcessorImpl;
+import org.seamless.http.Headers;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Compares the datagram parser with the previous parsing of the start line and all headers, for
+ * the prefiltering of received NOTIFY messages (the NTS and USN headers).
+ * <p>
+ * Run with <code>-DtestClingPerformance=true</code>, the results are printed to the test output.
+ * </p>
+ */
+public class DatagramParsingBenchmark {
+
+    static final long MEASUREMENT_MILLIS = 2000;
+
+    static final String NOTIFY =
+        "NOTIFY * HTTP/1.1\r\n" +
+            "HOST: 239.255.255.250:1900\r\n" +
+            "CACHE-CONTROL: max-age=1800\r\n" +
+            "LOCATION: http://192.168.1.10:49152/description.xml\r\n" +
+            "NT: urn:schemas-upnp-org:service:ContentDirectory:1\r\n" +
+            "NTS: ssdp:alive\r\n" +
+            "SERVER: Linux/3.0 UPnP/1.0 Cling/2.0\r\n" +
+            "X-User-Agent: redsonic\r\n" +
+            "USN: uuid:4d696e69-444c-164e-9d41-b827eb4c4aa9::urn:schemas-upnp-org:service:ContentDirectory:1\r\n" +
+            "\r\n";
+
+    @Test
+    public void prefilterThroughput() throws Exception {
+        byte[] data = NOTIFY.getBytes("US-ASCII");
+        final DatagramPacket datagram = new DatagramPacket(data, data.length, new InetSocketAddress("192.168.1.10", 1900));
+        final InetAddress localAddress = InetAddress.getByName("192.168.1.2");
+        final DatagramProcessorImpl processor = new DatagramProcessorImpl();
+
+        Parser previous = new Parser() {
+            public String parse() throws Exception {
+                ByteArrayInputStream is = new ByteArrayInputStream(datagram.getData());
+                String[] startLine = Headers.readLine(is).split(" ");
+                UpnpHeaders headers = new UpnpHeaders(is);
+                return startLine[0]
+                    + headers.getFirstHeader(UpnpHeader.Type.NTS.getHttpName())
+                    + headers.getFirstHeader(UpnpHeader.Type.USN.getHttpName());
+            }
+        };
+
+        Parser current = new Parser() {
+            public String parse() throws Exception {
+                IncomingDatagramMessage<UpnpRequest> msg = processor.read(localAddress, datagram);
+                return msg.getOperation().getHttpMethodName()
+                    + msg.getHeaderValue(UpnpHeader.Type.NTS)
+                    + msg.getHeaderValue(UpnpHeader.Type.USN);
+            }
+        };
+
+        assertEquals(current.parse(), previous.parse());
+
+        // Warm up both before measuring
+        measure(previous);
+        measure(current);
+
+        long previousOps = measure(previous);
+        long currentOps = measure(current);
+        System.out.println("Datagrams prefiltered per second:");
+        System.out.println(String.format("%24s %12d", "Stream and all headers", previousOps));
+        System.out.println(String.format("%24s %12d", "DatagramHeaders", currentOps));
+
+        assertTrue(previousOps > 0 && currentOps > 0);
+    }
+
+    protected long measure(Parser parser) throws Exception {
+        long count = 0;
+        int checksum = 0;
+        long end = System.currentTimeMillis() + MEASUREMENT_MILLIS;
+        while (System.currentTimeMillis() < end) {
+            for (int i = 0; i < 1000; i++) {
+                checksum += parser.parse().length();
+            }
+            count += 1000;
+        }
+        assertTrue(checksum != 0);
+        return count * 1000 / MEASUREMENT_MILLIS;
+    }
+
+    interface Parser {
+        String parse() throws Exception;
+    }
+
+}
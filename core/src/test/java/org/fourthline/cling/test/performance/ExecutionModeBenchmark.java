@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.performance;
+
+import org.fourthline.cling.DefaultUpnpServiceConfiguration;
+import org.fourthline.cling.model.message.StreamRequestMessage;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.transport.impl.StreamClientConfigurationImpl;
+import org.fourthline.cling.transport.spi.AbstractStreamClient;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Compares the platform and virtual thread execution modes of the default configuration, with
+ * concurrent action invocations that each wait in the stream client for a slow response.
+ * <p>
+ * Run with <code>-DtestClingPerformance=true</code>, the results are printed to the test output. The
+ * number of invocations can be changed with <code>-DtestClingInvocations=...</code>. Virtual threads
+ * are only measured if the runtime supports them.
+ * </p>
+ */
+public class ExecutionModeBenchmark {
+
+    static final int INVOCATIONS = Integer.getInteger("testClingInvocations", 10000);
+    static final long RESPONSE_MILLIS = 200;
+
+    @Test
+    public void concurrentInvocations() throws Exception {
+        System.out.println(INVOCATIONS + " concurrent invocations, " + RESPONSE_MILLIS + "ms response time:");
+        System.out.println(String.format("%10s %16s %10s %10s %10s %10s",
+            "Threads", "Peak platform", "p50 ms", "p99 ms", "Max ms", "Total ms"));
+
+        measure(false);
+        if (DefaultUpnpServiceConfiguration.createVirtualThreadFactory() != null) {
+            measure(true);
+        } else {
+            System.out.println(String.format("%10s %s", "Virtual", "not supported by this runtime"));
+        }
+    }
+
+    protected void measure(final boolean virtual) throws Exception {
+        DefaultUpnpServiceConfiguration configuration = new DefaultUpnpServiceConfiguration() {
+            @Override
+            protected boolean isVirtualThreadExecution() {
+                return virtual;
+            }
+        };
+        ExecutorService executor = configuration.getSyncProtocolExecutorService();
+        final SlowStreamClient streamClient = new SlowStreamClient(new StreamClientConfigurationImpl(executor));
+        final StreamRequestMessage request =
+            new StreamRequestMessage(UpnpRequest.Method.POST, URI.create("http://127.0.0.1/control"));
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int threadsBefore = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+
+        final long[] latencies = new long[INVOCATIONS];
+        final CountDownLatch done = new CountDownLatch(INVOCATIONS);
+        long start = System.nanoTime();
+        for (int i = 0; i < INVOCATIONS; i++) {
+            final int index = i;
+            final long submitted = System.nanoTime();
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        streamClient.sendRequest(request);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        latencies[index] = System.nanoTime() - submitted;
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        try {
+            assertTrue(done.await(120, TimeUnit.SECONDS));
+        } finally {
+            configuration.shutdown();
+        }
+        long total = System.nanoTime() - start;
+        int peakThreads = threads.getPeakThreadCount() - threadsBefore;
+
+        Arrays.sort(latencies);
+        System.out.println(String.format("%10s %16d %10d %10d %10d %10d",
+            virtual ? "Virtual" : "Platform",
+            peakThreads,
+            TimeUnit.NANOSECONDS.toMillis(latencies[INVOCATIONS / 2]),
+            TimeUnit.NANOSECONDS.toMillis(latencies[INVOCATIONS * 99 / 100]),
+            TimeUnit.NANOSECONDS.toMillis(latencies[INVOCATIONS - 1]),
+            TimeUnit.NANOSECONDS.toMillis(total)
+        ));
+    }
+
+    protected static class SlowStreamClient extends AbstractStreamClient<StreamClientConfigurationImpl, StreamRequestMessage> {
+
+        final protected StreamClientConfigurationImpl configuration;
+
+        public SlowStreamClient(StreamClientConfigurationImpl configuration) {
+            this.configuration = configuration;
+        }
+
+        public StreamClientConfigurationImpl getConfiguration() {
+            return configuration;
+        }
+
+        public void stop() {
+        }
+
+        @Override
+        protected StreamRequestMessage createRequest(StreamRequestMessage requestMessage) {
+            return requestMessage;
+        }
+
+        @Override
+        protected Callable<StreamResponseMessage> createCallable(StreamRequestMessage requestMessage,
+                                                                 StreamRequestMessage request) {
+            return new Callable<StreamResponseMessage>() {
+                public StreamResponseMessage call() throws Exception {
+                    Thread.sleep(RESPONSE_MILLIS);
+                    return new StreamResponseMessage(UpnpResponse.Status.OK);
+                }
+            };
+        }
+
+        @Override
+        protected void abort(StreamRequestMessage request) {
+        }
+
+        @Override
+        protected boolean logExecutionException(Throwable t) {
+            return false;
+        }
+    }
+
+}
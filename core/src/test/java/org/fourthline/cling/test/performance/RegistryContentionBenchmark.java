@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.performance;
+
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.test.data.SampleData;
+import org.fourthline.cling.test.data.SampleDeviceEmbeddedTwo;
+import org.fourthline.cling.test.data.SampleServiceThree;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Compares the query throughput of the registry implementations with an increasing
+ * number of reader threads, while one writer thread keeps modifying the registry.
+ * <p>
+ * Run with <code>-DtestClingPerformance=true</code>, the results are printed to the test output.
+ * </p>
+ */
+public class RegistryContentionBenchmark {
+
+    static final long MEASUREMENT_MILLIS = 1000;
+
+    @Test
+    public void readThroughput() throws Exception {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Registry queries per second with one concurrent writer, " + maxThreads + " CPUs:");
+        System.out.println(String.format("%8s %16s %16s", "Readers", "RegistryImpl", "Concurrent"));
+
+        long synchronizedSingle = 0;
+        long concurrentSingle = 0;
+        long concurrentMax = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long synchronizedReads = measure(false, threads);
+            long concurrentReads = measure(true, threads);
+            System.out.println(String.format("%8d %16d %16d", threads, synchronizedReads, concurrentReads));
+
+            if (threads == 1) {
+                synchronizedSingle = synchronizedReads;
+                concurrentSingle = concurrentReads;
+            }
+            concurrentMax = concurrentReads;
+        }
+        assertTrue(synchronizedSingle > 0 && concurrentSingle > 0 && concurrentMax > 0);
+    }
+
+    protected long measure(final boolean concurrentRegistry, int readerThreads) throws Exception {
+        MockUpnpService upnpService = new MockUpnpService(false, new MockUpnpServiceConfiguration(false, true) {
+            @Override
+            public boolean isConcurrentRegistry() {
+                return concurrentRegistry;
+            }
+        });
+        final Registry registry = upnpService.getRegistry();
+        registry.addDevice(SampleData.createRemoteDevice());
+
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final AtomicLong reads = new AtomicLong();
+        final CountDownLatch started = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readerThreads; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        started.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    long count = 0;
+                    while (!stopped.get()) {
+                        registry.getDevice(SampleDeviceEmbeddedTwo.getEmbeddedTwoUDN(), false);
+                        registry.getDevices(SampleServiceThree.getThisServiceType());
+                        registry.getRemoteDevices();
+                        count++;
+                    }
+                    reads.addAndGet(count);
+                }
+            });
+        }
+
+        // Alive messages refresh the registered device, which occasionally goes away and comes back
+        threads.add(new Thread() {
+            @Override
+            public void run() {
+                try {
+                    started.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                RemoteDevice rd = registry.getRemoteDevices().iterator().next();
+                int i = 0;
+                while (!stopped.get()) {
+                    if (++i % 100 == 0) {
+                        registry.removeDevice(rd);
+                        rd = SampleData.createRemoteDevice();
+                        registry.addDevice(rd);
+                    } else {
+                        registry.update(rd.getIdentity());
+                    }
+                }
+            }
+        });
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        started.countDown();
+        Thread.sleep(MEASUREMENT_MILLIS);
+        stopped.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        upnpService.shutdown();
+        return reads.get() * 1000 / MEASUREMENT_MILLIS;
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.protocol;
+
+import org.fourthline.cling.DefaultUpnpServiceConfiguration;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class ConfigurationExecutorTest {
+
+    @Test
+    public void scheduledThreadTimesOut() throws Exception {
+        DefaultUpnpServiceConfiguration configuration = new DefaultUpnpServiceConfiguration();
+        try {
+            // The idle scheduler thread doesn't keep the JVM running
+            ScheduledThreadPoolExecutor executor =
+                (ScheduledThreadPoolExecutor) configuration.getAsyncProtocolScheduledExecutorService();
+            assertTrue(executor.allowsCoreThreadTimeOut());
+            assertEquals(executor.getKeepAliveTime(TimeUnit.SECONDS), 60);
+        } finally {
+            configuration.shutdown();
+        }
+    }
+
+    @Test
+    public void virtualThreadsNotPooled() throws Exception {
+        DefaultUpnpServiceConfiguration configuration = new DefaultUpnpServiceConfiguration() {
+            @Override
+            protected boolean isVirtualThreadExecution() {
+                return true;
+            }
+        };
+        try {
+            ExecutorService executor = configuration.getSyncProtocolExecutorService();
+            if (DefaultUpnpServiceConfiguration.createVirtualThreadFactory() == null) {
+                assertTrue(executor instanceof ThreadPoolExecutor);
+                return;
+            }
+            // A thread per task, virtual threads are cheap and not reused
+            assertFalse(executor instanceof ThreadPoolExecutor);
+            final Thread[] threads = new Thread[2];
+            for (int i = 0; i < threads.length; i++) {
+                final int index = i;
+                executor.submit(new Runnable() {
+                    public void run() {
+                        threads[index] = Thread.currentThread();
+                    }
+                }).get(5, TimeUnit.SECONDS);
+            }
+            assertNotSame(threads[0], threads[1]);
+        } finally {
+            configuration.shutdown();
+        }
+    }
+
+}
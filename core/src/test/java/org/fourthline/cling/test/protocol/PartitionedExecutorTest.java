@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.protocol;
+
+import org.fourthline.cling.DefaultUpnpServiceConfiguration;
+import org.fourthline.cling.PartitionedUpnpServiceConfiguration;
+import org.fourthline.cling.PartitionedUpnpServiceConfiguration.ExecutionClass;
+import org.fourthline.cling.PartitionedUpnpServiceConfiguration.Partition;
+import org.fourthline.cling.PartitionedUpnpServiceConfiguration.PartitionedExecutor;
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
+import org.fourthline.cling.model.message.IncomingDatagramMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.header.HostHeader;
+import org.fourthline.cling.model.message.header.MANHeader;
+import org.fourthline.cling.model.message.header.MXHeader;
+import org.fourthline.cling.model.message.header.STAllHeader;
+import org.fourthline.cling.model.message.header.UpnpHeader;
+import org.fourthline.cling.model.types.NotificationSubtype;
+import org.fourthline.cling.protocol.RetrieveRemoteDescriptors;
+import org.fourthline.cling.protocol.async.ReceivingSearch;
+import org.fourthline.cling.protocol.async.SearchResponsePacer;
+import org.fourthline.cling.test.data.SampleData;
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class PartitionedExecutorTest {
+
+    @Test
+    public void shedLowerPriority() throws Exception {
+        Map<ExecutionClass, Partition> partitions = new EnumMap<>(ExecutionClass.class);
+        for (ExecutionClass executionClass : ExecutionClass.values()) {
+            partitions.put(executionClass, new Partition(executionClass, 1, 2, executionClass.getRejectionPolicy()));
+        }
+        PartitionedExecutor executor =
+            new PartitionedExecutor(new DefaultUpnpServiceConfiguration.ClingExecutor(), partitions, 2);
+        Partition control = executor.getPartition(ExecutionClass.CONTROL);
+        Partition search = executor.getPartition(ExecutionClass.SEARCH_RESPONSE);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = new Runnable() {
+            public void run() {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    // Continue
+                }
+            }
+        };
+        final AtomicInteger executed = new AtomicInteger();
+        Runnable counting = new Runnable() {
+            public void run() {
+                executed.incrementAndGet();
+            }
+        };
+
+        try {
+            // The only search thread is busy, the queue is full and the third task is dropped
+            executor.execute(ExecutionClass.SEARCH_RESPONSE, blocking);
+            for (int i = 0; i < 3; i++) {
+                executor.execute(ExecutionClass.SEARCH_RESPONSE, counting);
+            }
+            assertEquals(search.getQueueDepth(), 2);
+            assertEquals(search.getShedCount(), 1);
+
+            // All queues together are full, control tasks shed the queued search tasks
+            executor.execute(ExecutionClass.CONTROL, blocking);
+            assertEquals(search.getQueueDepth(), 1);
+            executor.execute(ExecutionClass.CONTROL, counting);
+            executor.execute(ExecutionClass.CONTROL, counting);
+            assertEquals(search.getQueueDepth(), 0);
+            assertEquals(search.getShedCount(), 3);
+            assertEquals(control.getQueueDepth(), 2);
+            assertEquals(executor.getQueueDepth(), 2);
+
+            // The control queue is full, the task runs on this thread
+            executor.execute(ExecutionClass.CONTROL, counting);
+            assertEquals(executed.get(), 1);
+            assertEquals(control.getShedCount(), 0);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(executed.get(), 3);
+    }
+
+    @Test
+    public void classifyProtocols() throws Exception {
+        PartitionedUpnpServiceConfiguration configuration = new PartitionedUpnpServiceConfiguration();
+        PartitionedExecutor executor = configuration.getPartitionedExecutor();
+
+        final CountDownLatch latch = new CountDownLatch(3);
+        try {
+            configuration.getAsyncProtocolExecutor().execute(new RetrieveRemoteDescriptors(null, null) {
+                @Override
+                public void run() {
+                    latch.countDown();
+                }
+            });
+            configuration.getRegistryListenerExecutor().execute(new Runnable() {
+                public void run() {
+                    latch.countDown();
+                }
+            });
+            configuration.getSyncProtocolExecutorService().execute(new Runnable() {
+                public void run() {
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            assertEquals(executor.getPartition(ExecutionClass.DESCRIPTOR_RETRIEVAL).getTaskCount(), 1);
+            assertEquals(executor.getPartition(ExecutionClass.LISTENER).getTaskCount(), 1);
+            long partitioned = 0;
+            for (ExecutionClass executionClass : ExecutionClass.values()) {
+                partitioned += executor.getPartition(executionClass).getTaskCount();
+            }
+            assertEquals(partitioned, 2);
+        } finally {
+            configuration.shutdown();
+        }
+    }
+
+    @Test
+    public void classifyDelayedSearch() throws Exception {
+        PartitionedExecutor executor = createExecutor();
+        MockUpnpService upnpService = createUpnpService(executor, 0);
+        upnpService.getRegistry().addDevice(SampleData.createLocalDevice());
+
+        // The delayed execution is scheduled and then handed over to the executor
+        new ReceivingSearch(upnpService, createSearchAllMessage()).run();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(executor.getPartition(ExecutionClass.SEARCH_RESPONSE).getTaskCount(), 1);
+        assertEquals(upnpService.getRouter().getOutgoingDatagramMessages().size(), 10);
+    }
+
+    @Test
+    public void classifyPacedSearch() throws Exception {
+        PartitionedExecutor executor = createExecutor();
+        MockUpnpService upnpService = createUpnpService(executor, 100);
+        upnpService.getRegistry().addDevice(SampleData.createLocalDevice());
+
+        // The responses are built immediately, the pacer drains them with the executor
+        new ReceivingSearch(upnpService, createSearchAllMessage(), null, new SearchResponsePacer()).run();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(executor.getPartition(ExecutionClass.SEARCH_RESPONSE).getTaskCount() > 0);
+        assertEquals(upnpService.getRouter().getOutgoingDatagramMessages().size(), 10);
+    }
+
+    protected PartitionedExecutor createExecutor() {
+        Map<ExecutionClass, Partition> partitions = new EnumMap<>(ExecutionClass.class);
+        for (ExecutionClass executionClass : ExecutionClass.values()) {
+            partitions.put(executionClass, new Partition(executionClass, 1, 16, executionClass.getRejectionPolicy()));
+        }
+        return new PartitionedExecutor(new DefaultUpnpServiceConfiguration.ClingExecutor(), partitions, 0);
+    }
+
+    protected MockUpnpService createUpnpService(final PartitionedExecutor executor,
+                                                final int maxSearchResponsesPerSecond) {
+        return new MockUpnpService(new MockUpnpServiceConfiguration() {
+            @Override
+            public Executor getAsyncProtocolExecutor() {
+                return executor;
+            }
+
+            @Override
+            public int getMaxSearchResponsesPerSecond() {
+                return maxSearchResponsesPerSecond;
+            }
+        });
+    }
+
+    protected IncomingDatagramMessage<UpnpRequest> createSearchAllMessage() throws Exception {
+        IncomingDatagramMessage<UpnpRequest> searchMsg = new IncomingDatagramMessage<>(
+            new UpnpRequest(UpnpRequest.Method.MSEARCH),
+            InetAddress.getByName("127.0.0.1"),
+            50000,
+            InetAddress.getByName("127.0.0.1")
+        );
+        searchMsg.getHeaders().add(UpnpHeader.Type.MAN, new MANHeader(NotificationSubtype.DISCOVER.getHeaderString()));
+        searchMsg.getHeaders().add(UpnpHeader.Type.MX, new MXHeader(1));
+        searchMsg.getHeaders().add(UpnpHeader.Type.ST, new STAllHeader());
+        searchMsg.getHeaders().add(UpnpHeader.Type.HOST, new HostHeader());
+        return searchMsg;
+    }
+
+}
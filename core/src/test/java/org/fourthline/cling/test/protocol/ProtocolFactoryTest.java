@@ -16,13 +16,24 @@
 package org.fourthline.cling.test.protocol;
 
 import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
 import org.fourthline.cling.model.Namespace;
+import org.fourthline.cling.model.message.IncomingDatagramMessage;
 import org.fourthline.cling.model.message.StreamRequestMessage;
 import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.types.InvalidValueException;
+import org.fourthline.cling.model.types.NamedServiceType;
+import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.model.types.UDAServiceType;
+import org.fourthline.cling.protocol.ExclusiveServiceTypeMatcher;
 import org.fourthline.cling.protocol.ReceivingSync;
 import org.fourthline.cling.protocol.sync.ReceivingEvent;
+import org.fourthline.cling.transport.impl.DatagramProcessorImpl;
 import org.testng.annotations.Test;
 
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URI;
 
 import static org.testng.Assert.*;
@@ -68,4 +79,91 @@ public class ProtocolFactoryTest {
         assertTrue(protocol instanceof ReceivingEvent);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void exclusiveServiceTypeMatcher() throws Exception {
+        ServiceType[] exclusiveServiceTypes = {
+            new UDAServiceType("ContentDirectory", 2),
+            new ServiceType("schemas-microsoft-com", "pbda-tuner", 1)
+        };
+        ExclusiveServiceTypeMatcher matcher = new ExclusiveServiceTypeMatcher(exclusiveServiceTypes);
+
+        String udn = "uuid:4d696e69-444c-164e-9d41-b827eb4c4aa9::";
+        String[] usns = {
+            udn + "urn:schemas-upnp-org:service:ContentDirectory:2",
+            udn + "urn:schemas-upnp-org:service:ContentDirectory:3",
+            udn + "urn:schemas-upnp-org:service:ContentDirectory:1",
+            udn + "urn:schemas-upnp-org:service:ContentDirectory:",
+            udn + "urn:schemas-upnp-org:service:ContentDirectory:12345678901",
+            udn + "urn:schemas-upnp-org:service:ConnectionManager:2",
+            udn + "urn:schemas-upnp-org:service:ContentDirectoryX:2",
+            udn + "urn:schemas-upnp-org:serviceId:ContentDirectory:2",
+            udn + "urn:schemas-upnp-org:service:Content Directory:2",
+            udn + "urn:schemas-microsoft-com:service:pbda:tuner:1",
+            udn + "urn:schemas-upnp-org:device:MediaServer:2",
+            udn + "urn:schemas-upnp-org:service:ContentDirectory:2::foo",
+            "urn:schemas-upnp-org:service:ContentDirectory:2",
+            "uuid:4d696e69-444c-164e-9d41-b827eb4c4aa9",
+            ""
+        };
+
+        // Same result as parsing every value
+        for (String usn : usns) {
+            assertEquals(matcher.matches(usn), parseAndMatch(usn, exclusiveServiceTypes), usn);
+        }
+        assertTrue(matcher.matches(usns[0]));
+        assertTrue(matcher.matches(usns[7]));
+        assertTrue(matcher.matches(usns[8]));
+        assertTrue(matcher.matches(usns[9]));
+        assertFalse(matcher.matches(usns[2]));
+        assertFalse(matcher.matches(usns[5]));
+        assertFalse(matcher.matches(null));
+    }
+
+    @Test
+    public void dropUnsupportedAdvertisement() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService(new MockUpnpServiceConfiguration() {
+            @Override
+            public ServiceType[] getExclusiveServiceTypes() {
+                return new ServiceType[]{new UDAServiceType("SwitchPower")};
+            }
+        });
+
+        assertNotNull(upnpService.getProtocolFactory().createReceivingAsync(
+            readNotification("urn:schemas-upnp-org:service:SwitchPower:1")
+        ));
+        assertNull(upnpService.getProtocolFactory().createReceivingAsync(
+            readNotification("urn:schemas-upnp-org:service:Dimming:1")
+        ));
+    }
+
+    protected IncomingDatagramMessage readNotification(String serviceType) throws Exception {
+        byte[] data = (
+            "NOTIFY * HTTP/1.1\r\n" +
+                "HOST: 239.255.255.250:1900\r\n" +
+                "CACHE-CONTROL: max-age=1800\r\n" +
+                "LOCATION: http://127.0.0.1:49152/description.xml\r\n" +
+                "NT: " + serviceType + "\r\n" +
+                "NTS: ssdp:alive\r\n" +
+                "USN: uuid:4d696e69-444c-164e-9d41-b827eb4c4aa9::" + serviceType + "\r\n" +
+                "\r\n"
+        ).getBytes("US-ASCII");
+        return new DatagramProcessorImpl().read(
+            InetAddress.getByName("127.0.0.1"),
+            new DatagramPacket(data, data.length, new InetSocketAddress("127.0.0.1", 1900))
+        );
+    }
+
+    protected boolean parseAndMatch(String usn, ServiceType[] exclusiveServiceTypes) {
+        try {
+            ServiceType serviceType = NamedServiceType.valueOf(usn).getServiceType();
+            for (ServiceType exclusiveServiceType : exclusiveServiceTypes) {
+                if (serviceType.implementsVersion(exclusiveServiceType))
+                    return true;
+            }
+        } catch (InvalidValueException ex) {
+            // Not a named service type
+        }
+        return false;
+    }
+}
@@ -15,21 +15,38 @@
 
 package org.fourthline.cling.test.ssdp;
 
+import org.fourthline.cling.mock.MockScheduledExecutorService;
 import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
+import org.fourthline.cling.model.DiscoveryOptions;
+import org.fourthline.cling.model.Location;
 import org.fourthline.cling.model.ServerClientTokens;
 import org.fourthline.cling.model.message.OutgoingDatagramMessage;
 import org.fourthline.cling.model.message.UpnpMessage;
 import org.fourthline.cling.model.message.header.UpnpHeader;
 import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.types.NotificationSubtype;
+import org.fourthline.cling.protocol.async.NotificationScheduler;
 import org.fourthline.cling.protocol.async.SendingNotificationAlive;
 import org.fourthline.cling.protocol.async.SendingNotificationByebye;
 import org.fourthline.cling.test.data.SampleData;
 import org.fourthline.cling.test.data.SampleDeviceRoot;
 import org.fourthline.cling.test.data.SampleUSNHeaders;
+import org.fourthline.cling.transport.RouterException;
 import org.testng.annotations.Test;
 
+import java.net.DatagramPacket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 
 public class AdvertisementTest {
@@ -76,6 +93,217 @@ public class AdvertisementTest {
             rootDevice, embeddedDevice, UpnpHeader.Type.NT);
     }
 
+    @Test
+    public void sendAliveMessagesFromTemplates() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService();
+
+        LocalDevice rootDevice = SampleData.createLocalDevice();
+        upnpService.getRegistry().addDevice(rootDevice, new DiscoveryOptions(false));
+
+        new SendingNotificationAlive(upnpService, rootDevice).run();
+        List<OutgoingDatagramMessage> first = new ArrayList<>(upnpService.getRouter().getOutgoingDatagramMessages());
+        assertEquals(first.size(), 30); // Three repetitions
+        upnpService.getRouter().getOutgoingDatagramMessages().clear();
+
+        // The encoded data of a template is reused
+        DatagramPacket packet = upnpService.getConfiguration().getDatagramProcessor().write(first.get(0));
+        assertSame(first.get(0).getEncodedData(), packet.getData());
+        assertSame(upnpService.getConfiguration().getDatagramProcessor().write(first.get(0)).getData(), packet.getData());
+
+        new SendingNotificationAlive(upnpService, rootDevice).run();
+        List<OutgoingDatagramMessage> second = upnpService.getRouter().getOutgoingDatagramMessages();
+        assertEquals(second.size(), first.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(second.get(i), first.get(i));
+        }
+        upnpService.getRouter().getOutgoingDatagramMessages().clear();
+
+        // Discarded when the discovery options change
+        upnpService.getRegistry().setDiscoveryOptions(rootDevice.getIdentity().getUdn(), new DiscoveryOptions(false));
+        new SendingNotificationAlive(upnpService, rootDevice).run();
+        assertNotSame(upnpService.getRouter().getOutgoingDatagramMessages().get(0), first.get(0));
+        for (OutgoingDatagramMessage msg : upnpService.getRouter().getOutgoingDatagramMessages()) {
+            assertAliveMsgBasics(msg);
+        }
+    }
+
+    @Test
+    public void sendScheduledRounds() throws Exception {
+
+        ScheduledTasks scheduled = new ScheduledTasks();
+        MockUpnpService upnpService = new MockUpnpService(createConfiguration(scheduled, 0));
+        List<OutgoingDatagramMessage> sent = upnpService.getRouter().getOutgoingDatagramMessages();
+
+        LocalDevice rootDevice = SampleData.createLocalDevice();
+
+        TestNotificationScheduler scheduler = new TestNotificationScheduler(scheduled);
+        scheduler.add(new SendingNotificationAlive(upnpService, rootDevice));
+        scheduler.add(new SendingNotificationByebye(upnpService, rootDevice));
+        assertEquals(scheduled.tasks.size(), 1);
+        assertTrue(scheduled.delays.get(0) < 100);
+        assertEquals(sent.size(), 0);
+
+        // The first round of both notifications in one burst
+        scheduled.runNext();
+        assertEquals(sent.size(), 20);
+        assertEquals(scheduled.tasks.size(), 1);
+        assertEquals(scheduled.delays.get(0), Long.valueOf(150));
+
+        // Joins the next round
+        scheduler.add(new SendingNotificationAlive(upnpService, rootDevice));
+        assertEquals(scheduled.tasks.size(), 1);
+
+        scheduled.runNext();
+        assertEquals(sent.size(), 50);
+        scheduled.runNext();
+        assertEquals(sent.size(), 80);
+        assertEquals(scheduler.getPendingCount(), 1);
+        scheduled.runNext();
+        assertEquals(sent.size(), 90);
+
+        assertEquals(scheduled.tasks.size(), 0);
+        assertEquals(scheduler.getPendingCount(), 0);
+    }
+
+    @Test
+    public void sendLimitedRounds() throws Exception {
+
+        ScheduledTasks scheduled = new ScheduledTasks();
+        MockUpnpService upnpService = new MockUpnpService(createConfiguration(scheduled, 25));
+        List<OutgoingDatagramMessage> sent = upnpService.getRouter().getOutgoingDatagramMessages();
+
+        LocalDevice rootDevice = SampleData.createLocalDevice();
+
+        TestNotificationScheduler scheduler = new TestNotificationScheduler(scheduled);
+        for (int i = 0; i < 5; i++) {
+            scheduler.add(new SendingNotificationAlive(upnpService, rootDevice));
+        }
+
+        scheduled.runNext();
+        long start = scheduled.currentTimeMillis;
+        assertEquals(sent.size(), 20); // Ten messages each, only two are covered
+
+        while (scheduled.tasks.size() > 0) {
+            scheduled.runNext();
+            // Never more than the initial budget plus what has been refilled since
+            assertTrue(sent.size() <= 25 + (scheduled.currentTimeMillis - start) * 25 / 1000);
+        }
+        assertEquals(sent.size(), 150);
+        assertEquals(scheduler.getPendingCount(), 0);
+    }
+
+    @Test
+    public void sendFailingRounds() throws Exception {
+
+        final ScheduledTasks scheduled = new ScheduledTasks();
+        final boolean[] failRound = {false};
+        MockUpnpService upnpService = new MockUpnpService(new MockUpnpServiceConfiguration() {
+            @Override
+            public ScheduledExecutorService getAsyncProtocolScheduledExecutorService() {
+                return scheduled;
+            }
+
+            @Override
+            public int getMaxNotificationDatagramsPerSecond() {
+                if (failRound[0])
+                    throw new IllegalStateException("Failing round");
+                return 0;
+            }
+        });
+        List<OutgoingDatagramMessage> sent = upnpService.getRouter().getOutgoingDatagramMessages();
+
+        LocalDevice rootDevice = SampleData.createLocalDevice();
+
+        TestNotificationScheduler scheduler = new TestNotificationScheduler(scheduled);
+        scheduler.add(new SendingNotificationAlive(upnpService, rootDevice) {
+            @Override
+            public void sendMessages(Location descriptorLocation) throws RouterException {
+                throw new IllegalStateException("Failing notification");
+            }
+        });
+        scheduler.add(new SendingNotificationByebye(upnpService, rootDevice));
+
+        // The failing notification is aborted, the other is still sent
+        scheduled.runNext();
+        assertEquals(sent.size(), 10);
+        assertEquals(scheduler.getPendingCount(), 1);
+        while (scheduled.tasks.size() > 0) {
+            scheduled.runNext();
+        }
+        assertEquals(sent.size(), 30);
+        assertEquals(scheduler.getPendingCount(), 0);
+
+        // A failing round doesn't prevent later rounds
+        failRound[0] = true;
+        scheduler.add(new SendingNotificationByebye(upnpService, rootDevice));
+        try {
+            scheduled.runNext();
+            fail();
+        } catch (IllegalStateException ex) {
+            // The executor logs it
+        }
+        assertEquals(scheduled.tasks.size(), 0);
+        assertEquals(scheduler.getPendingCount(), 1);
+
+        failRound[0] = false;
+        scheduler.add(new SendingNotificationByebye(upnpService, rootDevice));
+        assertEquals(scheduled.tasks.size(), 1);
+        while (scheduled.tasks.size() > 0) {
+            scheduled.runNext();
+        }
+        assertEquals(sent.size(), 90);
+        assertEquals(scheduler.getPendingCount(), 0);
+    }
+
+    protected MockUpnpServiceConfiguration createConfiguration(final ScheduledTasks scheduled,
+                                                               final int maxDatagramsPerSecond) {
+        return new MockUpnpServiceConfiguration() {
+            @Override
+            public ScheduledExecutorService getAsyncProtocolScheduledExecutorService() {
+                return scheduled;
+            }
+
+            @Override
+            public int getMaxNotificationDatagramsPerSecond() {
+                return maxDatagramsPerSecond;
+            }
+        };
+    }
+
+    protected static class ScheduledTasks extends MockScheduledExecutorService {
+
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+        long currentTimeMillis = 1000;
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            tasks.add(command);
+            delays.add(unit.toMillis(delay));
+            return null;
+        }
+
+        void runNext() {
+            currentTimeMillis += delays.remove(0);
+            tasks.remove(0).run();
+        }
+    }
+
+    protected static class TestNotificationScheduler extends NotificationScheduler {
+
+        final ScheduledTasks scheduled;
+
+        public TestNotificationScheduler(ScheduledTasks scheduled) {
+            this.scheduled = scheduled;
+        }
+
+        @Override
+        protected long getCurrentTimeMillis() {
+            return scheduled.currentTimeMillis;
+        }
+    }
+
     protected void assertAliveMsgBasics(UpnpMessage msg) {
         assertEquals(msg.getHeaders().getFirstHeader(UpnpHeader.Type.NTS).getValue(), NotificationSubtype.ALIVE);
         assertEquals(msg.getHeaders().getFirstHeader(UpnpHeader.Type.LOCATION).getValue().toString(), SampleDeviceRoot.getDeviceDescriptorURL().toString());
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.ssdp;
+
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.registry.ConcurrentRegistryImpl;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.test.data.SampleData;
+import org.fourthline.cling.test.data.SampleDeviceEmbeddedTwo;
+import org.fourthline.cling.test.data.SampleDeviceRoot;
+import org.fourthline.cling.test.data.SampleServiceThree;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs all registry lookup tests against {@link ConcurrentRegistryImpl}.
+ */
+public class ConcurrentRegistryTest extends RegistryLookupTest {
+
+    @Override
+    protected MockUpnpService createUpnpService(boolean maintainsRegistry) {
+        return new MockUpnpService(false, new MockUpnpServiceConfiguration(maintainsRegistry) {
+            @Override
+            public boolean isConcurrentRegistry() {
+                return true;
+            }
+        });
+    }
+
+    @Test
+    public void queryWhileLocked() throws Exception {
+
+        MockUpnpService upnpService = createUpnpService(false);
+        final Registry registry = upnpService.getRegistry();
+        assertTrue(registry instanceof ConcurrentRegistryImpl);
+
+        final RemoteDevice rd = SampleData.createRemoteDevice();
+        registry.addDevice(rd);
+
+        // Simulate a long running modification or maintenance
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                synchronized (registry) {
+                    locked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        // Ignore
+                    }
+                }
+            }
+        };
+        writer.start();
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        try {
+            assertEquals(registry.getRemoteDevice(SampleDeviceRoot.getRootUDN(), true), rd);
+            assertEquals(registry.getDevices(SampleServiceThree.getThisServiceType()).size(), 1);
+            assertEquals(registry.getResources().size(), rd.discoverResources(upnpService.getConfiguration().getNamespace()).length);
+        } finally {
+            release.countDown();
+            writer.join();
+        }
+    }
+
+    @Test
+    public void queryWhileModified() throws Exception {
+
+        MockUpnpService upnpService = createUpnpService(false);
+        final Registry registry = upnpService.getRegistry();
+
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final List<String> failures = new ArrayList<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread() {
+                @Override
+                public void run() {
+                    while (!stopped.get()) {
+                        try {
+                            Collection<Device> devices = registry.getDevices(SampleServiceThree.getThisServiceType());
+                            if (devices.size() > 1)
+                                throw new IllegalStateException("Found more than one device with service: " + devices);
+                            for (Device device : registry.getDevices()) {
+                                if (!device.isRoot())
+                                    throw new IllegalStateException("Embedded device in root devices: " + device);
+                            }
+                        } catch (Exception ex) {
+                            synchronized (failures) {
+                                failures.add(ex.toString());
+                            }
+                            return;
+                        }
+                    }
+                }
+            };
+            readers.add(reader);
+            reader.start();
+        }
+
+        for (int i = 0; i < 200; i++) {
+            RemoteDevice rd = SampleData.createRemoteDevice();
+            registry.addDevice(rd);
+            assertNotNull(registry.getDevice(SampleDeviceEmbeddedTwo.getEmbeddedTwoUDN(), false));
+            registry.removeDevice(rd);
+        }
+
+        stopped.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(failures.size(), 0, failures.toString());
+        assertEquals(registry.getDevices().size(), 0);
+    }
+
+}
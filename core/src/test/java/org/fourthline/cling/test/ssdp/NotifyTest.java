@@ -17,6 +17,7 @@ package org.fourthline.cling.test.ssdp;
 
 import org.fourthline.cling.UpnpService;
 import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
 import org.fourthline.cling.model.Constants;
 import org.fourthline.cling.model.message.IncomingDatagramMessage;
 import org.fourthline.cling.model.message.UpnpRequest;
@@ -32,14 +33,20 @@ import org.fourthline.cling.model.message.header.UpnpHeader;
 import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.meta.RemoteDevice;
 import org.fourthline.cling.model.types.NotificationSubtype;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.protocol.DatagramAdmissionFilter;
+import org.fourthline.cling.protocol.ProtocolFactory;
+import org.fourthline.cling.registry.DefaultRegistryListener;
+import org.fourthline.cling.registry.Registry;
 import org.fourthline.cling.test.data.SampleData;
 import org.fourthline.cling.test.data.SampleDeviceRoot;
 import org.testng.annotations.Test;
 
 import java.net.InetAddress;
+import java.net.URL;
 import java.net.UnknownHostException;
 
-import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.*;
 
 public class NotifyTest {
 
@@ -170,11 +177,12 @@ public class NotifyTest {
         msg.getHeaders().add(UpnpHeader.Type.LOCATION, new LocationHeader(SampleDeviceRoot.getDeviceDescriptorURL()));
         msg.getHeaders().add(UpnpHeader.Type.MAX_AGE, new MaxAgeHeader(rd.getIdentity().getMaxAgeSeconds()));
 
+        // The root device is refreshed on the receiving thread, no protocol has to be executed
         Thread.sleep(1000);
-        upnpService.getProtocolFactory().createReceivingAsync(msg).run();
+        assertNull(upnpService.getProtocolFactory().createReceivingAsync(msg));
 
         Thread.sleep(1000);
-        upnpService.getProtocolFactory().createReceivingAsync(msg).run();
+        assertNull(upnpService.getProtocolFactory().createReceivingAsync(msg));
 
         Thread.sleep(1000);
         assertEquals(upnpService.getRegistry().getRemoteDevices().size(), 1);
@@ -182,6 +190,125 @@ public class NotifyTest {
         upnpService.shutdown();
     }
 
+    @Test
+    public void receivedAliveRefresh() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService();
+
+        RemoteDevice rd = SampleData.createRemoteDevice();
+        upnpService.getRegistry().addDevice(rd);
+        RegistryListenerUpdates updates = new RegistryListenerUpdates();
+        upnpService.getRegistry().addListener(updates);
+
+        // Only refreshed on the receiving thread, no protocol has to be executed
+        IncomingNotificationRequest alive = createNotificationMessage(rd.getIdentity().getUdn(), NotificationSubtype.ALIVE);
+        assertNull(upnpService.getProtocolFactory().createReceivingAsync(alive));
+        assertEquals(updates.count, 1);
+
+        // A changed location has to be handled by the protocol
+        alive.getHeaders().remove(UpnpHeader.Type.LOCATION);
+        alive.getHeaders().add(UpnpHeader.Type.LOCATION, new LocationHeader(new URL("http://10.0.0.1/desc.xml")));
+        assertNotNull(upnpService.getProtocolFactory().createReceivingAsync(alive));
+
+        // A byebye too
+        assertNotNull(upnpService.getProtocolFactory().createReceivingAsync(
+            createNotificationMessage(rd.getIdentity().getUdn(), NotificationSubtype.BYEBYE)
+        ));
+        assertEquals(updates.count, 1);
+    }
+
+    @Test
+    public void receivedDuplicatesDropped() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService(new MockUpnpServiceConfiguration() {
+            @Override
+            public int getDuplicateNotificationWindowMillis() {
+                return 60000;
+            }
+
+            @Override
+            public int getMaxReceivedDatagramsPerSecond() {
+                return 5;
+            }
+        });
+
+        final long[] currentTimeMillis = {1000};
+        DatagramAdmissionFilter filter = new DatagramAdmissionFilter() {
+            @Override
+            protected long getCurrentTimeMillis() {
+                return currentTimeMillis[0];
+            }
+        };
+
+        UDN udn = SampleData.createRemoteDevice().getIdentity().getUdn();
+        IncomingNotificationRequest alive = createNotificationMessage(udn, NotificationSubtype.ALIVE);
+
+        // Through the protocol factory, no protocol is created for the repeated NOTIFY
+        ProtocolFactory protocolFactory = upnpService.getProtocolFactory();
+        assertNotNull(protocolFactory.createReceivingAsync(alive));
+        assertNull(protocolFactory.createReceivingAsync(alive));
+
+        assertTrue(filter.isAdmitted(upnpService, alive));
+        assertFalse(filter.isAdmitted(upnpService, alive));
+
+        // Another NTS is not a duplicate
+        assertTrue(filter.isAdmitted(upnpService, createNotificationMessage(udn, NotificationSubtype.BYEBYE)));
+
+        // The window has passed
+        currentTimeMillis[0] += 60000;
+        assertTrue(filter.isAdmitted(upnpService, alive));
+        assertEquals(filter.getDuplicateCount(), 1);
+
+        // Only 5 datagrams per second from the same source
+        int admitted = 0;
+        for (int i = 0; i < 10; i++) {
+            IncomingNotificationRequest msg = createNotificationMessage(new UDN("device" + i), NotificationSubtype.ALIVE);
+            if (filter.isAdmitted(upnpService, msg))
+                admitted++;
+        }
+        assertEquals(admitted, 4);
+        assertEquals(filter.getRateLimitedCount(), 6);
+        assertEquals(filter.getDroppedCount(), 7);
+
+        currentTimeMillis[0] += 200;
+        assertTrue(filter.isAdmitted(upnpService, createNotificationMessage(udn, NotificationSubtype.BYEBYE)));
+    }
+
+    @Test
+    public void receivedAliveAfterByeByeAdmitted() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService(new MockUpnpServiceConfiguration() {
+            @Override
+            public int getDuplicateNotificationWindowMillis() {
+                return 60000;
+            }
+        });
+
+        DatagramAdmissionFilter filter = new DatagramAdmissionFilter();
+
+        UDN udn = SampleData.createRemoteDevice().getIdentity().getUdn();
+        IncomingNotificationRequest alive = createNotificationMessage(udn, NotificationSubtype.ALIVE);
+        IncomingNotificationRequest byebye = createNotificationMessage(udn, NotificationSubtype.BYEBYE);
+
+        // A device restarting within the window
+        assertTrue(filter.isAdmitted(upnpService, alive));
+        assertTrue(filter.isAdmitted(upnpService, byebye));
+        assertFalse(filter.isAdmitted(upnpService, byebye));
+        assertTrue(filter.isAdmitted(upnpService, alive));
+        assertFalse(filter.isAdmitted(upnpService, alive));
+        assertEquals(filter.getDuplicateCount(), 2);
+    }
+
+    protected IncomingNotificationRequest createNotificationMessage(UDN udn, NotificationSubtype nts) throws Exception {
+        IncomingNotificationRequest msg = createRequestMessage();
+        msg.getHeaders().add(UpnpHeader.Type.NTS, new NTSHeader(nts));
+        msg.getHeaders().add(UpnpHeader.Type.NT, new RootDeviceHeader());
+        msg.getHeaders().add(UpnpHeader.Type.USN, new USNRootDeviceHeader(udn));
+        msg.getHeaders().add(UpnpHeader.Type.LOCATION, new LocationHeader(SampleDeviceRoot.getDeviceDescriptorURL()));
+        msg.getHeaders().add(UpnpHeader.Type.MAX_AGE, new MaxAgeHeader(1800));
+        return msg;
+    }
+
     protected IncomingNotificationRequest createRequestMessage() throws UnknownHostException {
         IncomingNotificationRequest msg = new IncomingNotificationRequest(
                 new IncomingDatagramMessage<>(
@@ -197,4 +324,14 @@ public class NotifyTest {
 
     }
 
-}
\ No newline at end of file
+    protected static class RegistryListenerUpdates extends DefaultRegistryListener {
+
+        int count;
+
+        @Override
+        public void remoteDeviceUpdated(Registry registry, RemoteDevice device) {
+            count++;
+        }
+    }
+
+}
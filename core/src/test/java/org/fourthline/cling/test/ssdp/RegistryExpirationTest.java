@@ -18,15 +18,26 @@ package org.fourthline.cling.test.ssdp;
 import org.fourthline.cling.mock.MockUpnpService;
 import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
 import org.fourthline.cling.model.ExpirationDetails;
+import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.meta.RemoteDevice;
 import org.fourthline.cling.model.resource.Resource;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.registry.DefaultRegistryListener;
+import org.fourthline.cling.registry.Registry;
 import org.fourthline.cling.test.data.SampleData;
 import org.testng.annotations.Test;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class RegistryExpirationTest {
 
@@ -117,6 +128,138 @@ public class RegistryExpirationTest {
         upnpService.shutdown();
     }
 
+    @Test
+    public void addAndRefreshAndExpire() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService(false, true);
+
+        RemoteDevice rd = SampleData.createRemoteDevice(
+                SampleData.createRemoteDeviceIdentity(2)
+        );
+        UDN embeddedUDN = rd.getEmbeddedDevices()[0].getIdentity().getUdn();
+        String location = rd.getIdentity().getDescriptorURL().toString();
+
+        // Not registered yet
+        assertFalse(upnpService.getRegistry().refresh(rd.getIdentity().getUdn(), location, "max-age=2"));
+
+        upnpService.getRegistry().addDevice(rd);
+
+        // Another location or maximum age has to be handled as an update
+        assertFalse(upnpService.getRegistry().refresh(rd.getIdentity().getUdn(), "http://10.0.0.1/desc.xml", "max-age=2"));
+        assertFalse(upnpService.getRegistry().refresh(rd.getIdentity().getUdn(), location, "max-age=1800"));
+        assertFalse(upnpService.getRegistry().refresh(rd.getIdentity().getUdn(), location, null));
+
+        // Refresh through the root and the embedded device, without rescheduling in the registry
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(1000);
+            assertTrue(upnpService.getRegistry().refresh(i % 2 == 0 ? rd.getIdentity().getUdn() : embeddedUDN, location, "MAX-AGE=2"));
+            assertEquals(upnpService.getRegistry().getRemoteDevices().size(), 1);
+        }
+
+        // Wait for expiration
+        Thread.sleep(4000);
+        assertEquals(upnpService.getRegistry().getRemoteDevices().size(), 0);
+        assertFalse(upnpService.getRegistry().refresh(rd.getIdentity().getUdn(), location, "max-age=2"));
+
+        upnpService.shutdown();
+    }
+
+    @Test
+    public void wallClockTimestamps() throws Exception {
+        final long[] clockOffsetSeconds = new long[1];
+        ExpirationDetails expirationDetails = new ExpirationDetails(60) {
+            @Override
+            protected long getCurrentTimestampSeconds() {
+                return super.getCurrentTimestampSeconds() + clockOffsetSeconds[0];
+            }
+        };
+
+        // The timestamp is still in seconds since the epoch
+        long now = System.currentTimeMillis() / 1000;
+        assertTrue(Math.abs(expirationDetails.getLastRefreshTimestampSeconds() - now) <= 1);
+
+        // Changing the system clock doesn't expire anything
+        clockOffsetSeconds[0] = 3600;
+        assertFalse(expirationDetails.hasExpired());
+        expirationDetails.stampLastRefresh();
+        assertTrue(Math.abs(expirationDetails.getLastRefreshTimestampSeconds() - (now + 3600)) <= 1);
+        assertFalse(expirationDetails.hasExpired());
+
+        // A timestamp in the past counts from now on the wall clock
+        expirationDetails.setLastRefreshTimestampSeconds(now + 3600 - 120);
+        assertTrue(expirationDetails.hasExpired());
+        assertTrue(expirationDetails.getSecondsUntilExpiration() < 0);
+    }
+
+    @Test
+    public void refreshWhileRemoving() throws Exception {
+
+        final MockUpnpService upnpService = new MockUpnpService();
+
+        final RemoteDevice rd = SampleData.createRemoteDevice(
+                SampleData.createRemoteDeviceIdentity(2)
+        );
+        final String location = rd.getIdentity().getDescriptorURL().toString();
+        upnpService.getRegistry().addDevice(rd);
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch updating = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        upnpService.getRegistry().addListener(new DefaultRegistryListener() {
+            @Override
+            public void remoteDeviceUpdated(Registry registry, RemoteDevice device) {
+                updating.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    // Continue
+                }
+                events.add("updated");
+            }
+
+            @Override
+            public void remoteDeviceRemoved(Registry registry, RemoteDevice device) {
+                events.add("removed");
+            }
+        });
+
+        // The refresh notifies the listener, which is still busy when the device is removed
+        Thread removing = new Thread() {
+            @Override
+            public void run() {
+                upnpService.getRegistry().removeDevice(rd);
+            }
+        };
+        Thread refreshing = new Thread() {
+            @Override
+            public void run() {
+                upnpService.getRegistry().refresh(rd.getIdentity().getUdn(), location, "max-age=2");
+            }
+        };
+        refreshing.start();
+        assertTrue(updating.await(5, TimeUnit.SECONDS));
+        removing.start();
+
+        // The removal waits for the refresh in progress
+        long deadline = System.currentTimeMillis() + 5000;
+        while (removing.getState() != Thread.State.BLOCKED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(removing.getState(), Thread.State.BLOCKED);
+        assertEquals(events.size(), 0);
+
+        release.countDown();
+        refreshing.join(5000);
+        removing.join(5000);
+        assertEquals(events, Arrays.asList("updated", "removed"));
+
+        // Once removed, the device is no longer refreshed
+        assertFalse(upnpService.getRegistry().refresh(rd.getIdentity().getUdn(), location, "max-age=2"));
+        assertEquals(events.size(), 2);
+
+        upnpService.shutdown();
+    }
+
     @Test
     public void addResourceAndExpire() throws Exception {
 
@@ -160,6 +303,28 @@ public class RegistryExpirationTest {
         upnpService.shutdown();
     }
 
+    @Test
+    public void addLocalDeviceAndRefresh() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService(true, true);
+
+        LocalDevice ld = SampleData.createLocalDevice(
+                SampleData.createLocalDeviceIdentity(4)
+        );
+        upnpService.getRegistry().addDevice(ld);
+
+        Thread.sleep(2000);
+        int initialMessages = upnpService.getRouter().getOutgoingDatagramMessages().size();
+        assertTrue(initialMessages > 0);
+
+        // Advertised again after half of its maximum age
+        Thread.sleep(4000);
+        assertTrue(upnpService.getRouter().getOutgoingDatagramMessages().size() > initialMessages);
+        assertEquals(upnpService.getRegistry().getLocalDevices().size(), 1);
+
+        upnpService.shutdown();
+    }
+
     protected class TestRunnable implements Runnable {
         boolean wasExecuted = false;
 
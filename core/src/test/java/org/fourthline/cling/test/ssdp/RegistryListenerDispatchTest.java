@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.ssdp;
+
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.RemoteDeviceIdentity;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.registry.BatchRegistryListener;
+import org.fourthline.cling.registry.DefaultRegistryListener;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.test.data.SampleData;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.testng.Assert.assertEquals;
+
+public class RegistryListenerDispatchTest {
+
+    @Test
+    public void orderedAndMerged() throws Exception {
+
+        final List<Runnable> tasks = new ArrayList<>();
+        MockUpnpService upnpService = createUpnpService(tasks);
+
+        final List<String> events = new ArrayList<>();
+        upnpService.getRegistry().addListener(new DefaultRegistryListener() {
+            @Override
+            public void remoteDeviceAdded(Registry registry, RemoteDevice device) {
+                events.add("added");
+            }
+
+            @Override
+            public void remoteDeviceUpdated(Registry registry, RemoteDevice device) {
+                events.add("updated");
+            }
+
+            @Override
+            public void remoteDeviceRemoved(Registry registry, RemoteDevice device) {
+                events.add("removed");
+            }
+        });
+
+        RemoteDevice rd = SampleData.createRemoteDevice();
+        upnpService.getRegistry().addDevice(rd);
+        for (int i = 0; i < 5; i++) {
+            upnpService.getRegistry().update(rd.getIdentity());
+        }
+        upnpService.getRegistry().removeDevice(rd);
+        upnpService.getRegistry().addDevice(rd);
+        upnpService.getRegistry().update(rd.getIdentity());
+
+        // One task drains the listener's queue
+        assertEquals(tasks.size(), 1);
+        tasks.remove(0).run();
+        assertEquals(events, Arrays.asList("added", "updated", "removed", "added", "updated"));
+        assertEquals(tasks.size(), 0);
+
+        // A new task once the queue has been drained
+        upnpService.getRegistry().update(rd.getIdentity());
+        assertEquals(tasks.size(), 1);
+        tasks.remove(0).run();
+        assertEquals(events.size(), 6);
+    }
+
+    @Test
+    public void batchUpdates() throws Exception {
+
+        final List<Runnable> tasks = new ArrayList<>();
+        MockUpnpService upnpService = createUpnpService(tasks);
+
+        final List<Collection<RemoteDevice>> batches = new ArrayList<>();
+        upnpService.getRegistry().addListener(new TestBatchListener(batches));
+
+        RemoteDevice one = createRemoteDevice("one");
+        RemoteDevice two = createRemoteDevice("two");
+        upnpService.getRegistry().addDevice(one);
+        upnpService.getRegistry().addDevice(two);
+        tasks.remove(0).run();
+
+        upnpService.getRegistry().update(one.getIdentity());
+        upnpService.getRegistry().update(two.getIdentity());
+        upnpService.getRegistry().update(one.getIdentity());
+        upnpService.getRegistry().removeDevice(two);
+        upnpService.getRegistry().update(one.getIdentity());
+        tasks.remove(0).run();
+
+        // The last update of device one is merged with its first pending update
+        assertEquals(batches.size(), 1);
+        assertEquals(batches.get(0), Arrays.asList(one, two));
+        assertEquals(upnpService.getRegistry().getRemoteDevices().size(), 1);
+    }
+
+    protected MockUpnpService createUpnpService(final List<Runnable> tasks) {
+        return new MockUpnpService(new MockUpnpServiceConfiguration() {
+            @Override
+            public Executor getRegistryListenerExecutor() {
+                return new Executor() {
+                    public void execute(Runnable runnable) {
+                        tasks.add(runnable);
+                    }
+                };
+            }
+        });
+    }
+
+    protected RemoteDevice createRemoteDevice(String udn) throws Exception {
+        return new RemoteDevice(new RemoteDeviceIdentity(
+            new UDN(udn), SampleData.createRemoteDeviceIdentity()
+        ));
+    }
+
+    protected class TestBatchListener extends DefaultRegistryListener implements BatchRegistryListener {
+
+        final List<Collection<RemoteDevice>> batches;
+
+        public TestBatchListener(List<Collection<RemoteDevice>> batches) {
+            this.batches = batches;
+        }
+
+        @Override
+        public void remoteDeviceUpdated(Registry registry, RemoteDevice device) {
+            throw new IllegalStateException("Updates should be delivered in batches");
+        }
+
+        public void remoteDevicesUpdated(Registry registry, Collection<RemoteDevice> devices) {
+            batches.add(devices);
+        }
+    }
+
+}
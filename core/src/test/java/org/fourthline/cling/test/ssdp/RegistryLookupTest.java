@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.ssdp;
+
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.model.gena.CancelReason;
+import org.fourthline.cling.model.gena.LocalGENASubscription;
+import org.fourthline.cling.model.meta.LocalService;
+import org.fourthline.cling.model.meta.LocalDevice;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.resource.Resource;
+import org.fourthline.cling.model.resource.ServiceEventCallbackResource;
+import org.fourthline.cling.model.types.UDADeviceType;
+import org.fourthline.cling.model.types.UDAServiceType;
+import org.fourthline.cling.test.data.SampleData;
+import org.fourthline.cling.test.data.SampleDeviceEmbeddedOne;
+import org.fourthline.cling.test.data.SampleDeviceEmbeddedTwo;
+import org.fourthline.cling.test.data.SampleDeviceRoot;
+import org.fourthline.cling.test.data.SampleServiceOne;
+import org.fourthline.cling.test.data.SampleServiceThree;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class RegistryLookupTest {
+
+    protected MockUpnpService createUpnpService(boolean maintainsRegistry) {
+        return new MockUpnpService(false, maintainsRegistry);
+    }
+
+    @Test
+    public void lookupRemoteDeviceGraph() throws Exception {
+
+        MockUpnpService upnpService = createUpnpService(false);
+
+        RemoteDevice rd = SampleData.createRemoteDevice();
+        upnpService.getRegistry().addDevice(rd);
+
+        assertEquals(upnpService.getRegistry().getRemoteDevice(SampleDeviceRoot.getRootUDN(), true), rd);
+        assertEquals(
+            upnpService.getRegistry().getDevice(SampleDeviceEmbeddedTwo.getEmbeddedTwoUDN(), false),
+            rd.findDevice(SampleDeviceEmbeddedTwo.getEmbeddedTwoUDN())
+        );
+        assertNull(upnpService.getRegistry().getDevice(SampleDeviceEmbeddedOne.getEmbeddedOneUDN(), true));
+
+        // Compatible versions
+        assertEquals(upnpService.getRegistry().getDevices(new UDADeviceType("MY-DEVICE-TYPE-THREE", 2)).size(), 1);
+        assertEquals(upnpService.getRegistry().getDevices(new UDADeviceType("MY-DEVICE-TYPE-THREE", 4)).size(), 0);
+        assertEquals(upnpService.getRegistry().getDevices(new UDAServiceType("MY-SERVICE-TYPE-THREE", 1)).size(), 1);
+        assertEquals(upnpService.getRegistry().getDevices(new UDAServiceType("MY-SERVICE-TYPE-THREE", 4)).size(), 0);
+        assertEquals(
+            upnpService.getRegistry().getDevices(SampleServiceThree.getThisServiceType()).iterator().next(),
+            rd.findDevice(SampleDeviceEmbeddedTwo.getEmbeddedTwoUDN())
+        );
+
+        // Updating the expiration must not affect lookups
+        assertTrue(upnpService.getRegistry().update(rd.getIdentity()));
+        assertEquals(upnpService.getRegistry().getRemoteDevice(SampleDeviceEmbeddedTwo.getEmbeddedTwoUDN(), false).getRoot(), rd);
+        assertEquals(upnpService.getRegistry().getDevices(SampleServiceOne.getThisServiceType()).size(), 1);
+
+        upnpService.getRegistry().removeDevice(rd);
+
+        assertNull(upnpService.getRegistry().getDevice(SampleDeviceRoot.getRootUDN(), false));
+        assertNull(upnpService.getRegistry().getDevice(SampleDeviceEmbeddedTwo.getEmbeddedTwoUDN(), false));
+        assertEquals(upnpService.getRegistry().getDevices(new UDADeviceType("MY-DEVICE-TYPE-THREE", 3)).size(), 0);
+        assertEquals(upnpService.getRegistry().getDevices(SampleServiceThree.getThisServiceType()).size(), 0);
+    }
+
+    @Test
+    public void lookupLocalDeviceGraph() throws Exception {
+
+        MockUpnpService upnpService = createUpnpService(false);
+
+        LocalDevice ld = SampleData.createLocalDevice();
+        upnpService.getRegistry().addDevice(ld);
+
+        assertEquals(upnpService.getRegistry().getLocalDevice(SampleDeviceEmbeddedOne.getEmbeddedOneUDN(), false).getRoot(), ld);
+        assertNull(upnpService.getRegistry().getRemoteDevice(SampleDeviceRoot.getRootUDN(), false));
+        assertEquals(upnpService.getRegistry().getDevices(SampleServiceOne.getThisServiceType()).size(), 1);
+
+        // Remote alive messages for a local device graph are ignored
+        assertTrue(upnpService.getRegistry().update(SampleData.createRemoteDeviceIdentity()));
+        assertEquals(upnpService.getRegistry().getRemoteDevices().size(), 0);
+
+        upnpService.getRegistry().removeDevice(ld);
+
+        assertNull(upnpService.getRegistry().getDevice(SampleDeviceEmbeddedOne.getEmbeddedOneUDN(), false));
+        assertEquals(upnpService.getRegistry().getDevices(SampleServiceOne.getThisServiceType()).size(), 0);
+    }
+
+    @Test
+    public void lookupResources() throws Exception {
+
+        MockUpnpService upnpService = createUpnpService(false);
+
+        Resource resource = new Resource<>(URI.create("/some/path?foo=bar"), "foo");
+        upnpService.getRegistry().addResource(resource);
+
+        assertEquals(upnpService.getRegistry().getResource(URI.create("/some/path?foo=bar")), resource);
+        assertNull(upnpService.getRegistry().getResource(URI.create("/some/path")));
+        assertNull(upnpService.getRegistry().getResource(ServiceEventCallbackResource.class, URI.create("/some/path?foo=bar")));
+
+        // Trailing slash is ignored, see UPNP VIOLATION in registry
+        Resource otherResource = new Resource<>(URI.create("/other/path"), "bar");
+        upnpService.getRegistry().addResource(otherResource);
+        assertEquals(upnpService.getRegistry().getResource(Resource.class, URI.create("/other/path/")), otherResource);
+
+        // Resources with custom matching are still found
+        Resource prefixResource = new Resource<String>(URI.create("/prefix"), "baz") {
+            @Override
+            public boolean matches(URI pathQuery) {
+                return pathQuery.getPath().startsWith(getPathQuery().getPath());
+            }
+        };
+        upnpService.getRegistry().addResource(prefixResource);
+        assertEquals(upnpService.getRegistry().getResource(URI.create("/prefix/anything")), prefixResource);
+
+        upnpService.getRegistry().removeResource(resource);
+        upnpService.getRegistry().removeResource(prefixResource);
+        assertNull(upnpService.getRegistry().getResource(URI.create("/some/path?foo=bar")));
+        assertNull(upnpService.getRegistry().getResource(URI.create("/prefix/anything")));
+        assertEquals(upnpService.getRegistry().getResources().size(), 1);
+    }
+
+    @Test
+    public void lookupSubscriptions() throws Exception {
+
+        MockUpnpService upnpService = createUpnpService(true);
+
+        LocalDevice ld = SampleData.createLocalDevice();
+        upnpService.getRegistry().addDevice(ld);
+
+        List<CancelReason> endReasons = new ArrayList<>();
+        LocalGENASubscription shortSubscription =
+            createSubscription(SampleData.getFirstService(ld), "uuid:short", 1, endReasons);
+        LocalGENASubscription longSubscription =
+            createSubscription(SampleData.getFirstService(ld), "uuid:long", 1800, endReasons);
+        upnpService.getRegistry().addLocalSubscription(longSubscription);
+        upnpService.getRegistry().addLocalSubscription(shortSubscription);
+
+        assertEquals(upnpService.getRegistry().getLocalSubscription("uuid:short"), shortSubscription);
+        assertEquals(upnpService.getRegistry().getLocalSubscription("uuid:long"), longSubscription);
+        assertNull(upnpService.getRegistry().getLocalSubscription("uuid:other"));
+
+        // Only the short subscription expires
+        Thread.sleep(3000);
+        assertNull(upnpService.getRegistry().getLocalSubscription("uuid:short"));
+        assertEquals(upnpService.getRegistry().getLocalSubscription("uuid:long"), longSubscription);
+        assertEquals(endReasons.size(), 1);
+        assertEquals(endReasons.get(0), CancelReason.EXPIRED);
+
+        // Removing the device ends the remaining subscription
+        upnpService.getRegistry().removeDevice(ld);
+        assertNull(upnpService.getRegistry().getLocalSubscription("uuid:long"));
+        assertFalse(upnpService.getRegistry().removeLocalSubscription(longSubscription));
+        assertEquals(endReasons.size(), 2);
+        assertEquals(endReasons.get(1), CancelReason.DEVICE_WAS_REMOVED);
+
+        upnpService.shutdown();
+    }
+
+    protected LocalGENASubscription createSubscription(LocalService service,
+                                                       String subscriptionId,
+                                                       int durationSeconds,
+                                                       final List<CancelReason> endReasons) throws Exception {
+        LocalGENASubscription subscription = new LocalGENASubscription(service, new ArrayList<URL>()) {
+            public void ended(CancelReason reason) {
+                endReasons.add(reason);
+            }
+
+            public void established() {
+            }
+
+            public void eventReceived() {
+            }
+        };
+        subscription.setSubscriptionId(subscriptionId);
+        subscription.setActualSubscriptionDurationSeconds(durationSeconds);
+        return subscription;
+    }
+
+}
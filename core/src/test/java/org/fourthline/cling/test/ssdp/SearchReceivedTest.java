@@ -38,11 +38,19 @@ import org.fourthline.cling.model.message.header.ServiceUSNHeader;
 import org.fourthline.cling.model.message.header.UDNHeader;
 import org.fourthline.cling.model.message.header.USNRootDeviceHeader;
 import org.fourthline.cling.model.message.header.UpnpHeader;
+import org.fourthline.cling.model.meta.DeviceDetails;
+import org.fourthline.cling.model.meta.DeviceIdentity;
 import org.fourthline.cling.model.meta.LocalDevice;
+import org.fourthline.cling.model.meta.LocalService;
 import org.fourthline.cling.model.meta.Service;
 import org.fourthline.cling.model.types.NotificationSubtype;
+import org.fourthline.cling.model.types.UDADeviceType;
+import org.fourthline.cling.model.types.UDN;
 import org.fourthline.cling.protocol.async.ReceivingSearch;
+import org.fourthline.cling.protocol.async.SearchResponsePacer;
+import org.fourthline.cling.mock.MockScheduledExecutorService;
 import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
 import org.fourthline.cling.test.data.SampleData;
 import org.fourthline.cling.test.data.SampleUSNHeaders;
 import org.seamless.util.URIUtil;
@@ -50,6 +58,13 @@ import org.testng.annotations.Test;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.testng.Assert.*;
 
@@ -83,6 +98,55 @@ public class SearchReceivedTest {
         SampleUSNHeaders.assertUSNHeaders(upnpService.getRouter().getOutgoingDatagramMessages(), localDevice, embeddedDevice, UpnpHeader.Type.ST);
     }
 
+    @Test
+    public void receivedSearchAllFromTemplates() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService();
+
+        LocalDevice localDevice = SampleData.createLocalDevice();
+        LocalDevice embeddedDevice = localDevice.getEmbeddedDevices()[0];
+        upnpService.getRegistry().addDevice(localDevice);
+
+        IncomingSearchRequest searchMsg = createRequestMessage();
+        searchMsg.getHeaders().add(UpnpHeader.Type.MAN, new MANHeader(NotificationSubtype.DISCOVER.getHeaderString()));
+        searchMsg.getHeaders().add(UpnpHeader.Type.MX, new MXHeader(1));
+        searchMsg.getHeaders().add(UpnpHeader.Type.ST, new STAllHeader());
+        searchMsg.getHeaders().add(UpnpHeader.Type.HOST, new HostHeader());
+
+        createProtocol(upnpService, searchMsg).run();
+        List<OutgoingDatagramMessage> first = new ArrayList<>(upnpService.getRouter().getOutgoingDatagramMessages());
+        upnpService.getRouter().getOutgoingDatagramMessages().clear();
+
+        IncomingSearchRequest otherSearchMsg = new IncomingSearchRequest(
+            new IncomingDatagramMessage<>(
+                new UpnpRequest(UpnpRequest.Method.MSEARCH),
+                InetAddress.getByName("127.0.0.2"),
+                12345,
+                InetAddress.getByName("127.0.0.1")
+            )
+        );
+        otherSearchMsg.setHeaders(searchMsg.getHeaders());
+
+        createProtocol(upnpService, otherSearchMsg).run();
+        List<OutgoingDatagramMessage> second = upnpService.getRouter().getOutgoingDatagramMessages();
+
+        assertEquals(second.size(), 10);
+        for (int i = 0; i < second.size(); i++) {
+            OutgoingDatagramMessage msg = second.get(i);
+            assertSearchResponseBasics(upnpService.getConfiguration().getNamespace(), msg, localDevice);
+            assertEquals(msg.getDestinationAddress(), InetAddress.getByName("127.0.0.2"));
+            assertEquals(msg.getDestinationPort(), 12345);
+            assertEquals(first.get(i).getDestinationPort(), Constants.UPNP_MULTICAST_PORT);
+            // Headers are shared with the template
+            assertSame(msg.getHeaders(), first.get(i).getHeaders());
+        }
+        SampleUSNHeaders.assertUSNHeaders(second, localDevice, embeddedDevice, UpnpHeader.Type.ST);
+
+        // Encoded once for all responses created from the same template
+        byte[] data = upnpService.getConfiguration().getDatagramProcessor().write(first.get(0)).getData();
+        assertSame(upnpService.getConfiguration().getDatagramProcessor().write(second.get(0)).getData(), data);
+    }
+
     @Test
     public void receivedSearchRoot() throws Exception {
 
@@ -285,6 +349,173 @@ public class SearchReceivedTest {
         assertEquals(upnpService.getRouter().getOutgoingDatagramMessages().size(), 10);
     }
 
+    @Test
+    public void receivedIdenticalSearches() throws Exception {
+
+        final List<Runnable> scheduled = new ArrayList<>();
+        MockUpnpService upnpService = new MockUpnpService(new MockUpnpServiceConfiguration() {
+            @Override
+            public ScheduledExecutorService getAsyncProtocolScheduledExecutorService() {
+                return new MockScheduledExecutorService() {
+                    @Override
+                    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+                        assertTrue(delay < 3000);
+                        scheduled.add(command);
+                        return null;
+                    }
+                };
+            }
+        });
+
+        LocalDevice localDevice = SampleData.createLocalDevice();
+        upnpService.getRegistry().addDevice(localDevice);
+
+        Set<Object> pendingSearches = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            new ReceivingSearch(upnpService, createSearchAllMessage(Constants.UPNP_MULTICAST_PORT), pendingSearches).run();
+        }
+        // Another requester on the same host
+        new ReceivingSearch(upnpService, createSearchAllMessage(50000), pendingSearches).run();
+
+        // Nothing has been sent and no thread waited
+        assertEquals(scheduled.size(), 2);
+        assertEquals(pendingSearches.size(), 2);
+        assertEquals(upnpService.getRouter().getOutgoingDatagramMessages().size(), 0);
+
+        scheduled.remove(0).run();
+        assertEquals(pendingSearches.size(), 1);
+        assertEquals(upnpService.getRouter().getOutgoingDatagramMessages().size(), 10);
+
+        // Once the responses have been sent the same search is delayed again
+        new ReceivingSearch(upnpService, createSearchAllMessage(Constants.UPNP_MULTICAST_PORT), pendingSearches).run();
+        assertEquals(scheduled.size(), 2);
+
+        scheduled.remove(0).run();
+        scheduled.remove(0).run();
+        assertEquals(pendingSearches.size(), 0);
+        assertEquals(upnpService.getRouter().getOutgoingDatagramMessages().size(), 30);
+    }
+
+    @Test
+    public void receivedPacedSearch() throws Exception {
+
+        final List<Runnable> scheduled = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+        MockUpnpService upnpService = new MockUpnpService(new MockUpnpServiceConfiguration() {
+            @Override
+            public ScheduledExecutorService getAsyncProtocolScheduledExecutorService() {
+                return new MockScheduledExecutorService() {
+                    @Override
+                    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+                        scheduled.add(command);
+                        delays.add(unit.toMillis(delay));
+                        return null;
+                    }
+                };
+            }
+
+            @Override
+            public int getMaxSearchResponsesPerSecond() {
+                return 5;
+            }
+        });
+
+        final long[] currentTimeMillis = {1000};
+        SearchResponsePacer pacer = new SearchResponsePacer() {
+            @Override
+            protected long getCurrentTimeMillis() {
+                return currentTimeMillis[0];
+            }
+        };
+
+        LocalDevice localDevice = SampleData.createLocalDevice();
+        upnpService.getRegistry().addDevice(localDevice);
+
+        IncomingSearchRequest searchMsg = createSearchAllMessage(Constants.UPNP_MULTICAST_PORT);
+        searchMsg.getHeaders().remove(UpnpHeader.Type.MX);
+        searchMsg.getHeaders().add(UpnpHeader.Type.MX, new MXHeader(1));
+        new ReceivingSearch(upnpService, searchMsg, null, pacer).run();
+
+        // Respond immediately, the whole MX time is left for sending
+        assertEquals(pacer.getQueuedCount(), 10);
+        // Not enough time for all responses, the first drain is not delayed
+        assertEquals(scheduled.size(), 1);
+        assertEquals(delays.get(0), Long.valueOf(0));
+
+        // One response every 200 milliseconds, until the MX time has passed
+        while (!scheduled.isEmpty()) {
+            currentTimeMillis[0] += delays.remove(0);
+            scheduled.remove(0).run();
+        }
+        // The remaining responses are dropped by the first drain after the MX time
+        assertEquals(currentTimeMillis[0], 2200);
+        assertEquals(upnpService.getRouter().getOutgoingDatagramMessages().size(), 6);
+        assertEquals(pacer.getSentCount(), 6);
+        assertEquals(pacer.getDroppedCount(), 4);
+        assertEquals(pacer.getQueuedCount(), 0);
+    }
+
+    @Test
+    public void receivedPacedSearchAll() throws Exception {
+
+        final List<Runnable> scheduled = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+        MockUpnpService upnpService = new MockUpnpService(new MockUpnpServiceConfiguration() {
+            @Override
+            public ScheduledExecutorService getAsyncProtocolScheduledExecutorService() {
+                return new MockScheduledExecutorService() {
+                    @Override
+                    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+                        scheduled.add(command);
+                        delays.add(unit.toMillis(delay));
+                        return null;
+                    }
+                };
+            }
+
+            @Override
+            public int getMaxSearchResponsesPerSecond() {
+                return 50;
+            }
+        });
+
+        final long[] currentTimeMillis = {1000};
+        SearchResponsePacer pacer = new SearchResponsePacer() {
+            @Override
+            protected long getCurrentTimeMillis() {
+                return currentTimeMillis[0];
+            }
+        };
+
+        // Three responses for each device: root device, UDN, and device type
+        for (int i = 0; i < 40; i++) {
+            upnpService.getRegistry().addDevice(
+                new LocalDevice(
+                    new DeviceIdentity(new UDN("device-" + i)),
+                    new UDADeviceType("Light", 1),
+                    new DeviceDetails("Light " + i),
+                    (LocalService[]) null
+                )
+            );
+        }
+
+        new ReceivingSearch(upnpService, createSearchAllMessage(Constants.UPNP_MULTICAST_PORT), null, pacer).run();
+        assertEquals(pacer.getQueuedCount(), 120);
+
+        // A burst of 5 and then 115 responses every 20 milliseconds, within the MX time of 3 seconds
+        assertEquals(scheduled.size(), 1);
+        assertTrue(delays.get(0) < 700);
+
+        while (!scheduled.isEmpty()) {
+            currentTimeMillis[0] += delays.remove(0);
+            scheduled.remove(0).run();
+        }
+        assertTrue(currentTimeMillis[0] <= 4000);
+        assertEquals(upnpService.getRouter().getOutgoingDatagramMessages().size(), 120);
+        assertEquals(pacer.getSentCount(), 120);
+        assertEquals(pacer.getDroppedCount(), 0);
+    }
+
     protected ReceivingSearch createProtocol(UpnpService upnpService, IncomingSearchRequest searchMsg) throws Exception {
         return new ReceivingSearch(upnpService, searchMsg);
     }
@@ -302,6 +533,22 @@ public class SearchReceivedTest {
         assertNotNull(msg.getHeaders().getFirstHeader(UpnpHeader.Type.SERVER).getString());
     }
 
+    protected IncomingSearchRequest createSearchAllMessage(int sourcePort) throws UnknownHostException {
+        IncomingSearchRequest searchMsg = new IncomingSearchRequest(
+                new IncomingDatagramMessage<>(
+                        new UpnpRequest(UpnpRequest.Method.MSEARCH),
+                        InetAddress.getByName("127.0.0.1"),
+                        sourcePort,
+                        InetAddress.getByName("127.0.0.1")
+                )
+        );
+        searchMsg.getHeaders().add(UpnpHeader.Type.MAN, new MANHeader(NotificationSubtype.DISCOVER.getHeaderString()));
+        searchMsg.getHeaders().add(UpnpHeader.Type.MX, new MXHeader(3));
+        searchMsg.getHeaders().add(UpnpHeader.Type.ST, new STAllHeader());
+        searchMsg.getHeaders().add(UpnpHeader.Type.HOST, new HostHeader());
+        return searchMsg;
+    }
+
     protected IncomingSearchRequest createRequestMessage() throws UnknownHostException {
         return new IncomingSearchRequest(
                 new IncomingDatagramMessage<>(
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.transport;
+
+import org.fourthline.cling.model.message.StreamRequestMessage;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.transport.impl.StreamClientConfigurationImpl;
+import org.fourthline.cling.transport.spi.AbstractStreamClient;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class AbstractStreamClientTest {
+
+    @Test
+    public void asyncOnOneThread() throws Exception {
+        final AtomicInteger submitted = new AtomicInteger();
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        ExecutorService countingExecutor = new AbstractExecutorService() {
+            // Only the submitted tasks are counted, not the threads
+            public void execute(Runnable command) {
+                submitted.incrementAndGet();
+                executor.execute(command);
+            }
+
+            public void shutdown() {
+                executor.shutdown();
+            }
+
+            public List<Runnable> shutdownNow() {
+                return executor.shutdownNow();
+            }
+
+            public boolean isShutdown() {
+                return executor.isShutdown();
+            }
+
+            public boolean isTerminated() {
+                return executor.isTerminated();
+            }
+
+            public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                return executor.awaitTermination(timeout, unit);
+            }
+        };
+        final CountDownLatch release = new CountDownLatch(1);
+        TestStreamClient client = new TestStreamClient(new StreamClientConfigurationImpl(countingExecutor), release);
+
+        final CountDownLatch received = new CountDownLatch(1);
+        Future<StreamResponseMessage> future = client.sendRequestAsync(
+            new StreamRequestMessage(UpnpRequest.Method.GET, URI.create("http://127.0.0.1/test")),
+            new StreamResponseCallback() {
+                public void responseReceived(StreamResponseMessage response) {
+                    received.countDown();
+                }
+            }
+        );
+        try {
+            // The request is executed by one task, no second thread waits for it
+            release.countDown();
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            assertEquals(future.get().getOperation().getStatusCode(), 200);
+            assertEquals(submitted.get(), 1);
+        } finally {
+            countingExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancelAborts() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        TestStreamClient client = new TestStreamClient(new StreamClientConfigurationImpl(executor), new CountDownLatch(1));
+        try {
+            Future<StreamResponseMessage> future = client.sendRequestAsync(
+                new StreamRequestMessage(UpnpRequest.Method.GET, URI.create("http://127.0.0.1/test")), null
+            );
+            assertTrue(future.cancel(true));
+            assertTrue(client.aborted.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected static class TestStreamClient extends AbstractStreamClient<StreamClientConfigurationImpl, StreamRequestMessage> {
+
+        final protected StreamClientConfigurationImpl configuration;
+        final protected CountDownLatch release;
+        final protected CountDownLatch aborted = new CountDownLatch(1);
+
+        public TestStreamClient(StreamClientConfigurationImpl configuration, CountDownLatch release) {
+            this.configuration = configuration;
+            this.release = release;
+        }
+
+        public StreamClientConfigurationImpl getConfiguration() {
+            return configuration;
+        }
+
+        public void stop() {
+        }
+
+        @Override
+        protected StreamRequestMessage createRequest(StreamRequestMessage requestMessage) {
+            return requestMessage;
+        }
+
+        @Override
+        protected Callable<StreamResponseMessage> createCallable(StreamRequestMessage requestMessage,
+                                                                 StreamRequestMessage request) {
+            return new Callable<StreamResponseMessage>() {
+                public StreamResponseMessage call() throws Exception {
+                    release.await();
+                    return new StreamResponseMessage(UpnpResponse.Status.OK);
+                }
+            };
+        }
+
+        @Override
+        protected void abort(StreamRequestMessage request) {
+            aborted.countDown();
+        }
+
+        @Override
+        protected boolean logExecutionException(Throwable t) {
+            return false;
+        }
+    }
+
+}
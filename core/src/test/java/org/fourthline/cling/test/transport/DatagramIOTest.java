@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.transport;
+
+import org.fourthline.cling.mock.MockProtocolFactory;
+import org.fourthline.cling.mock.MockRouter;
+import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
+import org.fourthline.cling.transport.impl.DatagramIOConfigurationImpl;
+import org.fourthline.cling.transport.impl.DatagramIOImpl;
+import org.fourthline.cling.transport.impl.DatagramProcessorImpl;
+import org.testng.annotations.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+public class DatagramIOTest {
+
+    @Test
+    public void sendBatch() throws Exception {
+
+        DatagramSocket receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        receiver.setSoTimeout(5000);
+
+        DatagramIOImpl datagramIO = new DatagramIOImpl(new DatagramIOConfigurationImpl());
+        datagramIO.init(
+            InetAddress.getLoopbackAddress(),
+            new MockRouter(new MockUpnpServiceConfiguration(), new MockProtocolFactory()),
+            new DatagramProcessorImpl()
+        );
+
+        try {
+            List<DatagramPacket> datagrams = new ArrayList<>();
+            for (String data : Arrays.asList("one", "two", "three")) {
+                byte[] bytes = data.getBytes("US-ASCII");
+                datagrams.add(new DatagramPacket(bytes, bytes.length, receiver.getLocalSocketAddress()));
+            }
+            datagramIO.send(datagrams);
+
+            // All datagrams in order
+            byte[] buffer = new byte[64];
+            for (String data : Arrays.asList("one", "two", "three")) {
+                DatagramPacket received = new DatagramPacket(buffer, buffer.length);
+                receiver.receive(received);
+                assertEquals(new String(received.getData(), 0, received.getLength(), "US-ASCII"), data);
+            }
+
+            // Sending on a closed socket is aborted quietly
+            datagramIO.stop();
+            datagramIO.send(datagrams);
+        } finally {
+            datagramIO.stop();
+            receiver.close();
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.transport;
+
+import org.fourthline.cling.UpnpServiceConfiguration;
+import org.fourthline.cling.model.message.StreamRequestMessage;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.transport.impl.AsyncServletStreamServerConfigurationImpl;
+import org.fourthline.cling.transport.impl.AsyncServletStreamServerImpl;
+import org.fourthline.cling.transport.impl.jetty.JettyServletContainer;
+import org.fourthline.cling.transport.impl.pool.ConnectionPool;
+import org.fourthline.cling.transport.impl.pool.StreamClientConfigurationImpl;
+import org.fourthline.cling.transport.impl.pool.StreamClientImpl;
+import org.fourthline.cling.transport.spi.StreamClient;
+import org.fourthline.cling.transport.spi.StreamServer;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * @author Christian Bauer
+ */
+public class JettyServerPooledClientTest extends StreamServerClientTest {
+
+    @Override
+    public StreamServer createStreamServer(int port) {
+        AsyncServletStreamServerConfigurationImpl configuration =
+            new AsyncServletStreamServerConfigurationImpl(
+                JettyServletContainer.INSTANCE,
+                port
+            );
+
+        return new AsyncServletStreamServerImpl(
+            configuration
+        ) {
+            @Override
+            protected boolean isConnectionOpen(HttpServletRequest request) {
+                return JettyServletContainer.isConnectionOpen(request);
+            }
+        };
+    }
+
+    @Override
+    public StreamClient createStreamClient(UpnpServiceConfiguration configuration) {
+        return new StreamClientImpl(
+            new StreamClientConfigurationImpl(
+                configuration.getSyncProtocolExecutorService(),
+                3
+            )
+        );
+    }
+
+    @Test
+    public void reuseConnection() throws Exception {
+        ConnectionPool pool = ((StreamClientImpl) client).getConnectionPool();
+        long hits = pool.getHitCount();
+        long misses = pool.getMissCount();
+
+        for (int i = 0; i < 3; i++) {
+            StreamResponseMessage responseMessage = client.sendRequest(
+                new StreamRequestMessage(
+                    UpnpRequest.Method.POST,
+                    URI.create("http://" + TEST_HOST + ":" + TEST_PORT + OKBodyResponse.PATH),
+                    "bar"
+                )
+            );
+            assertEquals(responseMessage.getOperation().getStatusCode(), 200);
+            assertEquals(responseMessage.getBodyString(), "foo");
+        }
+
+        // At most one new connection, if the previous tests left none idle
+        assertEquals(pool.getHitCount() + pool.getMissCount() - hits - misses, 3);
+        assert pool.getMissCount() - misses <= 1;
+        assert pool.getIdleConnectionCount() >= 1;
+    }
+
+    @Test
+    public void reconnectClosedConnection() throws Exception {
+        // Responds on each connection once, then closes it without a "Connection: close" header
+        final ServerSocket serverSocket = new ServerSocket(TEST_PORT + 1, 50, InetAddress.getByName(TEST_HOST));
+        Thread serverThread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < 2; i++) {
+                        Socket socket = serverSocket.accept();
+                        InputStream is = socket.getInputStream();
+                        // Read the request headers until the empty line
+                        int matched = 0;
+                        while (matched < 4) {
+                            int b = is.read();
+                            matched = (b == '\r' || b == '\n') ? matched + 1 : 0;
+                        }
+                        socket.getOutputStream().write(
+                            "HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\nfoo".getBytes("ISO-8859-1")
+                        );
+                        socket.getOutputStream().flush();
+                        socket.close();
+                    }
+                } catch (IOException ex) {
+                    // Server socket closed
+                }
+            }
+        });
+        serverThread.start();
+
+        StreamClientImpl pooledClient = new StreamClientImpl(
+            new StreamClientConfigurationImpl(configuration.getSyncProtocolExecutorService(), 3)
+        );
+        try {
+            StreamRequestMessage requestMessage = new StreamRequestMessage(
+                UpnpRequest.Method.GET,
+                URI.create("http://" + TEST_HOST + ":" + (TEST_PORT + 1) + "/closing")
+            );
+            assertEquals(pooledClient.sendRequest(requestMessage).getBodyString(), "foo");
+            // Let the server close the idle connection
+            Thread.sleep(500);
+            assertEquals(pooledClient.sendRequest(requestMessage).getBodyString(), "foo");
+            assertEquals(pooledClient.getConnectionPool().getMissCount(), 2);
+        } finally {
+            pooledClient.stop();
+            serverSocket.close();
+            serverThread.join(5000);
+        }
+    }
+
+}
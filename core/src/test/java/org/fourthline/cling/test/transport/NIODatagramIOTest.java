@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.transport;
+
+import org.fourthline.cling.mock.MockProtocolFactory;
+import org.fourthline.cling.mock.MockRouter;
+import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
+import org.fourthline.cling.model.message.IncomingDatagramMessage;
+import org.fourthline.cling.model.message.OutgoingDatagramMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.header.HostHeader;
+import org.fourthline.cling.model.message.header.UpnpHeader;
+import org.fourthline.cling.model.message.header.USNRootDeviceHeader;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.transport.impl.DatagramIOConfigurationImpl;
+import org.fourthline.cling.transport.impl.DatagramProcessorImpl;
+import org.fourthline.cling.transport.impl.NIODatagramIOImpl;
+import org.fourthline.cling.transport.impl.NetworkAddressFactoryImpl;
+import org.fourthline.cling.transport.spi.NetworkAddressFactory;
+import org.testng.annotations.Test;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class NIODatagramIOTest {
+
+    @Test
+    public void sendAndReceive() throws Exception {
+
+        final CountDownLatch latch = new CountDownLatch(5);
+        final List<IncomingDatagramMessage> received =
+            Collections.synchronizedList(new ArrayList<IncomingDatagramMessage>());
+
+        MockRouter router = new MockRouter(new MockUpnpServiceConfiguration(), new MockProtocolFactory()) {
+            @Override
+            public void received(IncomingDatagramMessage msg) {
+                received.add(msg);
+                latch.countDown();
+            }
+        };
+
+        TestDatagramIO receiver = new TestDatagramIO();
+        receiver.init(InetAddress.getLoopbackAddress(), router, new DatagramProcessorImpl());
+        Thread receivingThread = new Thread(receiver);
+        receivingThread.start();
+
+        TestDatagramIO sender = new TestDatagramIO();
+        sender.init(InetAddress.getLoopbackAddress(), router, new DatagramProcessorImpl());
+
+        try {
+            InetSocketAddress destination = receiver.getLocalAddress();
+
+            // A template is encoded once, the second send uses its encoded data
+            OutgoingDatagramMessage<UpnpRequest> message = createNotification(destination, "uuid:template");
+            message.setTemplate(true);
+            sender.send(message);
+            assertNotNull(message.getEncodedData());
+            sender.send(message);
+
+            // A long datagram followed by short ones, the pooled buffer is reused
+            List<DatagramPacket> datagrams = new ArrayList<>();
+            for (String usn : Arrays.asList("uuid:" + new String(new char[200]).replace('\0', 'x'), "uuid:a", "uuid:b")) {
+                datagrams.add(new DatagramProcessorImpl().write(createNotification(destination, usn)));
+            }
+            sender.send(datagrams);
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(received.size(), 5);
+            assertEquals(getUSN(received.get(0)), "uuid:template::upnp:rootdevice");
+            assertEquals(getUSN(received.get(1)), "uuid:template::upnp:rootdevice");
+            assertEquals(getUSN(received.get(3)), "uuid:a::upnp:rootdevice");
+            assertEquals(getUSN(received.get(4)), "uuid:b::upnp:rootdevice");
+            assertEquals(((UpnpRequest) received.get(4).getOperation()).getMethod(), UpnpRequest.Method.NOTIFY);
+            assertEquals(received.get(4).getSourcePort(), sender.getLocalAddress().getPort());
+            assertEquals(received.get(4).getLocalAddress(), InetAddress.getLoopbackAddress());
+
+            // Sending on a closed channel is aborted quietly
+            sender.stop();
+            sender.send(datagrams);
+
+        } finally {
+            sender.stop();
+            receiver.stop();
+        }
+
+        receivingThread.join(5000);
+        assertFalse(receivingThread.isAlive());
+    }
+
+    protected OutgoingDatagramMessage<UpnpRequest> createNotification(InetSocketAddress destination, String udn) {
+        OutgoingDatagramMessage<UpnpRequest> message =
+            new OutgoingDatagramMessage<UpnpRequest>(
+                new UpnpRequest(UpnpRequest.Method.NOTIFY), destination.getAddress(), destination.getPort()
+            ) {
+            };
+        message.getHeaders().add(UpnpHeader.Type.HOST, new HostHeader());
+        message.getHeaders().add(UpnpHeader.Type.USN, new USNRootDeviceHeader(UDN.valueOf(udn)));
+        return message;
+    }
+
+    protected String getUSN(IncomingDatagramMessage message) {
+        return message.getHeaders().getFirstHeader(UpnpHeader.Type.USN).getString();
+    }
+
+    @Test
+    public void createdByConfiguration() throws Exception {
+        MockUpnpServiceConfiguration configuration = new MockUpnpServiceConfiguration() {
+            @Override
+            protected boolean isNIODatagramIO() {
+                return true;
+            }
+        };
+        NetworkAddressFactory networkAddressFactory = new NetworkAddressFactoryImpl();
+        assertTrue(configuration.createDatagramIO(networkAddressFactory) instanceof NIODatagramIOImpl);
+        assertFalse(
+            new MockUpnpServiceConfiguration().createDatagramIO(networkAddressFactory) instanceof NIODatagramIOImpl
+        );
+    }
+
+    protected class TestDatagramIO extends NIODatagramIOImpl {
+
+        public TestDatagramIO() {
+            super(new DatagramIOConfigurationImpl());
+        }
+
+        public InetSocketAddress getLocalAddress() {
+            return localAddress;
+        }
+    }
+
+}
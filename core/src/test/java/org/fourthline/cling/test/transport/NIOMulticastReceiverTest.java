@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.transport;
+
+import org.fourthline.cling.mock.MockProtocolFactory;
+import org.fourthline.cling.mock.MockRouter;
+import org.fourthline.cling.mock.MockUpnpServiceConfiguration;
+import org.fourthline.cling.model.message.IncomingDatagramMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.header.UpnpHeader;
+import org.fourthline.cling.transport.impl.DatagramProcessorImpl;
+import org.fourthline.cling.transport.impl.MulticastReceiverConfigurationImpl;
+import org.fourthline.cling.transport.impl.NIOMulticastReceiverImpl;
+import org.fourthline.cling.transport.impl.NetworkAddressFactoryImpl;
+import org.fourthline.cling.transport.spi.MulticastReceiver;
+import org.fourthline.cling.transport.spi.NetworkAddressFactory;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class NIOMulticastReceiverTest {
+
+    public static final String TEST_GROUP = "239.255.255.250";
+    public static final int TEST_PORT = 11900;
+
+    @Test
+    public void receiveAndStop() throws Exception {
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        final List<IncomingDatagramMessage> received =
+            Collections.synchronizedList(new ArrayList<IncomingDatagramMessage>());
+
+        MockRouter router = new MockRouter(new MockUpnpServiceConfiguration(), new MockProtocolFactory()) {
+            @Override
+            public void received(IncomingDatagramMessage msg) {
+                received.add(msg);
+                latch.countDown();
+            }
+        };
+
+        NetworkAddressFactoryImpl networkAddressFactory = new NetworkAddressFactoryImpl() {
+            @Override
+            public InetAddress getLocalAddress(NetworkInterface networkInterface, boolean isIPv6, InetAddress remoteAddress) {
+                return InetAddress.getLoopbackAddress();
+            }
+        };
+
+        NetworkInterface loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+
+        final CountDownLatch selecting = new CountDownLatch(1);
+        NIOMulticastReceiverImpl receiver = new NIOMulticastReceiverImpl(
+            new MulticastReceiverConfigurationImpl(TEST_GROUP, TEST_PORT)
+        ) {
+            @Override
+            protected void registerPending(Selector currentSelector) throws IOException {
+                super.registerPending(currentSelector);
+                selecting.countDown();
+            }
+        };
+        receiver.init(loopback, router, networkAddressFactory, new DatagramProcessorImpl());
+
+        Thread receivingThread = new Thread(receiver);
+        receivingThread.start();
+        assertTrue(selecting.await(5, TimeUnit.SECONDS));
+
+        // The channels are already served by the first thread
+        Thread secondThread = new Thread(receiver);
+        secondThread.start();
+        secondThread.join(5000);
+        assertFalse(secondThread.isAlive());
+
+        MulticastSocket socket = new MulticastSocket();
+        socket.setNetworkInterface(loopback);
+        try {
+            // A long datagram followed by a short one, the receive buffer is reused
+            send(socket, "ssdp:alive", "uuid:" + new String(new char[200]).replace('\0', 'x'));
+            send(socket, "ssdp:byebye", "uuid:y");
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            socket.close();
+        }
+
+        assertEquals(received.size(), 2);
+        assertEquals(((UpnpRequest) received.get(0).getOperation()).getMethod(), UpnpRequest.Method.NOTIFY);
+        assertEquals(received.get(1).getHeaders().getFirstHeader(UpnpHeader.Type.NTS).getString(), "ssdp:byebye");
+        assertEquals(received.get(1).getHeaders().getFirstHeader(UpnpHeader.Type.USN).getString(), "uuid:y");
+        assertEquals(received.get(1).getLocalAddress(), InetAddress.getLoopbackAddress());
+
+        receiver.stop();
+        receivingThread.join(5000);
+        assertFalse(receivingThread.isAlive());
+    }
+
+    @Test
+    public void sharedByConfiguration() throws Exception {
+        MockUpnpServiceConfiguration configuration = new MockUpnpServiceConfiguration() {
+            @Override
+            protected boolean isNIOMulticastReceiver() {
+                return true;
+            }
+        };
+        NetworkAddressFactory networkAddressFactory = new NetworkAddressFactoryImpl();
+
+        // One receiver for all network interfaces
+        MulticastReceiver receiver = configuration.createMulticastReceiver(networkAddressFactory);
+        assertTrue(receiver instanceof NIOMulticastReceiverImpl);
+        assertSame(configuration.createMulticastReceiver(networkAddressFactory), receiver);
+
+        assertFalse(
+            new MockUpnpServiceConfiguration().createMulticastReceiver(networkAddressFactory)
+                instanceof NIOMulticastReceiverImpl
+        );
+    }
+
+    protected void send(MulticastSocket socket, String nts, String usn) throws Exception {
+        byte[] data = (
+            "NOTIFY * HTTP/1.1\r\n" +
+                "HOST: " + TEST_GROUP + ":1900\r\n" +
+                "NT: upnp:rootdevice\r\n" +
+                "NTS: " + nts + "\r\n" +
+                "USN: " + usn + "\r\n" +
+                "\r\n"
+        ).getBytes("UTF-8");
+        socket.send(new DatagramPacket(data, data.length, new InetSocketAddress(TEST_GROUP, TEST_PORT)));
+    }
+
+}
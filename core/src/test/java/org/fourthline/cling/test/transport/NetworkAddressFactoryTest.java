@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.test.transport;
+
+import org.fourthline.cling.transport.impl.NetworkAddressFactoryImpl;
+import org.fourthline.cling.transport.spi.InitializationException;
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+public class NetworkAddressFactoryTest {
+
+    @Test
+    public void cacheLocalAddress() throws Exception {
+
+        NetworkInterface loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        TestNetworkAddressFactory networkAddressFactory = new TestNetworkAddressFactory(loopback);
+
+        InetAddress remoteAddress = InetAddress.getByName("127.0.0.5");
+        assertEquals(networkAddressFactory.getLocalAddress(loopback, false, remoteAddress), InetAddress.getLoopbackAddress());
+        assertEquals(networkAddressFactory.lookups, 1);
+
+        // The same remote address is resolved once
+        assertEquals(networkAddressFactory.getLocalAddress(loopback, false, remoteAddress), InetAddress.getLoopbackAddress());
+        assertEquals(networkAddressFactory.lookups, 1);
+
+        networkAddressFactory.getLocalAddress(loopback, false, InetAddress.getByName("127.0.0.6"));
+        assertEquals(networkAddressFactory.lookups, 2);
+
+        // Removing an interface or address clears the cache
+        Iterator<InetAddress> it = networkAddressFactory.getBindAddresses();
+        it.next();
+        it.remove();
+        networkAddressFactory.getLocalAddress(loopback, false, remoteAddress);
+        assertEquals(networkAddressFactory.lookups, 3);
+    }
+
+    protected class TestNetworkAddressFactory extends NetworkAddressFactoryImpl {
+
+        int lookups;
+
+        public TestNetworkAddressFactory(NetworkInterface networkInterface) throws InitializationException {
+            networkInterfaces.add(networkInterface);
+            bindAddresses.add(InetAddress.getLoopbackAddress());
+        }
+
+        @Override
+        protected boolean requiresNetworkInterface() {
+            return false;
+        }
+
+        @Override
+        protected void discoverNetworkInterfaces() throws InitializationException {
+        }
+
+        @Override
+        protected void discoverBindAddresses() throws InitializationException {
+        }
+
+        @Override
+        protected List<InterfaceAddress> getInterfaceAddresses(NetworkInterface networkInterface) {
+            lookups++;
+            return super.getInterfaceAddresses(networkInterface);
+        }
+    }
+
+}
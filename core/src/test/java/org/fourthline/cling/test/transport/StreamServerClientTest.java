@@ -26,6 +26,7 @@ import org.fourthline.cling.model.message.UpnpResponse;
 import org.fourthline.cling.protocol.ProtocolCreationException;
 import org.fourthline.cling.protocol.ReceivingSync;
 import org.fourthline.cling.transport.spi.StreamClient;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
 import org.fourthline.cling.transport.spi.StreamServer;
 import org.fourthline.cling.transport.spi.UpnpStream;
 import org.testng.annotations.AfterClass;
@@ -35,6 +36,9 @@ import org.testng.annotations.Test;
 
 import java.net.InetAddress;
 import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import static org.testng.Assert.*;
@@ -181,6 +185,36 @@ abstract public class StreamServerClientTest {
         assertTrue(lastExecutedServerProtocol.isComplete);
     }
 
+    @Test
+    public void basicAsync() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final StreamResponseMessage[] responseMessages = new StreamResponseMessage[1];
+
+        Future<StreamResponseMessage> future = client.sendRequestAsync(
+            createRequestMessage(OKBodyResponse.PATH),
+            new StreamResponseCallback() {
+                public void responseReceived(StreamResponseMessage response) {
+                    responseMessages[0] = response;
+                    latch.countDown();
+                }
+            }
+        );
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(responseMessages[0].getOperation().getStatusCode(), 200);
+        assertEquals(responseMessages[0].getBodyString(), "foo");
+        assertEquals(future.get(), responseMessages[0]);
+        assertTrue(lastExecutedServerProtocol.isComplete);
+    }
+
+    @Test
+    public void expiredAsync() throws Exception {
+        Future<StreamResponseMessage> future = client.sendRequestAsync(createRequestMessage(TooLongResponse.PATH), null);
+        assertNull(future.get(10, TimeUnit.SECONDS));
+        assertFalse(lastExecutedServerProtocol.isComplete);
+        Thread.sleep(3000);
+        assertTrue(lastExecutedServerProtocol.isComplete);
+    }
+
     @Test
     public void checkAlive() throws Exception {
         StreamResponseMessage responseMessage = client.sendRequest(createRequestMessage(CheckAliveResponse.PATH));
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.fourthline.cling.transport.impl.httpclient;
+
+import org.fourthline.cling.model.message.StreamRequestMessage;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.UpnpHeaders;
+import org.fourthline.cling.model.message.UpnpMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.model.message.header.ContentTypeHeader;
+import org.fourthline.cling.model.message.header.UpnpHeader;
+import org.fourthline.cling.transport.spi.AbstractStreamClient;
+import org.fourthline.cling.transport.spi.InitializationException;
+import org.fourthline.cling.transport.spi.StreamClient;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
+import org.fourthline.cling.transport.spi.StreamResponseFuture;
+import org.seamless.util.Exceptions;
+
+import java.io.UnsupportedEncodingException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation based on the <code>java.net.http.HttpClient</code> of Java 11 and newer.
+ * <p>
+ * Requests are sent asynchronously by the client, on the configured request executor service.
+ * Any HTTP method is supported, including the UPnP methods <code>SUBSCRIBE</code>,
+ * <code>UNSUBSCRIBE</code>, and <code>NOTIFY</code>.
+ * </p>
+ * <p>
+ * Aborting a request after a timeout completes its response future immediately. On Java 16 and
+ * newer this also cancels the HTTP exchange and closes its connection. On Java 11 to 15 the
+ * client ignores the cancellation of its future, the exchange continues in the background until
+ * the remote host responds or the request timeout passes, and its response is discarded.
+ * </p>
+ * <p>
+ * Cling Core is compatible with Java 7, this class is in a separate module and requires a Java 11
+ * runtime. It <em>DOES NOT WORK</em> on Android.
+ * </p>
+ * <p>
+ * This implementation <em>DOES NOT</em> support Cling's server-side heartbeat for connection checking,
+ * the client expects a valid HTTP status line. If you are using this client, don't call Cling's
+ * {@link org.fourthline.cling.model.profile.RemoteClientInfo#isRequestCancelled()} function on your
+ * server to send a heartbeat to the client!
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class StreamClientImpl extends AbstractStreamClient<StreamClientConfigurationImpl, StreamClientImpl.HttpClientExchange> {
+
+    final private static Logger log = Logger.getLogger(StreamClient.class.getName());
+
+    final protected StreamClientConfigurationImpl configuration;
+    final protected HttpClient client;
+
+    public StreamClientImpl(StreamClientConfigurationImpl configuration) throws InitializationException {
+        this.configuration = configuration;
+
+        log.info("Starting java.net.http.HttpClient...");
+        try {
+            client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1) // No HTTP/2 upgrade attempts, UPnP devices only speak HTTP/1.1
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(configuration.getTimeoutSeconds()))
+                .executor(configuration.getRequestExecutorService())
+                .build();
+        } catch (LinkageError ex) {
+            throw new InitializationException(
+                "Could not start java.net.http.HttpClient, this client requires Java 11: " + ex, ex
+            );
+        }
+    }
+
+    @Override
+    public StreamClientConfigurationImpl getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    protected HttpClientExchange createRequest(StreamRequestMessage requestMessage) {
+        UpnpRequest requestOperation = requestMessage.getOperation();
+        if (log.isLoggable(Level.FINE))
+            log.fine(
+                "Preparing HTTP request message with method '"
+                    + requestOperation.getHttpMethodName()
+                    + "': " + requestMessage
+            );
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(requestOperation.getURI())
+                .timeout(Duration.ofSeconds(getConfiguration().getTimeoutSeconds()));
+            applyRequestHeaders(builder, requestMessage);
+            builder.method(requestOperation.getHttpMethodName(), createBodyPublisher(builder, requestMessage));
+            return new HttpClientExchange(requestMessage, builder.build());
+        } catch (IllegalArgumentException | UnsupportedEncodingException ex) {
+            log.warning("Can't create HTTP request: " + requestMessage + ", " + ex);
+            return null;
+        }
+    }
+
+    @Override
+    protected Callable<StreamResponseMessage> createCallable(final StreamRequestMessage requestMessage,
+                                                             final HttpClientExchange exchange) {
+        return new Callable<StreamResponseMessage>() {
+            public StreamResponseMessage call() throws Exception {
+
+                if (log.isLoggable(Level.FINE))
+                    log.fine("Sending HTTP request: " + requestMessage);
+
+                try {
+                    return createResponse(exchange.send(client).get());
+                } catch (CancellationException ex) {
+                    // That's ok, happens when we abort the exchange after timeout
+                    return null;
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof Exception)
+                        throw (Exception) ex.getCause();
+                    throw ex;
+                }
+            }
+        };
+    }
+
+    /**
+     * Sends the request without waiting, the client completes the response when the exchange is done
+     * or has expired.
+     */
+    @Override
+    public Future<StreamResponseMessage> sendRequestAsync(final StreamRequestMessage requestMessage,
+                                                          StreamResponseCallback callback) {
+        if (log.isLoggable(Level.FINE))
+            log.fine("Sending asynchronous HTTP request: " + requestMessage);
+
+        final HttpClientExchange exchange = createRequest(requestMessage);
+        if (exchange == null) {
+            StreamResponseFuture failed = new StreamResponseFuture(callback);
+            failed.complete(null);
+            return failed;
+        }
+
+        final StreamResponseFuture responseFuture = new StreamResponseFuture(callback) {
+            @Override
+            protected void abort() {
+                exchange.cancel();
+            }
+        };
+        exchange.send(client).whenComplete(new BiConsumer<HttpResponse<byte[]>, Throwable>() {
+            public void accept(HttpResponse<byte[]> response, Throwable failure) {
+                if (failure != null) {
+                    logFailure(requestMessage, failure);
+                    responseFuture.complete(null);
+                    return;
+                }
+                try {
+                    responseFuture.complete(createResponse(response));
+                } catch (Throwable t) {
+                    log.log(Level.WARNING, "Error reading response: " + requestMessage, Exceptions.unwrap(t));
+                    responseFuture.complete(null);
+                }
+            }
+        });
+        return responseFuture;
+    }
+
+    @Override
+    protected void abort(HttpClientExchange exchange) {
+        exchange.cancel();
+    }
+
+    @Override
+    protected boolean logExecutionException(Throwable t) {
+        if (t instanceof HttpTimeoutException) {
+            log.info("Timeout of " + getConfiguration().getTimeoutSeconds() + " seconds while waiting for HTTP request to complete: " + t);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        // NOOP, the client has no lifecycle and uses the request executor service of Cling
+    }
+
+    protected void logFailure(StreamRequestMessage requestMessage, Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null)
+            failure = failure.getCause();
+        if (failure instanceof CancellationException) {
+            if (log.isLoggable(Level.FINE))
+                log.fine("HTTP request has been aborted: " + requestMessage);
+        } else if (!logExecutionException(failure)) {
+            log.log(Level.WARNING, "HTTP request failed: " + requestMessage, Exceptions.unwrap(failure));
+        }
+    }
+
+    protected void applyRequestHeaders(HttpRequest.Builder builder, StreamRequestMessage requestMessage) {
+        UpnpHeaders headers = requestMessage.getHeaders();
+        if (log.isLoggable(Level.FINE))
+            log.fine("Writing headers on HttpRequest: " + headers.size());
+
+        // The client always adds the "Host" and "Content-Length" headers
+
+        // Add the default user agent if not already set on the message
+        if (!headers.containsKey(UpnpHeader.Type.USER_AGENT)) {
+            builder.setHeader(
+                UpnpHeader.Type.USER_AGENT.getHttpName(),
+                getConfiguration().getUserAgentValue(
+                    requestMessage.getUdaMajorVersion(),
+                    requestMessage.getUdaMinorVersion())
+            );
+        }
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            for (String v : entry.getValue()) {
+                String headerName = entry.getKey();
+                try {
+                    builder.header(headerName, v);
+                    if (log.isLoggable(Level.FINE))
+                        log.fine("Setting header '" + headerName + "': " + v);
+                } catch (IllegalArgumentException ex) {
+                    // Restricted headers such as "Host" and "Connection" are managed by the client
+                    if (log.isLoggable(Level.FINE))
+                        log.fine("Skipping header managed by HttpClient '" + headerName + "': " + v);
+                }
+            }
+        }
+    }
+
+    protected HttpRequest.BodyPublisher createBodyPublisher(HttpRequest.Builder builder,
+                                                           StreamRequestMessage requestMessage) throws UnsupportedEncodingException {
+        if (!requestMessage.hasBody())
+            return HttpRequest.BodyPublishers.noBody();
+
+        if (requestMessage.getBodyType() == UpnpMessage.BodyType.STRING) {
+            if (log.isLoggable(Level.FINE))
+                log.fine("Writing textual request body: " + requestMessage);
+
+            if (requestMessage.getContentTypeHeader() == null)
+                builder.setHeader(
+                    UpnpHeader.Type.CONTENT_TYPE.getHttpName(),
+                    ContentTypeHeader.DEFAULT_CONTENT_TYPE_UTF8.toString()
+                );
+            String charset =
+                requestMessage.getContentTypeCharset() != null
+                    ? requestMessage.getContentTypeCharset()
+                    : "UTF-8";
+            return HttpRequest.BodyPublishers.ofByteArray(requestMessage.getBodyString().getBytes(charset));
+        }
+
+        if (log.isLoggable(Level.FINE))
+            log.fine("Writing binary request body: " + requestMessage);
+        return HttpRequest.BodyPublishers.ofByteArray(requestMessage.getBodyBytes());
+    }
+
+    protected StreamResponseMessage createResponse(HttpResponse<byte[]> response) throws UnsupportedEncodingException {
+        // Status
+        UpnpResponse.Status status = UpnpResponse.Status.getByStatusCode(response.statusCode());
+        UpnpResponse responseOperation =
+            new UpnpResponse(
+                response.statusCode(),
+                status != null ? status.getStatusMsg() : ""
+            );
+
+        if (log.isLoggable(Level.FINE))
+            log.fine("Received response: " + responseOperation);
+
+        StreamResponseMessage responseMessage = new StreamResponseMessage(responseOperation);
+
+        // Headers
+        UpnpHeaders headers = new UpnpHeaders();
+        for (Map.Entry<String, List<String>> entry : response.headers().map().entrySet()) {
+            for (String value : entry.getValue()) {
+                headers.add(entry.getKey(), value);
+            }
+        }
+        responseMessage.setHeaders(headers);
+
+        // Body
+        byte[] bytes = response.body();
+        if (bytes != null && bytes.length > 0 && responseMessage.isContentTypeMissingOrText()) {
+
+            if (log.isLoggable(Level.FINE))
+                log.fine("Response contains textual entity body, converting then setting string on message");
+            responseMessage.setBodyCharacters(bytes);
+
+        } else if (bytes != null && bytes.length > 0) {
+
+            if (log.isLoggable(Level.FINE))
+                log.fine("Response contains binary entity body, setting bytes on message");
+            responseMessage.setBody(UpnpMessage.BodyType.BYTES, bytes);
+
+        } else {
+            if (log.isLoggable(Level.FINE))
+                log.fine("Response did not contain entity body");
+        }
+
+        if (log.isLoggable(Level.FINE))
+            log.fine("Response message complete: " + responseMessage);
+        return responseMessage;
+    }
+
+    /**
+     * The request and its response future, cancelling the exchange cancels the future of the client.
+     * Only the client of Java 16 and newer then also aborts the HTTP exchange.
+     */
+    static public class HttpClientExchange {
+
+        final protected StreamRequestMessage requestMessage;
+        final protected HttpRequest request;
+
+        protected CompletableFuture<HttpResponse<byte[]>> responseFuture;
+        protected boolean cancelled;
+
+        public HttpClientExchange(StreamRequestMessage requestMessage, HttpRequest request) {
+            this.requestMessage = requestMessage;
+            this.request = request;
+        }
+
+        public StreamRequestMessage getRequestMessage() {
+            return requestMessage;
+        }
+
+        public HttpRequest getRequest() {
+            return request;
+        }
+
+        synchronized public CompletableFuture<HttpResponse<byte[]>> send(HttpClient client) {
+            responseFuture = client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (cancelled)
+                responseFuture.cancel(true);
+            return responseFuture;
+        }
+
+        synchronized public void cancel() {
+            cancelled = true;
+            if (responseFuture != null)
+                responseFuture.cancel(true);
+        }
+    }
+
+}
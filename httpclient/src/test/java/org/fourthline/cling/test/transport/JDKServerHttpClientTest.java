@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.fourthline.cling.test.transport;
+
+import org.fourthline.cling.UpnpServiceConfiguration;
+import org.fourthline.cling.model.message.StreamRequestMessage;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.transport.impl.StreamServerConfigurationImpl;
+import org.fourthline.cling.transport.impl.StreamServerImpl;
+import org.fourthline.cling.transport.impl.httpclient.StreamClientConfigurationImpl;
+import org.fourthline.cling.transport.impl.httpclient.StreamClientImpl;
+import org.fourthline.cling.transport.spi.StreamClient;
+import org.fourthline.cling.transport.spi.StreamServer;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author Christian Bauer
+ */
+public class JDKServerHttpClientTest extends StreamServerClientTest {
+
+    @Override
+    public StreamServer createStreamServer(int port) {
+        return new StreamServerImpl(
+            new StreamServerConfigurationImpl(port)
+        );
+    }
+
+    @Override
+    public StreamClient createStreamClient(UpnpServiceConfiguration configuration) {
+        return new StreamClientImpl(
+            new StreamClientConfigurationImpl(
+                configuration.getSyncProtocolExecutorService(),
+                3
+            )
+        );
+    }
+
+    @Test
+    public void customMethods() throws Exception {
+        URI uri = URI.create("http://" + TEST_HOST + ":" + TEST_PORT + OKEmptyResponse.PATH);
+        for (UpnpRequest.Method method : new UpnpRequest.Method[]{UpnpRequest.Method.SUBSCRIBE, UpnpRequest.Method.UNSUBSCRIBE}) {
+            lastExecutedServerProtocol = null;
+            StreamResponseMessage responseMessage = client.sendRequest(new StreamRequestMessage(method, uri));
+            assertEquals(responseMessage.getOperation().getStatusCode(), 200);
+            assertEquals(lastExecutedServerProtocol.getInputMessage().getOperation().getMethod(), method);
+            assertTrue(lastExecutedServerProtocol.isComplete);
+        }
+
+        lastExecutedServerProtocol = null;
+        StreamResponseMessage responseMessage = client.sendRequest(
+            new StreamRequestMessage(UpnpRequest.Method.NOTIFY, uri, "<e:propertyset/>")
+        );
+        assertEquals(responseMessage.getOperation().getStatusCode(), 200);
+        assertEquals(lastExecutedServerProtocol.getInputMessage().getOperation().getMethod(), UpnpRequest.Method.NOTIFY);
+        assertEquals(lastExecutedServerProtocol.getInputMessage().getBodyString(), "<e:propertyset/>");
+    }
+
+    // DISABLED, NOT SUPPORTED
+    @Override
+    public void checkAliveExpired() throws Exception {
+    }
+
+    @Override
+    public void checkAliveCancelled() throws Exception {
+    }
+
+}